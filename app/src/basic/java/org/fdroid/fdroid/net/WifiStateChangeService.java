@@ -29,7 +29,4 @@ import android.support.annotation.Nullable;
 public class WifiStateChangeService {
     public static void start(Context context, @Nullable Intent intent) {
     }
-
-    public class WifiInfoThread extends Thread {
-    }
 }
@@ -411,7 +411,7 @@ public class ZipSigner {
 
         // BASE64Encoder base64 = new BASE64Encoder();
         MessageDigest md = MessageDigest.getInstance("SHA1");
-        byte[] buffer = new byte[512];
+        byte[] buffer = new byte[8192];
         int num;
 
         // We sort the input entries by name, and add them to the
@@ -307,7 +307,7 @@ public class ZioEntry implements Cloneable {
             long totalCount = 0;
 
             while (totalCount != compressedSize) {
-                int numRead = zipInput.in.read(buffer, 0, (int) Math.min(compressedSize - totalCount, bufferSize));
+                int numRead = zipInput.read(buffer, 0, (int) Math.min(compressedSize - totalCount, bufferSize));
                 if (numRead > 0) {
                     output.writeBytes(buffer, 0, numRead);
                     if (debug) getLogger().debug(String.format(Locale.ENGLISH, "Wrote %d bytes", numRead));
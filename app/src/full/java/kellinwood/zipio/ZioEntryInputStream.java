@@ -22,7 +22,6 @@ import kellinwood.logging.LoggerManager;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
 import java.util.Locale;
 
 
@@ -31,7 +30,7 @@ import java.util.Locale;
  */
 public class ZioEntryInputStream extends InputStream {
 
-    RandomAccessFile raf;
+    ZipInput zipInput;
     int size;
     int offset;
     LoggerInterface log;
@@ -45,11 +44,11 @@ public class ZioEntryInputStream extends InputStream {
         debug = log.isDebugEnabled();
         offset = 0;
         size = entry.getCompressedSize();
-        raf = entry.getZipInput().in;
+        zipInput = entry.getZipInput();
         long dpos = entry.getDataPosition();
         if (dpos >= 0) {
             if (debug) log.debug(String.format(Locale.ENGLISH, "Seeking to %d", entry.getDataPosition()));
-            raf.seek(entry.getDataPosition());
+            zipInput.seek(entry.getDataPosition());
         } else {
             // seeks to, then reads, the local header, causing the 
             // file pointer to be positioned at the start of the data.
@@ -92,7 +91,7 @@ public class ZioEntryInputStream extends InputStream {
                 return 0;
             } else return -1;
         }
-        int b = raf.read();
+        int b = zipInput.read();
         if (b >= 0) {
             if (monitor != null) monitor.write(b);
             if (debug) log.debug("Read 1 byte");
@@ -115,7 +114,7 @@ public class ZioEntryInputStream extends InputStream {
             } else return -1;
         }
         int numToRead = Math.min(len, available());
-        int numRead = raf.read(b, off, numToRead);
+        int numRead = zipInput.read(b, off, numToRead);
         if (numRead > 0) {
             if (monitor != null) monitor.write(b, off, numRead);
             offset += numRead;
@@ -132,7 +131,7 @@ public class ZioEntryInputStream extends InputStream {
     @Override
     public long skip(long n) throws IOException {
         long numToSkip = Math.min(n, available());
-        raf.seek(raf.getFilePointer() + numToSkip);
+        zipInput.seek(zipInput.getFilePointer() + numToSkip);
         if (debug) log.debug(String.format(Locale.ENGLISH, "Skipped %d bytes", numToSkip));
         return numToSkip;
     }
@@ -23,6 +23,8 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Locale;
@@ -34,13 +36,22 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- *
+ * Reads the central directory and entries of a zip file.  The central
+ * directory is read into a heap {@link ByteBuffer} with a single read, so
+ * that parsing it is plain memory accesses rather than a system call for
+ * every byte, short and int.  Everything else, i.e. local headers and entry
+ * data, is read straight from the {@link RandomAccessFile}.
  */
 public class ZipInput implements Closeable {
     static LoggerInterface log;
 
     public String inputFilename;
     RandomAccessFile in = null;
+    /**
+     * The central directory while it is being parsed, starting at {@link #bufferOffset}.
+     */
+    ByteBuffer buffer = null;
+    long bufferOffset;
     long fileLength;
     int scanIterations = 0;
 
@@ -51,7 +62,15 @@ public class ZipInput implements Closeable {
     public ZipInput(String filename) throws IOException {
         this.inputFilename = filename;
         in = new RandomAccessFile(new File(inputFilename), "r");
-        fileLength = in.length();
+        boolean success = false;
+        try {
+            fileLength = in.length();
+            success = true;
+        } finally {
+            if (!success) {
+                close();
+            }
+        }
     }
 
     private static LoggerInterface getLogger() {
@@ -126,9 +145,9 @@ public class ZipInput implements Closeable {
 
         byte[] scanBuf = new byte[scanSize];
 
-        in.seek(fileLength - scanSize);
+        seek(fileLength - scanSize);
 
-        in.readFully(scanBuf);
+        readFully(scanBuf);
 
         for (int i = scanSize - 22; i >= 0; i--) {
             scanIterations += 1;
@@ -145,7 +164,7 @@ public class ZipInput implements Closeable {
         try {
 
             long posEOCDR = scanForEOCDR(256);
-            in.seek(posEOCDR);
+            seek(posEOCDR);
             centralEnd = CentralEnd.read(this);
 
             boolean debug = getLogger().isDebugEnabled();
@@ -157,12 +176,17 @@ public class ZipInput implements Closeable {
                 ZipListingHelper.listHeader(getLogger());
             }
 
-            in.seek(centralEnd.centralStartOffset);
-
-            for (int i = 0; i < centralEnd.totalCentralEntries; i++) {
-                ZioEntry entry = ZioEntry.read(this);
-                zioEntries.put(entry.getName(), entry);
-                if (debug) ZipListingHelper.listEntry(getLogger(), entry);
+            try {
+                bufferRegion(centralEnd.centralStartOffset, posEOCDR);
+                seek(centralEnd.centralStartOffset);
+
+                for (int i = 0; i < centralEnd.totalCentralEntries; i++) {
+                    ZioEntry entry = ZioEntry.read(this);
+                    zioEntries.put(entry.getName(), entry);
+                    if (debug) ZipListingHelper.listEntry(getLogger(), entry);
+                }
+            } finally {
+                buffer = null;
             }
 
         } catch (Throwable t) {
@@ -170,8 +194,26 @@ public class ZipInput implements Closeable {
         }
     }
 
+    /**
+     * Reads everything from {@code start} up to {@code end} into {@link #buffer}
+     * with one read.  Nothing is buffered if the region is not a sensible size,
+     * then it is all read straight from the file like everything else.
+     */
+    private void bufferRegion(long start, long end) throws IOException {
+        long length = end - start;
+        if (start < 0 || length <= 0 || length > Integer.MAX_VALUE) {
+            return;
+        }
+        byte[] bytes = new byte[(int) length];
+        in.seek(start);
+        in.readFully(bytes);
+        buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        bufferOffset = start;
+    }
+
     @Override
     public void close() {
+        buffer = null;
         if (in != null) try {
             in.close();
         } catch (Throwable t) {
@@ -179,18 +221,30 @@ public class ZipInput implements Closeable {
     }
 
     public long getFilePointer() throws IOException {
+        if (buffer != null) return bufferOffset + buffer.position();
         return in.getFilePointer();
     }
 
+    /**
+     * Seeking outside of {@link #buffer} drops it, so all reads after that
+     * come from the file.
+     */
     public void seek(long position) throws IOException {
+        if (buffer != null && position >= bufferOffset && position - bufferOffset <= buffer.limit()) {
+            buffer.position((int) (position - bufferOffset));
+            return;
+        }
+        buffer = null;
         in.seek(position);
     }
 
     public byte readByte() throws IOException {
+        if (buffer != null) return buffer.get();
         return in.readByte();
     }
 
     public int readInt() throws IOException {
+        if (buffer != null) return buffer.getInt();
         int result = 0;
         for (int i = 0; i < 4; i++) {
             result |= (in.readUnsignedByte() << (8 * i));
@@ -199,6 +253,7 @@ public class ZipInput implements Closeable {
     }
 
     public short readShort() throws IOException {
+        if (buffer != null) return buffer.getShort();
         short result = 0;
         for (int i = 0; i < 2; i++) {
             result |= (in.readUnsignedByte() << (8 * i));
@@ -207,26 +262,35 @@ public class ZipInput implements Closeable {
     }
 
     public String readString(int length) throws IOException {
-
-        byte[] buffer = new byte[length];
-        for (int i = 0; i < length; i++) {
-            buffer[i] = in.readByte();
-        }
-        return new String(buffer);
+        return new String(readBytes(length));
     }
 
     public byte[] readBytes(int length) throws IOException {
-
         byte[] buffer = new byte[length];
-        for (int i = 0; i < length; i++) {
-            buffer[i] = in.readByte();
-        }
+        readFully(buffer);
         return buffer;
     }
 
+    private void readFully(byte[] buffer) throws IOException {
+        if (buffer != null) buffer.get(buffer);
+        else in.readFully(buffer);
+    }
+
+    /**
+     * Reads a single byte, returning -1 at the end of the file.
+     */
+    public int read() throws IOException {
+        if (buffer != null) return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        return in.read();
+    }
+
     public int read(byte[] b, int offset, int length) throws IOException {
+        if (buffer != null) {
+            if (!buffer.hasRemaining()) return length == 0 ? 0 : -1;
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(b, offset, count);
+            return count;
+        }
         return in.read(b, offset, length);
     }
 }
-
-
@@ -19,6 +19,7 @@ package kellinwood.zipio;
 import kellinwood.logging.LoggerInterface;
 import kellinwood.logging.LoggerManager;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -56,13 +57,13 @@ public class ZipOutput {
 
     private void init(File ofile) throws IOException {
         if (ofile.exists()) ofile.delete();
-        out = new FileOutputStream(ofile);
+        out = new BufferedOutputStream(new FileOutputStream(ofile));
         if (getLogger().isDebugEnabled()) ZipListingHelper.listHeader(getLogger());
 
     }
 
     public ZipOutput(OutputStream os) throws IOException {
-        out = os;
+        out = new BufferedOutputStream(os);
     }
 
     private static LoggerInterface getLogger() {
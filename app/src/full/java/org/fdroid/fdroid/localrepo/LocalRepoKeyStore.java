@@ -3,6 +3,7 @@ package org.fdroid.fdroid.localrepo;
 import android.content.Context;
 import android.util.Log;
 import kellinwood.security.zipsigner.ZipSigner;
+import kellinwood.zipio.ZioEntry;
 import org.fdroid.fdroid.FDroidApp;
 import org.fdroid.fdroid.Utils;
 import org.bouncycastle.asn1.ASN1Sequence;
@@ -27,6 +28,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.net.Socket;
 import java.security.GeneralSecurityException;
@@ -48,6 +50,7 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Locale;
+import java.util.Map;
 
 // TODO Address exception handling in a uniform way throughout
 
@@ -202,21 +205,42 @@ public final class LocalRepoKeyStore {
 
     public void signZip(File input, File output) {
         try {
-            ZipSigner zipSigner = new ZipSigner();
-
-            X509Certificate cert = (X509Certificate) keyStore.getCertificate(INDEX_CERT_ALIAS);
-
-            KeyPair kp = getKerplappKeypair();
-            PrivateKey priv = kp.getPrivate();
-
-            zipSigner.setKeys("kerplapp", cert, priv, DEFAULT_SIG_ALG, null);
-            zipSigner.signZip(input.getAbsolutePath(), output.getAbsolutePath());
+            createZipSigner().signZip(input.getAbsolutePath(), output.getAbsolutePath());
+        } catch (ClassNotFoundException | IllegalAccessException | InstantiationException | GeneralSecurityException | IOException e) {
+            Log.e(TAG, "Unable to sign local repo index", e);
+        }
+    }
 
+    /**
+     * Sign {@code entries} that were generated in memory straight into a jar
+     * at {@code output}, rather than writing an unsigned jar to disk that then
+     * needs to be read back in and parsed before it can be signed.
+     */
+    public void signZip(Map<String, ZioEntry> entries, File output) {
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(output);
+            createZipSigner().signZip(entries, outputStream, output.getAbsolutePath());
         } catch (ClassNotFoundException | IllegalAccessException | InstantiationException | GeneralSecurityException | IOException e) {
             Log.e(TAG, "Unable to sign local repo index", e);
+        } finally {
+            Utils.closeQuietly(outputStream);
         }
     }
 
+    private ZipSigner createZipSigner() throws ClassNotFoundException, IllegalAccessException,
+            InstantiationException, GeneralSecurityException {
+        ZipSigner zipSigner = new ZipSigner();
+
+        X509Certificate cert = (X509Certificate) keyStore.getCertificate(INDEX_CERT_ALIAS);
+
+        KeyPair kp = getKerplappKeypair();
+        PrivateKey priv = kp.getPrivate();
+
+        zipSigner.setKeys("kerplapp", cert, priv, DEFAULT_SIG_ALG, null);
+        return zipSigner;
+    }
+
     private KeyPair getKerplappKeypair() throws KeyStoreException, UnrecoverableKeyException,
             NoSuchAlgorithmException {
         /*
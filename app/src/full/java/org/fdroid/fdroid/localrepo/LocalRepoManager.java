@@ -14,8 +14,14 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import kellinwood.zipio.ZioEntry;
+import org.apache.commons.io.FileUtils;
 import org.fdroid.fdroid.FDroidApp;
 import org.fdroid.fdroid.Hasher;
+import org.fdroid.fdroid.IndexV1Updater;
 import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.RepoUpdater;
 import org.fdroid.fdroid.Utils;
@@ -36,17 +42,26 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.security.cert.CertificateEncodingException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The {@link SwapService} deals with managing the entire workflow from selecting apps to
@@ -63,16 +78,43 @@ public final class LocalRepoManager {
     private final AssetManager assetManager;
     private final String fdroidPackageName;
 
+    /**
+     * The repo icon, served from the web root and linked into the repo's
+     * {@code icons/} directory, where clients look for it.
+     */
+    private static final String REPO_ICON = "swap-icon.png";
+
+    /**
+     * The index version written to both {@code index.jar} and {@code index-v1.jar}.
+     * This must stay below {@link org.fdroid.fdroid.data.Repo#VERSION_DENSITY_SPECIFIC_ICONS} since
+     * icons are only ever put into a single {@code icons/} directory.
+     */
+    private static final int INDEX_VERSION = 10;
+
     private static final String[] WEB_ROOT_ASSET_FILES = {
-            "swap-icon.png",
+            REPO_ICON,
             "swap-tick-done.png",
             "swap-tick-not-done.png",
     };
 
-    private final Map<String, App> apps = new HashMap<>();
+    /**
+     * Peers wait on this path for the index to change, see {@link #waitForIndexChange(String, long)}.
+     */
+    public static final String INDEX_CHANGES_PATH = "/index-changes";
+
+    /**
+     * How long a peer is kept waiting on {@link #INDEX_CHANGES_PATH} before being
+     * told nothing changed.  It then asks again, so the connection is never idle
+     * for long enough that something along the way drops it.
+     */
+    public static final long INDEX_CHANGES_TIMEOUT_MILLIS = 55000;
+
+    private final Map<String, App> apps = new ConcurrentHashMap<>();
+
+    private final Object indexChangedLock = new Object();
 
     private final SanitizedFile xmlIndexJar;
-    private final SanitizedFile xmlIndexJarUnsigned;
+    private final SanitizedFile indexV1Jar;
     private final SanitizedFile webRoot;
     private final SanitizedFile fdroidDir;
     private final SanitizedFile fdroidDirCaps;
@@ -80,6 +122,16 @@ public final class LocalRepoManager {
     private final SanitizedFile repoDirCaps;
     private final SanitizedFile iconsDir;
 
+    /**
+     * Rendered icons and {@code <application>} blocks for {@code index.xml} are
+     * kept here per {@code packageName} and {@code versionCode}, outside of the
+     * webroot, so they survive the repo being rebuilt and are only ever
+     * generated once per installed version.  Both are pruned each time the
+     * index is written, see {@link #deleteUnusedIcons()}.
+     */
+    private final File iconCacheDir;
+    private final File indexCacheDir;
+
     @Nullable
     private static LocalRepoManager localRepoManager;
 
@@ -105,7 +157,9 @@ public final class LocalRepoManager {
         repoDirCaps = new SanitizedFile(fdroidDirCaps, "REPO");
         iconsDir = new SanitizedFile(repoDir, "icons");
         xmlIndexJar = new SanitizedFile(repoDir, RepoUpdater.SIGNED_FILE_NAME);
-        xmlIndexJarUnsigned = new SanitizedFile(repoDir, "index.unsigned.jar");
+        indexV1Jar = new SanitizedFile(repoDir, IndexV1Updater.SIGNED_FILE_NAME);
+        iconCacheDir = new File(c.getCacheDir(), "swap-icons");
+        indexCacheDir = new File(c.getCacheDir(), "swap-index");
 
         if (!fdroidDir.exists() && !fdroidDir.mkdir()) {
             Log.e(TAG, "Unable to create empty base: " + fdroidDir);
@@ -118,6 +172,14 @@ public final class LocalRepoManager {
         if (!iconsDir.exists() && !iconsDir.mkdir()) {
             Log.e(TAG, "Unable to create icons folder: " + iconsDir);
         }
+
+        if (!iconCacheDir.exists() && !iconCacheDir.mkdir()) {
+            Log.e(TAG, "Unable to create icon cache folder: " + iconCacheDir);
+        }
+
+        if (!indexCacheDir.exists() && !indexCacheDir.mkdir()) {
+            Log.e(TAG, "Unable to create index cache folder: " + indexCacheDir);
+        }
     }
 
     private String writeFdroidApkToWebroot() {
@@ -190,6 +252,8 @@ public final class LocalRepoManager {
             symlinkEntireWebRootElsewhere("../", fdroidDirCaps);
             symlinkEntireWebRootElsewhere("../../", repoDirCaps);
 
+            symlinkFileElsewhere(REPO_ICON, "../../../", iconsDir);
+
         } catch (IOException e) {
             Log.e(TAG, "Error writing local repo index", e);
         }
@@ -246,8 +310,43 @@ public final class LocalRepoManager {
         return xmlIndexJar;
     }
 
+    /**
+     * The {@code ETag} that the swap webserver sends for {@code index-v1.jar},
+     * which changes every time the index is written.
+     */
+    public String getIndexTag() {
+        return Integer.toHexString((indexV1Jar.getAbsolutePath() + indexV1Jar.lastModified()
+                + String.valueOf(indexV1Jar.length())).hashCode());
+    }
+
+    /**
+     * Block until the index is different from the one tagged {@code indexTag},
+     * or until {@code timeoutMillis} has passed.  This lets peers find out
+     * straight away when the apps being swapped change, without having to
+     * download the index over and over to see whether it changed.
+     *
+     * @param indexTag the tag the peer last saw, or null to return straight away
+     * @return the current tag, which is the same as {@code indexTag} if it timed out
+     * @see #getIndexTag()
+     */
+    public String waitForIndexChange(@Nullable String indexTag, long timeoutMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        synchronized (indexChangedLock) {
+            String current = getIndexTag();
+            long remaining = timeoutMillis;
+            while (current.equals(indexTag) && remaining > 0) {
+                indexChangedLock.wait(remaining);
+                current = getIndexTag();
+                remaining = end - System.currentTimeMillis();
+            }
+            return current;
+        }
+    }
+
     public void deleteRepo() {
+        apps.clear();
         deleteContents(repoDir);
+        deleteContents(indexCacheDir);
     }
 
     public void copyApksToRepo() {
@@ -260,7 +359,8 @@ public final class LocalRepoManager {
 
             if (app.installedApk != null) {
                 SanitizedFile outFile = new SanitizedFile(repoDir, app.installedApk.apkName);
-                if (Utils.symlinkOrCopyFileQuietly(app.installedApk.installedFile, outFile)) {
+                if (outFile.exists()
+                        || Utils.symlinkOrCopyFileQuietly(app.installedApk.installedFile, outFile)) {
                     continue;
                 }
             }
@@ -269,10 +369,85 @@ public final class LocalRepoManager {
         }
     }
 
+    /**
+     * Make the apps in the swap repo match {@code packageNames}.  Only the apps
+     * which were added, removed or updated since the last time are processed,
+     * and the per-app work of reading and hashing the APKs is spread over all
+     * of the CPU cores.
+     */
+    public void setApps(final Context context, Collection<String> packageNames) throws InterruptedException {
+        for (String packageName : new ArrayList<>(apps.keySet())) {
+            if (!packageNames.contains(packageName)) {
+                removeApp(packageName);
+            }
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(packageNames.size());
+        for (final String packageName : packageNames) {
+            if (isAppUpToDate(packageName)) {
+                continue;
+            } else if (apps.containsKey(packageName)) {
+                removeApp(packageName);
+            }
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    addApp(context, packageName);
+                    return null;
+                }
+            });
+        }
+        Utils.debugLog(TAG, "Adding " + tasks.size() + " new or updated apps to the swap repo");
+        runInParallel(tasks);
+    }
+
+    private boolean isAppUpToDate(String packageName) {
+        App app = apps.get(packageName);
+        if (app == null || app.installedApk == null) {
+            return false;
+        }
+        try {
+            return pm.getPackageInfo(packageName, 0).versionCode == app.installedApk.versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            return false;
+        }
+    }
+
+    private void removeApp(String packageName) {
+        App app = apps.remove(packageName);
+        Utils.debugLog(TAG, "apps.remove: " + packageName);
+        if (app != null && app.installedApk != null) {
+            attemptToDelete(new File(repoDir, app.installedApk.apkName));
+            attemptToDelete(getIconFile(packageName, app.installedApk.versionCode));
+        }
+    }
+
+    private static void runInParallel(List<Callable<Void>> tasks) throws InterruptedException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Error preparing app for the swap repo", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     public void addApp(Context context, String packageName) {
         App app;
         try {
             app = SwapService.getAppFromCache(packageName);
+            if (app != null && !isAppCurrent(app)) {
+                app = null;
+            }
             if (app == null) {
                 app = App.getInstance(context.getApplicationContext(), pm, packageName);
             }
@@ -287,24 +462,58 @@ public final class LocalRepoManager {
         apps.put(packageName, app);
     }
 
-    public void copyIconsToRepo() {
-        ApplicationInfo appInfo;
+    private boolean isAppCurrent(App app) {
+        try {
+            return app.installedApk != null
+                    && pm.getPackageInfo(app.packageName, 0).versionCode == app.installedApk.versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            return false;
+        }
+    }
+
+    public void copyIconsToRepo() throws InterruptedException {
+        List<Callable<Void>> tasks = new ArrayList<>(apps.size());
         for (final App app : apps.values()) {
-            if (app.installedApk != null) {
-                try {
-                    appInfo = pm.getApplicationInfo(app.packageName, PackageManager.GET_META_DATA);
-                    copyIconToRepo(appInfo.loadIcon(pm), app.packageName, app.installedApk.versionCode);
-                } catch (PackageManager.NameNotFoundException e) {
-                    Log.e(TAG, "Error getting app icon", e);
+            if (app.installedApk == null) {
+                continue;
+            }
+            final File iconFile = getIconFile(app.packageName, app.installedApk.versionCode);
+            if (iconFile.exists()) {
+                continue;
+            }
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    copyIconToRepo(app.packageName, app.installedApk.versionCode, iconFile);
+                    return null;
                 }
+            });
+        }
+        runInParallel(tasks);
+    }
+
+    /**
+     * Links the icon into the repo from the icon cache, first rendering
+     * it into the cache if this version of the app has not been seen before.
+     */
+    private void copyIconToRepo(String packageName, int versionCode, File iconFile) {
+        SanitizedFile cachedIcon = new SanitizedFile(iconCacheDir, iconFile.getName());
+        if (!cachedIcon.exists()) {
+            try {
+                ApplicationInfo appInfo = pm.getApplicationInfo(packageName, PackageManager.GET_META_DATA);
+                writeIconToFile(appInfo.loadIcon(pm), cachedIcon);
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.e(TAG, "Error getting app icon", e);
+                return;
             }
         }
+        Utils.symlinkOrCopyFileQuietly(cachedIcon, SanitizedFile.knownSanitized(iconFile));
     }
 
     /**
-     * Extracts the icon from an APK and writes it to the repo as a PNG
+     * Extracts the icon from an APK and writes it as a PNG
      */
-    private void copyIconToRepo(Drawable drawable, String packageName, int versionCode) {
+    private void writeIconToFile(Drawable drawable, File png) {
         Bitmap bitmap;
         if (drawable instanceof BitmapDrawable) {
             bitmap = ((BitmapDrawable) drawable).getBitmap();
@@ -315,7 +524,6 @@ public final class LocalRepoManager {
             drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
             drawable.draw(canvas);
         }
-        File png = getIconFile(packageName, versionCode);
         OutputStream out;
         try {
             out = new BufferedOutputStream(new FileOutputStream(png));
@@ -340,36 +548,96 @@ public final class LocalRepoManager {
         @NonNull
         private final DateFormat dateToStr = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
 
-        private IndexXmlBuilder() throws XmlPullParserException {
+        @Nullable
+        private final File fragmentCacheDir;
+
+        private IndexXmlBuilder(@Nullable File fragmentCacheDir) throws XmlPullParserException {
             serializer = XmlPullParserFactory.newInstance().newSerializer();
+            this.fragmentCacheDir = fragmentCacheDir;
         }
 
-        public void build(Context context, Map<String, App> apps, OutputStream output) throws IOException, LocalRepoKeyStore.InitException {
-            serializer.setOutput(output, "UTF-8");
-            serializer.startDocument(null, null);
+        public void build(Context context, Map<String, App> apps, OutputStream output) throws IOException, LocalRepoKeyStore.InitException, XmlPullParserException {
+            Writer writer = new OutputStreamWriter(output, "UTF-8");
+            serializer.setOutput(writer);
+            serializer.startDocument("UTF-8", null);
             serializer.startTag("", "fdroid");
 
             // <repo> block
             serializer.startTag("", "repo");
-            serializer.attribute("", "icon", "blah.png");
+            serializer.attribute("", "icon", REPO_ICON);
             serializer.attribute("", "name", Preferences.get().getLocalRepoName() + " on " + FDroidApp.ipAddressString);
             serializer.attribute("", "pubkey", Hasher.hex(LocalRepoKeyStore.get(context).getCertificate()));
             long timestamp = System.currentTimeMillis() / 1000L;
             serializer.attribute("", "timestamp", String.valueOf(timestamp));
-            serializer.attribute("", "version", "10");
+            serializer.attribute("", "version", String.valueOf(INDEX_VERSION));
             tag("description", "A local FDroid repo generated from apps installed on " + Preferences.get().getLocalRepoName());
             serializer.endTag("", "repo");
 
-            // <application> blocks
+            // <application> blocks, which are written as-is from the cache
+            serializer.flush();
+            Set<File> usedFragments = new HashSet<>();
             for (Map.Entry<String, App> entry : apps.entrySet()) {
-                tagApplication(entry.getValue());
+                writer.write(getApplicationFragment(entry.getValue(), usedFragments));
             }
+            deleteUnusedFragments(usedFragments);
 
             serializer.endTag("", "fdroid");
             serializer.endDocument();
+            writer.flush();
             output.close();
         }
 
+        /**
+         * Get the {@code <application>} block for {@code app}, either from the
+         * cache, or by generating it and then storing it in the cache.  The
+         * name of the local repo is included in these blocks, so it is part of
+         * the cache key along with {@code packageName} and {@code versionCode}.
+         * An app can be reinstalled with a different APK but the same
+         * {@code versionCode}, so its {@code lastUpdateTime} is in the key too.
+         */
+        private String getApplicationFragment(App app, Set<File> usedFragments)
+                throws IOException, XmlPullParserException {
+            File cached = null;
+            if (fragmentCacheDir != null) {
+                long lastUpdated = app.lastUpdated == null ? 0 : app.lastUpdated.getTime();
+                cached = new File(fragmentCacheDir, app.packageName + "_" + app.installedApk.versionCode + "_"
+                        + lastUpdated + "_"
+                        + Integer.toHexString(Preferences.get().getLocalRepoName().hashCode()) + ".xml");
+                usedFragments.add(cached);
+                if (cached.exists()) {
+                    return FileUtils.readFileToString(cached, "UTF-8");
+                }
+            }
+
+            StringWriter fragment = new StringWriter();
+            IndexXmlBuilder fragmentBuilder = new IndexXmlBuilder(null);
+            fragmentBuilder.serializer.setOutput(fragment);
+            fragmentBuilder.tagApplication(app);
+            fragmentBuilder.serializer.flush();
+            String xml = fragment.toString();
+
+            if (cached != null) {
+                FileUtils.writeStringToFile(cached, xml, "UTF-8");
+            }
+            return xml;
+        }
+
+        /**
+         * Anything in the cache which was not part of this index is for an app
+         * that was removed from the swap, or for an older install of it.
+         */
+        private void deleteUnusedFragments(Set<File> usedFragments) {
+            File[] files = fragmentCacheDir == null ? null : fragmentCacheDir.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                if (!usedFragments.contains(file)) {
+                    FileUtils.deleteQuietly(file);
+                }
+            }
+        }
+
         /**
          * Helper function to start a tag called "name", fill it with text "text", and then
          * end the tag in a more concise manner.  If "text" is blank, skip the tag entirely.
@@ -433,7 +701,9 @@ public final class LocalRepoManager {
             tag("versioncode", app.installedApk.versionCode);
             tag("apkname", app.installedApk.apkName);
             tagHash(app);
-            tag("sig", app.installedApk.sig.toLowerCase(Locale.US));
+            if (app.installedApk.sig != null) {
+                tag("sig", app.installedApk.sig.toLowerCase(Locale.US));
+            }
             tag("size", app.installedApk.installedFile.length());
             tag("added", app.installedApk.added);
             if (app.installedApk.minSdkVersion > Apk.SDK_VERSION_MIN_VALUE) {
@@ -493,23 +763,182 @@ public final class LocalRepoManager {
         }
     }
 
+    /**
+     * Helper class to aid in constructing {@code index-v1.json}.  This streams
+     * the JSON straight out with a {@link JsonGenerator}, using the same field
+     * names that {@link IndexV1Updater} reads into {@link App} and {@link Apk}.
+     */
+    public static final class IndexV1Builder {
+
+        private final JsonGenerator generator;
+
+        private IndexV1Builder(OutputStream output) throws IOException {
+            generator = new JsonFactory().createGenerator(output, JsonEncoding.UTF8);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        public void build(Context context, Map<String, App> apps) throws IOException, LocalRepoKeyStore.InitException {
+            String localRepoName = Preferences.get().getLocalRepoName();
+            generator.writeStartObject();
+
+            generator.writeObjectFieldStart("repo");
+            generator.writeNumberField("timestamp", System.currentTimeMillis());
+            generator.writeNumberField("version", INDEX_VERSION);
+            generator.writeStringField("name", localRepoName + " on " + FDroidApp.ipAddressString);
+            generator.writeStringField("icon", REPO_ICON);
+            generator.writeStringField("description",
+                    "A local FDroid repo generated from apps installed on " + localRepoName);
+            generator.writeEndObject();
+
+            generator.writeArrayFieldStart("apps");
+            for (App app : apps.values()) {
+                writeApp(app, localRepoName);
+            }
+            generator.writeEndArray();
+
+            generator.writeObjectFieldStart("packages");
+            for (App app : apps.values()) {
+                generator.writeArrayFieldStart(app.packageName);
+                writePackage(app.installedApk);
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+
+            generator.writeEndObject();
+            generator.close();
+        }
+
+        private void writeApp(App app, String localRepoName) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("packageName", app.packageName);
+            writeStringField("name", app.name);
+            writeStringField("summary", app.summary);
+            writeStringField("icon", app.icon);
+            writeStringField("description", app.description);
+            writeDateField("added", app.added);
+            writeDateField("lastUpdated", app.lastUpdated);
+            generator.writeStringField("license", "Unknown");
+            generator.writeArrayFieldStart("categories");
+            generator.writeString("LocalRepo");
+            generator.writeString(localRepoName);
+            generator.writeEndArray();
+            generator.writeStringField("suggestedVersionCode", String.valueOf(app.installedApk.versionCode));
+            generator.writeEndObject();
+        }
+
+        private void writePackage(Apk apk) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("packageName", apk.packageName);
+            writeStringField("versionName", apk.versionName);
+            generator.writeNumberField("versionCode", apk.versionCode);
+            generator.writeStringField("apkName", apk.apkName);
+            writeStringField("hash", apk.hash);
+            writeStringField("hashType", apk.hashType);
+            if (apk.sig != null) {
+                generator.writeStringField("sig", apk.sig.toLowerCase(Locale.US));
+            }
+            generator.writeNumberField("size", apk.installedFile.length());
+            writeDateField("added", apk.added);
+            if (apk.minSdkVersion > Apk.SDK_VERSION_MIN_VALUE) {
+                generator.writeNumberField("minSdkVersion", apk.minSdkVersion);
+            }
+            if (apk.targetSdkVersion > apk.minSdkVersion) {
+                generator.writeNumberField("targetSdkVersion", apk.targetSdkVersion);
+            }
+            if (apk.maxSdkVersion < Apk.SDK_VERSION_MAX_VALUE) {
+                generator.writeNumberField("maxSdkVersion", apk.maxSdkVersion);
+            }
+            writeStringArrayField("features", apk.features);
+            writeStringArrayField("nativecode", apk.nativecode);
+            if (apk.requestedPermissions != null) {
+                generator.writeArrayFieldStart("uses-permission");
+                for (String permission : apk.requestedPermissions) {
+                    generator.writeStartArray();
+                    generator.writeString(permission);
+                    generator.writeNull();
+                    generator.writeEndArray();
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+
+        /**
+         * Write the field only if there is something in {@code value}.
+         */
+        private void writeStringField(String name, String value) throws IOException {
+            if (!TextUtils.isEmpty(value)) {
+                generator.writeStringField(name, value);
+            }
+        }
+
+        private void writeDateField(String name, Date date) throws IOException {
+            if (date != null) {
+                generator.writeNumberField(name, date.getTime());
+            }
+        }
+
+        private void writeStringArrayField(String name, String[] values) throws IOException {
+            if (values == null || values.length == 0) {
+                return;
+            }
+            generator.writeArrayFieldStart(name);
+            for (String value : values) {
+                generator.writeString(value);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Write and sign both {@code index.jar} and {@code index-v1.jar}, so that
+     * peers can use the faster {@link IndexV1Updater} while older clients
+     * still get {@code index.xml}.  The index data is generated in memory and
+     * then signed directly into the final jar.
+     */
     public void writeIndexJar() throws IOException, XmlPullParserException, LocalRepoKeyStore.InitException {
-        BufferedOutputStream bo = new BufferedOutputStream(new FileOutputStream(xmlIndexJarUnsigned));
-        JarOutputStream jo = new JarOutputStream(bo);
-        JarEntry je = new JarEntry(RepoUpdater.DATA_FILE_NAME);
-        jo.putNextEntry(je);
-        new IndexXmlBuilder().build(context, apps, jo);
-        jo.close();
-        bo.close();
+        ZioEntry xmlEntry = new ZioEntry(RepoUpdater.DATA_FILE_NAME);
+        new IndexXmlBuilder(indexCacheDir).build(context, apps, xmlEntry.getOutputStream());
+        deleteUnusedIcons();
+
+        ZioEntry jsonEntry = new ZioEntry(IndexV1Updater.DATA_FILE_NAME);
+        OutputStream jsonOutput = jsonEntry.getOutputStream();
+        new IndexV1Builder(jsonOutput).build(context, apps);
+        jsonOutput.close();
 
         try {
-            LocalRepoKeyStore.get(context).signZip(xmlIndexJarUnsigned, xmlIndexJar);
+            LocalRepoKeyStore.get(context).signZip(Collections.singletonMap(xmlEntry.getName(), xmlEntry), xmlIndexJar);
+            LocalRepoKeyStore.get(context).signZip(Collections.singletonMap(jsonEntry.getName(), jsonEntry), indexV1Jar);
         } catch (LocalRepoKeyStore.InitException e) {
             throw new IOException("Could not sign index - keystore failed to initialize");
-        } finally {
-            attemptToDelete(xmlIndexJarUnsigned);
         }
 
+        synchronized (indexChangedLock) {
+            indexChangedLock.notifyAll();
+        }
+    }
+
+    /**
+     * Like the cached {@code <application>} blocks, any rendered icon which is
+     * not for an app in the current index is for an app that was removed from
+     * the swap, or for an older install of it.
+     */
+    private void deleteUnusedIcons() {
+        File[] files = iconCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> usedIcons = new HashSet<>();
+        for (App app : apps.values()) {
+            if (app.installedApk != null) {
+                usedIcons.add(App.getIconName(app.packageName, app.installedApk.versionCode));
+            }
+        }
+        for (File file : files) {
+            if (!usedIcons.contains(file.getName())) {
+                FileUtils.deleteQuietly(file);
+            }
+        }
     }
 
 }
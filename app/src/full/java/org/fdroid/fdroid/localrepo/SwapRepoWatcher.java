@@ -0,0 +1,173 @@
+package org.fdroid.fdroid.localrepo;
+
+import android.net.Uri;
+import android.support.annotation.Nullable;
+import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.data.Repo;
+import org.fdroid.fdroid.net.BluetoothDownloader;
+import org.fdroid.fdroid.net.bluetooth.BluetoothClient;
+import org.fdroid.fdroid.net.bluetooth.BluetoothConnection;
+import org.fdroid.fdroid.net.bluetooth.httpish.Request;
+import org.fdroid.fdroid.net.bluetooth.httpish.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Waits for the index of a swap peer to change, so the list of apps to swap can be
+ * updated as soon as the peer adds or removes apps.  The peer holds on to each request
+ * to {@link LocalRepoManager#INDEX_CHANGES_PATH} until its index changes, or until
+ * {@link LocalRepoManager#INDEX_CHANGES_TIMEOUT_MILLIS} has passed, so while nothing
+ * happens this only costs one tiny request a minute.  Before, the whole index was
+ * downloaded and parsed again every few seconds just in case.
+ * <p>
+ * Peers running older versions don't have that path.  For those, this falls back to
+ * checking every {@link #FALLBACK_POLL_MILLIS}, which only downloads the index again
+ * if its {@code ETag} changed.
+ */
+public class SwapRepoWatcher extends Thread {
+
+    private static final String TAG = "SwapRepoWatcher";
+
+    private static final long FALLBACK_POLL_MILLIS = 30000;
+    private static final long RETRY_DELAY_MILLIS = 5000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60000;
+
+    /**
+     * Long enough that the peer always replies first.
+     */
+    private static final int READ_TIMEOUT_MILLIS = (int) LocalRepoManager.INDEX_CHANGES_TIMEOUT_MILLIS + 30000;
+
+    public interface Listener {
+        /**
+         * Called on the watcher's thread when the peer has a different index than the last one seen.
+         */
+        void onIndexChanged();
+    }
+
+    private final String repoAddress;
+    private final Listener listener;
+
+    @Nullable
+    private String indexTag;
+
+    private volatile HttpURLConnection httpConnection;
+    private volatile BluetoothConnection bluetoothConnection;
+
+    public SwapRepoWatcher(Repo repo, Listener listener) {
+        super(TAG);
+        this.repoAddress = repo.address;
+        this.indexTag = repo.lastetag;
+        this.listener = listener;
+    }
+
+    /**
+     * Stop watching, including giving up on any request the peer is holding on to.
+     */
+    public void close() {
+        interrupt();
+        HttpURLConnection http = httpConnection;
+        if (http != null) {
+            http.disconnect();
+        }
+        BluetoothConnection bluetooth = bluetoothConnection;
+        if (bluetooth != null) {
+            bluetooth.closeQuietly();
+        }
+    }
+
+    @Override
+    public void run() {
+        boolean isBluetooth = BluetoothDownloader.isBluetoothUri(Uri.parse(repoAddress));
+        int failures = 0;
+        try {
+            while (!isInterrupted()) {
+                try {
+                    String currentTag = isBluetooth ? waitOverBluetooth() : waitOverHttp();
+                    failures = 0;
+                    if (currentTag == null) {
+                        Thread.sleep(FALLBACK_POLL_MILLIS);
+                        listener.onIndexChanged();
+                    } else if (!currentTag.equals(indexTag)) {
+                        Utils.debugLog(TAG, "Index of " + repoAddress + " changed to " + currentTag);
+                        indexTag = currentTag;
+                        listener.onIndexChanged();
+                    }
+                } catch (IOException e) {
+                    if (isInterrupted()) {
+                        break;
+                    }
+                    long delay = Math.min(RETRY_DELAY_MILLIS << Math.min(failures, 4), MAX_RETRY_DELAY_MILLIS);
+                    failures++;
+                    Utils.debugLog(TAG, "Could not reach " + repoAddress + ", trying again in " + delay + "ms: "
+                            + e.getMessage());
+                    Thread.sleep(delay);
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed while waiting to ask again
+        }
+    }
+
+    /**
+     * @return the tag of the peer's current index, or null if the peer can't tell when it changes
+     */
+    @Nullable
+    private String waitOverHttp() throws IOException {
+        URL url = new URL(repoAddress.replace("/fdroid/repo", LocalRepoManager.INDEX_CHANGES_PATH));
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        httpConnection = connection;
+        try {
+            if (isInterrupted()) {
+                throw new InterruptedIOException();
+            }
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            if (indexTag != null) {
+                connection.setRequestProperty("If-None-Match", indexTag);
+            }
+            return getIndexTag(connection.getResponseCode(), connection.getHeaderField("ETag"));
+        } finally {
+            connection.disconnect();
+            httpConnection = null;
+        }
+    }
+
+    /**
+     * @see #waitOverHttp()
+     */
+    @Nullable
+    private String waitOverBluetooth() throws IOException {
+        String macAddress = Uri.parse(repoAddress).getHost().replace("-", ":");
+        BluetoothConnection connection = new BluetoothClient(macAddress).openConnection();
+        bluetoothConnection = connection;
+        try {
+            if (isInterrupted()) {
+                throw new InterruptedIOException();
+            }
+            Request request = Request.createGET(LocalRepoManager.INDEX_CHANGES_PATH, connection);
+            if (indexTag != null) {
+                request.addHeader("If-None-Match", indexTag);
+            }
+            Response response = request.send();
+            return getIndexTag(response.getStatusCode(), response.toFileDetails().getCacheTag());
+        } finally {
+            connection.closeQuietly();
+            bluetoothConnection = null;
+        }
+    }
+
+    @Nullable
+    private String getIndexTag(int statusCode, @Nullable String etag) throws IOException {
+        switch (statusCode) {
+            case 200:
+            case 304:
+                return etag;
+            case 404:
+                return null;
+            default:
+                throw new IOException(repoAddress + " responded with " + statusCode);
+        }
+    }
+}
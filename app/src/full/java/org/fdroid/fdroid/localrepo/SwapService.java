@@ -31,16 +31,19 @@ import org.fdroid.fdroid.data.App;
 import org.fdroid.fdroid.data.Repo;
 import org.fdroid.fdroid.data.RepoProvider;
 import org.fdroid.fdroid.data.Schema;
+import org.fdroid.fdroid.localrepo.peers.BonjourPeer;
 import org.fdroid.fdroid.localrepo.peers.Peer;
 import org.fdroid.fdroid.localrepo.peers.PeerFinder;
 import org.fdroid.fdroid.localrepo.type.BluetoothSwap;
 import org.fdroid.fdroid.localrepo.type.SwapType;
 import org.fdroid.fdroid.localrepo.type.WifiSwap;
+import org.fdroid.fdroid.net.IndexPrefetcher;
 import org.fdroid.fdroid.net.WifiStateChangeService;
 import org.fdroid.fdroid.views.swap.SwapWorkflowActivity;
 import rx.Observable;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
 import rx.schedulers.Schedulers;
 
 import java.io.IOException;
@@ -56,6 +59,8 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Central service which manages all of the different moving parts of swap which are required
@@ -104,6 +109,9 @@ public class SwapService extends Service {
 
     private Observable<Peer> peerFinder;
 
+    private final Set<String> prefetchedRepoAddresses = Collections.synchronizedSet(new HashSet<String>());
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+
     /**
      * Call {@link Observable#subscribe()} on this in order to be notified of peers
      * which are found. Call {@link Subscription#unsubscribe()} on the resulting
@@ -116,6 +124,14 @@ public class SwapService extends Service {
      * That is, if in the past it already found some peers, then you subscribe
      * to it in the future, the future subscriber will still receive the peers
      * that were found previously.
+     * <p>
+     * The index of each Bonjour peer is fetched in the background as soon as
+     * it is found, so that by the time the user picks one, connecting only
+     * needs a cheap "not modified" check rather than a full index download.
+     * That only goes into {@link IndexPrefetcher}'s cache, a peer does not
+     * become a repo until the user has picked it.
+     * Bluetooth peers are left alone, since each fetch costs an RFCOMM
+     * connection.
      * TODO: What about removing peers that no longer are present?
      */
     public Observable<Peer> scanForPeers() {
@@ -123,12 +139,33 @@ public class SwapService extends Service {
         if (peerFinder == null) {
             peerFinder = PeerFinder.createObservable(getApplicationContext())
                     .subscribeOn(Schedulers.newThread())
+                    .doOnNext(new Action1<Peer>() {
+                        @Override
+                        public void call(Peer peer) {
+                            prefetchIndex(peer);
+                        }
+                    })
                     .observeOn(AndroidSchedulers.mainThread())
                     .distinct();
         }
         return peerFinder;
     }
 
+    private void prefetchIndex(Peer peer) {
+        final String address = peer.getRepoAddress();
+        if (!(peer instanceof BonjourPeer) || TextUtils.isEmpty(peer.getFingerprint())
+                || !prefetchedRepoAddresses.add(address)) {
+            return;
+        }
+        Utils.debugLog(TAG, "Prefetching index from " + address);
+        prefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                IndexPrefetcher.prefetch(getApplicationContext(), address);
+            }
+        });
+    }
+
     // ==========================================================
     //                 Manage the current step
     // ("Step" refers to the current view being shown in the UI)
@@ -550,6 +587,9 @@ public class SwapService extends Service {
         //TODO getBluetoothSwap().stopInBackground();
         getWifiSwap().stopInBackground();
 
+        prefetchExecutor.shutdownNow();
+        IndexPrefetcher.clear(this);
+
         if (timer != null) {
             timer.cancel();
         }
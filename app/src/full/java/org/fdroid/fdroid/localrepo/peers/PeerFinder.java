@@ -4,6 +4,8 @@ import android.content.Context;
 
 import rx.Observable;
 import rx.Subscriber;
+import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.schedulers.Schedulers;
 
 /**
@@ -21,11 +23,28 @@ public abstract class PeerFinder {
         this.subscriber = subscriber;
     }
 
+    /**
+     * Runs the Bluetooth and Bonjour scans concurrently.  Peers seen within the
+     * last {@link RecentPeers#TTL_MILLIS} are emitted first, without waiting
+     * for the scans, and anything the scans find is remembered for next time.
+     */
     public static Observable<Peer> createObservable(final Context context) {
-        return Observable.merge(
+        Observable<Peer> recent = Observable.defer(new Func0<Observable<Peer>>() {
+            @Override
+            public Observable<Peer> call() {
+                return Observable.from(RecentPeers.getFresh());
+            }
+        });
+        Observable<Peer> scanned = Observable.merge(
             BluetoothFinder.createBluetoothObservable(context).subscribeOn(Schedulers.newThread()),
             BonjourFinder.createBonjourObservable(context).subscribeOn(Schedulers.newThread())
-        );
+        ).doOnNext(new Action1<Peer>() {
+            @Override
+            public void call(Peer peer) {
+                RecentPeers.add(peer);
+            }
+        });
+        return Observable.merge(recent, scanned);
     }
 
 }
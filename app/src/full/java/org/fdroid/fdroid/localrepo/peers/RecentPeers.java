@@ -0,0 +1,52 @@
+package org.fdroid.fdroid.localrepo.peers;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the peers which were found recently, so that reopening the swap
+ * screen can show them straight away instead of waiting for the Bluetooth and
+ * Bonjour scans to find them all over again.  Entries expire after
+ * {@link #TTL_MILLIS}, after which a peer only shows up again once a scan
+ * has actually seen it.
+ */
+final class RecentPeers {
+
+    static final long TTL_MILLIS = 5 * 60 * 1000;
+
+    private static final Map<Peer, Long> PEERS = new LinkedHashMap<>();
+
+    private RecentPeers() {
+    }
+
+    /**
+     * Record that a scan has just seen {@code peer}.
+     */
+    static synchronized void add(Peer peer) {
+        PEERS.remove(peer);
+        PEERS.put(peer, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * @return the peers seen within the last {@link #TTL_MILLIS}, oldest first.
+     */
+    static synchronized List<Peer> getFresh() {
+        long now = SystemClock.elapsedRealtime();
+        List<Peer> fresh = new ArrayList<>(PEERS.size());
+        Iterator<Map.Entry<Peer, Long>> iterator = PEERS.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Peer, Long> entry = iterator.next();
+            if (now - entry.getValue() > TTL_MILLIS) {
+                iterator.remove();
+            } else {
+                fresh.add(entry.getKey());
+            }
+        }
+        return fresh;
+    }
+}
@@ -9,6 +9,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.localrepo.LocalRepoManager;
 import org.fdroid.fdroid.localrepo.SwapService;
 import org.fdroid.fdroid.net.bluetooth.BluetoothServer;
 
@@ -92,7 +93,7 @@ public final class BluetoothSwap extends SwapType {
         }*/
 
         if (server == null) {
-            server = new BluetoothServer(this, context.getFilesDir());
+            server = new BluetoothServer(this, context.getFilesDir(), LocalRepoManager.get(context));
         }
 
         sendBroadcast(SwapService.EXTRA_STARTING);
@@ -39,6 +39,7 @@ import fi.iki.elonen.NanoHTTPD;
 import fi.iki.elonen.NanoHTTPD.Response.IStatus;
 import org.fdroid.fdroid.BuildConfig;
 import org.fdroid.fdroid.localrepo.LocalRepoKeyStore;
+import org.fdroid.fdroid.localrepo.LocalRepoManager;
 import org.fdroid.fdroid.views.swap.SwapWorkflowActivity;
 
 import javax.net.ssl.SSLServerSocketFactory;
@@ -340,6 +341,10 @@ public class LocalHTTPD extends NanoHTTPD {
             return handlePost(session);
         }
 
+        if (LocalRepoManager.INDEX_CHANGES_PATH.equals(uri)) {
+            return waitForIndexChange(header.get("if-none-match"));
+        }
+
         for (File homeDir : this.rootDirs) {
             // Make sure we won't die of an exception later
             if (!homeDir.isDirectory()) {
@@ -363,6 +368,31 @@ public class LocalHTTPD extends NanoHTTPD {
         return newFixedLengthResponse("");
     }
 
+    /**
+     * Reply straight away if the index is not the one tagged {@code indexTag},
+     * otherwise hold the request until it changes, or reply {@code 304 Not Modified}
+     * once {@link LocalRepoManager#INDEX_CHANGES_TIMEOUT_MILLIS} has passed.
+     * Either way, the {@code ETag} header has the tag of the current index.
+     */
+    private Response waitForIndexChange(String indexTag) {
+        LocalRepoManager manager = LocalRepoManager.get(context);
+        String currentTag;
+        try {
+            currentTag = manager.waitForIndexChange(indexTag, LocalRepoManager.INDEX_CHANGES_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            currentTag = manager.getIndexTag();
+        }
+        Response response;
+        if (currentTag.equals(indexTag)) {
+            response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, MIME_PLAINTEXT, "");
+        } else {
+            response = newFixedLengthResponse(Response.Status.OK, MIME_PLAINTEXT, "");
+        }
+        response.addHeader("ETag", currentTag);
+        return response;
+    }
+
     /**
      * Serves file from homeDir and its' subdirectories (only). Uses only URI,
      * ignores all headers and HTTP parameters.
@@ -1,14 +1,23 @@
 package org.fdroid.fdroid.net;
 
+import android.annotation.TargetApi;
 import android.app.IntentService;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.net.ConnectivityManager;
 import android.net.DhcpInfo;
+import android.net.LinkAddress;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
 import android.net.NetworkInfo;
+import android.net.NetworkRequest;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.v4.content.LocalBroadcastManager;
 import android.text.TextUtils;
@@ -23,6 +32,7 @@ import org.fdroid.fdroid.data.Repo;
 import org.fdroid.fdroid.localrepo.LocalRepoKeyStore;
 import org.fdroid.fdroid.localrepo.LocalRepoManager;
 
+import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InterfaceAddress;
@@ -39,11 +49,18 @@ import java.util.Locale;
  * via {@link  org.fdroid.fdroid.receiver.WifiStateChangeReceiver}, in
  * which case an instance of {@link NetworkInfo} is included.
  * <p>
- * The work is done in a {@link Thread} so that new incoming {@code Intents}
- * are not blocked by processing. A new {@code Intent} immediately nullifies
- * the current state because it means that something about the wifi has
- * changed.  Having the {@code Thread} also makes it easy to kill work
- * that is in progress.
+ * This does not wait around for an IP address to show up.  On
+ * {@link Build.VERSION_CODES#LOLLIPOP Android 5.0} and newer, a
+ * {@link ConnectivityManager.NetworkCallback} starts this again whenever the
+ * addresses of the WiFi network change, and those {@link LinkProperties}
+ * already include the IP address and the netmask.  Older versions, and
+ * hotspots, are checked again a few times, further and further apart, if
+ * no IP address was found yet.
+ * <p>
+ * The results are kept in {@link FDroidApp}, where the swap webserver,
+ * Bonjour and {@link HttpDownloader#isSwapUrl(String, int)} read them.
+ * They are only replaced once the new values are known, and
+ * {@link #BROADCAST} is only sent when something actually changed.
  * <p>
  * This also schedules an update to encourage updates happening on
  * unmetered networks like typical WiFi rather than networks that can
@@ -51,8 +68,8 @@ import java.util.Locale;
  * internet connection is in {@link org.fdroid.fdroid.UpdateService#onHandleWork(Intent)}
  * <p>
  * Some devices send multiple copies of given events, like a Moto G often
- * sends three {@code CONNECTED} events.  So they have to be debounced to
- * keep the {@link #BROADCAST} useful.
+ * sends three {@code CONNECTED} events.  Since nothing changes between
+ * them, only the first one results in a {@link #BROADCAST}.
  */
 @SuppressWarnings("LineLength")
 public class WifiStateChangeService extends IntentService {
@@ -60,15 +77,36 @@ public class WifiStateChangeService extends IntentService {
 
     public static final String BROADCAST = "org.fdroid.fdroid.action.WIFI_CHANGE";
 
-    private WifiManager wifiManager;
-    private static WifiInfoThread wifiInfoThread;
-    private static int previousWifiState = Integer.MIN_VALUE;
+    private static final String EXTRA_RETRY = "org.fdroid.fdroid.net.extra.RETRY";
+
+    /**
+     * Checking again after 1, 2, 4... seconds, this gives up after about two minutes.
+     */
+    private static final int MAX_RETRIES = 7;
+
+    private static final Handler RETRY_HANDLER = new Handler(Looper.getMainLooper());
+    private static volatile int retryCount;
+
+    private static boolean networkCallbackRegistered;
+
+    /**
+     * The latest addresses of the WiFi network, as reported by the system.
+     * Always null before {@link Build.VERSION_CODES#LOLLIPOP Android 5.0}.
+     */
+    @Nullable
+    private static volatile LinkProperties wifiLinkProperties;
+
+    private String ipAddress;
+    private SubnetUtils.SubnetInfo subnetInfo;
 
     public WifiStateChangeService() {
         super("WifiStateChangeService");
     }
 
     public static void start(Context context, @Nullable Intent intent) {
+        if (Build.VERSION.SDK_INT >= 21) {
+            registerNetworkCallback(context.getApplicationContext());
+        }
         if (intent == null) {
             intent = new Intent(WifiManager.NETWORK_STATE_CHANGED_ACTION);
         }
@@ -76,6 +114,35 @@ public class WifiStateChangeService extends IntentService {
         context.startService(intent);
     }
 
+    @TargetApi(21)
+    private static synchronized void registerNetworkCallback(final Context context) {
+        if (networkCallbackRegistered) {
+            return;
+        }
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return;
+        }
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addTransportType(NetworkCapabilities.TRANSPORT_WIFI)
+                .addTransportType(NetworkCapabilities.TRANSPORT_ETHERNET)
+                .build();
+        cm.registerNetworkCallback(request, new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onLinkPropertiesChanged(Network network, LinkProperties linkProperties) {
+                wifiLinkProperties = linkProperties;
+                start(context, null);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                wifiLinkProperties = null;
+                start(context, null);
+            }
+        });
+        networkCallbackRegistered = true;
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
         android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_LOWEST);
@@ -85,20 +152,20 @@ public class WifiStateChangeService extends IntentService {
         }
         Utils.debugLog(TAG, "WiFi change service started.");
         NetworkInfo ni = intent.getParcelableExtra(WifiManager.EXTRA_NETWORK_INFO);
-        wifiManager = (WifiManager) getApplicationContext().getSystemService(WIFI_SERVICE);
+        WifiManager wifiManager = (WifiManager) getApplicationContext().getSystemService(WIFI_SERVICE);
         int wifiState = wifiManager.getWifiState();
         if (ni == null || ni.isConnected()) {
             Utils.debugLog(TAG, "ni == " + ni + "  wifiState == " + printWifiState(wifiState));
-            if (previousWifiState != wifiState &&
-                    (wifiState == WifiManager.WIFI_STATE_ENABLED
-                            || wifiState == WifiManager.WIFI_STATE_DISABLING  // might be switching to hotspot
-                            || wifiState == WifiManager.WIFI_STATE_DISABLED   // might be hotspot
-                            || wifiState == WifiManager.WIFI_STATE_UNKNOWN)) { // might be hotspot
-                if (wifiInfoThread != null) {
-                    wifiInfoThread.interrupt();
+            if (wifiState == WifiManager.WIFI_STATE_ENABLED
+                    || wifiState == WifiManager.WIFI_STATE_DISABLING  // might be switching to hotspot
+                    || wifiState == WifiManager.WIFI_STATE_DISABLED   // might be hotspot
+                    || wifiState == WifiManager.WIFI_STATE_UNKNOWN) { // might be hotspot
+                // anything else that happened makes a pending retry pointless
+                RETRY_HANDLER.removeCallbacksAndMessages(null);
+                if (!intent.getBooleanExtra(EXTRA_RETRY, false)) {
+                    retryCount = 0;
                 }
-                wifiInfoThread = new WifiInfoThread();
-                wifiInfoThread.start();
+                updateWifiInfo(wifiManager, wifiState);
             }
 
             if (Build.VERSION.SDK_INT < 21 && wifiState == WifiManager.WIFI_STATE_ENABLED) {
@@ -107,128 +174,148 @@ public class WifiStateChangeService extends IntentService {
         }
     }
 
-    public class WifiInfoThread extends Thread {
-        private static final String TAG = "WifiInfoThread";
-
-        @Override
-        public void run() {
-            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_LOWEST);
-            try {
-                FDroidApp.initWifiSettings();
-                Utils.debugLog(TAG, "Checking wifi state (in background thread).");
-                WifiInfo wifiInfo = null;
-
-                int wifiState = wifiManager.getWifiState();
-                int retryCount = 0;
-                while (FDroidApp.ipAddressString == null) {
-                    if (isInterrupted()) { // can be canceled by a change via WifiStateChangeReceiver
-                        return;
-                    }
-                    if (wifiState == WifiManager.WIFI_STATE_ENABLED) {
-                        wifiInfo = wifiManager.getConnectionInfo();
-                        FDroidApp.ipAddressString = formatIpAddress(wifiInfo.getIpAddress());
-                        DhcpInfo dhcpInfo = wifiManager.getDhcpInfo();
-                        if (dhcpInfo != null) {
-                            String netmask = formatIpAddress(dhcpInfo.netmask);
-                            if (!TextUtils.isEmpty(FDroidApp.ipAddressString) && netmask != null) {
-                                try {
-                                    FDroidApp.subnetInfo = new SubnetUtils(FDroidApp.ipAddressString, netmask).getInfo();
-                                } catch (IllegalArgumentException e) {
-                                    // catch mystery: "java.lang.IllegalArgumentException: Could not parse [null/24]"
-                                    e.printStackTrace();
-                                }
-                            }
-                        }
-                        if (FDroidApp.ipAddressString == null
-                                || FDroidApp.subnetInfo == FDroidApp.UNSET_SUBNET_INFO) {
-                            setIpInfoFromNetworkInterface();
-                        }
-                    } else if (wifiState == WifiManager.WIFI_STATE_DISABLED
-                            || wifiState == WifiManager.WIFI_STATE_DISABLING) {
-                        // try once to see if its a hotspot
-                        setIpInfoFromNetworkInterface();
-                        if (FDroidApp.ipAddressString == null) {
-                            return;
+    private void updateWifiInfo(WifiManager wifiManager, int wifiState) {
+        Utils.debugLog(TAG, "Checking wifi state.");
+        ipAddress = null;
+        subnetInfo = FDroidApp.UNSET_SUBNET_INFO;
+        WifiInfo wifiInfo = null;
+
+        if (Build.VERSION.SDK_INT >= 21) {
+            setIpInfoFromLinkProperties(wifiLinkProperties);
+        }
+        if (wifiState == WifiManager.WIFI_STATE_ENABLED) {
+            wifiInfo = wifiManager.getConnectionInfo();
+            if (ipAddress == null) {
+                ipAddress = formatIpAddress(wifiInfo.getIpAddress());
+                DhcpInfo dhcpInfo = wifiManager.getDhcpInfo();
+                if (dhcpInfo != null) {
+                    String netmask = formatIpAddress(dhcpInfo.netmask);
+                    if (!TextUtils.isEmpty(ipAddress) && netmask != null) {
+                        try {
+                            subnetInfo = new SubnetUtils(ipAddress, netmask).getInfo();
+                        } catch (IllegalArgumentException e) {
+                            // catch mystery: "java.lang.IllegalArgumentException: Could not parse [null/24]"
+                            e.printStackTrace();
                         }
-                    } else { // a hotspot can be active during WIFI_STATE_UNKNOWN
-                        setIpInfoFromNetworkInterface();
                     }
+                }
+            }
+        }
+        if (ipAddress == null || subnetInfo == FDroidApp.UNSET_SUBNET_INFO) {
+            // a hotspot can be active while WiFi is disabled or in WIFI_STATE_UNKNOWN
+            setIpInfoFromNetworkInterface();
+        }
 
-                    if (retryCount > 120) {
-                        return;
+        if (ipAddress == null) {
+            FDroidApp.ipAddressString = null;
+            FDroidApp.subnetInfo = FDroidApp.UNSET_SUBNET_INFO;
+            FDroidApp.ssid = "";
+            FDroidApp.bssid = "";
+            FDroidApp.repo = new Repo();
+            if (wifiState != WifiManager.WIFI_STATE_DISABLED && wifiState != WifiManager.WIFI_STATE_DISABLING
+                    && retryCount < MAX_RETRIES) {
+                long delay = 1000L << retryCount;
+                retryCount++;
+                Utils.debugLog(TAG, "waiting for an IP address, checking again in " + delay + "ms");
+                final Context context = getApplicationContext();
+                RETRY_HANDLER.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        Intent retry = new Intent(WifiManager.NETWORK_STATE_CHANGED_ACTION);
+                        retry.putExtra(EXTRA_RETRY, true);
+                        start(context, retry);
                     }
-                    retryCount++;
+                }, delay);
+            }
+            return;
+        }
 
-                    if (FDroidApp.ipAddressString == null) {
-                        Thread.sleep(1000);
-                        Utils.debugLog(TAG, "waiting for an IP address...");
-                    }
-                }
-                if (isInterrupted()) { // can be canceled by a change via WifiStateChangeReceiver
-                    return;
-                }
+        String ssid = "";
+        String bssid = "";
+        if (wifiInfo != null) {
+            if (wifiInfo.getSSID() != null) {
+                ssid = wifiInfo.getSSID().replaceAll("^\"(.*)\"$", "$1");
+            }
+            if (wifiInfo.getBSSID() != null) {
+                bssid = wifiInfo.getBSSID();
+            }
+            Utils.debugLog(TAG, "Have wifi info, connected to " + ssid);
+        }
 
-                if (wifiInfo != null) {
-                    String ssid = wifiInfo.getSSID();
-                    Utils.debugLog(TAG, "Have wifi info, connected to " + ssid);
-                    if (ssid != null) {
-                        FDroidApp.ssid = ssid.replaceAll("^\"(.*)\"$", "$1");
-                    }
-                    String bssid = wifiInfo.getBSSID();
-                    if (bssid != null) {
-                        FDroidApp.bssid = bssid;
-                    }
-                }
+        String scheme;
+        if (Preferences.get().isLocalRepoHttpsEnabled()) {
+            scheme = "https";
+        } else {
+            scheme = "http";
+        }
+        Repo repo = new Repo();
+        repo.name = Preferences.get().getLocalRepoName();
+        repo.address = String.format(Locale.ENGLISH, "%s://%s:%d/fdroid/repo",
+                scheme, ipAddress, FDroidApp.port);
 
-                String scheme;
-                if (Preferences.get().isLocalRepoHttpsEnabled()) {
-                    scheme = "https";
-                } else {
-                    scheme = "http";
-                }
-                Repo repo = new Repo();
-                repo.name = Preferences.get().getLocalRepoName();
-                repo.address = String.format(Locale.ENGLISH, "%s://%s:%d/fdroid/repo",
-                        scheme, FDroidApp.ipAddressString, FDroidApp.port);
+        if (repo.address.equals(FDroidApp.repo.address) && TextUtils.equals(repo.name, FDroidApp.repo.name)
+                && subnetInfo.getCidrSignature().equals(FDroidApp.subnetInfo.getCidrSignature())
+                && ssid.equals(FDroidApp.ssid) && bssid.equals(FDroidApp.bssid)) {
+            Utils.debugLog(TAG, "Nothing changed for the local repo at " + repo.address);
+            return;
+        }
 
-                if (isInterrupted()) { // can be canceled by a change via WifiStateChangeReceiver
-                    return;
-                }
+        FDroidApp.ipAddressString = ipAddress;
+        FDroidApp.subnetInfo = subnetInfo;
+        FDroidApp.ssid = ssid;
+        FDroidApp.bssid = bssid;
 
-                Context context = WifiStateChangeService.this.getApplicationContext();
-                LocalRepoManager lrm = LocalRepoManager.get(context);
-                lrm.writeIndexPage(Utils.getSharingUri(FDroidApp.repo).toString());
+        try {
+            // the fingerprint for the local repo's signing key
+            Context context = getApplicationContext();
+            LocalRepoKeyStore localRepoKeyStore = LocalRepoKeyStore.get(context);
+            Certificate localCert = localRepoKeyStore.getCertificate();
+            repo.fingerprint = Utils.calcFingerprint(localCert);
 
-                if (isInterrupted()) { // can be canceled by a change via WifiStateChangeReceiver
-                    return;
-                }
+            FDroidApp.repo = repo;
 
-                // the fingerprint for the local repo's signing key
-                LocalRepoKeyStore localRepoKeyStore = LocalRepoKeyStore.get(context);
-                Certificate localCert = localRepoKeyStore.getCertificate();
-                repo.fingerprint = Utils.calcFingerprint(localCert);
-
-                FDroidApp.repo = repo;
-
-                /*
-                 * Once the IP address is known we need to generate a self
-                 * signed certificate to use for HTTPS that has a CN field set
-                 * to the ipAddressString. This must be run in the background
-                 * because if this is the first time the singleton is run, it
-                 * can take a while to instantiate.
-                 */
-                if (Preferences.get().isLocalRepoHttpsEnabled()) {
-                    localRepoKeyStore.setupHTTPSCertificate();
-                }
+            LocalRepoManager lrm = LocalRepoManager.get(context);
+            lrm.writeIndexPage(Utils.getSharingUri(FDroidApp.repo).toString());
 
-            } catch (LocalRepoKeyStore.InitException e) {
-                Log.e(TAG, "Unable to configure a fingerprint or HTTPS for the local repo", e);
-            } catch (InterruptedException e) {
-                Utils.debugLog(TAG, "interrupted");
-                return;
+            /*
+             * Once the IP address is known we need to generate a self
+             * signed certificate to use for HTTPS that has a CN field set
+             * to the ipAddressString. This can take a while if this is the
+             * first time the keystore is used.
+             */
+            if (Preferences.get().isLocalRepoHttpsEnabled()) {
+                localRepoKeyStore.setupHTTPSCertificate();
+            }
+
+        } catch (LocalRepoKeyStore.InitException e) {
+            Log.e(TAG, "Unable to configure a fingerprint or HTTPS for the local repo", e);
+        }
+        Intent intent = new Intent(BROADCAST);
+        LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
+    }
+
+    /**
+     * Use the first IPv4 address of the WiFi network.  Unlike the other
+     * ways, this includes the correct netmask on all Android versions.
+     */
+    @TargetApi(21)
+    private void setIpInfoFromLinkProperties(@Nullable LinkProperties linkProperties) {
+        if (linkProperties == null) {
+            return;
+        }
+        for (LinkAddress linkAddress : linkProperties.getLinkAddresses()) {
+            InetAddress address = linkAddress.getAddress();
+            if (address instanceof Inet4Address && !address.isLoopbackAddress()) {
+                try {
+                    String cidr = String.format(Locale.ENGLISH, "%s/%d",
+                            address.getHostAddress(), linkAddress.getPrefixLength());
+                    subnetInfo = new SubnetUtils(cidr).getInfo();
+                    ipAddress = address.getHostAddress();
+                    return;
+                } catch (IllegalArgumentException e) {
+                    Log.i(TAG, e.getLocalizedMessage());
+                }
             }
-            Intent intent = new Intent(BROADCAST);
-            LocalBroadcastManager.getInstance(WifiStateChangeService.this).sendBroadcast(intent);
         }
     }
 
@@ -259,7 +346,7 @@ public class WifiStateChangeService extends IntentService {
                     if (netIf.getDisplayName().contains("wlan0")
                             || netIf.getDisplayName().contains("eth0")
                             || netIf.getDisplayName().contains("ap0")) {
-                        FDroidApp.ipAddressString = inetAddress.getHostAddress();
+                        ipAddress = inetAddress.getHostAddress();
                         for (InterfaceAddress address : netIf.getInterfaceAddresses()) {
                             short networkPrefixLength = address.getNetworkPrefixLength();
                             if (networkPrefixLength > 32) {
@@ -269,8 +356,8 @@ public class WifiStateChangeService extends IntentService {
                             }
                             try {
                                 String cidr = String.format(Locale.ENGLISH, "%s/%d",
-                                        FDroidApp.ipAddressString, networkPrefixLength);
-                                FDroidApp.subnetInfo = new SubnetUtils(cidr).getInfo();
+                                        ipAddress, networkPrefixLength);
+                                subnetInfo = new SubnetUtils(cidr).getInfo();
                                 break;
                             } catch (IllegalArgumentException e) {
                                 if (BuildConfig.DEBUG) {
@@ -7,6 +7,7 @@ import android.util.Log;
 import android.webkit.MimeTypeMap;
 
 import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.localrepo.LocalRepoManager;
 import org.fdroid.fdroid.localrepo.type.BluetoothSwap;
 import org.fdroid.fdroid.net.bluetooth.httpish.Request;
 import org.fdroid.fdroid.net.bluetooth.httpish.Response;
@@ -35,11 +36,13 @@ public class BluetoothServer extends Thread {
     private final List<ClientConnection> clients = new ArrayList<>();
 
     private final File webRoot;
+    private final LocalRepoManager localRepo;
     private final BluetoothSwap swap;
     private boolean isRunning;
 
-    public BluetoothServer(BluetoothSwap swap, File webRoot) {
+    public BluetoothServer(BluetoothSwap swap, File webRoot, LocalRepoManager localRepo) {
         this.webRoot = webRoot;
+        this.localRepo = localRepo;
         this.swap = swap;
 
         start();
@@ -95,7 +98,7 @@ public class BluetoothServer extends Thread {
                         Utils.debugLog(TAG, "Server stopped after socket accepted from client, but before initiating connection.");
                         break;
                     }
-                    ClientConnection client = new ClientConnection(clientSocket, webRoot);
+                    ClientConnection client = new ClientConnection(clientSocket, webRoot, localRepo);
                     client.start();
                     clients.add(client);
                 }
@@ -110,10 +113,12 @@ public class BluetoothServer extends Thread {
 
         private final BluetoothSocket socket;
         private final File webRoot;
+        private final LocalRepoManager localRepo;
 
-        ClientConnection(BluetoothSocket socket, File webRoot) {
+        ClientConnection(BluetoothSocket socket, File webRoot, LocalRepoManager localRepo) {
             this.socket = socket;
             this.webRoot = webRoot;
+            this.localRepo = localRepo;
         }
 
         @Override
@@ -135,7 +140,16 @@ public class BluetoothServer extends Thread {
                 try {
                     Utils.debugLog(TAG, "Listening for new Bluetooth request from client.");
                     Request incomingRequest = Request.listenForRequest(connection);
-                    handleRequest(incomingRequest).send(connection);
+                    if (incomingRequest == null) {
+                        continue;
+                    }
+                    if (Request.Methods.MGET.equals(incomingRequest.getMethod())) {
+                        handleBatchRequest(incomingRequest, connection);
+                    } else if (isIndexChangesRequest(incomingRequest)) {
+                        waitForIndexChange(incomingRequest).send(connection);
+                    } else {
+                        handleRequest(incomingRequest).send(connection);
+                    }
                 } catch (IOException e) {
                     Log.e(TAG, "Error receiving incoming connection over bluetooth", e);
                     break;
@@ -160,22 +174,23 @@ public class BluetoothServer extends Thread {
                 int statusCode = 404;
                 int totalSize = -1;
 
+                HashMap<String, String> headers = new HashMap<>();
+                Response resp = respond(headers, "/" + request.getPath());
+                statusCode = resp.getStatusCode();
+                totalSize = resp.getFileSize();
+
                 if (request.getMethod().equals(Request.Methods.HEAD)) {
+                    // Only the details are sent, which lets the client skip files it already has
+                    Utils.closeQuietly(resp.toContentStream());
                     builder = new Response.Builder();
                 } else {
-                    HashMap<String, String> headers = new HashMap<>();
-                    Response resp = respond(headers, "/" + request.getPath());
-
                     builder = new Response.Builder(resp.toContentStream());
-                    statusCode = resp.getStatusCode();
-                    totalSize = resp.getFileSize();
                 }
 
-                // TODO: At this stage, will need to download the file to get this info.
-                // However, should be able to make totalDownloadSize and getCacheTag work without downloading.
                 return builder
                         .setStatusCode(statusCode)
                         .setFileSize(totalSize)
+                        .setETag(resp.toFileDetails().getCacheTag())
                         .build();
 
             } catch (Exception e) {
@@ -196,6 +211,79 @@ public class BluetoothServer extends Thread {
 
         }
 
+        private static boolean isIndexChangesRequest(Request request) {
+            return LocalRepoManager.INDEX_CHANGES_PATH.equals(request.getPath().replaceFirst("^/*", "/"));
+        }
+
+        /**
+         * The Bluetooth equivalent of {@link LocalRepoManager#INDEX_CHANGES_PATH} on the
+         * webserver: reply once the index is not the one tagged {@code If-None-Match}, or
+         * with {@code 304} after {@link LocalRepoManager#INDEX_CHANGES_TIMEOUT_MILLIS}.
+         */
+        private Response waitForIndexChange(Request request) {
+            String indexTag = request.getHeaderValue("if-none-match");
+            String currentTag;
+            try {
+                currentTag = localRepo.waitForIndexChange(indexTag, LocalRepoManager.INDEX_CHANGES_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                interrupt();
+                currentTag = localRepo.getIndexTag();
+            }
+            return new Response.Builder()
+                    .setStatusCode(currentTag.equals(indexTag) ? 304 : 200)
+                    .setETag(currentTag)
+                    .build();
+        }
+
+        /**
+         * Stream every file of a {@link Request.Methods#MGET} request back-to-back
+         * over the one connection.  Each file gets its own response, always with
+         * an accurate {@code Content-Length} (zero for errors, which have no content)
+         * so the client can find where the next one starts.  Only the first file
+         * honors the {@code Range} header, that is how the client resumes a batch.
+         */
+        private void handleBatchRequest(Request request, BluetoothConnection connection) throws IOException {
+            List<String> paths = request.getPaths();
+            Utils.debugLog(TAG, "Received Bluetooth batch request for " + paths.size() + " files.");
+
+            for (int i = 0; i < paths.size(); i++) {
+                String path = paths.get(i);
+                Map<String, String> headers = new HashMap<>();
+                String range = request.getHeaderValue("range");
+                if (i == 0 && range != null) {
+                    headers.put("range", range);
+                }
+
+                InputStream content = null;
+                Response.Builder builder;
+                int statusCode;
+                try {
+                    Response resp = respond(headers, "/" + path);
+                    statusCode = resp.getStatusCode();
+                    content = resp.toContentStream();
+                    if (statusCode == 200 || statusCode == 206) {
+                        builder = new Response.Builder(content)
+                                .setFileSize(resp.getFileSize())
+                                .setETag(resp.toFileDetails().getCacheTag());
+                    } else {
+                        builder = new Response.Builder().setFileSize(0);
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "error processing " + path + " in batch request; sending 500 response", e);
+                    statusCode = 500;
+                    builder = new Response.Builder().setFileSize(0);
+                }
+
+                try {
+                    builder.setStatusCode(statusCode)
+                            .build()
+                            .send(connection);
+                } finally {
+                    Utils.closeQuietly(content);
+                }
+            }
+        }
+
         private Response respond(Map<String, String> headers, String uri) {
             // Remove URL arguments
             uri = uri.trim().replace(File.separatorChar, '/');
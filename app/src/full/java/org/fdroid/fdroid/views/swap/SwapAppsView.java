@@ -1,17 +1,13 @@
 package org.fdroid.fdroid.views.swap;
 
 import android.annotation.TargetApi;
-import android.app.Activity;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.support.annotation.ColorRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -20,6 +16,7 @@ import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.view.MenuItemCompat;
+import android.support.v4.view.ViewCompat;
 import android.support.v4.widget.CursorAdapter;
 import android.support.v7.widget.SearchView;
 import android.text.TextUtils;
@@ -37,7 +34,6 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import com.nostra13.universalimageloader.core.ImageLoader;
-import org.fdroid.fdroid.BuildConfig;
 import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.UpdateService;
 import org.fdroid.fdroid.Utils;
@@ -47,13 +43,12 @@ import org.fdroid.fdroid.data.App;
 import org.fdroid.fdroid.data.AppProvider;
 import org.fdroid.fdroid.data.Repo;
 import org.fdroid.fdroid.data.Schema.AppMetadataTable;
+import org.fdroid.fdroid.localrepo.SwapRepoWatcher;
 import org.fdroid.fdroid.localrepo.SwapService;
 import org.fdroid.fdroid.net.Downloader;
 import org.fdroid.fdroid.net.DownloaderService;
 
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 public class SwapAppsView extends ListView implements
         SwapWorkflowActivity.InnerView,
@@ -82,9 +77,16 @@ public class SwapAppsView extends ListView implements
     }
 
     private static final int LOADER_SWAPABLE_APPS = 759283741;
+
+    /**
+     * Changes to apps come in bursts, e.g. while the index is being saved, so only
+     * reload the list at most this often.
+     */
+    private static final long LOADER_UPDATE_THROTTLE_MS = 500;
     private static final String TAG = "SwapAppsView";
 
     private Repo repo;
+    private SwapRepoWatcher repoWatcher;
     private AppListAdapter adapter;
     private String currentFilterString;
 
@@ -109,9 +111,34 @@ public class SwapAppsView extends ListView implements
         getActivity().getSupportLoaderManager().initLoader(LOADER_SWAPABLE_APPS, null, this);
 
         LocalBroadcastManager.getInstance(getActivity()).registerReceiver(
-                pollForUpdatesReceiver, new IntentFilter(UpdateService.LOCAL_ACTION_STATUS));
+                swapRepoUpdatedReceiver, new IntentFilter(UpdateService.LOCAL_ACTION_STATUS));
+    }
 
-        schedulePollForUpdates();
+    /**
+     * Only watch the peer for changes while this view is shown, see {@link #onDetachedFromWindow()}.
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        repoWatcher = new SwapRepoWatcher(repo, new SwapRepoWatcher.Listener() {
+            @Override
+            public void onIndexChanged() {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // the change might only arrive after this view was taken down
+                        SwapWorkflowActivity activity = getActivity();
+                        if (!ViewCompat.isAttachedToWindow(SwapAppsView.this) || activity.isFinishing()) {
+                            return;
+                        }
+                        Utils.debugLog(TAG, "Swap repo changed, updating it.");
+                        activity.getService().refreshSwap();
+                    }
+                });
+            }
+        });
+        repoWatcher.start();
     }
 
     /**
@@ -122,30 +149,11 @@ public class SwapAppsView extends ListView implements
     public void onDetachedFromWindow() {
         super.onDetachedFromWindow();
 
-        LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(pollForUpdatesReceiver);
-    }
-
-    private void pollForUpdates() {
-        if (adapter.getCount() > 1 ||
-                (adapter.getCount() == 1 && !new App((Cursor) adapter.getItem(0)).packageName.equals(BuildConfig.APPLICATION_ID))) { // NOCHECKSTYLE LineLength
-            Utils.debugLog(TAG, "Not polling for new apps from swap repo, because we already have more than one.");
-            return;
+        LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(swapRepoUpdatedReceiver);
+        if (repoWatcher != null) {
+            repoWatcher.close();
+            repoWatcher = null;
         }
-
-        Utils.debugLog(TAG, "Polling swap repo to see if it has any updates.");
-        getActivity().getService().refreshSwap();
-    }
-
-    private void schedulePollForUpdates() {
-        Utils.debugLog(TAG, "Scheduling poll for updated swap repo in 5 seconds.");
-        new Timer().schedule(new TimerTask() {
-            @Override
-            public void run() {
-                Looper.prepare();
-                pollForUpdates();
-                Looper.loop();
-            }
-        }, 5000);
     }
 
     @Override
@@ -189,8 +197,10 @@ public class SwapAppsView extends ListView implements
                 ? AppProvider.getRepoUri(repo)
                 : AppProvider.getSearchUri(repo, currentFilterString);
 
-        return new CursorLoader(getActivity(), uri, AppMetadataTable.Cols.ALL,
+        CursorLoader loader = new CursorLoader(getActivity(), uri, AppMetadataTable.Cols.ALL,
                 null, null, AppMetadataTable.Cols.NAME);
+        loader.setUpdateThrottle(LOADER_UPDATE_THROTTLE_MS);
+        return loader;
     }
 
     @Override
@@ -284,28 +294,23 @@ public class SwapAppsView extends ListView implements
                 }
             };
 
-            private final ContentObserver appObserver = new ContentObserver(new Handler()) {
-                @Override
-                public void onChange(boolean selfChange) {
-                    Activity activity = getActivity();
-                    if (activity != null) {
-                        app = AppProvider.Helper.findSpecificApp(
-                                getActivity().getContentResolver(),
-                                app.packageName,
-                                app.repoId,
-                                AppMetadataTable.Cols.ALL);
-                        resetView();
-                    }
-                }
-            };
-
             ViewHolder() {
                 localBroadcastManager = LocalBroadcastManager.getInstance(getContext());
             }
 
+            /**
+             * Rows are not watched for changes individually.  The loader is the only thing
+             * watching the apps, it reads all of them again in the background when they
+             * change, and then the list binds the new data to the rows that are visible.
+             * Those rows only get redrawn if something they show actually changed.
+             */
             public void setApp(@NonNull App app) {
                 if (this.app == null || !this.app.packageName.equals(app.packageName)) {
                     this.app = app;
+                    this.apk = null;
+
+                    // This view is being reused for a different app, so stop showing the old one's downloads
+                    localBroadcastManager.unregisterReceiver(downloadReceiver);
 
                     List<Apk> availableApks = ApkProvider.Helper.findAppVersionsByRepo(getActivity(), app, repo);
                     if (availableApks.size() > 0) {
@@ -314,25 +319,31 @@ public class SwapAppsView extends ListView implements
                     }
 
                     if (apk != null) {
-                        String urlString = apk.getUrl();
-
-                        // TODO unregister receivers? or will they just die with this instance
-                        IntentFilter downloadFilter = DownloaderService.getIntentFilter(urlString);
+                        IntentFilter downloadFilter = DownloaderService.getIntentFilter(apk.getUrl());
                         localBroadcastManager.registerReceiver(downloadReceiver, downloadFilter);
                     }
-
-                    // NOTE: Instead of continually unregistering and re-registering the observer
-                    // (with a different URI), this could equally be done by only having one
-                    // registration in the constructor, and using the ContentObserver.onChange(boolean, URI)
-                    // method and inspecting the URI to see if it matches. However, this was only
-                    // implemented on API-16, so leaving like this for now.
-                    getActivity().getContentResolver().unregisterContentObserver(appObserver);
-                    getActivity().getContentResolver().registerContentObserver(
-                            AppProvider.getSpecificAppUri(this.app.packageName, this.app.repoId), true, appObserver);
+                } else {
+                    boolean changed = !isShownTheSame(this.app, app);
+                    this.app = app;
+                    if (!changed) {
+                        return;
+                    }
                 }
                 resetView();
             }
 
+            /**
+             * @return whether everything {@link #resetView()} shows is the same for both
+             */
+            private boolean isShownTheSame(App oldApp, App newApp) {
+                return TextUtils.equals(oldApp.name, newApp.name)
+                        && TextUtils.equals(oldApp.iconUrl, newApp.iconUrl)
+                        && oldApp.compatible == newApp.compatible
+                        && oldApp.isApk == newApp.isApk
+                        && oldApp.installedVersionCode == newApp.installedVersionCode
+                        && oldApp.suggestedVersionCode == newApp.suggestedVersionCode;
+            }
+
             private void resetView() {
 
                 if (app == null) {
@@ -392,8 +403,18 @@ public class SwapAppsView extends ListView implements
         @Nullable
         private LayoutInflater inflater;
 
+        @Nullable
+        private App.CursorDecoder decoder;
+
         AppListAdapter(@NonNull Context context, @Nullable Cursor c) {
-            super(context, c, FLAG_REGISTER_CONTENT_OBSERVER);
+            // the loader already watches for changes, so the adapter does not need to as well
+            super(context, c, 0);
+        }
+
+        @Override
+        public Cursor swapCursor(Cursor newCursor) {
+            decoder = null;
+            return super.swapCursor(newCursor);
         }
 
         @NonNull
@@ -425,12 +446,15 @@ public class SwapAppsView extends ListView implements
         @Override
         public void bindView(final View view, final Context context, final Cursor cursor) {
             ViewHolder holder = (ViewHolder) view.getTag();
-            final App app = new App(cursor);
+            if (decoder == null) {
+                decoder = new App.CursorDecoder(cursor);
+            }
+            final App app = decoder.decode(cursor);
             holder.setApp(app);
         }
     }
 
-    private final BroadcastReceiver pollForUpdatesReceiver = new BroadcastReceiver() {
+    private final BroadcastReceiver swapRepoUpdatedReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
             int statusCode = intent.getIntExtra(UpdateService.EXTRA_STATUS_CODE, -1);
@@ -449,10 +473,6 @@ public class SwapAppsView extends ListView implements
                     // TODO: Well, if we can't get the index, we probably can't swapp apps.
                     // Tell the user something helpful?
                     break;
-
-                case UpdateService.STATUS_COMPLETE_AND_SAME:
-                    schedulePollForUpdates();
-                    break;
             }
         }
     };
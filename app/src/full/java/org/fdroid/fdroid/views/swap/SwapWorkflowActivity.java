@@ -748,12 +748,9 @@ public class SwapWorkflowActivity extends AppCompatActivity {
         protected Void doInBackground(Void... params) {
             try {
                 final LocalRepoManager lrm = LocalRepoManager.get(context);
-                broadcast(TYPE_STATUS, getString(R.string.deleting_repo));
-                lrm.deleteRepo();
-                for (String app : selectedApps) {
-                    broadcast(TYPE_STATUS, String.format(getString(R.string.adding_apks_format), app));
-                    lrm.addApp(context, app);
-                }
+                broadcast(TYPE_STATUS, getResources().getQuantityString(R.plurals.adding_apks_count,
+                        selectedApps.size(), selectedApps.size()));
+                lrm.setApps(context, selectedApps);
                 lrm.writeIndexPage(sharingUri.toString());
                 broadcast(TYPE_STATUS, getString(R.string.writing_index_jar));
                 lrm.writeIndexJar();
@@ -765,7 +762,11 @@ public class SwapWorkflowActivity extends AppCompatActivity {
                     @Override
                     public void run() {
                         android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
-                        lrm.copyIconsToRepo();
+                        try {
+                            lrm.copyIconsToRepo();
+                        } catch (InterruptedException e) {
+                            Log.e(TAG, "Interrupted while copying icons to swap repo", e);
+                        }
                     }
                 }.start();
 
@@ -28,13 +28,14 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.IntentFilter;
-import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.design.widget.CoordinatorLayout;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.content.Loader;
 import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
@@ -52,6 +53,7 @@ import com.nostra13.universalimageloader.core.ImageLoader;
 import org.fdroid.fdroid.data.Apk;
 import org.fdroid.fdroid.data.ApkProvider;
 import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.AppDetailsSnapshot;
 import org.fdroid.fdroid.data.AppPrefsProvider;
 import org.fdroid.fdroid.data.AppProvider;
 import org.fdroid.fdroid.data.Schema;
@@ -63,11 +65,14 @@ import org.fdroid.fdroid.views.AppDetailsRecyclerViewAdapter;
 import org.fdroid.fdroid.views.ShareChooserDialog;
 import org.fdroid.fdroid.views.apps.FeatureImage;
 
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 public class AppDetails2 extends AppCompatActivity
         implements ShareChooserDialog.ShareChooserDialogListener,
-        AppDetailsRecyclerViewAdapter.AppDetailsRecyclerViewAdapterCallbacks {
+        AppDetailsRecyclerViewAdapter.AppDetailsRecyclerViewAdapterCallbacks,
+        LoaderManager.LoaderCallbacks<AppDetailsSnapshot> {
 
     public static final String EXTRA_APPID = "appid";
     private static final String TAG = "AppDetails2";
@@ -76,7 +81,15 @@ public class AppDetails2 extends AppCompatActivity
     private static final int REQUEST_PERMISSION_DIALOG = 3;
     private static final int REQUEST_UNINSTALL_DIALOG = 4;
 
+    private static final int LOADER_ID = 0;
+
     private FDroidApp fdroidApp;
+    private String packageName;
+
+    /**
+     * Null until the first {@link AppDetailsSnapshot} is loaded.
+     */
+    @Nullable
     private App app;
     private RecyclerView recyclerView;
     private AppDetailsRecyclerViewAdapter adapter;
@@ -105,8 +118,8 @@ public class AppDetails2 extends AppCompatActivity
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         supportPostponeEnterTransition();
 
-        String packageName = getPackageNameFromIntent(getIntent());
-        if (!resetCurrentApp(packageName)) {
+        packageName = getPackageNameFromIntent(getIntent());
+        if (TextUtils.isEmpty(packageName)) {
             finish();
             return;
         }
@@ -114,32 +127,59 @@ public class AppDetails2 extends AppCompatActivity
         localBroadcastManager = LocalBroadcastManager.getInstance(this);
 
         recyclerView = (RecyclerView) findViewById(R.id.rvDetails);
-        adapter = new AppDetailsRecyclerViewAdapter(this, app, this);
         LinearLayoutManager lm = new LinearLayoutManager(this, LinearLayoutManager.VERTICAL, false);
         lm.setStackFromEnd(false);
+        recyclerView.setLayoutManager(lm);
 
-        // Has to be invoked after AppDetailsRecyclerViewAdapter is created.
-        refreshStatus();
+        // The enter transition stays postponed until this has loaded and the adapter is set.
+        getSupportLoaderManager().initLoader(LOADER_ID, null, this);
+    }
 
-        recyclerView.setLayoutManager(lm);
-        recyclerView.setAdapter(adapter);
-
-        recyclerView.getViewTreeObserver().addOnPreDrawListener(
-                new ViewTreeObserver.OnPreDrawListener() {
-                    @Override
-                    public boolean onPreDraw() {
-                        supportStartPostponedEnterTransition();
-                        return true;
+    @Override
+    public Loader<AppDetailsSnapshot> onCreateLoader(int id, Bundle args) {
+        return new AppDetailsLoader(this, packageName);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<AppDetailsSnapshot> loader, AppDetailsSnapshot snapshot) {
+        removeInstalledStatuses();
+        if (snapshot == null) {
+            Toast.makeText(this, R.string.no_such_app, Toast.LENGTH_LONG).show();
+            finish();
+            return;
+        }
+
+        app = snapshot.app;
+        if (adapter == null) {
+            adapter = new AppDetailsRecyclerViewAdapter(this, snapshot, this);
+            recyclerView.setAdapter(adapter);
+            recyclerView.getViewTreeObserver().addOnPreDrawListener(
+                    new ViewTreeObserver.OnPreDrawListener() {
+                        @Override
+                        public boolean onPreDraw() {
+                            recyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                            supportStartPostponedEnterTransition();
+                            return true;
+                        }
                     }
-                }
-        );
+            );
+
+            // Load the feature graphic, if present
+            final FeatureImage featureImage = (FeatureImage) findViewById(R.id.feature_graphic);
+            DisplayImageOptions displayImageOptions = Utils.getRepoAppDisplayImageOptions();
+            featureImage.loadImageAndDisplay(ImageLoader.getInstance(), displayImageOptions,
+                    snapshot.featureGraphicUrl, app.iconUrl);
+        } else {
+            adapter.updateItems(snapshot);
+        }
 
-        // Load the feature graphic, if present
-        final FeatureImage featureImage = (FeatureImage) findViewById(R.id.feature_graphic);
-        DisplayImageOptions displayImageOptions = Utils.getRepoAppDisplayImageOptions();
-        String featureGraphicUrl = app.getFeatureGraphicUrl(this);
-        featureImage.loadImageAndDisplay(ImageLoader.getInstance(), displayImageOptions,
-                featureGraphicUrl, app.iconUrl);
+        // Has to be invoked after AppDetailsRecyclerViewAdapter is created.
+        refreshStatus();
+        supportInvalidateOptionsMenu();
+    }
+
+    @Override
+    public void onLoaderReset(Loader<AppDetailsSnapshot> loader) {
     }
 
     private String getPackageNameFromIntent(Intent intent) {
@@ -156,9 +196,9 @@ public class AppDetails2 extends AppCompatActivity
      * refresh the notifications, so they are displayed again.
      */
     private void updateNotificationsForApp() {
-        if (app != null) {
+        if (packageName != null) {
             AppUpdateStatusManager ausm = AppUpdateStatusManager.getInstance(this);
-            for (AppUpdateStatusManager.AppUpdateStatus status : ausm.getByPackageName(app.packageName)) {
+            for (AppUpdateStatusManager.AppUpdateStatus status : ausm.getByPackageName(packageName)) {
                 if (status.status == AppUpdateStatusManager.Status.Installed) {
                     ausm.removeApk(status.getUniqueKey());
                 } else {
@@ -171,19 +211,11 @@ public class AppDetails2 extends AppCompatActivity
     @Override
     protected void onResume() {
         super.onResume();
-        if (app != null) {
-            visiblePackageName = app.packageName;
-        }
-
-        appObserver = new AppObserver(new Handler());
-        getContentResolver().registerContentObserver(
-                AppProvider.getHighestPriorityMetadataUri(app.packageName),
-                true,
-                appObserver);
+        visiblePackageName = packageName;
 
         updateNotificationsForApp();
         refreshStatus();
-        registerAppStatusReceiver();
+        registerAppStatusListener();
     }
 
     /**
@@ -191,8 +223,12 @@ public class AppDetails2 extends AppCompatActivity
      * Then, asks the view to update itself to reflect this status.
      */
     private void refreshStatus() {
+        if (adapter == null) {
+            // Done once the app has loaded
+            return;
+        }
         AppUpdateStatusManager ausm = AppUpdateStatusManager.getInstance(this);
-        Iterator<AppUpdateStatusManager.AppUpdateStatus> statuses = ausm.getByPackageName(app.packageName).iterator();
+        Iterator<AppUpdateStatusManager.AppUpdateStatus> statuses = ausm.getByPackageName(packageName).iterator();
         if (statuses.hasNext()) {
             AppUpdateStatusManager.AppUpdateStatus status = statuses.next();
             updateAppStatus(status, false);
@@ -204,15 +240,13 @@ public class AppDetails2 extends AppCompatActivity
     @Override
     protected void onPause() {
         super.onPause();
-        unregisterAppStatusReceiver();
+        unregisterAppStatusListener();
     }
 
     protected void onStop() {
         super.onStop();
         visiblePackageName = null;
 
-        getContentResolver().unregisterContentObserver(appObserver);
-
         // When leaving the app details, make sure to refresh app status for this app, since
         // we might want to show notifications for it now.
         updateNotificationsForApp();
@@ -221,7 +255,7 @@ public class AppDetails2 extends AppCompatActivity
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         boolean ret = super.onCreateOptionsMenu(menu);
-        if (ret) {
+        if (ret && app != null) {
             getMenuInflater().inflate(R.menu.details2, menu);
         }
         return ret;
@@ -400,16 +434,12 @@ public class AppDetails2 extends AppCompatActivity
         localBroadcastManager.unregisterReceiver(uninstallReceiver);
     }
 
-    private void registerAppStatusReceiver() {
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_REMOVED);
-        filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_ADDED);
-        filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_CHANGED);
-        localBroadcastManager.registerReceiver(appStatusReceiver, filter);
+    private void registerAppStatusListener() {
+        AppUpdateStatusManager.getInstance(this).addListener(appStatusListener);
     }
 
-    private void unregisterAppStatusReceiver() {
-        localBroadcastManager.unregisterReceiver(appStatusReceiver);
+    private void unregisterAppStatusListener() {
+        AppUpdateStatusManager.getInstance(this).removeListener(appStatusListener);
     }
 
     private void unregisterInstallReceiver() {
@@ -418,7 +448,7 @@ public class AppDetails2 extends AppCompatActivity
 
     private void updateAppStatus(@Nullable AppUpdateStatusManager.AppUpdateStatus newStatus, boolean justReceived) {
         this.currentStatus = newStatus;
-        if (this.currentStatus == null) {
+        if (this.currentStatus == null || adapter == null) {
             return;
         }
 
@@ -469,28 +499,36 @@ public class AppDetails2 extends AppCompatActivity
 
     }
 
-    private final BroadcastReceiver appStatusReceiver = new BroadcastReceiver() {
+    private final AppUpdateStatusManager.Listener appStatusListener = new AppUpdateStatusManager.Listener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            AppUpdateStatusManager.AppUpdateStatus status = intent.getParcelableExtra(
-                    AppUpdateStatusManager.EXTRA_STATUS);
-
-            boolean isRemoving = TextUtils.equals(intent.getAction(),
-                    AppUpdateStatusManager.BROADCAST_APPSTATUS_REMOVED);
-            if (currentStatus != null
-                    && isRemoving
-                    && !TextUtils.equals(status.getUniqueKey(), currentStatus.getUniqueKey())) {
-                Utils.debugLog(TAG, "Ignoring app status change because it belongs to "
-                        + status.getUniqueKey() + " not " + currentStatus.getUniqueKey());
-            } else if (status != null && !TextUtils.equals(status.apk.packageName, app.packageName)) {
-                Utils.debugLog(TAG, "Ignoring app status change because it belongs to "
-                        + status.apk.packageName + " not " + app.packageName);
-            } else {
-                updateAppStatus(status, true);
+        public void onAppStatusesChanged(@NonNull AppUpdateStatusManager.Changes changes) {
+            for (AppUpdateStatusManager.AppUpdateStatus status : changes.removed) {
+                onAppStatusChanged(status, true);
+            }
+            for (List<AppUpdateStatusManager.AppUpdateStatus> statuses
+                    : Arrays.asList(changes.added, changes.changed, changes.progressed)) {
+                for (AppUpdateStatusManager.AppUpdateStatus status : statuses) {
+                    onAppStatusChanged(status, false);
+                }
             }
         }
     };
 
+    private void onAppStatusChanged(AppUpdateStatusManager.AppUpdateStatus status, boolean isRemoving) {
+        if (!TextUtils.equals(status.apk.packageName, packageName)) {
+            return;
+        }
+
+        if (currentStatus != null
+                && isRemoving
+                && !TextUtils.equals(status.getUniqueKey(), currentStatus.getUniqueKey())) {
+            Utils.debugLog(TAG, "Ignoring app status change because it belongs to "
+                    + status.getUniqueKey() + " not " + currentStatus.getUniqueKey());
+        } else {
+            updateAppStatus(status, true);
+        }
+    }
+
     private final BroadcastReceiver installReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -503,7 +541,7 @@ public class AppDetails2 extends AppCompatActivity
                     unregisterInstallReceiver();
                     // Ideally, we wouldn't try to update the view here, because the InstalledAppProviderService
                     // hasn't had time to do its thing and mark the app as installed. Instead, we
-                    // wait for that service to notify us, and then we will respond in appObserver.
+                    // wait for that service to notify us, and then AppDetailsLoader will reload the app.
 
                     // Having said that, there are some cases where the PackageManager doesn't
                     // return control back to us until after it has already braodcast to the
@@ -512,7 +550,7 @@ public class AppDetails2 extends AppCompatActivity
                     // onPause). Empirically, this happens when upgrading an app rather than a clean
                     // install. However given the nature of this race condition, it may be different
                     // on different operating systems. As such, we'll just update our view now. It may
-                    // happen again in our appObserver, but that will only cause a little more load
+                    // happen again in AppDetailsLoader, but that will only cause a little more load
                     // on the system, it shouldn't cause a different UX.
                     onAppChanged();
                     break;
@@ -615,55 +653,30 @@ public class AppDetails2 extends AppCompatActivity
     };
 
     /**
-     * Reset the display and list contents. Used when entering the activity, and
-     * also when something has been installed/uninstalled.  An index update or
-     * other external factors might have changed since {@code app} was set
-     * before.  This also removes all pending installs with
-     * {@link AppUpdateStatusManager.Status#Installed Installed}
-     * status for this {@code packageName}, to prevent any lingering open ones from
-     * messing up any action that the user might take.  They sometimes might not get
+     * Removes all pending installs with {@link AppUpdateStatusManager.Status#Installed Installed}
+     * status for this {@code packageName}, each time the app is (re)loaded, e.g. when entering
+     * the activity and when something has been installed/uninstalled.  This prevents any lingering
+     * open ones from messing up any action that the user might take.  They sometimes might not get
      * removed while F-Droid was in the background.
-     * <p>
-     * Shows a {@link Toast} if no {@link App} was found matching {@code packageName}.
-     *
-     * @return whether the {@link App} for a given {@code packageName} is still available
      */
-    private boolean resetCurrentApp(String packageName) {
-        if (TextUtils.isEmpty(packageName)) {
-            return false;
-        }
-        app = AppProvider.Helper.findHighestPriorityMetadata(getContentResolver(), packageName);
-
-        //
+    private void removeInstalledStatuses() {
         AppUpdateStatusManager ausm = AppUpdateStatusManager.getInstance(this);
         for (AppUpdateStatusManager.AppUpdateStatus status : ausm.getByPackageName(packageName)) {
             if (status.status == AppUpdateStatusManager.Status.Installed) {
                 ausm.removeApk(status.getUniqueKey());
             }
         }
-        if (app == null) {
-            Toast.makeText(this, R.string.no_such_app, Toast.LENGTH_LONG).show();
-            return false;
-        }
-
-        return true;
     }
 
+    /**
+     * Reload the app, e.g. after an install finished.  An index update or other external
+     * factors might have changed it since it was last loaded.
+     */
     private void onAppChanged() {
-        recyclerView.post(new Runnable() {
-            @Override
-            public void run() {
-                String packageName = app != null ? app.packageName : null;
-                if (!resetCurrentApp(packageName)) {
-                    AppDetails2.this.finish();
-                    return;
-                }
-                AppDetailsRecyclerViewAdapter adapter = (AppDetailsRecyclerViewAdapter) recyclerView.getAdapter();
-                adapter.updateItems(app);
-                refreshStatus();
-                supportInvalidateOptionsMenu();
-            }
-        });
+        Loader<AppDetailsSnapshot> loader = getSupportLoaderManager().getLoader(LOADER_ID);
+        if (loader != null) {
+            loader.onContentChanged();
+        }
     }
 
     @Override
@@ -751,25 +764,68 @@ public class AppDetails2 extends AppCompatActivity
         startUninstall();
     }
 
-    // observer to update view when package has been installed/deleted
-    private AppObserver appObserver;
+    /**
+     * Loads the {@link AppDetailsSnapshot} in the background, and again each time
+     * the app changes, e.g. when it gets installed or an index update changed it.
+     * Changes while the activity is stopped are only loaded once it is started again.
+     */
+    private static final class AppDetailsLoader extends AsyncTaskLoader<AppDetailsSnapshot> {
+
+        private final String packageName;
+        private final ForceLoadContentObserver observer = new ForceLoadContentObserver();
 
-    class AppObserver extends ContentObserver {
+        private AppDetailsSnapshot snapshot;
+        private boolean loaded;
+        private boolean observing;
 
-        AppObserver(Handler handler) {
-            super(handler);
+        AppDetailsLoader(Context context, String packageName) {
+            super(context);
+            this.packageName = packageName;
         }
 
         @Override
-        public void onChange(boolean selfChange) {
-            onChange(selfChange, null);
+        public AppDetailsSnapshot loadInBackground() {
+            return AppDetailsSnapshot.load(getContext(), packageName);
         }
 
         @Override
-        public void onChange(boolean selfChange, Uri uri) {
-            onAppChanged();
+        public void deliverResult(AppDetailsSnapshot data) {
+            snapshot = data;
+            loaded = true;
+            if (isStarted()) {
+                super.deliverResult(data);
+            }
         }
 
-    }
+        @Override
+        protected void onStartLoading() {
+            if (!observing) {
+                getContext().getContentResolver().registerContentObserver(
+                        AppProvider.getHighestPriorityMetadataUri(packageName), true, observer);
+                observing = true;
+            }
+            if (loaded) {
+                deliverResult(snapshot);
+            }
+            if (takeContentChanged() || !loaded) {
+                forceLoad();
+            }
+        }
+
+        @Override
+        protected void onStopLoading() {
+            cancelLoad();
+        }
 
+        @Override
+        protected void onReset() {
+            onStopLoading();
+            if (observing) {
+                getContext().getContentResolver().unregisterContentObserver(observer);
+                observing = false;
+            }
+            snapshot = null;
+            loaded = false;
+        }
+    }
 }
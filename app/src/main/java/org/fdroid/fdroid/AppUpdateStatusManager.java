@@ -7,12 +7,14 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.TaskStackBuilder;
-import android.support.v4.content.LocalBroadcastManager;
 import org.fdroid.fdroid.data.Apk;
 import org.fdroid.fdroid.data.App;
 import org.fdroid.fdroid.data.AppProvider;
@@ -21,11 +23,18 @@ import org.fdroid.fdroid.installer.ErrorDialogActivity;
 import org.fdroid.fdroid.installer.InstallManagerService;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Manages the state of APKs that are being installed or that have updates available.
@@ -37,6 +46,12 @@ import java.util.Map;
  * As defined in {@link org.fdroid.fdroid.installer.InstallManagerService}, the
  * canonical URL for the APK file to download is used as the unique ID to represent
  * the status of the APK throughout F-Droid.
+ * <p>
+ * The statuses can be read from any thread without locking.  Instead of a broadcast
+ * for each change, {@link Listener}s get all of the changes since they were last
+ * called in one {@link Changes} batch, at most once every {@link #DISPATCH_INTERVAL_MS}.
+ * When "update all" has dozens of downloads running, each reporting its progress,
+ * the UI and the notifications then only get rebuilt once per batch.
  *
  * @see org.fdroid.fdroid.installer.InstallManagerService
  */
@@ -45,37 +60,13 @@ public final class AppUpdateStatusManager {
     public static final String TAG = "AppUpdateStatusManager";
 
     /**
-     * Broadcast when:
-     * * The user clears the list of installed apps from notification manager.
-     * * The user clears the list of apps available to update from the notification manager.
+     * Reasons for the whole list changing, see {@link Changes#hasReason(String)}:
+     * * A bunch of .apk files were found downloaded and ready to install when F-Droid was opened.
      * * A repo update is completed and a bunch of new apps are ready to be updated.
-     * * F-Droid is opened, and it finds a bunch of .apk files downloaded and ready to install.
-     */
-    public static final String BROADCAST_APPSTATUS_LIST_CHANGED = "org.fdroid.fdroid.installer.appstatus.listchange";
-
-    /**
-     * Broadcast when an app begins the download/install process (either manually or via an automatic download).
-     */
-    public static final String BROADCAST_APPSTATUS_ADDED = "org.fdroid.fdroid.installer.appstatus.appchange.add";
-
-    /**
-     * When the {@link AppUpdateStatus#status} of an app changes or the download progress for an app advances.
-     */
-    public static final String BROADCAST_APPSTATUS_CHANGED = "org.fdroid.fdroid.installer.appstatus.appchange.change";
-
-    /**
-     * Broadcast when:
-     * * The associated app has the {@link Status#Installed} status, and the user either visits
-     * that apps details page or clears the individual notification for the app.
-     * * The download for an app is cancelled.
+     * * The user clears the list of apps available to update from the notification manager.
+     * * The user clears the list of installed apps from notification manager.
+     * * A repo was disabled, so all of its apps were removed.
      */
-    public static final String BROADCAST_APPSTATUS_REMOVED = "org.fdroid.fdroid.installer.appstatus.appchange.remove";
-
-    public static final String EXTRA_APK_URL = "urlstring";
-    public static final String EXTRA_STATUS = "status";
-
-    public static final String EXTRA_REASON_FOR_CHANGE = "reason";
-
     public static final String REASON_READY_TO_INSTALL = "readytoinstall";
     public static final String REASON_UPDATES_AVAILABLE = "updatesavailable";
     public static final String REASON_CLEAR_ALL_UPDATES = "clearallupdates";
@@ -83,10 +74,9 @@ public final class AppUpdateStatusManager {
     public static final String REASON_REPO_DISABLED = "repodisabled";
 
     /**
-     * If this is present and true, then the broadcast has been sent in response to the {@link AppUpdateStatus#status}
-     * changing. In comparison, if it is just the download progress of an app then this should not be true.
+     * {@link Listener}s are called at most this often, about once per frame.
      */
-    public static final String EXTRA_IS_STATUS_UPDATE = "isstatusupdate";
+    private static final long DISPATCH_INTERVAL_MS = 16;
 
     private static final String LOGTAG = "AppUpdateStatusManager";
 
@@ -110,6 +100,99 @@ public final class AppUpdateStatusManager {
 
     private static AppUpdateStatusManager instance;
 
+    public interface Listener {
+        /**
+         * Called on the UI thread with everything that changed since the last call.
+         */
+        void onAppStatusesChanged(@NonNull Changes changes);
+    }
+
+    /**
+     * Everything that changed between two calls to {@link Listener#onAppStatusesChanged(Changes)}.
+     * An APK is only in one of the lists, even if it changed several times, e.g. an APK which
+     * was added and then made progress is only in {@link #added}.  The statuses are copies,
+     * so they do not change after being delivered.
+     */
+    public static final class Changes {
+        /**
+         * APKs which started being tracked.
+         */
+        public final List<AppUpdateStatus> added;
+
+        /**
+         * APKs whose {@link AppUpdateStatus#status} changed, or which were refreshed.
+         */
+        public final List<AppUpdateStatus> changed;
+
+        /**
+         * APKs where only the download progress advanced.
+         */
+        public final List<AppUpdateStatus> progressed;
+
+        /**
+         * APKs which stopped being tracked, as they were right before being removed.
+         */
+        public final List<AppUpdateStatus> removed;
+
+        private final boolean listChanged;
+        private final Set<String> reasons;
+
+        private Changes(List<AppUpdateStatus> added, List<AppUpdateStatus> changed,
+                        List<AppUpdateStatus> progressed, List<AppUpdateStatus> removed,
+                        boolean listChanged, Set<String> reasons) {
+            this.added = Collections.unmodifiableList(added);
+            this.changed = Collections.unmodifiableList(changed);
+            this.progressed = Collections.unmodifiableList(progressed);
+            this.removed = Collections.unmodifiableList(removed);
+            this.listChanged = listChanged;
+            this.reasons = Collections.unmodifiableSet(reasons);
+        }
+
+        /**
+         * True if many statuses were added or removed in one go, e.g. after a repo update,
+         * without each of them being listed here.  Read them again with {@link AppUpdateStatusManager#getAll()}.
+         */
+        public boolean isListChanged() {
+            return listChanged;
+        }
+
+        /**
+         * @param reason One of the {@code REASON_} constants, like {@link #REASON_UPDATES_AVAILABLE}
+         */
+        public boolean hasReason(String reason) {
+            return reasons.contains(reason);
+        }
+
+        /**
+         * @return The latest status for {@code packageName} in this batch, or the one it had
+         * before being removed.  Null if nothing changed for {@code packageName}.
+         */
+        @Nullable
+        public AppUpdateStatus findByPackageName(String packageName) {
+            AppUpdateStatus found = null;
+            for (List<AppUpdateStatus> statuses : Arrays.asList(removed, added, changed, progressed)) {
+                for (AppUpdateStatus status : statuses) {
+                    if (status.apk.packageName.equalsIgnoreCase(packageName)) {
+                        found = status;
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * Ordered so that a change is only replaced by a more important one for the same APK,
+     * except that adding and removing always replace whatever came before.  Any change
+     * after a removal means the APK is tracked again, so that becomes an add.
+     */
+    private enum ChangeKind {
+        Progress,
+        Change,
+        Add,
+        Remove,
+    }
+
     public static class AppUpdateStatus implements Parcelable {
         public final App app;
         public final Apk apk;
@@ -182,11 +265,9 @@ public final class AppUpdateStatusManager {
         };
 
         /**
-         * When passing to the broadcast manager, it is important to pass a copy rather than the original object.
-         * This is because if two status changes are noticed in the same event loop, than they will both refer
-         * to the same status object. The objects are not parceled until the end of the event loop, and so the first
-         * parceled event will refer to the updated object (with a different status) rather than the intended
-         * status (i.e. the one in existence when talking to the broadcast manager).
+         * When passing to {@link Listener}s, it is important to pass a copy rather than the original object.
+         * The original keeps on changing as the download and install progress, possibly on another thread,
+         * while the listeners are still working with it.
          */
         public AppUpdateStatus copy() {
             AppUpdateStatus copy = new AppUpdateStatus(app, apk, status, intent);
@@ -198,42 +279,63 @@ public final class AppUpdateStatusManager {
     }
 
     private final Context context;
-    private final LocalBroadcastManager localBroadcastManager;
-    private final HashMap<String, AppUpdateStatus> appMapping = new HashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Read without locking.  Changes to it, and to the {@link AppUpdateStatus}es in it,
+     * are made while holding its lock, which also guards the pending changes below.
+     */
+    private final Map<String, AppUpdateStatus> appMapping = new ConcurrentHashMap<>();
     private boolean isBatchUpdating;
 
+    private final Map<String, ChangeKind> pendingChanges = new LinkedHashMap<>();
+    private final Map<String, AppUpdateStatus> pendingRemoved = new HashMap<>();
+    private final Set<String> pendingReasons = new HashSet<>();
+    private boolean pendingListChange;
+    private boolean isDispatchScheduled;
+    private long lastDispatchTime;
+
     private AppUpdateStatusManager(Context context) {
         this.context = context;
-        localBroadcastManager = LocalBroadcastManager.getInstance(context.getApplicationContext());
+    }
+
+    /**
+     * Must be called from the UI thread, and matched by {@link #removeListener(Listener)}.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
     }
 
     public void removeAllByRepo(Repo repo) {
-        boolean hasRemovedSome = false;
-        Iterator<AppUpdateStatus> it = getAll().iterator();
-        while (it.hasNext()) {
-            AppUpdateStatus status = it.next();
-            if (status.apk.repoId == repo.getId()) {
-                it.remove();
-                hasRemovedSome = true;
+        synchronized (appMapping) {
+            boolean hasRemovedSome = false;
+            Iterator<AppUpdateStatus> it = appMapping.values().iterator();
+            while (it.hasNext()) {
+                AppUpdateStatus status = it.next();
+                if (status.apk.repoId == repo.getId()) {
+                    it.remove();
+                    hasRemovedSome = true;
+                }
             }
-        }
 
-        if (hasRemovedSome) {
-            notifyChange(REASON_REPO_DISABLED);
+            if (hasRemovedSome) {
+                notifyChange(REASON_REPO_DISABLED);
+            }
         }
     }
 
     @Nullable
     public AppUpdateStatus get(String key) {
-        synchronized (appMapping) {
-            return appMapping.get(key);
-        }
+        return appMapping.get(key);
     }
 
     public Collection<AppUpdateStatus> getAll() {
-        synchronized (appMapping) {
-            return appMapping.values();
-        }
+        return appMapping.values();
     }
 
     /**
@@ -244,11 +346,9 @@ public final class AppUpdateStatusManager {
      */
     public Collection<AppUpdateStatus> getByPackageName(String packageName) {
         ArrayList<AppUpdateStatus> returnValues = new ArrayList<>();
-        synchronized (appMapping) {
-            for (AppUpdateStatus entry : appMapping.values()) {
-                if (entry.apk.packageName.equalsIgnoreCase(packageName)) {
-                    returnValues.add(entry);
-                }
+        for (AppUpdateStatus entry : appMapping.values()) {
+            if (entry.apk.packageName.equalsIgnoreCase(packageName)) {
+                returnValues.add(entry);
             }
         }
         return returnValues;
@@ -279,39 +379,111 @@ public final class AppUpdateStatusManager {
         }
     }
 
-    private void notifyChange(String reason) {
-        if (!isBatchUpdating) {
-            Intent intent = new Intent(BROADCAST_APPSTATUS_LIST_CHANGED);
-            intent.putExtra(EXTRA_REASON_FOR_CHANGE, reason);
-            localBroadcastManager.sendBroadcast(intent);
+    private void notifyChange(@Nullable String reason) {
+        synchronized (appMapping) {
+            if (!isBatchUpdating) {
+                pendingListChange = true;
+                if (reason != null) {
+                    pendingReasons.add(reason);
+                }
+                scheduleDispatch();
+            }
         }
     }
 
     private void notifyAdd(AppUpdateStatus entry) {
-        if (!isBatchUpdating) {
-            Intent broadcastIntent = new Intent(BROADCAST_APPSTATUS_ADDED);
-            broadcastIntent.putExtra(EXTRA_APK_URL, entry.getUniqueKey());
-            broadcastIntent.putExtra(EXTRA_STATUS, entry.copy());
-            localBroadcastManager.sendBroadcast(broadcastIntent);
-        }
+        recordChange(entry, ChangeKind.Add);
     }
 
     private void notifyChange(AppUpdateStatus entry, boolean isStatusUpdate) {
-        if (!isBatchUpdating) {
-            Intent broadcastIntent = new Intent(BROADCAST_APPSTATUS_CHANGED);
-            broadcastIntent.putExtra(EXTRA_APK_URL, entry.getUniqueKey());
-            broadcastIntent.putExtra(EXTRA_STATUS, entry.copy());
-            broadcastIntent.putExtra(EXTRA_IS_STATUS_UPDATE, isStatusUpdate);
-            localBroadcastManager.sendBroadcast(broadcastIntent);
-        }
+        recordChange(entry, isStatusUpdate ? ChangeKind.Change : ChangeKind.Progress);
     }
 
     private void notifyRemove(AppUpdateStatus entry) {
-        if (!isBatchUpdating) {
-            Intent broadcastIntent = new Intent(BROADCAST_APPSTATUS_REMOVED);
-            broadcastIntent.putExtra(EXTRA_APK_URL, entry.getUniqueKey());
-            broadcastIntent.putExtra(EXTRA_STATUS, entry.copy());
-            localBroadcastManager.sendBroadcast(broadcastIntent);
+        recordChange(entry, ChangeKind.Remove);
+    }
+
+    private void recordChange(AppUpdateStatus entry, ChangeKind kind) {
+        synchronized (appMapping) {
+            if (isBatchUpdating) {
+                return;
+            }
+            String key = entry.getUniqueKey();
+            ChangeKind pending = pendingChanges.get(key);
+            if (pending == ChangeKind.Remove && kind != ChangeKind.Remove) {
+                // it was tracked again after being removed, so to the listeners it is new
+                kind = ChangeKind.Add;
+            }
+            if (kind == ChangeKind.Add || kind == ChangeKind.Remove
+                    || pending == null || pending.compareTo(kind) < 0) {
+                pendingChanges.put(key, kind);
+                if (kind == ChangeKind.Remove) {
+                    pendingRemoved.put(key, entry.copy());
+                } else {
+                    pendingRemoved.remove(key);
+                }
+            }
+            scheduleDispatch();
+        }
+    }
+
+    private void scheduleDispatch() {
+        if (!isDispatchScheduled) {
+            isDispatchScheduled = true;
+            long delay = lastDispatchTime + DISPATCH_INTERVAL_MS - SystemClock.uptimeMillis();
+            handler.postDelayed(dispatchChanges, Math.max(0, delay));
+        }
+    }
+
+    private final Runnable dispatchChanges = new Runnable() {
+        @Override
+        public void run() {
+            Changes changes = takePendingChanges();
+            for (Listener listener : listeners) {
+                listener.onAppStatusesChanged(changes);
+            }
+        }
+    };
+
+    private Changes takePendingChanges() {
+        synchronized (appMapping) {
+            List<AppUpdateStatus> added = new ArrayList<>();
+            List<AppUpdateStatus> changed = new ArrayList<>();
+            List<AppUpdateStatus> progressed = new ArrayList<>();
+            List<AppUpdateStatus> removed = new ArrayList<>();
+            for (Map.Entry<String, ChangeKind> change : pendingChanges.entrySet()) {
+                if (change.getValue() == ChangeKind.Remove) {
+                    removed.add(pendingRemoved.get(change.getKey()));
+                    continue;
+                }
+
+                AppUpdateStatus entry = appMapping.get(change.getKey());
+                if (entry == null) {
+                    // Cleared along with others, which is covered by the list change
+                    continue;
+                }
+                switch (change.getValue()) {
+                    case Add:
+                        added.add(entry.copy());
+                        break;
+                    case Change:
+                        changed.add(entry.copy());
+                        break;
+                    case Progress:
+                        progressed.add(entry.copy());
+                        break;
+                }
+            }
+
+            Changes changes = new Changes(added, changed, progressed, removed,
+                    pendingListChange, new HashSet<>(pendingReasons));
+            pendingChanges.clear();
+            pendingRemoved.clear();
+            pendingReasons.clear();
+            pendingListChange = false;
+            isDispatchScheduled = false;
+            lastDispatchTime = SystemClock.uptimeMillis();
+            return changes;
         }
     }
 
@@ -369,13 +541,11 @@ public final class AppUpdateStatusManager {
 
     @Nullable
     public Apk getApk(String key) {
-        synchronized (appMapping) {
-            AppUpdateStatus entry = appMapping.get(key);
-            if (entry != null) {
-                return entry.apk;
-            }
-            return null;
+        AppUpdateStatus entry = appMapping.get(key);
+        if (entry != null) {
+            return entry.apk;
         }
+        return null;
     }
 
     /**
@@ -435,13 +605,18 @@ public final class AppUpdateStatusManager {
     public void setApkError(Apk apk, String errorText) {
         synchronized (appMapping) {
             AppUpdateStatus entry = appMapping.get(apk.getUrl());
-            if (entry == null) {
+            boolean isNew = entry == null;
+            if (isNew) {
                 entry = createAppEntry(apk, Status.InstallError, null);
             }
             entry.status = Status.InstallError;
             entry.errorText = errorText;
             entry.intent = getAppErrorIntent(entry);
-            notifyChange(entry, false);
+            if (isNew) {
+                notifyAdd(entry);
+            } else {
+                notifyChange(entry, false);
+            }
 
             InstallManagerService.removePendingInstall(context, entry.getUniqueKey());
         }
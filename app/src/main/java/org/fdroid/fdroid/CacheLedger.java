@@ -0,0 +1,232 @@
+package org.fdroid.fdroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the files F-Droid writes into its caches, how big they are, and
+ * when they should be deleted, so that cleaning up does not mean listing and
+ * checking every file in every cache directory.  {@link CleanCacheService} then
+ * only has to look at the entries that have expired, and can free up space when
+ * storage is low by deleting the oldest downloads until the cache fits.
+ * <p>
+ * This is saved in {@link SharedPreferences}, so files are still cleaned up if
+ * F-Droid was killed before they expired.  Files which need to be deleted soon,
+ * like the copies made for the system installer, are also deleted on time by a
+ * single background thread shared by all of them.
+ */
+public final class CacheLedger {
+
+    private static final String TAG = "CacheLedger";
+
+    private static final String PREFS_NAME = "cache-ledger";
+
+    public enum Kind {
+        /**
+         * A download kept in the cache, so it does not need to be downloaded again.
+         */
+        Download,
+
+        /**
+         * A copy of an APK for the installer, only needed while it is being installed.
+         */
+        InstallCopy,
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final String path;
+        final Kind kind;
+        final long size;
+        final long expires;
+
+        Entry(String path, Kind kind, long size, long expires) {
+            this.path = path;
+            this.kind = kind;
+            this.size = size;
+            this.expires = expires;
+        }
+
+        @Override
+        public int compareTo(@NonNull Entry other) {
+            if (expires != other.expires) {
+                return expires < other.expires ? -1 : 1;
+            }
+            return path.compareTo(other.path);
+        }
+
+        String serialize() {
+            return kind.name() + " " + size + " " + expires;
+        }
+
+        static Entry deserialize(String path, String value) {
+            String[] fields = value.split(" ");
+            if (fields.length != 3) {
+                return null;
+            }
+            try {
+                return new Entry(path, Kind.valueOf(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private static CacheLedger instance;
+
+    private final SharedPreferences prefs;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> byExpiry = new TreeSet<>();
+
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                    runnable.run();
+                }
+            }, TAG);
+        }
+    });
+
+    CacheLedger(Context context) {
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        for (Map.Entry<String, ?> pref : prefs.getAll().entrySet()) {
+            if (!(pref.getValue() instanceof String)) {
+                continue;
+            }
+            Entry entry = Entry.deserialize(pref.getKey(), (String) pref.getValue());
+            if (entry != null) {
+                entries.put(entry.path, entry);
+                byExpiry.add(entry);
+                if (entry.kind == Kind.InstallCopy) {
+                    scheduleDelete(entry);
+                }
+            }
+        }
+    }
+
+    public static synchronized CacheLedger get(Context context) {
+        if (instance == null) {
+            instance = new CacheLedger(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Record that {@code file} was just written and may be deleted in {@code keepMillis}.
+     * Adding a file again, e.g. after downloading it again, replaces what was recorded.
+     * A {@code keepMillis} of {@link Long#MAX_VALUE}, i.e. "Forever", never expires.
+     */
+    public synchronized void add(File file, Kind kind, long keepMillis) {
+        String path = file.getAbsolutePath();
+        removeEntry(path);
+        long now = System.currentTimeMillis();
+        long expires = keepMillis >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + keepMillis;
+        Entry entry = new Entry(path, kind, file.length(), expires);
+        entries.put(path, entry);
+        byExpiry.add(entry);
+        prefs.edit().putString(path, entry.serialize()).apply();
+        if (kind == Kind.InstallCopy && expires != Long.MAX_VALUE) {
+            scheduleDelete(entry);
+        }
+    }
+
+    /**
+     * Delete all the files that have expired.  This only looks at the expired
+     * entries, no matter how many files there are in the caches.
+     *
+     * @return how many files were deleted
+     */
+    public synchronized int deleteExpired() {
+        long now = System.currentTimeMillis();
+        List<Entry> expired = new ArrayList<>();
+        for (Entry entry : byExpiry) {
+            if (entry.expires > now) {
+                break;
+            }
+            expired.add(entry);
+        }
+        delete(expired);
+        return expired.size();
+    }
+
+    /**
+     * Delete {@link Kind#Download}s, starting with the ones closest to expiring,
+     * until all of them together take up no more than {@code maxBytes}.
+     */
+    public synchronized void evictDownloadsToSize(long maxBytes) {
+        long total = 0;
+        for (Entry entry : byExpiry) {
+            if (entry.kind == Kind.Download) {
+                total += entry.size;
+            }
+        }
+        List<Entry> evicted = new ArrayList<>();
+        for (Entry entry : byExpiry) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (entry.kind == Kind.Download) {
+                evicted.add(entry);
+                total -= entry.size;
+            }
+        }
+        if (!evicted.isEmpty()) {
+            Utils.debugLog(TAG, "Evicting " + evicted.size() + " downloads to fit in " + maxBytes + " bytes");
+        }
+        delete(evicted);
+    }
+
+    private void delete(List<Entry> toDelete) {
+        if (toDelete.isEmpty()) {
+            return;
+        }
+        SharedPreferences.Editor editor = prefs.edit();
+        for (Entry entry : toDelete) {
+            new File(entry.path).delete();
+            entries.remove(entry.path);
+            byExpiry.remove(entry);
+            editor.remove(entry.path);
+        }
+        editor.apply();
+    }
+
+    private void removeEntry(String path) {
+        Entry existing = entries.remove(path);
+        if (existing != null) {
+            byExpiry.remove(existing);
+        }
+    }
+
+    private void scheduleDelete(final Entry entry) {
+        long delay = Math.max(0, entry.expires - System.currentTimeMillis());
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (CacheLedger.this) {
+                    // only if it was not added again since this was scheduled
+                    if (entries.get(entry.path) == entry) {
+                        List<Entry> toDelete = new ArrayList<>(1);
+                        toDelete.add(entry);
+                        delete(toDelete);
+                    }
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+}
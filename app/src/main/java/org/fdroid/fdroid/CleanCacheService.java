@@ -7,6 +7,7 @@ import android.app.job.JobScheduler;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Build;
 import android.os.Process;
 import android.os.SystemClock;
@@ -30,12 +31,21 @@ import java.util.concurrent.TimeUnit;
  * {@link android.system.StructStat#st_atime} on {@link android.os.Build.VERSION_CODES#LOLLIPOP}
  * and newer.  On older Android, last modified time from {@link File#lastModified()}
  * is used.
+ * <p>
+ * Going through every file in every cache is slow when there are lots of them,
+ * especially the cached icons, so that only happens once a week, see
+ * {@link #FULL_SWEEP_INTERVAL}, to catch anything that was missed.  Each regular run only deletes what
+ * {@link CacheLedger} says has expired, and if storage is running low, the
+ * oldest downloads until the rest fit.
  */
 public class CleanCacheService extends JobIntentService {
     public static final String TAG = "CleanCacheService";
 
     private static final int JOB_ID = 0x982374;
 
+    private static final long FULL_SWEEP_INTERVAL = TimeUnit.DAYS.toMillis(7);
+    private static final String LAST_FULL_SWEEP_KEY = "lastFullSweep";
+
     /**
      * Schedule or cancel this service to update the app index, according to the
      * current preferences. Should be called a) at boot, b) if the preference
@@ -79,10 +89,29 @@ public class CleanCacheService extends JobIntentService {
     @Override
     protected void onHandleWork(@NonNull Intent intent) {
         Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
-        deleteExpiredApksFromCache();
-        deleteStrayIndexFiles();
-        deleteOldInstallerFiles();
-        deleteOldIcons();
+        CacheLedger ledger = CacheLedger.get(this);
+        ledger.deleteExpired();
+        ledger.evictDownloadsToSize(getDownloadCacheBudget());
+
+        SharedPreferences prefs = getSharedPreferences(TAG, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong(LAST_FULL_SWEEP_KEY, 0) > FULL_SWEEP_INTERVAL) {
+            deleteExpiredApksFromCache();
+            deleteStrayIndexFiles();
+            deleteOldInstallerFiles();
+            deleteOldIcons();
+            prefs.edit().putLong(LAST_FULL_SWEEP_KEY, now).apply();
+        }
+    }
+
+    /**
+     * When storage is running low, the downloads kept in the cache may use at most half
+     * of what is left, just like {@link FDroidApp} limits the image cache.
+     */
+    private long getDownloadCacheBudget() {
+        long available = Utils.getImageCacheDirAvailableMemory(this);
+        int percentageFree = Utils.getPercent(available, Utils.getImageCacheDirTotalMemory(this));
+        return percentageFree > 5 ? Long.MAX_VALUE : available / 2L;
     }
 
     /**
@@ -0,0 +1,93 @@
+package org.fdroid.fdroid;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.Process;
+import android.os.RemoteException;
+import android.support.annotation.NonNull;
+import android.support.v4.app.JobIntentService;
+import android.util.Log;
+import org.fdroid.fdroid.data.Apk;
+import org.fdroid.fdroid.data.ApkProvider;
+import org.fdroid.fdroid.data.AppProvider;
+import org.fdroid.fdroid.data.Schema.ApkTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs {@link CompatibilityChecker} over every apk already in the database, then
+ * recalculates which apps are compatible and which versions are suggested.
+ * The only things that depend on the device are the compatibility flags, so
+ * after an OS upgrade, or changing a preference that the checker uses, this
+ * is all that needs to happen.  There is no need to download any index again.
+ */
+public class CompatibilityRecalculationService extends JobIntentService {
+    public static final String TAG = "CompatibilityRecalc";
+
+    private static final String[] PROJECTION = {
+            ApkTable.Cols.APP_ID,
+            ApkTable.Cols.VERSION_CODE,
+            ApkTable.Cols.MIN_SDK_VERSION,
+            ApkTable.Cols.MAX_SDK_VERSION,
+            ApkTable.Cols.FEATURES,
+            ApkTable.Cols.NATIVE_CODE,
+            ApkTable.Cols.IS_COMPATIBLE,
+            ApkTable.Cols.INCOMPATIBLE_REASONS,
+    };
+
+    public static void recalculate(Context context) {
+        Intent intent = new Intent(context, CompatibilityRecalculationService.class);
+        enqueueWork(context, CompatibilityRecalculationService.class, 0x2a7c31, intent);
+    }
+
+    @Override
+    protected void onHandleWork(@NonNull Intent intent) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        Utils.Profiler profiler = new Utils.Profiler(TAG);
+
+        CompatibilityChecker checker = new CompatibilityChecker(this);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        Cursor cursor = getContentResolver().query(ApkProvider.getContentUri(), PROJECTION, null, null, null);
+        if (cursor != null) {
+            try {
+                Apk.CursorDecoder decoder = new Apk.CursorDecoder(cursor);
+                while (cursor.moveToNext()) {
+                    Apk apk = decoder.decode(cursor);
+                    List<String> reasons = checker.getIncompatibleReasons(apk);
+                    boolean compatible = reasons.size() == 0;
+                    String[] incompatibleReasons = compatible ? null : reasons.toArray(new String[reasons.size()]);
+                    if (compatible == apk.compatible
+                            && Arrays.equals(incompatibleReasons, apk.incompatibleReasons)) {
+                        continue;
+                    }
+                    ContentValues values = new ContentValues(2);
+                    values.put(ApkTable.Cols.IS_COMPATIBLE, compatible ? 1 : 0);
+                    values.put(ApkTable.Cols.INCOMPATIBLE_REASONS,
+                            Utils.serializeCommaSeparatedString(incompatibleReasons));
+                    operations.add(ContentProviderOperation.newUpdate(ApkProvider.Helper.getApkFromRepoUri(apk))
+                            .withValues(values).build());
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        profiler.log("Checked apks, " + operations.size() + " changed");
+
+        if (operations.size() > 0) {
+            try {
+                getContentResolver().applyBatch(ApkProvider.getAuthority(), operations);
+            } catch (RemoteException | OperationApplicationException e) {
+                Log.e(TAG, "Could not save the new compatibility flags", e);
+                return;
+            }
+        }
+        AppProvider.Helper.recalculateCompatibility(this);
+        profiler.log("Recalculated compatible apps and suggested versions");
+    }
+}
@@ -108,6 +108,7 @@ public class FDroidApp extends Application {
 
     private static final String TAG = "FDroidApp";
     private static final String ACRA_ID = BuildConfig.APPLICATION_ID + ":acra";
+    private static final String IMAGE_DISK_CACHE_SIZE_KEY = "image-disk-cache-size";
 
     public static final String SYSTEM_DIR_NAME = Environment.getRootDirectory().getAbsolutePath();
 
@@ -235,9 +236,9 @@ public class FDroidApp extends Application {
     }
 
     /**
-     * Initialize the settings needed to run a local swap repo. This should
-     * only ever be called in {@link org.fdroid.fdroid.net.WifiStateChangeService.WifiInfoThread},
-     * after the single init call in {@link FDroidApp#onCreate()}.
+     * Initialize the settings needed to run a local swap repo.  This should
+     * only ever be called once in {@link FDroidApp#onCreate()}, after that
+     * {@link org.fdroid.fdroid.net.WifiStateChangeService} keeps them up to date.
      */
     public static void initWifiSettings() {
         port = 8888;
@@ -314,7 +315,8 @@ public class FDroidApp extends Application {
             currentLocale = newConfig.getLocales().toString();
         }
         if (!TextUtils.equals(lastLocale, currentLocale)) {
-            UpdateService.forceUpdateRepo(this);
+            // all locales from the index are in the database, so just pick them again
+            LocaleChangeService.updateLocalizedFields(this);
         }
         atStartTime.edit().putString(lastLocaleKey, currentLocale).apply();
     }
@@ -371,7 +373,14 @@ public class FDroidApp extends Application {
             preferences.setForceOldIndex(true);
         }
 
-        InstalledAppProviderService.compareToPackageManager(this);
+        StartupInitializer initializer = new StartupInitializer();
+
+        initializer.runLater("compareToPackageManager", StartupInitializer.PRIORITY_HIGH, new Runnable() {
+            @Override
+            public void run() {
+                InstalledAppProviderService.compareToPackageManager(FDroidApp.this);
+            }
+        });
 
         // If the user changes the preference to do with filtering anti-feature apps,
         // it is easier to just notify a change in the app provider,
@@ -390,16 +399,118 @@ public class FDroidApp extends Application {
             }
         });
 
-        CleanCacheService.schedule(this);
+        initializer.runLater("CleanCacheService", StartupInitializer.PRIORITY_LOW, new Runnable() {
+            @Override
+            public void run() {
+                CleanCacheService.schedule(FDroidApp.this);
+            }
+        });
 
         notificationHelper = new NotificationHelper(getApplicationContext());
         bluetoothAdapter = getBluetoothAdapter();
 
-        // There are a couple things to pay attention to with this config: memory usage,
-        // especially on small devices; and, image processing vulns, since images are
-        // submitted via app's git repos, so anyone with commit privs there could submit
-        // exploits hidden in images.  Luckily, F-Droid doesn't need EXIF at all, and
-        // that is where the JPEG/PNG vulns have been. So it can be entirely stripped.
+        final SharedPreferences atStartTime = getAtStartTimeSharedPreferences();
+        initializer.runNow("ImageLoader", new Runnable() {
+            @Override
+            public void run() {
+                initImageLoader(atStartTime.getLong(IMAGE_DISK_CACHE_SIZE_KEY, 0));
+            }
+        });
+        initializer.runLater("imageDiskCacheSize", StartupInitializer.PRIORITY_LOW, new Runnable() {
+            @Override
+            public void run() {
+                updateImageDiskCacheSize(atStartTime);
+            }
+        });
+
+        if (preferences.isIndexNeverUpdated()) {
+            // force this check to ensure it starts fetching the index on initial runs
+            networkState = ConnectivityMonitorService.getNetworkState(this);
+        }
+        initializer.runLater("ConnectivityMonitorService", StartupInitializer.PRIORITY_NORMAL, new Runnable() {
+            @Override
+            public void run() {
+                ConnectivityMonitorService.registerAndStart(FDroidApp.this);
+                UpdateService.schedule(getApplicationContext());
+            }
+        });
+
+        FDroidApp.initWifiSettings();
+        initializer.runLater("WifiStateChangeService", StartupInitializer.PRIORITY_NORMAL, new Runnable() {
+            @Override
+            public void run() {
+                WifiStateChangeService.start(FDroidApp.this, null);
+            }
+        });
+        // if the HTTPS pref changes, then update all affected things
+        preferences.registerLocalRepoHttpsListeners(new ChangeListener() {
+            @Override
+            public void onPreferenceChange() {
+                WifiStateChangeService.start(getApplicationContext(), null);
+            }
+        });
+
+        configureTor(preferences.isTorEnabled());
+
+        initializer.runLater("InstallHistoryService", StartupInitializer.PRIORITY_LOW, new Runnable() {
+            @Override
+            public void run() {
+                setUpInstallHistory();
+            }
+        });
+
+        // find and process provisions if any.
+        initializer.runLater("Provisioner", StartupInitializer.PRIORITY_HIGH, new Runnable() {
+            @Override
+            public void run() {
+                Provisioner.scanAndProcess(getApplicationContext());
+            }
+        });
+
+        // if the underlying OS version has changed, then only compatibility needs recalculating
+        if (Build.VERSION.SDK_INT != atStartTime.getInt("build-version", Build.VERSION.SDK_INT)) {
+            CompatibilityRecalculationService.recalculate(this);
+        }
+        atStartTime.edit().putInt("build-version", Build.VERSION.SDK_INT).apply();
+
+        final String queryStringKey = "http-downloader-query-string";
+        if (preferences.sendVersionAndUUIDToServers()) {
+            HttpDownloader.queryString = atStartTime.getString(queryStringKey, null);
+            if (HttpDownloader.queryString == null) {
+                UUID uuid = UUID.randomUUID();
+                ByteBuffer buffer = ByteBuffer.allocate(Long.SIZE / Byte.SIZE * 2);
+                buffer.putLong(uuid.getMostSignificantBits());
+                buffer.putLong(uuid.getLeastSignificantBits());
+                String id = Base64.encodeToString(buffer.array(),
+                        Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+                StringBuilder builder = new StringBuilder("id=").append(id);
+                String versionName = Uri.encode(Utils.getVersionName(this));
+                if (versionName != null) {
+                    builder.append("&client_version=").append(versionName);
+                }
+                HttpDownloader.queryString = builder.toString();
+            }
+            if (!atStartTime.contains(queryStringKey)) {
+                atStartTime.edit().putString(queryStringKey, HttpDownloader.queryString).apply();
+            }
+        } else {
+            atStartTime.edit().remove(queryStringKey).apply();
+        }
+
+        initializer.start();
+    }
+
+    /**
+     * There are a couple things to pay attention to with this config: memory usage,
+     * especially on small devices; and, image processing vulns, since images are
+     * submitted via app's git repos, so anyone with commit privs there could submit
+     * exploits hidden in images.  Luckily, F-Droid doesn't need EXIF at all, and
+     * that is where the JPEG/PNG vulns have been. So it can be entirely stripped.
+     *
+     * @param diskCacheSize the maximum size of the disk cache, or {@code 0} for no limit
+     * @see #updateImageDiskCacheSize(SharedPreferences)
+     */
+    private void initImageLoader(long diskCacheSize) {
         Display display = ((WindowManager) getSystemService(WINDOW_SERVICE)).getDefaultDisplay();
         int maxSize = GL10.GL_MAX_TEXTURE_SIZE; // see ImageScaleType.NONE_SAFE javadoc
         int width = display.getWidth();
@@ -412,16 +523,14 @@ public class FDroidApp extends Application {
         }
 
         DiskCache diskCache;
-        long available = Utils.getImageCacheDirAvailableMemory(this);
-        int percentageFree = Utils.getPercent(available, Utils.getImageCacheDirTotalMemory(this));
-        if (percentageFree > 5) {
+        if (diskCacheSize <= 0) {
             diskCache = new UnlimitedDiskCache(Utils.getImageCacheDir(this));
         } else {
-            Log.i(TAG, "Switching to LruDiskCache(" + available / 2L + ") to save disk space!");
+            Log.i(TAG, "Switching to LruDiskCache(" + diskCacheSize + ") to save disk space!");
             try {
                 diskCache = new LruDiskCache(Utils.getImageCacheDir(this),
                         DefaultConfigurationFactory.createFileNameGenerator(),
-                        available / 2L);
+                        diskCacheSize);
             } catch (IOException e) {
                 diskCache = new UnlimitedDiskCache(Utils.getImageCacheDir(this));
             }
@@ -440,27 +549,24 @@ public class FDroidApp extends Application {
                 .threadPoolSize(getThreadPoolSize())
                 .build();
         ImageLoader.getInstance().init(config);
+    }
 
-        if (preferences.isIndexNeverUpdated()) {
-            // force this check to ensure it starts fetching the index on initial runs
-            networkState = ConnectivityMonitorService.getNetworkState(this);
+    /**
+     * Checking the free disk space means {@code statfs} calls, which can be slow,
+     * so rather than holding up startup, this is checked in the background and
+     * the decision is used the next time F-Droid starts.
+     */
+    private void updateImageDiskCacheSize(SharedPreferences atStartTime) {
+        long available = Utils.getImageCacheDirAvailableMemory(this);
+        int percentageFree = Utils.getPercent(available, Utils.getImageCacheDirTotalMemory(this));
+        long diskCacheSize = percentageFree > 5 ? 0 : available / 2L;
+        if (diskCacheSize != atStartTime.getLong(IMAGE_DISK_CACHE_SIZE_KEY, 0)) {
+            atStartTime.edit().putLong(IMAGE_DISK_CACHE_SIZE_KEY, diskCacheSize).apply();
         }
-        ConnectivityMonitorService.registerAndStart(this);
-        UpdateService.schedule(getApplicationContext());
-
-        FDroidApp.initWifiSettings();
-        WifiStateChangeService.start(this, null);
-        // if the HTTPS pref changes, then update all affected things
-        preferences.registerLocalRepoHttpsListeners(new ChangeListener() {
-            @Override
-            public void onPreferenceChange() {
-                WifiStateChangeService.start(getApplicationContext(), null);
-            }
-        });
-
-        configureTor(preferences.isTorEnabled());
+    }
 
-        if (preferences.isKeepingInstallHistory()) {
+    private void setUpInstallHistory() {
+        if (Preferences.get().isKeepingInstallHistory()) {
             InstallHistoryService.register(this);
         }
 
@@ -474,40 +580,6 @@ public class FDroidApp extends Application {
             }
             grantUriPermission(packageName, InstallHistoryService.LOG_URI, modeFlags);
         }
-
-        // find and process provisions if any.
-        Provisioner.scanAndProcess(getApplicationContext());
-
-        // if the underlying OS version has changed, then fully rebuild the database
-        SharedPreferences atStartTime = getAtStartTimeSharedPreferences();
-        if (Build.VERSION.SDK_INT != atStartTime.getInt("build-version", Build.VERSION.SDK_INT)) {
-            UpdateService.forceUpdateRepo(this);
-        }
-        atStartTime.edit().putInt("build-version", Build.VERSION.SDK_INT).apply();
-
-        final String queryStringKey = "http-downloader-query-string";
-        if (preferences.sendVersionAndUUIDToServers()) {
-            HttpDownloader.queryString = atStartTime.getString(queryStringKey, null);
-            if (HttpDownloader.queryString == null) {
-                UUID uuid = UUID.randomUUID();
-                ByteBuffer buffer = ByteBuffer.allocate(Long.SIZE / Byte.SIZE * 2);
-                buffer.putLong(uuid.getMostSignificantBits());
-                buffer.putLong(uuid.getLeastSignificantBits());
-                String id = Base64.encodeToString(buffer.array(),
-                        Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
-                StringBuilder builder = new StringBuilder("id=").append(id);
-                String versionName = Uri.encode(Utils.getVersionName(this));
-                if (versionName != null) {
-                    builder.append("&client_version=").append(versionName);
-                }
-                HttpDownloader.queryString = builder.toString();
-            }
-            if (!atStartTime.contains(queryStringKey)) {
-                atStartTime.edit().putString(queryStringKey, HttpDownloader.queryString).apply();
-            }
-        } else {
-            atStartTime.edit().remove(queryStringKey).apply();
-        }
     }
 
     /**
@@ -122,7 +122,7 @@ public class Hasher {
         return hex(encoded);
     }
 
-    private static String hex(byte[] sig) {
+    public static String hex(byte[] sig) {
         byte[] csig = new byte[sig.length * 2];
         for (int j = 0; j < sig.length; j++) {
             byte v = sig[j];
@@ -37,8 +37,13 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.InjectableValues;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.fdroid.fdroid.data.Apk;
 import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.IndexV1Decoder;
+import org.fdroid.fdroid.data.PreferredLocales;
 import org.fdroid.fdroid.data.Repo;
 import org.fdroid.fdroid.data.RepoPersister;
 import org.fdroid.fdroid.data.RepoProvider;
@@ -46,6 +51,7 @@ import org.fdroid.fdroid.data.RepoPushRequest;
 import org.fdroid.fdroid.data.Schema;
 import org.fdroid.fdroid.net.Downloader;
 import org.fdroid.fdroid.net.DownloaderFactory;
+import org.fdroid.fdroid.net.IndexPrefetcher;
 
 import javax.net.ssl.SSLHandshakeException;
 import javax.net.ssl.SSLKeyException;
@@ -60,6 +66,9 @@ import java.net.NoRouteToHostException;
 import java.net.ProtocolException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Date;
@@ -68,6 +77,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.zip.ZipException;
 
 /**
  * Receives the index data about all available apps and packages via the V1
@@ -87,9 +98,69 @@ import java.util.jar.JarFile;
 public class IndexV1Updater extends RepoUpdater {
     public static final String TAG = "IndexV1Updater";
 
-    private static final String SIGNED_FILE_NAME = "index-v1.jar";
+    public static final String SIGNED_FILE_NAME = "index-v1.jar";
     public static final String DATA_FILE_NAME = "index-v1.json";
 
+    /**
+     * Set by {@link #indexStreamProcessor} if it managed to parse the index
+     * while downloading it.  Nothing in here is verified yet.
+     */
+    private ParsedIndexV1 streamedIndex;
+
+    /**
+     * The hash of all the bytes {@link #streamedIndex} was parsed from.
+     */
+    private byte[] streamedIndexDigest;
+
+    /**
+     * Parses {@link #DATA_FILE_NAME} as it comes off the network, so the parsing
+     * happens while the rest of the jar is still downloading instead of after it.
+     * This cannot check the signature since that needs the whole jar.  It also reads
+     * the first matching <i>local</i> entry, while {@link JarFile} verifies the one
+     * in the central directory, and a jar can have both with different contents.  So
+     * {@link #processDownloadedIndex(File, String)} only uses what was parsed here if
+     * the verified entry hashes to exactly {@link #streamedIndexDigest}.
+     */
+    private final Downloader.StreamProcessor indexStreamProcessor = new Downloader.StreamProcessor() {
+        @Override
+        public void process(InputStream stream) throws IOException {
+            streamedIndex = null;
+            streamedIndexDigest = null;
+            JarInputStream jarInputStream = new JarInputStream(stream, false);
+            JarEntry entry;
+            while ((entry = jarInputStream.getNextJarEntry()) != null) {
+                if (DATA_FILE_NAME.equals(entry.getName())) {
+                    DigestInputStream digestInputStream = new DigestInputStream(jarInputStream, newIndexDigest());
+                    // the parser closes its input, which must not close the download
+                    ParsedIndexV1 index = parseIndexV1(new CloseShieldInputStream(digestInputStream));
+                    // the hash has to cover the whole entry, not just what the parser needed
+                    IOUtils.copy(digestInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
+                    streamedIndexDigest = digestInputStream.getMessageDigest().digest();
+                    streamedIndex = index;
+                    return;
+                }
+            }
+        }
+    };
+
+    private static MessageDigest newIndexDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Everything read from {@code index-v1.json}, before it is verified and saved.
+     */
+    private static final class ParsedIndexV1 {
+        HashMap<String, Object> repoMap;
+        App[] apps;
+        Map<String, String[]> requests;
+        Map<String, List<Apk>> packages;
+    }
+
     public IndexV1Updater(@NonNull Context context, @NonNull Repo repo) {
         super(context, repo);
     }
@@ -107,16 +178,15 @@ public class IndexV1Updater extends RepoUpdater {
     @Override
     public boolean update() throws RepoUpdater.UpdateException {
 
-        if (repo.isSwap) {
-            // swap repos do not support index-v1
-            return false;
-        }
         Downloader downloader = null;
+        // a swap peer's index might already be waiting, if it was prefetched while scanning
+        IndexPrefetcher.Prefetched prefetched = repo.isSwap ? IndexPrefetcher.take(context, repo.address) : null;
         try {
             // read file name from file
             downloader = DownloaderFactory.create(context, indexUrl);
-            downloader.setCacheTag(repo.lastetag);
+            downloader.setCacheTag(prefetched == null ? repo.lastetag : prefetched.etag);
             downloader.setListener(downloadListener);
+            downloader.setStreamProcessor(indexStreamProcessor);
             downloader.download();
             if (downloader.isNotFound()) {
                 return false;
@@ -124,6 +194,11 @@ public class IndexV1Updater extends RepoUpdater {
             hasChanged = downloader.hasChanged();
 
             if (!hasChanged) {
+                if (prefetched != null) {
+                    Utils.debugLog(TAG, "Using the index prefetched from " + repo.address);
+                    hasChanged = true;
+                    processDownloadedIndex(prefetched.file, prefetched.etag);
+                }
                 return true;
             }
 
@@ -145,6 +220,7 @@ public class IndexV1Updater extends RepoUpdater {
                     downloader = DownloaderFactory.create(context, mirrorUrl);
                     downloader.setCacheTag(repo.lastetag);
                     downloader.setListener(downloadListener);
+                    downloader.setStreamProcessor(indexStreamProcessor);
                     downloader.setTimeout(FDroidApp.getTimeout());
                     downloader.download();
                     if (downloader.isNotFound()) {
@@ -172,6 +248,16 @@ public class IndexV1Updater extends RepoUpdater {
                     // ignored if canceled, the local database just won't be updated
                 }
             }
+        } catch (ZipException e) {
+            if (downloader != null) {
+                FileUtils.deleteQuietly(downloader.outputFile);
+            }
+            if (repo.isSwap) {
+                // swap peers from before index-v1 might send an error page rather than a 404
+                Utils.debugLog(TAG, "Swap repo did not provide a valid " + SIGNED_FILE_NAME);
+                return false;
+            }
+            throw new RepoUpdater.UpdateException("Error getting index file", e);
         } catch (IOException e) {
             if (downloader != null) {
                 FileUtils.deleteQuietly(downloader.outputFile);
@@ -179,6 +265,10 @@ public class IndexV1Updater extends RepoUpdater {
             throw new RepoUpdater.UpdateException("Error getting index file", e);
         } catch (InterruptedException e) {
             // ignored if canceled, the local database just won't be updated
+        } finally {
+            if (prefetched != null) {
+                FileUtils.deleteQuietly(prefetched.file);
+            }
         }
 
         return true;
@@ -188,6 +278,28 @@ public class IndexV1Updater extends RepoUpdater {
             throws IOException, RepoUpdater.UpdateException {
         JarFile jarFile = new JarFile(outputFile, true);
         JarEntry indexEntry = (JarEntry) jarFile.getEntry(DATA_FILE_NAME);
+        ParsedIndexV1 index = streamedIndex;
+        byte[] indexDigest = streamedIndexDigest;
+        streamedIndex = null;
+        streamedIndexDigest = null;
+        if (index != null) {
+            // JarEntry can only read certificates after the file represented by that JarEntry
+            // has been read completely, so read through it once more, without parsing it.
+            // That also checks that it is the very same data which was parsed while streaming.
+            DigestInputStream indexInputStream = new DigestInputStream(jarFile.getInputStream(indexEntry),
+                    newIndexDigest());
+            try {
+                IOUtils.copy(indexInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
+            } finally {
+                Utils.closeQuietly(indexInputStream);
+            }
+            if (MessageDigest.isEqual(indexDigest, indexInputStream.getMessageDigest().digest())) {
+                saveIndexV1(index, indexEntry, cacheTag);
+                return;
+            }
+            Log.w(TAG, "Streamed " + DATA_FILE_NAME + " from " + repo.address
+                    + " does not match the signed one, parsing it again");
+        }
         InputStream indexInputStream = new ProgressBufferedInputStream(jarFile.getInputStream(indexEntry),
                 processIndexListener, repo.address, (int) indexEntry.getSize());
         processIndexV1(indexInputStream, indexEntry, cacheTag);
@@ -227,15 +339,19 @@ public class IndexV1Updater extends RepoUpdater {
      */
     public void processIndexV1(InputStream indexInputStream, JarEntry indexEntry, String etag)
             throws IOException, UpdateException {
+        saveIndexV1(parseIndexV1(indexInputStream), indexEntry, etag);
+    }
+
+    private ParsedIndexV1 parseIndexV1(InputStream indexInputStream) throws IOException {
         Utils.Profiler profiler = new Utils.Profiler(TAG);
         profiler.log("Starting to process index-v1.json");
+        // read once here, rather than for every app in the index
+        PreferredLocales.refresh();
         ObjectMapper mapper = getObjectMapperInstance(repo.getId());
         JsonFactory f = mapper.getFactory();
         JsonParser parser = f.createParser(indexInputStream);
-        HashMap<String, Object> repoMap = null;
-        App[] apps = null;
-        Map<String, String[]> requests = null;
-        Map<String, List<Apk>> packages = null;
+        IndexV1Decoder decoder = new IndexV1Decoder(mapper, repo.getId());
+        ParsedIndexV1 index = new ParsedIndexV1();
 
         parser.nextToken(); // go into the main object block
         while (true) {
@@ -245,21 +361,30 @@ public class IndexV1Updater extends RepoUpdater {
             }
             switch (fieldName) {
                 case "repo":
-                    repoMap = parseRepo(mapper, parser);
+                    index.repoMap = parseRepo(mapper, parser);
                     break;
                 case "requests":
-                    requests = parseRequests(mapper, parser);
+                    index.requests = parseRequests(mapper, parser);
                     break;
                 case "apps":
-                    apps = parseApps(mapper, parser);
+                    index.apps = parseApps(decoder, parser);
                     break;
                 case "packages":
-                    packages = parsePackages(mapper, parser);
+                    index.packages = parsePackages(decoder, parser);
                     break;
             }
         }
         parser.close(); // ensure resources get cleaned up timely and properly
-        profiler.log("Finished processing index-v1.json. Now verifying certificate...");
+        profiler.log("Finished processing index-v1.json.");
+        return index;
+    }
+
+    private void saveIndexV1(ParsedIndexV1 index, JarEntry indexEntry, String etag) throws UpdateException {
+        Utils.Profiler profiler = new Utils.Profiler(TAG);
+        profiler.log("Now verifying certificate...");
+        HashMap<String, Object> repoMap = index.repoMap;
+        App[] apps = index.apps;
+        Map<String, List<Apk>> packages = index.packages;
 
         if (repoMap == null) {
             return;
@@ -350,8 +475,8 @@ public class IndexV1Updater extends RepoUpdater {
         profiler.log("Persited to database.");
 
         if (repo.pushRequests == Repo.PUSH_REQUEST_ACCEPT_ALWAYS) {
-            processRepoPushRequests(requests);
-            Utils.debugLog(TAG, "Completed Repo Push Requests: " + requests);
+            processRepoPushRequests(index.requests);
+            Utils.debugLog(TAG, "Completed Repo Push Requests: " + index.requests);
         }
     }
 
@@ -396,18 +521,14 @@ public class IndexV1Updater extends RepoUpdater {
         return mapper.readValue(parser, typeRef);
     }
 
-    private App[] parseApps(ObjectMapper mapper, JsonParser parser) throws IOException {
-        TypeReference<App[]> typeRef = new TypeReference<App[]>() {
-        };
+    private App[] parseApps(IndexV1Decoder decoder, JsonParser parser) throws IOException {
         parser.nextToken(); // START_ARRAY
-        return mapper.readValue(parser, typeRef);
+        return decoder.readApps(parser);
     }
 
-    private Map<String, List<Apk>> parsePackages(ObjectMapper mapper, JsonParser parser) throws IOException {
-        TypeReference<HashMap<String, List<Apk>>> typeRef = new TypeReference<HashMap<String, List<Apk>>>() {
-        };
+    private Map<String, List<Apk>> parsePackages(IndexV1Decoder decoder, JsonParser parser) throws IOException {
         parser.nextToken(); // START_OBJECT
-        return mapper.readValue(parser, typeRef);
+        return decoder.readPackages(parser);
     }
 
     /**
@@ -0,0 +1,31 @@
+package org.fdroid.fdroid;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.v4.app.JobIntentService;
+import org.fdroid.fdroid.data.AppProvider;
+
+/**
+ * Picks the localized app metadata for the current language again, after
+ * either the system locale or the language preference has changed.  All the
+ * locales from the indexes are already in the database, so there is no need
+ * to download them again.
+ *
+ * @see AppProvider.Helper#updateLocalizedFields(Context)
+ */
+public class LocaleChangeService extends JobIntentService {
+    public static final String TAG = "LocaleChangeService";
+
+    public static void updateLocalizedFields(Context context) {
+        Intent intent = new Intent(context, LocaleChangeService.class);
+        enqueueWork(context, LocaleChangeService.class, 0x10ca1e, intent);
+    }
+
+    @Override
+    protected void onHandleWork(@NonNull Intent intent) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        AppProvider.Helper.updateLocalizedFields(this);
+    }
+}
@@ -2,20 +2,23 @@ package org.fdroid.fdroid;
 
 import android.app.Notification;
 import android.app.PendingIntent;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Point;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.NotificationManagerCompat;
 import android.support.v4.content.ContextCompat;
-import android.support.v4.content.LocalBroadcastManager;
+import android.support.v4.util.LruCache;
 import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.TextUtils;
@@ -30,6 +33,9 @@ import org.fdroid.fdroid.data.App;
 import org.fdroid.fdroid.views.main.MainActivity;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 
 @SuppressWarnings("LineLength")
 class NotificationHelper {
@@ -55,71 +61,114 @@ class NotificationHelper {
     private static final String GROUP_UPDATES = "updates";
     private static final String GROUP_INSTALLED = "installed";
 
+    /**
+     * A notification which only shows more download progress is not posted again more often
+     * than this.  Android drops updates which come too quickly anyway, and each one wakes up
+     * the system UI.
+     */
+    private static final long PROGRESS_UPDATE_INTERVAL_MS = 1000;
+
+    /**
+     * Upper bound for the decoded large icons kept in memory, in bytes.
+     */
+    private static final int LARGE_ICON_CACHE_SIZE = 2 * 1024 * 1024;
+
+    /**
+     * What was last posted to one notification slot, so that it is only built and posted
+     * again when something shown in it actually changed.
+     */
+    private static final class PostedNotification {
+        final String contents;
+        final int progress;
+        final long postedAt;
+
+        PostedNotification(String contents, int progress, long postedAt) {
+            this.contents = contents;
+            this.progress = progress;
+            this.postedAt = postedAt;
+        }
+    }
+
     private final Context context;
     private final NotificationManagerCompat notificationManager;
     private final AppUpdateStatusManager appUpdateStatusManager;
     private final ArrayList<AppUpdateStatusManager.AppUpdateStatus> updates = new ArrayList<>();
     private final ArrayList<AppUpdateStatusManager.AppUpdateStatus> installed = new ArrayList<>();
 
+    /**
+     * Keyed by tag, one map per notification id.
+     */
+    private final HashMap<String, PostedNotification> postedUpdates = new HashMap<>();
+    private final HashMap<String, PostedNotification> postedInstalled = new HashMap<>();
+
+    private final LruCache<String, Bitmap> largeIcons = new LruCache<String, Bitmap>(LARGE_ICON_CACHE_SIZE) {
+        @Override
+        protected int sizeOf(String iconUrl, Bitmap bitmap) {
+            return bitmap.getRowBytes() * bitmap.getHeight();
+        }
+    };
+    private Bitmap downloadingLargeIcon;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean trailingProgressScheduled;
+
+    /**
+     * Posts the latest progress of every download, for when the last progress
+     * update was dropped by {@link #shouldPost(String, int, String, int)}.
+     * Without this, a notification could show old progress until the next
+     * update, and there might never be one.
+     */
+    private final Runnable trailingProgress = new Runnable() {
+        @Override
+        public void run() {
+            trailingProgressScheduled = false;
+            for (AppUpdateStatusManager.AppUpdateStatus entry : appUpdateStatusManager.getAll()) {
+                if (entry.status == AppUpdateStatusManager.Status.Downloading) {
+                    createNotification(entry);
+                }
+            }
+        }
+    };
+
     NotificationHelper(Context context) {
         this.context = context;
         appUpdateStatusManager = AppUpdateStatusManager.getInstance(context);
         notificationManager = NotificationManagerCompat.from(context);
 
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_LIST_CHANGED);
-        filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_ADDED);
-        filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_CHANGED);
-        filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_REMOVED);
-        BroadcastReceiver receiverAppStatusChanges = new BroadcastReceiver() {
+        appUpdateStatusManager.addListener(new AppUpdateStatusManager.Listener() {
             @Override
-            public void onReceive(Context context, Intent intent) {
-                if (intent == null) {
+            public void onAppStatusesChanged(@NonNull AppUpdateStatusManager.Changes changes) {
+                if (changes.isListChanged()) {
+                    updateStatusLists();
+                    cancelStaleNotifications();
+                    createSummaryNotifications();
+                    for (AppUpdateStatusManager.AppUpdateStatus appUpdateStatus : appUpdateStatusManager.getAll()) {
+                        createNotification(appUpdateStatus);
+                    }
                     return;
                 }
 
-                AppUpdateStatusManager.AppUpdateStatus entry;
-                String url;
-                switch (intent.getAction()) {
-                    case AppUpdateStatusManager.BROADCAST_APPSTATUS_LIST_CHANGED:
-                        notificationManager.cancelAll();
-                        updateStatusLists();
-                        createSummaryNotifications();
-                        for (AppUpdateStatusManager.AppUpdateStatus appUpdateStatus : appUpdateStatusManager.getAll()) {
-                            createNotification(appUpdateStatus);
-                        }
-                        break;
-                    case AppUpdateStatusManager.BROADCAST_APPSTATUS_ADDED:
-                        updateStatusLists();
-                        createSummaryNotifications();
-                        url = intent.getStringExtra(AppUpdateStatusManager.EXTRA_APK_URL);
-                        entry = appUpdateStatusManager.get(url);
-                        if (entry != null) {
-                            createNotification(entry);
-                        }
-                        break;
-                    case AppUpdateStatusManager.BROADCAST_APPSTATUS_CHANGED:
-                        url = intent.getStringExtra(AppUpdateStatusManager.EXTRA_APK_URL);
-                        entry = appUpdateStatusManager.get(url);
-                        updateStatusLists();
+                for (AppUpdateStatusManager.AppUpdateStatus removed : changes.removed) {
+                    cancelNotification(removed.getUniqueKey(), NOTIFY_ID_INSTALLED);
+                    cancelNotification(removed.getUniqueKey(), NOTIFY_ID_UPDATES);
+                }
+
+                updateStatusLists();
+                for (List<AppUpdateStatusManager.AppUpdateStatus> statuses
+                        : Arrays.asList(changes.added, changes.changed, changes.progressed)) {
+                    for (AppUpdateStatusManager.AppUpdateStatus status : statuses) {
+                        AppUpdateStatusManager.AppUpdateStatus entry = appUpdateStatusManager.get(status.getUniqueKey());
                         if (entry != null) {
                             createNotification(entry);
                         }
-                        if (intent.getBooleanExtra(AppUpdateStatusManager.EXTRA_IS_STATUS_UPDATE, false)) {
-                            createSummaryNotifications();
-                        }
-                        break;
-                    case AppUpdateStatusManager.BROADCAST_APPSTATUS_REMOVED:
-                        url = intent.getStringExtra(AppUpdateStatusManager.EXTRA_APK_URL);
-                        notificationManager.cancel(url, NOTIFY_ID_INSTALLED);
-                        notificationManager.cancel(url, NOTIFY_ID_UPDATES);
-                        updateStatusLists();
-                        createSummaryNotifications();
-                        break;
+                    }
+                }
+
+                if (!changes.added.isEmpty() || !changes.changed.isEmpty() || !changes.removed.isEmpty()) {
+                    createSummaryNotifications();
                 }
             }
-        };
-        LocalBroadcastManager.getInstance(context).registerReceiver(receiverAppStatusChanges, filter);
+        });
     }
 
     private boolean useStackedNotifications() {
@@ -147,6 +196,67 @@ class NotificationHelper {
         }
     }
 
+    /**
+     * Cancels the notifications for all entries which are not in the {@link AppUpdateStatusManager}
+     * anymore, leaving the others to be updated only if they changed.  If notifications are not
+     * to be shown at all anymore, everything is cancelled.
+     */
+    private void cancelStaleNotifications() {
+        if (!notificationManager.areNotificationsEnabled() || Preferences.get().hideAllNotifications()) {
+            notificationManager.cancelAll();
+            postedUpdates.clear();
+            postedInstalled.clear();
+            return;
+        }
+
+        for (int id : new int[]{NOTIFY_ID_UPDATES, NOTIFY_ID_INSTALLED}) {
+            for (String tag : new ArrayList<>(getPosted(id).keySet())) {
+                if (!GROUP_UPDATES.equals(tag) && !GROUP_INSTALLED.equals(tag)
+                        && appUpdateStatusManager.get(tag) == null) {
+                    cancelNotification(tag, id);
+                }
+            }
+        }
+    }
+
+    private HashMap<String, PostedNotification> getPosted(int id) {
+        return id == NOTIFY_ID_UPDATES ? postedUpdates : postedInstalled;
+    }
+
+    /**
+     * Checks whether the notification with {@code tag} and {@code id} needs to be posted
+     * again, and if so, assumes that it will be.  Returns false if it last got posted with
+     * the same {@code contents} and {@code progress}, or if only the progress changed and
+     * it was posted less than {@link #PROGRESS_UPDATE_INTERVAL_MS} ago.  In that last
+     * case, {@link #trailingProgress} is scheduled so the latest progress still gets shown.
+     */
+    private boolean shouldPost(String tag, int id, String contents, int progress) {
+        HashMap<String, PostedNotification> posted = getPosted(id);
+        PostedNotification previous = posted.get(tag);
+        long now = SystemClock.elapsedRealtime();
+        if (previous != null && previous.contents.equals(contents)) {
+            if (previous.progress == progress) {
+                return false;
+            }
+            long sincePosted = now - previous.postedAt;
+            if (sincePosted < PROGRESS_UPDATE_INTERVAL_MS) {
+                if (!trailingProgressScheduled) {
+                    trailingProgressScheduled = true;
+                    handler.postDelayed(trailingProgress, PROGRESS_UPDATE_INTERVAL_MS - sincePosted);
+                }
+                return false;
+            }
+        }
+        posted.put(tag, new PostedNotification(contents, progress, now));
+        return true;
+    }
+
+    private void cancelNotification(String tag, int id) {
+        if (getPosted(id).remove(tag) != null) {
+            notificationManager.cancel(tag, id);
+        }
+    }
+
     private boolean shouldIgnoreEntry(AppUpdateStatusManager.AppUpdateStatus entry) {
         // Ignore unknown status
         if (entry.status == AppUpdateStatusManager.Status.DownloadInterrupted) {
@@ -163,8 +273,8 @@ class NotificationHelper {
 
     private void createNotification(AppUpdateStatusManager.AppUpdateStatus entry) {
         if (shouldIgnoreEntry(entry)) {
-            notificationManager.cancel(entry.getUniqueKey(), NOTIFY_ID_UPDATES);
-            notificationManager.cancel(entry.getUniqueKey(), NOTIFY_ID_INSTALLED);
+            cancelNotification(entry.getUniqueKey(), NOTIFY_ID_UPDATES);
+            cancelNotification(entry.getUniqueKey(), NOTIFY_ID_INSTALLED);
             return;
         }
 
@@ -172,58 +282,89 @@ class NotificationHelper {
             return;
         }
 
-        Notification notification;
+        String contents = getNotificationContents(entry);
+        int progress = entry.status == AppUpdateStatusManager.Status.Downloading
+                ? Utils.bytesToKb(entry.progressCurrent) : 0;
         if (entry.status == AppUpdateStatusManager.Status.Installed) {
             if (useStackedNotifications()) {
-                notification = createInstalledNotification(entry);
-                notificationManager.cancel(entry.getUniqueKey(), NOTIFY_ID_UPDATES);
-                notificationManager.notify(entry.getUniqueKey(), NOTIFY_ID_INSTALLED, notification);
+                cancelNotification(entry.getUniqueKey(), NOTIFY_ID_UPDATES);
+                if (shouldPost(entry.getUniqueKey(), NOTIFY_ID_INSTALLED, contents, progress)) {
+                    notificationManager.notify(entry.getUniqueKey(), NOTIFY_ID_INSTALLED,
+                            createInstalledNotification(entry));
+                }
             } else if (installed.size() == 1) {
-                notification = createInstalledNotification(entry);
-                notificationManager.cancel(entry.getUniqueKey(), NOTIFY_ID_UPDATES);
-                notificationManager.cancel(entry.getUniqueKey(), NOTIFY_ID_INSTALLED);
-                notificationManager.notify(GROUP_INSTALLED, NOTIFY_ID_INSTALLED, notification);
+                cancelNotification(entry.getUniqueKey(), NOTIFY_ID_UPDATES);
+                cancelNotification(entry.getUniqueKey(), NOTIFY_ID_INSTALLED);
+                if (shouldPost(GROUP_INSTALLED, NOTIFY_ID_INSTALLED, contents, progress)) {
+                    notificationManager.notify(GROUP_INSTALLED, NOTIFY_ID_INSTALLED,
+                            createInstalledNotification(entry));
+                }
             }
         } else {
             if (useStackedNotifications()) {
-                notification = createUpdateNotification(entry);
-                notificationManager.cancel(entry.getUniqueKey(), NOTIFY_ID_INSTALLED);
-                notificationManager.notify(entry.getUniqueKey(), NOTIFY_ID_UPDATES, notification);
+                cancelNotification(entry.getUniqueKey(), NOTIFY_ID_INSTALLED);
+                if (shouldPost(entry.getUniqueKey(), NOTIFY_ID_UPDATES, contents, progress)) {
+                    notificationManager.notify(entry.getUniqueKey(), NOTIFY_ID_UPDATES,
+                            createUpdateNotification(entry));
+                }
             } else if (updates.size() == 1) {
-                notification = createUpdateNotification(entry);
-                notificationManager.cancel(entry.getUniqueKey(), NOTIFY_ID_UPDATES);
-                notificationManager.cancel(entry.getUniqueKey(), NOTIFY_ID_INSTALLED);
-                notificationManager.notify(GROUP_UPDATES, NOTIFY_ID_UPDATES, notification);
+                cancelNotification(entry.getUniqueKey(), NOTIFY_ID_UPDATES);
+                cancelNotification(entry.getUniqueKey(), NOTIFY_ID_INSTALLED);
+                if (shouldPost(GROUP_UPDATES, NOTIFY_ID_UPDATES, contents, progress)) {
+                    notificationManager.notify(GROUP_UPDATES, NOTIFY_ID_UPDATES, createUpdateNotification(entry));
+                }
             }
         }
     }
 
+    /**
+     * Everything shown in the notification for {@code entry}, except for the download progress.
+     */
+    private String getNotificationContents(AppUpdateStatusManager.AppUpdateStatus entry) {
+        return entry.getUniqueKey() + '|' + entry.status + '|' + entry.app.name
+                + '|' + entry.progressMax + '|' + (entry.intent == null ? 0 : entry.intent.hashCode())
+                + '|' + (getCachedLargeIcon(entry) != null);
+    }
+
     private void createSummaryNotifications() {
         if (!notificationManager.areNotificationsEnabled() || Preferences.get().hideAllNotifications()) {
             return;
         }
 
-        Notification notification;
         if (updates.size() != 1 || useStackedNotifications()) {
             if (updates.size() == 0) {
                 // No updates, remove summary
-                notificationManager.cancel(GROUP_UPDATES, NOTIFY_ID_UPDATES);
-            } else {
-                notification = createUpdateSummaryNotification(updates);
-                notificationManager.notify(GROUP_UPDATES, NOTIFY_ID_UPDATES, notification);
+                cancelNotification(GROUP_UPDATES, NOTIFY_ID_UPDATES);
+            } else if (shouldPost(GROUP_UPDATES, NOTIFY_ID_UPDATES,
+                    getSummaryContents(updates, MAX_UPDATES_TO_SHOW), 0)) {
+                notificationManager.notify(GROUP_UPDATES, NOTIFY_ID_UPDATES, createUpdateSummaryNotification(updates));
             }
         }
         if (installed.size() != 1 || useStackedNotifications()) {
             if (installed.size() == 0) {
                 // No installed, remove summary
-                notificationManager.cancel(GROUP_INSTALLED, NOTIFY_ID_INSTALLED);
-            } else {
-                notification = createInstalledSummaryNotification(installed);
-                notificationManager.notify(GROUP_INSTALLED, NOTIFY_ID_INSTALLED, notification);
+                cancelNotification(GROUP_INSTALLED, NOTIFY_ID_INSTALLED);
+            } else if (shouldPost(GROUP_INSTALLED, NOTIFY_ID_INSTALLED,
+                    getSummaryContents(installed, MAX_INSTALLED_TO_SHOW), 0)) {
+                notificationManager.notify(GROUP_INSTALLED, NOTIFY_ID_INSTALLED,
+                        createInstalledSummaryNotification(installed));
             }
         }
     }
 
+    /**
+     * Everything shown in a summary notification, which lists the first {@code maxToShow}
+     * of {@code entries} and then how many more there are.
+     */
+    private static String getSummaryContents(List<AppUpdateStatusManager.AppUpdateStatus> entries, int maxToShow) {
+        StringBuilder contents = new StringBuilder("summary|").append(entries.size());
+        for (int i = 0; i < maxToShow && i < entries.size(); i++) {
+            AppUpdateStatusManager.AppUpdateStatus entry = entries.get(i);
+            contents.append('|').append(entry.app.name).append(':').append(entry.status);
+        }
+        return contents.toString();
+    }
+
     private NotificationCompat.Action getAction(AppUpdateStatusManager.AppUpdateStatus entry) {
         if (entry.intent != null) {
             switch (entry.status) {
@@ -496,13 +637,26 @@ class NotificationHelper {
         return new Point(w, h);
     }
 
-    private Bitmap getLargeIconForEntry(AppUpdateStatusManager.AppUpdateStatus entry) {
-        final Point largeIconSize = getLargeIconSize();
-        Bitmap iconLarge = null;
+    /**
+     * The large icon for {@code entry} if it is ready to be shown, without loading anything.
+     */
+    @Nullable
+    private Bitmap getCachedLargeIcon(AppUpdateStatusManager.AppUpdateStatus entry) {
         if (TextUtils.isEmpty(entry.app.iconUrl)) {
             return null;
         } else if (entry.status == AppUpdateStatusManager.Status.Downloading
                 || entry.status == AppUpdateStatusManager.Status.Installing) {
+            return getDownloadingLargeIcon();
+        }
+        return largeIcons.get(entry.app.iconUrl);
+    }
+
+    /**
+     * The same icon is shown for every download, so it only gets drawn once.
+     */
+    private Bitmap getDownloadingLargeIcon() {
+        if (downloadingLargeIcon == null) {
+            final Point largeIconSize = getLargeIconSize();
             Bitmap bitmap = Bitmap.createBitmap(largeIconSize.x, largeIconSize.y, Bitmap.Config.ARGB_8888);
             Canvas canvas = new Canvas(bitmap);
             Drawable downloadIcon = ContextCompat.getDrawable(context, R.drawable.ic_notification_download);
@@ -510,10 +664,22 @@ class NotificationHelper {
                 downloadIcon.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
                 downloadIcon.draw(canvas);
             }
-            return bitmap;
+            downloadingLargeIcon = bitmap;
+        }
+        return downloadingLargeIcon;
+    }
+
+    private Bitmap getLargeIconForEntry(AppUpdateStatusManager.AppUpdateStatus entry) {
+        final Point largeIconSize = getLargeIconSize();
+        Bitmap iconLarge = getCachedLargeIcon(entry);
+        if (iconLarge != null || TextUtils.isEmpty(entry.app.iconUrl)) {
+            return iconLarge;
         } else if (DiskCacheUtils.findInCache(entry.app.iconUrl, ImageLoader.getInstance().getDiskCache()) != null) {
             iconLarge = ImageLoader.getInstance().loadImageSync(
                     entry.app.iconUrl, new ImageSize(largeIconSize.x, largeIconSize.y));
+            if (iconLarge != null) {
+                largeIcons.put(entry.app.iconUrl, iconLarge);
+            }
         } else {
             // Load it for later!
             ImageLoader.getInstance().loadImage(entry.app.iconUrl, new ImageSize(largeIconSize.x, largeIconSize.y), new ImageLoadingListener() {
@@ -537,13 +703,18 @@ class NotificationHelper {
 
                 @Override
                 public void onLoadingComplete(String imageUri, View view, Bitmap loadedImage) {
+                    if (loadedImage == null) {
+                        return;
+                    }
+                    largeIcons.put(imageUri, loadedImage);
+
                     // Need to check that the notification is still valid, and also that the image
                     // is indeed cached now, so we won't get stuck in an endless loop.
                     AppUpdateStatusManager.AppUpdateStatus oldEntry = appUpdateStatusManager.get(entry.getUniqueKey());
                     if (oldEntry != null
                             && oldEntry.app != null
                             && oldEntry.app.iconUrl != null
-                            && DiskCacheUtils.findInCache(oldEntry.app.iconUrl, ImageLoader.getInstance().getDiskCache()) != null) {
+                            && largeIcons.get(oldEntry.app.iconUrl) != null) {
                         createNotification(oldEntry); // Update with new image!
                     }
                 }
@@ -43,6 +43,7 @@ import org.fdroid.fdroid.installer.InstallManagerService;
 import org.fdroid.fdroid.installer.InstallerService;
 import org.fdroid.fdroid.net.Downloader;
 import org.fdroid.fdroid.net.DownloaderFactory;
+import org.fdroid.fdroid.net.DownloaderService;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
@@ -483,7 +484,7 @@ public class RepoUpdater {
                     Utils.debugLog(TAG, repoPushRequest + " already installed, ignoring");
                 } else {
                     Apk apk = ApkProvider.Helper.findApkFromAnyRepo(context, packageName, versionCode);
-                    InstallManagerService.queue(context, app, apk);
+                    InstallManagerService.queue(context, app, apk, DownloaderService.PRIORITY_BACKGROUND);
                 }
             } else if (RepoPushRequest.UNINSTALL.equals(repoPushRequest.request)) {
                 if (packageInfo == null) {
@@ -0,0 +1,112 @@
+package org.fdroid.fdroid;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the startup work of {@link FDroidApp#onCreate()} in stages.  Only what
+ * has to be ready before the first {@link android.app.Activity} draws is run
+ * right away on the main thread.  Everything else is queued up and then run
+ * one after the other on a single background thread, in order of priority,
+ * so that the more important things still happen first without competing
+ * with each other for the CPU.  Each stage is timed, and the timings are
+ * logged once startup is complete.
+ */
+final class StartupInitializer {
+
+    private static final String TAG = "StartupInitializer";
+
+    /**
+     * Things the rest of the app expects to be up to date soon after starting,
+     * like the cache of installed apps.
+     */
+    static final int PRIORITY_HIGH = 0;
+
+    /**
+     * Scheduling jobs and starting services which do their own work later.
+     */
+    static final int PRIORITY_NORMAL = 1;
+
+    /**
+     * Housekeeping that nothing is waiting on.
+     */
+    static final int PRIORITY_LOW = 2;
+
+    private static final class Stage {
+        final String name;
+        final int priority;
+        final Runnable runnable;
+
+        Stage(String name, int priority, Runnable runnable) {
+            this.name = name;
+            this.priority = priority;
+            this.runnable = runnable;
+        }
+    }
+
+    private final long startTime = SystemClock.elapsedRealtime();
+    private final List<Stage> backgroundStages = new ArrayList<>();
+    private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+    /**
+     * Run {@code runnable} right now, on the calling thread.
+     */
+    void runNow(String name, Runnable runnable) {
+        long start = SystemClock.elapsedRealtime();
+        runnable.run();
+        timings.put(name, SystemClock.elapsedRealtime() - start);
+    }
+
+    /**
+     * Queue up {@code runnable} to run on the background thread once
+     * {@link #start()} is called.  Stages with the same priority run in
+     * the order they were added.
+     */
+    void runLater(String name, int priority, Runnable runnable) {
+        backgroundStages.add(new Stage(name, priority, runnable));
+    }
+
+    /**
+     * Logs how long the main thread part took, then starts working through the
+     * background stages.  A stage that throws does not stop the ones after it.
+     */
+    void start() {
+        Utils.debugLog(TAG, "Main thread startup took " + (SystemClock.elapsedRealtime() - startTime)
+                + "ms: " + timings);
+        final List<Stage> stages = new ArrayList<>(backgroundStages);
+        backgroundStages.clear();
+        Collections.sort(stages, new Comparator<Stage>() {
+            @Override
+            public int compare(Stage s1, Stage s2) {
+                return s1.priority - s2.priority;
+            }
+        });
+
+        new Thread(TAG) {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                long start = SystemClock.elapsedRealtime();
+                for (Stage stage : stages) {
+                    long stageStart = SystemClock.elapsedRealtime();
+                    try {
+                        stage.runnable.run();
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Startup stage '" + stage.name + "' failed", e);
+                    }
+                    timings.put(stage.name, SystemClock.elapsedRealtime() - stageStart);
+                }
+                Utils.debugLog(TAG, "Background startup took " + (SystemClock.elapsedRealtime() - start)
+                        + "ms: " + timings);
+            }
+        }.start();
+    }
+}
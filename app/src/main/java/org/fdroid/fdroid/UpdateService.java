@@ -55,6 +55,7 @@ import org.fdroid.fdroid.data.Schema;
 import org.fdroid.fdroid.installer.InstallManagerService;
 import org.fdroid.fdroid.net.BluetoothDownloader;
 import org.fdroid.fdroid.net.ConnectivityMonitorService;
+import org.fdroid.fdroid.net.DownloaderService;
 import org.fdroid.fdroid.views.main.MainActivity;
 
 import java.lang.ref.WeakReference;
@@ -541,7 +542,7 @@ public class UpdateService extends JobIntentService {
         List<App> canUpdate = AppProvider.Helper.findCanUpdate(context, Schema.AppMetadataTable.Cols.ALL);
         for (App app : canUpdate) {
             Apk apk = ApkProvider.Helper.findSuggestedApk(context, app);
-            InstallManagerService.queue(context, app, apk);
+            InstallManagerService.queue(context, app, apk, DownloaderService.PRIORITY_BACKGROUND);
         }
     }
 
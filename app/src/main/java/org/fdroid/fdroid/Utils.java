@@ -83,13 +83,21 @@ public final class Utils {
 
     private static final int BUFFER_SIZE = 4096;
 
-    // The date format used for storing dates (e.g. lastupdated, added) in the
-    // database.
-    private static final SimpleDateFormat DATE_FORMAT =
-            new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
+    // The date format used in the index XML and for the repo timestamps in the
+    // database.  SimpleDateFormat is not thread-safe, so each thread gets its own.
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
+        }
+    };
 
-    private static final SimpleDateFormat TIME_FORMAT =
-            new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss", Locale.ENGLISH);
+    private static final ThreadLocal<SimpleDateFormat> TIME_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss", Locale.ENGLISH);
+        }
+    };
 
     private static final String[] FRIENDLY_SIZE_FORMAT = {
             "%.0f B", "%.0f KiB", "%.1f MiB", "%.2f GiB",
@@ -589,19 +597,19 @@ public final class Utils {
     }
 
     public static Date parseDate(String str, Date fallback) {
-        return parseDateFormat(DATE_FORMAT, str, fallback);
+        return parseDateFormat(DATE_FORMAT.get(), str, fallback);
     }
 
     public static String formatDate(Date date, String fallback) {
-        return formatDateFormat(DATE_FORMAT, date, fallback);
+        return formatDateFormat(DATE_FORMAT.get(), date, fallback);
     }
 
     public static Date parseTime(String str, Date fallback) {
-        return parseDateFormat(TIME_FORMAT, str, fallback);
+        return parseDateFormat(TIME_FORMAT.get(), str, fallback);
     }
 
     public static String formatTime(Date date, String fallback) {
-        return formatDateFormat(TIME_FORMAT, date, fallback);
+        return formatDateFormat(TIME_FORMAT.get(), date, fallback);
     }
 
     /**
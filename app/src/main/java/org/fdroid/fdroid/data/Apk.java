@@ -38,7 +38,8 @@ import java.util.HashSet;
  * <b>NOTE:</b>If an instance variable is only meant for internal state, and not for
  * representing data coming from the server, then it must also be decorated with
  * {@code @JsonIgnore} to prevent abuse!  The tests for
- * {@link org.fdroid.fdroid.IndexV1Updater} will also have to be updated.
+ * {@link org.fdroid.fdroid.IndexV1Updater} will also have to be updated, and
+ * {@link IndexV1Decoder} should read the new field too.
  *
  * @see <a href="https://gitlab.com/fdroid/fdroiddata">fdroiddata</a>
  * @see <a href="https://gitlab.com/fdroid/fdroidserver">fdroidserver</a>
@@ -159,97 +160,218 @@ public class Apk extends ValueObject implements Comparable<Apk>, Parcelable {
         repoId = 0;
     }
 
-    public Apk(Cursor cursor) {
+    private static final int COLUMN_IGNORED = -1;
+    private static final int COLUMN_APP_ID = 0;
+    private static final int COLUMN_HASH = 1;
+    private static final int COLUMN_HASH_TYPE = 2;
+    private static final int COLUMN_ADDED_DATE = 3;
+    private static final int COLUMN_FEATURES = 4;
+    private static final int COLUMN_PACKAGE_PACKAGE_NAME = 5;
+    private static final int COLUMN_IS_COMPATIBLE = 6;
+    private static final int COLUMN_MIN_SDK_VERSION = 7;
+    private static final int COLUMN_TARGET_SDK_VERSION = 8;
+    private static final int COLUMN_MAX_SDK_VERSION = 9;
+    private static final int COLUMN_OBB_MAIN_FILE = 10;
+    private static final int COLUMN_OBB_MAIN_FILE_SHA256 = 11;
+    private static final int COLUMN_OBB_PATCH_FILE = 12;
+    private static final int COLUMN_OBB_PATCH_FILE_SHA256 = 13;
+    private static final int COLUMN_NAME = 14;
+    private static final int COLUMN_REQUESTED_PERMISSIONS = 15;
+    private static final int COLUMN_NATIVE_CODE = 16;
+    private static final int COLUMN_INCOMPATIBLE_REASONS = 17;
+    private static final int COLUMN_REPO_ID = 18;
+    private static final int COLUMN_SIGNATURE = 19;
+    private static final int COLUMN_SIZE = 20;
+    private static final int COLUMN_SOURCE_NAME = 21;
+    private static final int COLUMN_VERSION_NAME = 22;
+    private static final int COLUMN_VERSION_CODE = 23;
+    private static final int COLUMN_REPO_VERSION = 24;
+    private static final int COLUMN_REPO_ADDRESS = 25;
+    private static final int COLUMN_ANTI_FEATURES_ANTI_FEATURES = 26;
 
+    public Apk(Cursor cursor) {
         checkCursorPosition(cursor);
+        readFromCursor(cursor, getColumnIds(cursor));
+    }
+
+    /**
+     * Reads {@link Apk} instances from the rows of a single {@link Cursor}.  The
+     * column names are only looked at once, when this is created, instead of
+     * for every row, which adds up when reading thousands of rows.
+     */
+    public static final class CursorDecoder {
+        private final int[] columnIds;
+
+        public CursorDecoder(Cursor cursor) {
+            columnIds = getColumnIds(cursor);
+        }
+
+        public Apk decode(Cursor cursor) {
+            Apk apk = new Apk();
+            apk.checkCursorPosition(cursor);
+            apk.readFromCursor(cursor, columnIds);
+            return apk;
+        }
+    }
+
+    private static int[] getColumnIds(Cursor cursor) {
+        int[] columnIds = new int[cursor.getColumnCount()];
+        for (int i = 0; i < columnIds.length; i++) {
+            columnIds[i] = getColumnId(cursor.getColumnName(i));
+        }
+        return columnIds;
+    }
 
-        for (int i = 0; i < cursor.getColumnCount(); i++) {
-            switch (cursor.getColumnName(i)) {
-                case Cols.APP_ID:
+    private static int getColumnId(String n) {
+        switch (n) {
+            case Cols.APP_ID:
+                return COLUMN_APP_ID;
+            case Cols.HASH:
+                return COLUMN_HASH;
+            case Cols.HASH_TYPE:
+                return COLUMN_HASH_TYPE;
+            case Cols.ADDED_DATE:
+                return COLUMN_ADDED_DATE;
+            case Cols.FEATURES:
+                return COLUMN_FEATURES;
+            case Cols.Package.PACKAGE_NAME:
+                return COLUMN_PACKAGE_PACKAGE_NAME;
+            case Cols.IS_COMPATIBLE:
+                return COLUMN_IS_COMPATIBLE;
+            case Cols.MIN_SDK_VERSION:
+                return COLUMN_MIN_SDK_VERSION;
+            case Cols.TARGET_SDK_VERSION:
+                return COLUMN_TARGET_SDK_VERSION;
+            case Cols.MAX_SDK_VERSION:
+                return COLUMN_MAX_SDK_VERSION;
+            case Cols.OBB_MAIN_FILE:
+                return COLUMN_OBB_MAIN_FILE;
+            case Cols.OBB_MAIN_FILE_SHA256:
+                return COLUMN_OBB_MAIN_FILE_SHA256;
+            case Cols.OBB_PATCH_FILE:
+                return COLUMN_OBB_PATCH_FILE;
+            case Cols.OBB_PATCH_FILE_SHA256:
+                return COLUMN_OBB_PATCH_FILE_SHA256;
+            case Cols.NAME:
+                return COLUMN_NAME;
+            case Cols.REQUESTED_PERMISSIONS:
+                return COLUMN_REQUESTED_PERMISSIONS;
+            case Cols.NATIVE_CODE:
+                return COLUMN_NATIVE_CODE;
+            case Cols.INCOMPATIBLE_REASONS:
+                return COLUMN_INCOMPATIBLE_REASONS;
+            case Cols.REPO_ID:
+                return COLUMN_REPO_ID;
+            case Cols.SIGNATURE:
+                return COLUMN_SIGNATURE;
+            case Cols.SIZE:
+                return COLUMN_SIZE;
+            case Cols.SOURCE_NAME:
+                return COLUMN_SOURCE_NAME;
+            case Cols.VERSION_NAME:
+                return COLUMN_VERSION_NAME;
+            case Cols.VERSION_CODE:
+                return COLUMN_VERSION_CODE;
+            case Cols.Repo.VERSION:
+                return COLUMN_REPO_VERSION;
+            case Cols.Repo.ADDRESS:
+                return COLUMN_REPO_ADDRESS;
+            case Cols.AntiFeatures.ANTI_FEATURES:
+                return COLUMN_ANTI_FEATURES_ANTI_FEATURES;
+            default:
+                return COLUMN_IGNORED;
+        }
+    }
+
+    private void readFromCursor(Cursor cursor, int[] columnIds) {
+        for (int i = 0; i < columnIds.length; i++) {
+            switch (columnIds[i]) {
+                case COLUMN_APP_ID:
                     appId = cursor.getLong(i);
                     break;
-                case Cols.HASH:
+                case COLUMN_HASH:
                     hash = cursor.getString(i);
                     break;
-                case Cols.HASH_TYPE:
+                case COLUMN_HASH_TYPE:
                     hashType = cursor.getString(i);
                     break;
-                case Cols.ADDED_DATE:
-                    added = Utils.parseDate(cursor.getString(i), null);
+                case COLUMN_ADDED_DATE:
+                    added = getDate(cursor, i);
                     break;
-                case Cols.FEATURES:
+                case COLUMN_FEATURES:
                     features = Utils.parseCommaSeparatedString(cursor.getString(i));
                     break;
-                case Cols.Package.PACKAGE_NAME:
+                case COLUMN_PACKAGE_PACKAGE_NAME:
                     packageName = cursor.getString(i);
                     break;
-                case Cols.IS_COMPATIBLE:
+                case COLUMN_IS_COMPATIBLE:
                     compatible = cursor.getInt(i) == 1;
                     break;
-                case Cols.MIN_SDK_VERSION:
+                case COLUMN_MIN_SDK_VERSION:
                     minSdkVersion = cursor.getInt(i);
                     break;
-                case Cols.TARGET_SDK_VERSION:
+                case COLUMN_TARGET_SDK_VERSION:
                     targetSdkVersion = cursor.getInt(i);
                     break;
-                case Cols.MAX_SDK_VERSION:
+                case COLUMN_MAX_SDK_VERSION:
                     maxSdkVersion = cursor.getInt(i);
                     break;
-                case Cols.OBB_MAIN_FILE:
+                case COLUMN_OBB_MAIN_FILE:
                     obbMainFile = cursor.getString(i);
                     break;
-                case Cols.OBB_MAIN_FILE_SHA256:
+                case COLUMN_OBB_MAIN_FILE_SHA256:
                     obbMainFileSha256 = cursor.getString(i);
                     break;
-                case Cols.OBB_PATCH_FILE:
+                case COLUMN_OBB_PATCH_FILE:
                     obbPatchFile = cursor.getString(i);
                     break;
-                case Cols.OBB_PATCH_FILE_SHA256:
+                case COLUMN_OBB_PATCH_FILE_SHA256:
                     obbPatchFileSha256 = cursor.getString(i);
                     break;
-                case Cols.NAME:
+                case COLUMN_NAME:
                     apkName = cursor.getString(i);
                     break;
-                case Cols.REQUESTED_PERMISSIONS:
+                case COLUMN_REQUESTED_PERMISSIONS:
                     requestedPermissions = convertToRequestedPermissions(cursor.getString(i));
                     break;
-                case Cols.NATIVE_CODE:
+                case COLUMN_NATIVE_CODE:
                     nativecode = Utils.parseCommaSeparatedString(cursor.getString(i));
                     break;
-                case Cols.INCOMPATIBLE_REASONS:
+                case COLUMN_INCOMPATIBLE_REASONS:
                     incompatibleReasons = Utils.parseCommaSeparatedString(cursor.getString(i));
                     break;
-                case Cols.REPO_ID:
+                case COLUMN_REPO_ID:
                     repoId = cursor.getInt(i);
                     break;
-                case Cols.SIGNATURE:
+                case COLUMN_SIGNATURE:
                     sig = cursor.getString(i);
                     break;
-                case Cols.SIZE:
+                case COLUMN_SIZE:
                     size = cursor.getInt(i);
                     break;
-                case Cols.SOURCE_NAME:
+                case COLUMN_SOURCE_NAME:
                     srcname = cursor.getString(i);
                     break;
-                case Cols.VERSION_NAME:
+                case COLUMN_VERSION_NAME:
                     versionName = cursor.getString(i);
                     break;
-                case Cols.VERSION_CODE:
+                case COLUMN_VERSION_CODE:
                     versionCode = cursor.getInt(i);
                     break;
-                case Cols.Repo.VERSION:
+                case COLUMN_REPO_VERSION:
                     repoVersion = cursor.getInt(i);
                     break;
-                case Cols.Repo.ADDRESS:
+                case COLUMN_REPO_ADDRESS:
                     repoAddress = cursor.getString(i);
                     break;
-                case Cols.AntiFeatures.ANTI_FEATURES:
+                case COLUMN_ANTI_FEATURES_ANTI_FEATURES:
                     antiFeatures = Utils.parseCommaSeparatedString(cursor.getString(i));
                     break;
             }
         }
     }
 
+
     private void checkRepoAddress() {
         if (repoAddress == null || apkName == null) {
             throw new IllegalStateException(
@@ -349,7 +471,7 @@ public class Apk extends ValueObject implements Comparable<Apk>, Parcelable {
         values.put(Cols.OBB_MAIN_FILE_SHA256, obbMainFileSha256);
         values.put(Cols.OBB_PATCH_FILE, obbPatchFile);
         values.put(Cols.OBB_PATCH_FILE_SHA256, obbPatchFileSha256);
-        values.put(Cols.ADDED_DATE, Utils.formatDate(added, ""));
+        values.put(Cols.ADDED_DATE, added == null ? null : added.getTime());
         values.put(Cols.REQUESTED_PERMISSIONS, Utils.serializeCommaSeparatedString(requestedPermissions));
         values.put(Cols.FEATURES, Utils.serializeCommaSeparatedString(features));
         values.put(Cols.NATIVE_CODE, Utils.serializeCommaSeparatedString(nativecode));
@@ -462,14 +584,12 @@ public class Apk extends ValueObject implements Comparable<Apk>, Parcelable {
     }
 
     @JsonProperty("uses-permission")
-    @SuppressWarnings("unused")
-    private void setUsesPermission(Object[][] permissions) {
+    void setUsesPermission(Object[][] permissions) {
         setRequestedPermissions(permissions, 0);
     }
 
     @JsonProperty("uses-permission-sdk-23")
-    @SuppressWarnings("unused")
-    private void setUsesPermissionSdk23(Object[][] permissions) {
+    void setUsesPermissionSdk23(Object[][] permissions) {
         setRequestedPermissions(permissions, 23);
     }
 
@@ -63,9 +63,10 @@ public class ApkProvider extends FDroidProvider {
             List<Apk> apks = new ArrayList<>(knownApkCount);
             if (cursor != null) {
                 if (knownApkCount > 0) {
+                    Apk.CursorDecoder decoder = new Apk.CursorDecoder(cursor);
                     cursor.moveToFirst();
                     while (!cursor.isAfterLast()) {
-                        apks.add(new Apk(cursor));
+                        apks.add(decoder.decode(cursor));
                         cursor.moveToNext();
                     }
                 }
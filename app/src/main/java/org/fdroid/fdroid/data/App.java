@@ -7,12 +7,9 @@ import android.content.pm.FeatureInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.res.AssetManager;
-import android.content.res.Resources;
 import android.content.res.XmlResourceParser;
 import android.database.Cursor;
-import android.os.Build;
 import android.os.Environment;
-import android.os.LocaleList;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
@@ -27,6 +24,7 @@ import org.fdroid.fdroid.FDroidApp;
 import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.data.Schema.AppMetadataTable.Cols;
+import org.fdroid.fdroid.data.Schema.LocalizedTable;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -42,11 +40,8 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Matcher;
@@ -65,7 +60,8 @@ import java.util.regex.Pattern;
  * <b>NOTE:</b>If an instance variable is only meant for internal state, and not for
  * representing data coming from the server, then it must also be decorated with
  * {@code @JsonIgnore} to prevent abuse!  The tests for
- * {@link org.fdroid.fdroid.IndexV1Updater} will also have to be updated.
+ * {@link org.fdroid.fdroid.IndexV1Updater} will also have to be updated, and
+ * {@link IndexV1Decoder} should read the new field too.
  *
  * @see <a href="https://gitlab.com/fdroid/fdroiddata">fdroiddata</a>
  * @see <a href="https://gitlab.com/fdroid/fdroidserver">fdroidserver</a>
@@ -98,6 +94,20 @@ public class App extends ValueObject implements Comparable<App>, Parcelable {
     public String preferredSigner;
     @JsonIgnore
     public boolean isApk;
+    /**
+     * The whole {@code localized} block from the index, kept until this app is
+     * saved so that every locale can be written to {@link Schema.LocalizedTable}.
+     */
+    @JsonIgnore
+    private Map<String, Map<String, Object>> localizedEntries;
+    /**
+     * The {@link Schema.LocalizedTable#TEXTS} as they were right before and right after
+     * {@link #setLocalized(Map)}, to tell the inline values from the localized ones.
+     */
+    @JsonIgnore
+    private String[] unlocalizedTexts;
+    @JsonIgnore
+    private String[] localizedTexts;
 
     /**
      * This is primarily for the purpose of saving app metadata when parsing an index.xml file.
@@ -218,150 +228,318 @@ public class App extends ValueObject implements Comparable<App>, Parcelable {
     public App() {
     }
 
-    public App(final Cursor cursor) {
-
+    private static final int COLUMN_IGNORED = -1;
+    private static final int COLUMN_ROW_ID = 0;
+    private static final int COLUMN_REPO_ID = 1;
+    private static final int COLUMN_IS_COMPATIBLE = 2;
+    private static final int COLUMN_PACKAGE_PACKAGE_NAME = 3;
+    private static final int COLUMN_NAME = 4;
+    private static final int COLUMN_SUMMARY = 5;
+    private static final int COLUMN_ICON = 6;
+    private static final int COLUMN_DESCRIPTION = 7;
+    private static final int COLUMN_WHATSNEW = 8;
+    private static final int COLUMN_LICENSE = 9;
+    private static final int COLUMN_AUTHOR_NAME = 10;
+    private static final int COLUMN_AUTHOR_EMAIL = 11;
+    private static final int COLUMN_WEBSITE = 12;
+    private static final int COLUMN_ISSUE_TRACKER = 13;
+    private static final int COLUMN_SOURCE_CODE = 14;
+    private static final int COLUMN_VIDEO = 15;
+    private static final int COLUMN_CHANGELOG = 16;
+    private static final int COLUMN_DONATE = 17;
+    private static final int COLUMN_BITCOIN = 18;
+    private static final int COLUMN_LITECOIN = 19;
+    private static final int COLUMN_FLATTR_ID = 20;
+    private static final int COLUMN_LIBERAPAY_ID = 21;
+    private static final int COLUMN_SUGGESTED_APK_VERSION_NAME = 22;
+    private static final int COLUMN_PREFERRED_SIGNER = 23;
+    private static final int COLUMN_SUGGESTED_VERSION_CODE = 24;
+    private static final int COLUMN_UPSTREAM_VERSION_CODE = 25;
+    private static final int COLUMN_UPSTREAM_VERSION_NAME = 26;
+    private static final int COLUMN_ADDED = 27;
+    private static final int COLUMN_LAST_UPDATED = 28;
+    private static final int COLUMN_ANTI_FEATURES = 29;
+    private static final int COLUMN_REQUIREMENTS = 30;
+    private static final int COLUMN_ICON_URL = 31;
+    private static final int COLUMN_FEATURE_GRAPHIC = 32;
+    private static final int COLUMN_PROMO_GRAPHIC = 33;
+    private static final int COLUMN_TV_BANNER = 34;
+    private static final int COLUMN_PHONE_SCREENSHOTS = 35;
+    private static final int COLUMN_SEVEN_INCH_SCREENSHOTS = 36;
+    private static final int COLUMN_TEN_INCH_SCREENSHOTS = 37;
+    private static final int COLUMN_TV_SCREENSHOTS = 38;
+    private static final int COLUMN_WEAR_SCREENSHOTS = 39;
+    private static final int COLUMN_IS_APK = 40;
+    private static final int COLUMN_INSTALLED_APP_VERSION_CODE = 41;
+    private static final int COLUMN_INSTALLED_APP_VERSION_NAME = 42;
+    private static final int COLUMN_INSTALLED_APP_SIGNATURE = 43;
+
+    public App(Cursor cursor) {
         checkCursorPosition(cursor);
+        readFromCursor(cursor, getColumnIds(cursor));
+    }
+
+    /**
+     * Reads {@link App} instances from the rows of a single {@link Cursor}.  The
+     * column names are only looked at once, when this is created, instead of
+     * for every row, which adds up when reading thousands of rows.
+     */
+    public static final class CursorDecoder {
+        private final int[] columnIds;
+
+        public CursorDecoder(Cursor cursor) {
+            columnIds = getColumnIds(cursor);
+        }
+
+        public App decode(Cursor cursor) {
+            App app = new App();
+            app.checkCursorPosition(cursor);
+            app.readFromCursor(cursor, columnIds);
+            return app;
+        }
+    }
+
+    private static int[] getColumnIds(Cursor cursor) {
+        int[] columnIds = new int[cursor.getColumnCount()];
+        for (int i = 0; i < columnIds.length; i++) {
+            columnIds[i] = getColumnId(cursor.getColumnName(i));
+        }
+        return columnIds;
+    }
+
+    private static int getColumnId(String n) {
+        switch (n) {
+            case Cols.ROW_ID:
+                return COLUMN_ROW_ID;
+            case Cols.REPO_ID:
+                return COLUMN_REPO_ID;
+            case Cols.IS_COMPATIBLE:
+                return COLUMN_IS_COMPATIBLE;
+            case Cols.Package.PACKAGE_NAME:
+                return COLUMN_PACKAGE_PACKAGE_NAME;
+            case Cols.NAME:
+                return COLUMN_NAME;
+            case Cols.SUMMARY:
+                return COLUMN_SUMMARY;
+            case Cols.ICON:
+                return COLUMN_ICON;
+            case Cols.DESCRIPTION:
+                return COLUMN_DESCRIPTION;
+            case Cols.WHATSNEW:
+                return COLUMN_WHATSNEW;
+            case Cols.LICENSE:
+                return COLUMN_LICENSE;
+            case Cols.AUTHOR_NAME:
+                return COLUMN_AUTHOR_NAME;
+            case Cols.AUTHOR_EMAIL:
+                return COLUMN_AUTHOR_EMAIL;
+            case Cols.WEBSITE:
+                return COLUMN_WEBSITE;
+            case Cols.ISSUE_TRACKER:
+                return COLUMN_ISSUE_TRACKER;
+            case Cols.SOURCE_CODE:
+                return COLUMN_SOURCE_CODE;
+            case Cols.VIDEO:
+                return COLUMN_VIDEO;
+            case Cols.CHANGELOG:
+                return COLUMN_CHANGELOG;
+            case Cols.DONATE:
+                return COLUMN_DONATE;
+            case Cols.BITCOIN:
+                return COLUMN_BITCOIN;
+            case Cols.LITECOIN:
+                return COLUMN_LITECOIN;
+            case Cols.FLATTR_ID:
+                return COLUMN_FLATTR_ID;
+            case Cols.LIBERAPAY_ID:
+                return COLUMN_LIBERAPAY_ID;
+            case Cols.SuggestedApk.VERSION_NAME:
+                return COLUMN_SUGGESTED_APK_VERSION_NAME;
+            case Cols.PREFERRED_SIGNER:
+                return COLUMN_PREFERRED_SIGNER;
+            case Cols.SUGGESTED_VERSION_CODE:
+                return COLUMN_SUGGESTED_VERSION_CODE;
+            case Cols.UPSTREAM_VERSION_CODE:
+                return COLUMN_UPSTREAM_VERSION_CODE;
+            case Cols.UPSTREAM_VERSION_NAME:
+                return COLUMN_UPSTREAM_VERSION_NAME;
+            case Cols.ADDED:
+                return COLUMN_ADDED;
+            case Cols.LAST_UPDATED:
+                return COLUMN_LAST_UPDATED;
+            case Cols.ANTI_FEATURES:
+                return COLUMN_ANTI_FEATURES;
+            case Cols.REQUIREMENTS:
+                return COLUMN_REQUIREMENTS;
+            case Cols.ICON_URL:
+                return COLUMN_ICON_URL;
+            case Cols.FEATURE_GRAPHIC:
+                return COLUMN_FEATURE_GRAPHIC;
+            case Cols.PROMO_GRAPHIC:
+                return COLUMN_PROMO_GRAPHIC;
+            case Cols.TV_BANNER:
+                return COLUMN_TV_BANNER;
+            case Cols.PHONE_SCREENSHOTS:
+                return COLUMN_PHONE_SCREENSHOTS;
+            case Cols.SEVEN_INCH_SCREENSHOTS:
+                return COLUMN_SEVEN_INCH_SCREENSHOTS;
+            case Cols.TEN_INCH_SCREENSHOTS:
+                return COLUMN_TEN_INCH_SCREENSHOTS;
+            case Cols.TV_SCREENSHOTS:
+                return COLUMN_TV_SCREENSHOTS;
+            case Cols.WEAR_SCREENSHOTS:
+                return COLUMN_WEAR_SCREENSHOTS;
+            case Cols.IS_APK:
+                return COLUMN_IS_APK;
+            case Cols.InstalledApp.VERSION_CODE:
+                return COLUMN_INSTALLED_APP_VERSION_CODE;
+            case Cols.InstalledApp.VERSION_NAME:
+                return COLUMN_INSTALLED_APP_VERSION_NAME;
+            case Cols.InstalledApp.SIGNATURE:
+                return COLUMN_INSTALLED_APP_SIGNATURE;
+            case "_id":
+                return COLUMN_IGNORED;
+            default:
+                Log.e(TAG, "Unknown column name " + n);
+                return COLUMN_IGNORED;
+        }
+    }
 
-        final int cursorColumnCount = cursor.getColumnCount();
-        for (int i = 0; i < cursorColumnCount; i++) {
-            final String n = cursor.getColumnName(i);
-            switch (n) {
-                case Cols.ROW_ID:
+    private void readFromCursor(Cursor cursor, int[] columnIds) {
+        for (int i = 0; i < columnIds.length; i++) {
+            switch (columnIds[i]) {
+                case COLUMN_ROW_ID:
                     id = cursor.getLong(i);
                     break;
-                case Cols.REPO_ID:
+                case COLUMN_REPO_ID:
                     repoId = cursor.getLong(i);
                     break;
-                case Cols.IS_COMPATIBLE:
+                case COLUMN_IS_COMPATIBLE:
                     compatible = cursor.getInt(i) == 1;
                     break;
-                case Cols.Package.PACKAGE_NAME:
+                case COLUMN_PACKAGE_PACKAGE_NAME:
                     packageName = cursor.getString(i);
                     break;
-                case Cols.NAME:
+                case COLUMN_NAME:
                     name = cursor.getString(i);
                     break;
-                case Cols.SUMMARY:
+                case COLUMN_SUMMARY:
                     summary = cursor.getString(i);
                     break;
-                case Cols.ICON:
+                case COLUMN_ICON:
                     icon = cursor.getString(i);
                     break;
-                case Cols.DESCRIPTION:
+                case COLUMN_DESCRIPTION:
                     description = cursor.getString(i);
                     break;
-                case Cols.WHATSNEW:
+                case COLUMN_WHATSNEW:
                     whatsNew = cursor.getString(i);
                     break;
-                case Cols.LICENSE:
+                case COLUMN_LICENSE:
                     license = cursor.getString(i);
                     break;
-                case Cols.AUTHOR_NAME:
+                case COLUMN_AUTHOR_NAME:
                     authorName = cursor.getString(i);
                     break;
-                case Cols.AUTHOR_EMAIL:
+                case COLUMN_AUTHOR_EMAIL:
                     authorEmail = cursor.getString(i);
                     break;
-                case Cols.WEBSITE:
+                case COLUMN_WEBSITE:
                     webSite = cursor.getString(i);
                     break;
-                case Cols.ISSUE_TRACKER:
+                case COLUMN_ISSUE_TRACKER:
                     issueTracker = cursor.getString(i);
                     break;
-                case Cols.SOURCE_CODE:
+                case COLUMN_SOURCE_CODE:
                     sourceCode = cursor.getString(i);
                     break;
-                case Cols.VIDEO:
+                case COLUMN_VIDEO:
                     video = cursor.getString(i);
                     break;
-                case Cols.CHANGELOG:
+                case COLUMN_CHANGELOG:
                     changelog = cursor.getString(i);
                     break;
-                case Cols.DONATE:
+                case COLUMN_DONATE:
                     donate = cursor.getString(i);
                     break;
-                case Cols.BITCOIN:
+                case COLUMN_BITCOIN:
                     bitcoin = cursor.getString(i);
                     break;
-                case Cols.LITECOIN:
+                case COLUMN_LITECOIN:
                     litecoin = cursor.getString(i);
                     break;
-                case Cols.FLATTR_ID:
+                case COLUMN_FLATTR_ID:
                     flattrID = cursor.getString(i);
                     break;
-                case Cols.LIBERAPAY_ID:
+                case COLUMN_LIBERAPAY_ID:
                     liberapayID = cursor.getString(i);
                     break;
-                case Cols.SuggestedApk.VERSION_NAME:
+                case COLUMN_SUGGESTED_APK_VERSION_NAME:
                     suggestedVersionName = cursor.getString(i);
                     break;
-                case Cols.PREFERRED_SIGNER:
+                case COLUMN_PREFERRED_SIGNER:
                     preferredSigner = cursor.getString(i);
                     break;
-                case Cols.SUGGESTED_VERSION_CODE:
+                case COLUMN_SUGGESTED_VERSION_CODE:
                     suggestedVersionCode = cursor.getInt(i);
                     break;
-                case Cols.UPSTREAM_VERSION_CODE:
+                case COLUMN_UPSTREAM_VERSION_CODE:
                     upstreamVersionCode = cursor.getInt(i);
                     break;
-                case Cols.UPSTREAM_VERSION_NAME:
+                case COLUMN_UPSTREAM_VERSION_NAME:
                     upstreamVersionName = cursor.getString(i);
                     break;
-                case Cols.ADDED:
-                    added = Utils.parseDate(cursor.getString(i), null);
+                case COLUMN_ADDED:
+                    added = getDate(cursor, i);
                     break;
-                case Cols.LAST_UPDATED:
-                    lastUpdated = Utils.parseDate(cursor.getString(i), null);
+                case COLUMN_LAST_UPDATED:
+                    lastUpdated = getDate(cursor, i);
                     break;
-                case Cols.ANTI_FEATURES:
+                case COLUMN_ANTI_FEATURES:
                     antiFeatures = Utils.parseCommaSeparatedString(cursor.getString(i));
                     break;
-                case Cols.REQUIREMENTS:
+                case COLUMN_REQUIREMENTS:
                     requirements = Utils.parseCommaSeparatedString(cursor.getString(i));
                     break;
-                case Cols.ICON_URL:
+                case COLUMN_ICON_URL:
                     iconUrl = cursor.getString(i);
                     break;
-                case Cols.FEATURE_GRAPHIC:
+                case COLUMN_FEATURE_GRAPHIC:
                     featureGraphic = cursor.getString(i);
                     break;
-                case Cols.PROMO_GRAPHIC:
+                case COLUMN_PROMO_GRAPHIC:
                     promoGraphic = cursor.getString(i);
                     break;
-                case Cols.TV_BANNER:
+                case COLUMN_TV_BANNER:
                     tvBanner = cursor.getString(i);
                     break;
-                case Cols.PHONE_SCREENSHOTS:
+                case COLUMN_PHONE_SCREENSHOTS:
                     phoneScreenshots = Utils.parseCommaSeparatedString(cursor.getString(i));
                     break;
-                case Cols.SEVEN_INCH_SCREENSHOTS:
+                case COLUMN_SEVEN_INCH_SCREENSHOTS:
                     sevenInchScreenshots = Utils.parseCommaSeparatedString(cursor.getString(i));
                     break;
-                case Cols.TEN_INCH_SCREENSHOTS:
+                case COLUMN_TEN_INCH_SCREENSHOTS:
                     tenInchScreenshots = Utils.parseCommaSeparatedString(cursor.getString(i));
                     break;
-                case Cols.TV_SCREENSHOTS:
+                case COLUMN_TV_SCREENSHOTS:
                     tvScreenshots = Utils.parseCommaSeparatedString(cursor.getString(i));
                     break;
-                case Cols.WEAR_SCREENSHOTS:
+                case COLUMN_WEAR_SCREENSHOTS:
                     wearScreenshots = Utils.parseCommaSeparatedString(cursor.getString(i));
                     break;
-                case Cols.IS_APK:
+                case COLUMN_IS_APK:
                     isApk = cursor.getInt(i) == 1;
                     break;
-                case Cols.InstalledApp.VERSION_CODE:
+                case COLUMN_INSTALLED_APP_VERSION_CODE:
                     installedVersionCode = cursor.getInt(i);
                     break;
-                case Cols.InstalledApp.VERSION_NAME:
+                case COLUMN_INSTALLED_APP_VERSION_NAME:
                     installedVersionName = cursor.getString(i);
                     break;
-                case Cols.InstalledApp.SIGNATURE:
+                case COLUMN_INSTALLED_APP_SIGNATURE:
                     installedSig = cursor.getString(i);
                     break;
-                case "_id":
-                    break;
-                default:
-                    Log.e(TAG, "Unknown column name " + n);
             }
         }
     }
@@ -402,7 +580,7 @@ public class App extends ValueObject implements Comparable<App>, Parcelable {
      * the setting of {@link App#description} to insert the format method.
      */
     @JsonProperty("description")
-    private void setDescription(String description) { // NOPMD
+    void setDescription(String description) {
         this.description = formatDescription(description);
     }
 
@@ -454,157 +632,201 @@ public class App extends ValueObject implements Comparable<App>, Parcelable {
      * on other country-specific locales, rather than English.
      */
     @JsonProperty("localized")
-    private void setLocalized(Map<String, Map<String, Object>> localized) { // NOPMD
-        Locale defaultLocale = Locale.getDefault();
-        String languageTag = defaultLocale.getLanguage();
-        String countryTag = defaultLocale.getCountry();
-        String localeTag;
-        if (TextUtils.isEmpty(countryTag)) {
-            localeTag = languageTag;
-        } else {
-            localeTag = languageTag + "-" + countryTag;
-        }
+    void setLocalized(Map<String, Map<String, Object>> localized) {
+        localizedEntries = localized;
+        unlocalizedTexts = getTexts();
+
+        String nameValue = null;
+        String summaryValue = null;
+        String descriptionValue = null;
+        String videoValue = null;
+        whatsNew = null;
+        featureGraphic = null;
+        promoGraphic = null;
+        tvBanner = null;
+        wearScreenshots = null;
+        phoneScreenshots = null;
+        sevenInchScreenshots = null;
+        tenInchScreenshots = null;
+        tvScreenshots = null;
+
+        // Each locale might not have all the fields, so go through them best first,
+        // and only take what the better ones did not have.
+        for (String locale : PreferredLocales.get().choose(localized)) {
+            Map<String, Object> fields = localized.get(locale);
+            if (fields == null) {
+                continue;
+            }
+            if (whatsNew == null) {
+                whatsNew = getLocalizedString(fields, "whatsNew");
+            }
+            if (videoValue == null) {
+                videoValue = getLocalizedString(fields, "video");
+            }
+            if (nameValue == null) {
+                nameValue = getLocalizedString(fields, "name");
+            }
+            if (summaryValue == null) {
+                summaryValue = getLocalizedString(fields, "summary");
+            }
+            if (descriptionValue == null) {
+                descriptionValue = getLocalizedString(fields, "description");
+            }
 
-        Set<String> availableLocales = localized.keySet();
-        Set<String> localesToUse = new LinkedHashSet<>();
-        if (availableLocales.contains(localeTag)) {
-            localesToUse.add(localeTag);
-        }
-        if (availableLocales.contains(languageTag)) {
-            localesToUse.add(languageTag);
-        }
-        if (Build.VERSION.SDK_INT >= 24) {
-            LocaleList localeList = Resources.getSystem().getConfiguration().getLocales();
-            String[] sortedLocaleList = localeList.toLanguageTags().split(",");
-            Arrays.sort(sortedLocaleList, new java.util.Comparator<String>() {
-                @Override
-                public int compare(String s1, String s2) {
-                    return s1.length() - s2.length();
-                }
-            });
-            for (String toUse : sortedLocaleList) {
-                localesToUse.add(toUse);
-                for (String l : availableLocales) {
-                    if (l.equals(toUse.split("-")[0])) {
-                        localesToUse.add(l);
-                        break;
-                    }
-                }
+            if (featureGraphic == null) {
+                featureGraphic = getLocalizedGraphic(fields, locale, "featureGraphic");
             }
-        } else {
-            for (String l : availableLocales) {
-                if (l.startsWith(languageTag)) {
-                    localesToUse.add(l);
-                }
+            if (promoGraphic == null) {
+                promoGraphic = getLocalizedGraphic(fields, locale, "promoGraphic");
             }
-        }
-        if (availableLocales.contains("en-US")) {
-            localesToUse.add("en-US");
-        }
-        for (String l : availableLocales) {
-            if (l.startsWith("en")) {
-                localesToUse.add(l);
-                break;
+            if (tvBanner == null) {
+                tvBanner = getLocalizedGraphic(fields, locale, "tvBanner");
+            }
+
+            if (wearScreenshots == null) {
+                wearScreenshots = getLocalizedList(fields, locale, "wearScreenshots");
+            }
+            if (phoneScreenshots == null) {
+                phoneScreenshots = getLocalizedList(fields, locale, "phoneScreenshots");
+            }
+            if (sevenInchScreenshots == null) {
+                sevenInchScreenshots = getLocalizedList(fields, locale, "sevenInchScreenshots");
+            }
+            if (tenInchScreenshots == null) {
+                tenInchScreenshots = getLocalizedList(fields, locale, "tenInchScreenshots");
+            }
+            if (tvScreenshots == null) {
+                tvScreenshots = getLocalizedList(fields, locale, "tvScreenshots");
             }
         }
 
-        whatsNew = getLocalizedEntry(localized, localesToUse, "whatsNew");
-        String value = getLocalizedEntry(localized, localesToUse, "video");
-        if (!TextUtils.isEmpty(value)) {
-            video = value.split("\n", 1)[0];
+        if (!TextUtils.isEmpty(videoValue)) {
+            video = videoValue.split("\n", 1)[0];
         }
-        value = getLocalizedEntry(localized, localesToUse, "name");
-        if (!TextUtils.isEmpty(value)) {
-            name = value;
+        if (!TextUtils.isEmpty(nameValue)) {
+            name = nameValue;
         }
-        value = getLocalizedEntry(localized, localesToUse, "summary");
-        if (!TextUtils.isEmpty(value)) {
-            summary = value;
+        if (!TextUtils.isEmpty(summaryValue)) {
+            summary = summaryValue;
         }
-        value = getLocalizedEntry(localized, localesToUse, "description");
-        if (!TextUtils.isEmpty(value)) {
-            description = formatDescription(value);
+        if (!TextUtils.isEmpty(descriptionValue)) {
+            description = formatDescription(descriptionValue);
         }
 
-        featureGraphic = getLocalizedGraphicsEntry(localized, localesToUse, "featureGraphic");
-        promoGraphic = getLocalizedGraphicsEntry(localized, localesToUse, "promoGraphic");
-        tvBanner = getLocalizedGraphicsEntry(localized, localesToUse, "tvBanner");
-
-        wearScreenshots = getLocalizedListEntry(localized, localesToUse, "wearScreenshots");
-        phoneScreenshots = getLocalizedListEntry(localized, localesToUse, "phoneScreenshots");
-        sevenInchScreenshots = getLocalizedListEntry(localized, localesToUse, "sevenInchScreenshots");
-        tenInchScreenshots = getLocalizedListEntry(localized, localesToUse, "tenInchScreenshots");
-        tvScreenshots = getLocalizedListEntry(localized, localesToUse, "tvScreenshots");
+        if (wearScreenshots == null) {
+            wearScreenshots = new String[0];
+        }
+        if (phoneScreenshots == null) {
+            phoneScreenshots = new String[0];
+        }
+        if (sevenInchScreenshots == null) {
+            sevenInchScreenshots = new String[0];
+        }
+        if (tenInchScreenshots == null) {
+            tenInchScreenshots = new String[0];
+        }
+        if (tvScreenshots == null) {
+            tvScreenshots = new String[0];
+        }
+        localizedTexts = getTexts();
     }
 
     /**
-     * Returns the right localized version of this entry, based on an immitation of
-     * the logic that Android/Java uses.  On Android >= 24, this can get the
-     * "Language Priority List", but it doesn't always seem to be properly sorted.
-     * So this method has to kind of fake it by using {@link Locale#getDefault()}
-     * as the first entry, then sorting the rest based on length (e.g. {@code de-AT}
-     * before {@code de}).
-     *
-     * @see LocaleList
-     * @see Locale#getDefault()
-     * @see java.util.Locale.LanguageRange
+     * @return the values of {@link Schema.LocalizedTable#TEXTS}, in that order
      */
-    private String getLocalizedEntry(Map<String, Map<String, Object>> localized,
-                                     Set<String> locales, String key) {
-        try {
-            for (String locale : locales) {
-                if (localized.containsKey(locale)) {
-                    String value = (String) localized.get(locale).get(key);
-                    if (value != null) {
-                        return value;
-                    }
-                }
-            }
-        } catch (ClassCastException e) {
-            Utils.debugLog(TAG, e.getMessage());
+    private String[] getTexts() {
+        return new String[]{name, summary, description, video};
+    }
+
+    @Nullable
+    private static String getLocalizedGraphic(Map<String, Object> fields, String locale, String key) {
+        Object value = fields.get(key);
+        if (value != null && value.toString().length() > 0) {
+            return locale + "/" + value;
         }
         return null;
     }
 
-    private String getLocalizedGraphicsEntry(Map<String, Map<String, Object>> localized,
-                                             Set<String> locales, String key) {
-        try {
-            for (String locale : locales) {
-                Map<String, Object> entry = localized.get(locale);
-                if (entry != null) {
-                    Object value = entry.get(key);
-                    if (value != null && value.toString().length() > 0) {
-                        return locale + "/" + value;
-                    }
-                }
-            }
-        } catch (ClassCastException e) {
-            Utils.debugLog(TAG, e.getMessage());
+    @Nullable
+    private static String[] getLocalizedList(Map<String, Object> fields, String locale, String key) {
+        Object value = fields.get(key);
+        if (!(value instanceof List) || ((List<?>) value).isEmpty()) {
+            return null;
         }
-        return null;
+        List<?> files = (List<?>) value;
+        String[] result = new String[files.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = locale + "/" + key + "/" + files.get(i);
+        }
+        return result;
     }
 
-    private String[] getLocalizedListEntry(Map<String, Map<String, Object>> localized,
-                                           Set<String> locales, String key) {
-        try {
-            for (String locale : locales) {
-                if (localized.containsKey(locale)) {
-                    ArrayList<String> entry = (ArrayList<String>) localized.get(locale).get(key);
-                    if (entry != null && entry.size() > 0) {
-                        String[] result = new String[entry.size()];
-                        int i = 0;
-                        for (String e : entry) {
-                            result[i] = locale + "/" + key + "/" + e;
-                            i++;
-                        }
-                        return result;
+    /**
+     * Converts each locale in the {@code localized} block into a row for
+     * {@link Schema.LocalizedTable}.  The values are stored in the same form
+     * that {@link #setLocalized(Map)} puts them into this instance, so that
+     * {@link AppProvider} can pick a different locale later on by just copying
+     * the row over, rather than needing the index again.  There is also a row for
+     * {@link Schema.LocalizedTable#BASE_LOCALE}, with the inline texts from the index
+     * for when none of the locales fit.
+     */
+    @NonNull
+    public List<ContentValues> getLocalizedContentValues() {
+        if (localizedEntries == null) {
+            return Collections.emptyList();
+        }
+        List<ContentValues> rows = new ArrayList<>(localizedEntries.size() + 1);
+
+        ContentValues base = new ContentValues();
+        base.put(LocalizedTable.Cols.LOCALE, LocalizedTable.BASE_LOCALE);
+        String[] texts = getTexts();
+        for (int i = 0; i < texts.length; i++) {
+            // anything changed since setLocalized() was set from the inline value coming after it
+            boolean inlineAfter = !TextUtils.equals(texts[i], localizedTexts[i]);
+            base.put(LocalizedTable.TEXTS[i], inlineAfter ? texts[i] : unlocalizedTexts[i]);
+        }
+        rows.add(base);
+
+        for (Map.Entry<String, Map<String, Object>> entry : localizedEntries.entrySet()) {
+            String locale = entry.getKey();
+            Map<String, Object> fields = entry.getValue();
+            if (fields == null) {
+                continue;
+            }
+            ContentValues values = new ContentValues();
+            values.put(LocalizedTable.Cols.LOCALE, locale);
+            values.put(LocalizedTable.Cols.NAME, getLocalizedString(fields, "name"));
+            values.put(LocalizedTable.Cols.SUMMARY, getLocalizedString(fields, "summary"));
+            String value = getLocalizedString(fields, "description");
+            values.put(LocalizedTable.Cols.DESCRIPTION, value == null ? null : formatDescription(value));
+            values.put(LocalizedTable.Cols.WHATSNEW, getLocalizedString(fields, "whatsNew"));
+            value = getLocalizedString(fields, "video");
+            values.put(LocalizedTable.Cols.VIDEO, TextUtils.isEmpty(value) ? null : value.split("\n", 1)[0]);
+            for (String key : LocalizedTable.GRAPHICS) {
+                value = getLocalizedString(fields, key);
+                values.put(key, TextUtils.isEmpty(value) ? null : locale + "/" + value);
+            }
+            for (String key : LocalizedTable.SCREENSHOTS) {
+                Object list = fields.get(key);
+                String[] screenshots = null;
+                if (list instanceof List) {
+                    List<?> files = (List<?>) list;
+                    screenshots = new String[files.size()];
+                    for (int i = 0; i < screenshots.length; i++) {
+                        screenshots[i] = locale + "/" + key + "/" + files.get(i);
                     }
                 }
+                values.put(key, Utils.serializeCommaSeparatedString(screenshots));
             }
-        } catch (ClassCastException e) {
-            Utils.debugLog(TAG, e.getMessage());
+            rows.add(values);
         }
-        return new String[0];
+        return rows;
+    }
+
+    @Nullable
+    private static String getLocalizedString(Map<String, Object> fields, String key) {
+        Object value = fields.get(key);
+        return value instanceof String ? (String) value : null;
     }
 
     /**
@@ -918,8 +1140,8 @@ public class App extends ValueObject implements Comparable<App>, Parcelable {
         values.put(Cols.LITECOIN, litecoin);
         values.put(Cols.FLATTR_ID, flattrID);
         values.put(Cols.LIBERAPAY_ID, liberapayID);
-        values.put(Cols.ADDED, Utils.formatDate(added, ""));
-        values.put(Cols.LAST_UPDATED, Utils.formatDate(lastUpdated, ""));
+        values.put(Cols.ADDED, added == null ? null : added.getTime());
+        values.put(Cols.LAST_UPDATED, lastUpdated == null ? null : lastUpdated.getTime());
         values.put(Cols.PREFERRED_SIGNER, preferredSigner);
         values.put(Cols.SUGGESTED_VERSION_CODE, suggestedVersionCode);
         values.put(Cols.UPSTREAM_VERSION_NAME, upstreamVersionName);
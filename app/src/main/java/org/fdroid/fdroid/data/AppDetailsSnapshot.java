@@ -0,0 +1,124 @@
+package org.fdroid.fdroid.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything {@link org.fdroid.fdroid.AppDetails2} shows about an app, read in one go.
+ * Before, the app was read on the UI thread when opening the screen, then its versions,
+ * then the repo of each version as it scrolled into view, and then whatever the header
+ * needed to decide which buttons to show.  Apps with lots of versions made opening
+ * the screen and scrolling through the versions noticeably slow.
+ * <p>
+ * {@link #load(Context, String)} does all of that in a single read transaction on a
+ * background thread, so the different parts are consistent with each other even if an
+ * index update is running at the same time.  The UI then only reads from this, and
+ * never has to touch the database itself.  None of it, including {@link #app}, should
+ * be changed once loaded, a new snapshot gets loaded instead.
+ */
+public final class AppDetailsSnapshot {
+
+    @NonNull
+    public final App app;
+
+    /**
+     * All versions of {@link #app} from all repos, including a dummy one for the installed
+     * version if it is not in any repo.  This is not filtered by compatibility or signature.
+     */
+    public final List<Apk> apks;
+
+    /**
+     * The installed media file, if {@link #app} is not an APK.
+     */
+    @Nullable
+    public final Apk mediaApk;
+
+    public final boolean installed;
+    public final boolean uninstallable;
+
+    public final String[] screenshots;
+
+    @Nullable
+    public final String featureGraphicUrl;
+
+    private final Map<Long, String> repoNames;
+
+    private AppDetailsSnapshot(@NonNull App app, List<Apk> apks, @Nullable Apk mediaApk, boolean installed,
+                               boolean uninstallable, String[] screenshots, @Nullable String featureGraphicUrl,
+                               Map<Long, String> repoNames) {
+        this.app = app;
+        this.apks = apks;
+        this.mediaApk = mediaApk;
+        this.installed = installed;
+        this.uninstallable = uninstallable;
+        this.screenshots = screenshots;
+        this.featureGraphicUrl = featureGraphicUrl;
+        this.repoNames = repoNames;
+    }
+
+    /**
+     * @return The name of the repo with the id {@code repoId}, or null if it was removed.
+     */
+    @Nullable
+    public String getRepoName(long repoId) {
+        return repoNames.get(repoId);
+    }
+
+    /**
+     * @return The snapshot of the highest priority metadata for {@code packageName},
+     * or null if no repo has an app with that package name.
+     */
+    @Nullable
+    public static AppDetailsSnapshot load(Context context, String packageName) {
+        // The providers all share this connection, so their queries below run inside this transaction.
+        SQLiteDatabase db = DBHelper.getInstance(context).getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try {
+            App app = AppProvider.Helper.findHighestPriorityMetadata(context.getContentResolver(), packageName);
+            if (app == null) {
+                return null;
+            }
+
+            // Caches the prefs in the app, so the UI doesn't have to read them later.
+            app.getPrefs(context);
+
+            List<Apk> apks = new ArrayList<>(ApkProvider.Helper.findByPackageName(context, packageName));
+            Apk installedApk = app.getInstalledApk(context);
+            // These conditions should be enough to determine if the installedApk
+            // is a generated dummy or a proper APK containing data from a repository.
+            if (installedApk != null && installedApk.added == null && installedApk.sig == null) {
+                installedApk.compatible = true;
+                installedApk.sig = app.installedSig;
+                installedApk.maxSdkVersion = -1;
+                apks.add(installedApk);
+            }
+
+            Map<Long, String> repoNames = new HashMap<>();
+            for (Repo repo : RepoProvider.Helper.all(context)) {
+                repoNames.put(repo.getId(), repo.getName());
+            }
+
+            AppDetailsSnapshot snapshot = new AppDetailsSnapshot(
+                    app,
+                    Collections.unmodifiableList(apks),
+                    app.isApk ? null : app.getMediaApkifInstalled(context),
+                    app.isInstalled(context),
+                    app.isUninstallable(context),
+                    app.getAllScreenshots(context),
+                    app.getFeatureGraphicUrl(context),
+                    repoNames);
+            db.setTransactionSuccessful();
+            return snapshot;
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.fdroid.fdroid.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import org.fdroid.fdroid.data.Schema.AppMetadataTable.Cols;
+
+import java.util.Date;
+
+/**
+ * The few bits of an {@link App} needed to show it as a card in a list, e.g. on the
+ * "What's New" screen or in the category previews.  Loading a full {@link App} for
+ * each row means reading and holding on to descriptions, screenshot lists, donation
+ * links and so on, none of which get shown.  Query with
+ * {@link AppProvider#LIST_ITEM_PROJECTION} and read the rows using a
+ * {@link CursorDecoder}.
+ */
+public final class AppListItem extends ValueObject {
+
+    public final long repoId;
+    public final String packageName;
+    public final String name;
+    public final String summary;
+    public final String iconUrl;
+
+    @Nullable
+    public final String featureGraphic;
+
+    @Nullable
+    public final Date added;
+
+    @Nullable
+    public final Date lastUpdated;
+
+    private AppListItem(long repoId, String packageName, String name, String summary, String iconUrl,
+                        @Nullable String featureGraphic, @Nullable Date added, @Nullable Date lastUpdated) {
+        this.repoId = repoId;
+        this.packageName = packageName;
+        this.name = name;
+        this.summary = summary;
+        this.iconUrl = iconUrl;
+        this.featureGraphic = featureGraphic;
+        this.added = added;
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * @see App#getFeatureGraphicUrl(Context)
+     */
+    @Nullable
+    public String getFeatureGraphicUrl(Context context) {
+        if (TextUtils.isEmpty(featureGraphic)) {
+            return null;
+        }
+        Repo repo = RepoProvider.Helper.findById(context, repoId);
+        return repo.address + "/" + packageName + "/" + featureGraphic;
+    }
+
+    /**
+     * Looks up the index of each column once, so that each row after that is
+     * only a handful of {@link Cursor} reads.  The cursor needs to have been
+     * queried with {@link AppProvider#LIST_ITEM_PROJECTION}.
+     */
+    public static final class CursorDecoder {
+        private final int repoId;
+        private final int packageName;
+        private final int name;
+        private final int summary;
+        private final int iconUrl;
+        private final int featureGraphic;
+        private final int added;
+        private final int lastUpdated;
+
+        public CursorDecoder(Cursor cursor) {
+            repoId = cursor.getColumnIndexOrThrow(Cols.REPO_ID);
+            packageName = cursor.getColumnIndexOrThrow(Cols.Package.PACKAGE_NAME);
+            name = cursor.getColumnIndexOrThrow(Cols.NAME);
+            summary = cursor.getColumnIndexOrThrow(Cols.SUMMARY);
+            iconUrl = cursor.getColumnIndexOrThrow(Cols.ICON_URL);
+            featureGraphic = cursor.getColumnIndexOrThrow(Cols.FEATURE_GRAPHIC);
+            added = cursor.getColumnIndexOrThrow(Cols.ADDED);
+            lastUpdated = cursor.getColumnIndexOrThrow(Cols.LAST_UPDATED);
+        }
+
+        public AppListItem decode(Cursor cursor) {
+            return new AppListItem(
+                    cursor.getLong(repoId),
+                    cursor.getString(packageName),
+                    cursor.getString(name),
+                    cursor.getString(summary),
+                    cursor.getString(iconUrl),
+                    cursor.getString(featureGraphic),
+                    getDate(cursor, added),
+                    getDate(cursor, lastUpdated));
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -20,6 +21,7 @@ import org.fdroid.fdroid.data.Schema.AppPrefsTable;
 import org.fdroid.fdroid.data.Schema.CatJoinTable;
 import org.fdroid.fdroid.data.Schema.CategoryTable;
 import org.fdroid.fdroid.data.Schema.InstalledAppTable;
+import org.fdroid.fdroid.data.Schema.LocalizedTable;
 import org.fdroid.fdroid.data.Schema.PackageTable;
 import org.fdroid.fdroid.data.Schema.RepoTable;
 
@@ -51,6 +53,26 @@ public class AppProvider extends FDroidProvider {
 
     private static final String TAG = "AppProvider";
 
+    /**
+     * Only what is needed to show an app as a card, see {@link AppListItem}.
+     */
+    public static final String[] LIST_ITEM_PROJECTION = {
+            Cols.REPO_ID, Cols.Package.PACKAGE_NAME, Cols.NAME, Cols.SUMMARY, Cols.ICON_URL,
+            Cols.FEATURE_GRAPHIC, Cols.ADDED, Cols.LAST_UPDATED,
+    };
+
+    /**
+     * Only what an {@link org.fdroid.fdroid.views.apps.AppListItemController} needs to show an
+     * app, work out its install/update status and queue it for install.  Leaves out all the
+     * long text and screenshots which make up most of an {@link App} read with {@link Cols#ALL}.
+     */
+    public static final String[] APP_LIST_PROJECTION = {
+            Cols.ROW_ID, Cols.REPO_ID, Cols.Package.PACKAGE_NAME, Cols.NAME, Cols.SUMMARY, Cols.ICON_URL,
+            Cols.IS_COMPATIBLE, Cols.IS_APK, Cols.ANTI_FEATURES, Cols.PREFERRED_SIGNER,
+            Cols.SUGGESTED_VERSION_CODE, Cols.SuggestedApk.VERSION_NAME, Cols.UPSTREAM_VERSION_CODE,
+            Cols.InstalledApp.VERSION_CODE, Cols.InstalledApp.VERSION_NAME, Cols.InstalledApp.SIGNATURE,
+    };
+
     public static final class Helper {
 
         private Helper() { }
@@ -70,9 +92,10 @@ public class AppProvider extends FDroidProvider {
             List<App> apps = new ArrayList<>(knownAppCount);
             if (cursor != null) {
                 if (knownAppCount > 0) {
+                    App.CursorDecoder decoder = new App.CursorDecoder(cursor);
                     cursor.moveToFirst();
                     while (!cursor.isAfterLast()) {
-                        apps.add(new App(cursor));
+                        apps.add(decoder.decode(cursor));
                         cursor.moveToNext();
                     }
                 }
@@ -136,6 +159,25 @@ public class AppProvider extends FDroidProvider {
             context.getContentResolver().query(uri, null, null, null, null);
         }
 
+        /**
+         * Picks the localized texts and graphics of every app again from
+         * {@link LocalizedTable}, based on the current locale settings.
+         * This touches the database a lot, so don't call it on the UI thread.
+         */
+        public static void updateLocalizedFields(Context context) {
+            Uri uri = Uri.withAppendedPath(AppProvider.getContentUri(), PATH_CALC_LOCALIZED);
+            context.getContentResolver().update(uri, null, null, null);
+        }
+
+        /**
+         * Updates the compatible flag of each app from its apks, then the suggested
+         * versions, for when only the compatibility of the apks has changed.
+         */
+        public static void recalculateCompatibility(Context context) {
+            Uri uri = Uri.withAppendedPath(AppProvider.getContentUri(), PATH_CALC_COMPATIBLE);
+            context.getContentResolver().update(uri, null, null, null);
+        }
+
         public static List<App> findInstalledAppsWithKnownVulns(Context context) {
             Uri uri = getInstalledWithKnownVulnsUri();
             Cursor cursor = context.getContentResolver().query(uri, Cols.ALL, null, null, null);
@@ -438,6 +480,8 @@ public class AppProvider extends FDroidProvider {
     private static final String PATH_INSTALLED = "installed";
     private static final String PATH_CAN_UPDATE = "canUpdate";
     private static final String PATH_SEARCH = "search";
+    private static final String QUERY_OFFSET = "offset";
+    private static final String QUERY_LIMIT = "limit";
     private static final String PATH_SEARCH_REPO = "searchRepo";
     protected static final String PATH_APPS = "apps";
     protected static final String PATH_SPECIFIC_APP = "app";
@@ -449,6 +493,8 @@ public class AppProvider extends FDroidProvider {
     private static final String PATH_CALC_SUGGESTED_APKS = "calcNonRepoDetailsFromIndex";
     private static final String PATH_TOP_FROM_CATEGORY = "topFromCategory";
     private static final String PATH_INSTALLED_WITH_KNOWN_VULNS = "installedWithKnownVulns";
+    private static final String PATH_CALC_LOCALIZED = "calcLocalized";
+    private static final String PATH_CALC_COMPATIBLE = "calcCompatible";
 
     private static final int CAN_UPDATE = CODE_SINGLE + 1;
     private static final int INSTALLED = CAN_UPDATE + 1;
@@ -463,6 +509,8 @@ public class AppProvider extends FDroidProvider {
     private static final int CALC_PREFERRED_METADATA = HIGHEST_PRIORITY + 1;
     private static final int TOP_FROM_CATEGORY = CALC_PREFERRED_METADATA + 1;
     private static final int INSTALLED_WITH_KNOWN_VULNS = TOP_FROM_CATEGORY + 1;
+    private static final int CALC_LOCALIZED = INSTALLED_WITH_KNOWN_VULNS + 1;
+    private static final int CALC_COMPATIBLE = CALC_LOCALIZED + 1;
 
     static {
         MATCHER.addURI(getAuthority(), null, CODE_LIST);
@@ -481,6 +529,8 @@ public class AppProvider extends FDroidProvider {
         MATCHER.addURI(getAuthority(), PATH_CALC_PREFERRED_METADATA, CALC_PREFERRED_METADATA);
         MATCHER.addURI(getAuthority(), PATH_TOP_FROM_CATEGORY + "/#/*", TOP_FROM_CATEGORY);
         MATCHER.addURI(getAuthority(), PATH_INSTALLED_WITH_KNOWN_VULNS, INSTALLED_WITH_KNOWN_VULNS);
+        MATCHER.addURI(getAuthority(), PATH_CALC_LOCALIZED, CALC_LOCALIZED);
+        MATCHER.addURI(getAuthority(), PATH_CALC_COMPATIBLE, CALC_COMPATIBLE);
     }
 
     public static Uri getContentUri() {
@@ -571,6 +621,19 @@ public class AppProvider extends FDroidProvider {
         return builder.build();
     }
 
+    /**
+     * Restricts any of the app list {@link Uri}s to a single page of results, so that
+     * long lists can be read bit by bit instead of all at once.  The rows are
+     * additionally sorted by {@link Cols#ROW_ID}, so that apps which tie on the
+     * requested sort order keep the same place across pages.
+     */
+    public static Uri getPageUri(Uri uri, int offset, int limit) {
+        return uri.buildUpon()
+                .appendQueryParameter(QUERY_OFFSET, Integer.toString(offset))
+                .appendQueryParameter(QUERY_LIMIT, Integer.toString(limit))
+                .build();
+    }
+
     public static Uri getSearchUri(Repo repo, String query) {
         return getContentUri().buildUpon()
             .appendPath(PATH_SEARCH_REPO)
@@ -592,6 +655,10 @@ public class AppProvider extends FDroidProvider {
         return ApkTable.NAME;
     }
 
+    protected String getLocalizedTableName() {
+        return LocalizedTable.NAME;
+    }
+
     protected String getApkAntiFeatureJoinTableName() {
         return ApkAntiFeatureJoinTable.NAME;
     }
@@ -857,7 +924,8 @@ public class AppProvider extends FDroidProvider {
                 String table = getTableName();
                 String isNew = table + "." + Cols.LAST_UPDATED + " <= " + table + "." + Cols.ADDED + " DESC";
                 String hasFeatureGraphic = table + "." + Cols.FEATURE_GRAPHIC + " IS NULL ASC ";
-                String lastUpdated = table + "." + Cols.LAST_UPDATED + " DESC";
+                // lastUpdated is in milliseconds, so group by day for the tie-breakers to mean anything
+                String lastUpdated = "(" + table + "." + Cols.LAST_UPDATED + " / 86400000) DESC";
                 sortOrder = lastUpdated + ", " + isNew + ", " + hasFeatureGraphic;
 
                 // There seems no reason to limit the number of apps on the front page, but it helps
@@ -883,6 +951,12 @@ public class AppProvider extends FDroidProvider {
             selection = selection.add(queryHighestPriority());
         }
 
+        String pageLimit = uri.getQueryParameter(QUERY_LIMIT);
+        if (pageLimit != null) {
+            int offset = Integer.parseInt(uri.getQueryParameter(QUERY_OFFSET));
+            return runQuery(uri, selection, projection, includeSwap, sortOrder, Integer.parseInt(pageLimit), offset);
+        }
+
         return runQuery(uri, selection, projection, includeSwap, sortOrder, limit);
     }
 
@@ -891,6 +965,15 @@ public class AppProvider extends FDroidProvider {
      * by the repo updater ({@link TempAppProvider}).
      */
     protected Cursor runQuery(Uri uri, AppQuerySelection selection, String[] projection, boolean includeSwap, String sortOrder, int limit) {
+        return runQuery(uri, selection, projection, includeSwap, sortOrder, limit, -1);
+    }
+
+    /**
+     * @param offset If this is a page of a longer list (see {@link #getPageUri(Uri, int, int)}),
+     *               how many rows to skip, otherwise -1.
+     */
+    private Cursor runQuery(Uri uri, AppQuerySelection selection, String[] projection, boolean includeSwap,
+                            String sortOrder, int limit, int offset) {
         if (!includeSwap) {
             selection = selection.add(queryExcludeSwap());
         }
@@ -899,13 +982,19 @@ public class AppProvider extends FDroidProvider {
             sortOrder = getTableName() + "." + sortOrder + " COLLATE LOCALIZED ";
         }
 
+        if (offset >= 0) {
+            String rowId = getTableName() + "." + Cols.ROW_ID;
+            sortOrder = TextUtils.isEmpty(sortOrder) ? rowId : sortOrder + ", " + rowId;
+        }
+
         Query query = new Query();
         query.addSelection(selection);
         query.addFields(projection); // TODO: Make the order of addFields/addSelection not dependent on each other...
         query.addOrderBy(sortOrder);
         query.addLimit(limit);
+        query.addOffset(Math.max(offset, 0));
 
-        Cursor cursor = LoggingQuery.query(db(), query.toString(), query.getArgs());
+        Cursor cursor = LoggingQuery.query(db(), query.toString(), query.getArgs(), getCancellationSignal());
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
         return cursor;
     }
@@ -924,6 +1013,11 @@ public class AppProvider extends FDroidProvider {
                 "(SELECT " + Cols.ROW_ID + " FROM " + app + " WHERE " + app + "." + Cols.REPO_ID + " = ?)";
         db().execSQL(query, new String[] {String.valueOf(repoId)});
 
+        final String localized = getLocalizedTableName();
+        query = "DELETE FROM " + localized + " WHERE " + LocalizedTable.Cols.APP_METADATA_ID + " IN " +
+                "(SELECT " + Cols.ROW_ID + " FROM " + app + " WHERE " + app + "." + Cols.REPO_ID + " = ?)";
+        db().execSQL(query, new String[] {String.valueOf(repoId)});
+
         AppQuerySelection selection = new AppQuerySelection(where, whereArgs).add(queryRepo(repoId));
         int result = db().delete(getTableName(), selection.getSelection(), selection.getArgs());
 
@@ -996,7 +1090,20 @@ public class AppProvider extends FDroidProvider {
 
     @Override
     public int update(@NonNull Uri uri, ContentValues values, String where, String[] whereArgs) {
-        if (MATCHER.match(uri) != CALC_SUGGESTED_APKS) {
+        int match = MATCHER.match(uri);
+        if (match == CALC_LOCALIZED) {
+            updateLocalizedFields();
+            getContext().getContentResolver().notifyChange(AppProvider.getContentUri(), null);
+            return 0;
+        }
+        if (match == CALC_COMPATIBLE) {
+            updateCompatibleFlags();
+            updateSuggestedApks();
+            getContext().getContentResolver().notifyChange(AppProvider.getContentUri(), null);
+            getContext().getContentResolver().notifyChange(ApkProvider.getContentUri(), null);
+            return 0;
+        }
+        if (match != CALC_SUGGESTED_APKS) {
             throw new UnsupportedOperationException("Update not supported for " + uri + ".");
         }
 
@@ -1045,6 +1152,66 @@ public class AppProvider extends FDroidProvider {
         updateSuggestedFromLatest(packageName);
     }
 
+    /**
+     * Copies the best matching locale for each app from {@link LocalizedTable} into
+     * the app metadata table, following the same preferences as
+     * {@link App#setLocalized(java.util.Map)}.  Only apps which have a
+     * {@code localized} block are touched.  Texts fall back to the inline values
+     * from the index in the {@link LocalizedTable#BASE_LOCALE} row, while graphics,
+     * screenshots and "what's new" are cleared, just like when parsing the index.
+     * Only rows saved before there were base rows keep what is already there.
+     */
+    private void updateLocalizedFields() {
+        Utils.debugLog(TAG, "Picking the localized metadata for the current locale.");
+
+        final String app = getTableName();
+        final String localized = getLocalizedTableName();
+        final String rank = getLocaleRank("l." + LocalizedTable.Cols.LOCALE);
+
+        StringBuilder set = new StringBuilder();
+        for (String column : LocalizedTable.TEXTS) {
+            set.append(set.length() == 0 ? "" : ", ").append(column)
+                    .append(" = COALESCE(").append(bestLocalized(localized, column, rank)).append(", ")
+                    .append(baseLocalized(localized, column)).append(", ").append(column).append(')');
+        }
+        for (String column : LocalizedTable.LOCALE_ONLY) {
+            set.append(", ").append(column).append(" = ").append(bestLocalized(localized, column, rank));
+        }
+
+        String updateSql = "UPDATE " + app + " SET " + set +
+                " WHERE " + Cols.ROW_ID + " IN (SELECT " + LocalizedTable.Cols.APP_METADATA_ID + " FROM " + localized + ")";
+
+        db().execSQL(updateSql);
+    }
+
+    private String baseLocalized(String localized, String column) {
+        return "(SELECT b." + column +
+                " FROM " + localized + " AS b" +
+                " WHERE b." + LocalizedTable.Cols.APP_METADATA_ID + " = " + getTableName() + "." + Cols.ROW_ID +
+                " AND b." + LocalizedTable.Cols.LOCALE + " = " +
+                DatabaseUtils.sqlEscapeString(LocalizedTable.BASE_LOCALE) + ")";
+    }
+
+    private String bestLocalized(String localized, String column, String rank) {
+        return "(SELECT l." + column +
+                " FROM " + localized + " AS l" +
+                " WHERE l." + LocalizedTable.Cols.APP_METADATA_ID + " = " + getTableName() + "." + Cols.ROW_ID +
+                " AND l." + column + " IS NOT NULL AND l." + column + " != '' AND " + rank + " >= 0" +
+                " ORDER BY " + rank + ", l." + LocalizedTable.Cols.LOCALE + " LIMIT 1)";
+    }
+
+    /**
+     * An SQL expression ranking {@code localeColumn}, lower is better, and
+     * {@code -1} meaning the locale should not be used at all.  Ties are to be
+     * broken by the locale name, like {@link PreferredLocales#choose(java.util.Map)} does.
+     *
+     * @see App#setLocalized(java.util.Map)
+     */
+    static String getLocaleRank(String localeColumn) {
+        // the locale settings might have changed since the last time, so read them again
+        return PreferredLocales.refresh().getRankSql(localeColumn);
+    }
+
     private void updatePreferredMetadata() {
         Utils.debugLog(TAG, "Deciding on which metadata should take priority for each package.");
 
@@ -40,6 +40,7 @@ import org.fdroid.fdroid.data.Schema.AppMetadataTable;
 import org.fdroid.fdroid.data.Schema.AppPrefsTable;
 import org.fdroid.fdroid.data.Schema.CatJoinTable;
 import org.fdroid.fdroid.data.Schema.InstalledAppTable;
+import org.fdroid.fdroid.data.Schema.LocalizedTable;
 import org.fdroid.fdroid.data.Schema.PackageTable;
 import org.fdroid.fdroid.data.Schema.RepoTable;
 
@@ -114,7 +115,7 @@ public class DBHelper extends SQLiteOpenHelper {
                     + ApkTable.Cols.FEATURES + " string, "
                     + ApkTable.Cols.NATIVE_CODE + " string, "
                     + ApkTable.Cols.HASH_TYPE + " string, "
-                    + ApkTable.Cols.ADDED_DATE + " string, "
+                    + ApkTable.Cols.ADDED_DATE + " integer, "
                     + ApkTable.Cols.IS_COMPATIBLE + " int not null, "
                     + ApkTable.Cols.INCOMPATIBLE_REASONS + " text"
                     + ");";
@@ -147,8 +148,8 @@ public class DBHelper extends SQLiteOpenHelper {
             + AppMetadataTable.Cols.FLATTR_ID + " string,"
             + AppMetadataTable.Cols.LIBERAPAY_ID + " string,"
             + AppMetadataTable.Cols.REQUIREMENTS + " string,"
-            + AppMetadataTable.Cols.ADDED + " string,"
-            + AppMetadataTable.Cols.LAST_UPDATED + " string,"
+            + AppMetadataTable.Cols.ADDED + " integer,"
+            + AppMetadataTable.Cols.LAST_UPDATED + " integer,"
             + AppMetadataTable.Cols.IS_COMPATIBLE + " int not null,"
             + AppMetadataTable.Cols.ICON_URL + " text, "
             + AppMetadataTable.Cols.FEATURE_GRAPHIC + " string,"
@@ -215,7 +216,32 @@ public class DBHelper extends SQLiteOpenHelper {
             + "primary key(" + ApkAntiFeatureJoinTable.Cols.APK_ID + ", " + ApkAntiFeatureJoinTable.Cols.ANTI_FEATURE_ID + ") "
             + " );";
 
-    protected static final int DB_VERSION = 79;
+    /**
+     * The primary key starts with the app metadata id, so that looking up all
+     * the locales for one app can use the primary key index.
+     * @see DBHelper#CREATE_TABLE_CAT_JOIN
+     */
+    static final String CREATE_TABLE_LOCALIZED = "CREATE TABLE " + LocalizedTable.NAME
+            + " ( "
+            + LocalizedTable.Cols.APP_METADATA_ID + " INT NOT NULL, "
+            + LocalizedTable.Cols.LOCALE + " TEXT NOT NULL, "
+            + LocalizedTable.Cols.NAME + " TEXT, "
+            + LocalizedTable.Cols.SUMMARY + " TEXT, "
+            + LocalizedTable.Cols.DESCRIPTION + " TEXT, "
+            + LocalizedTable.Cols.WHATSNEW + " TEXT, "
+            + LocalizedTable.Cols.VIDEO + " TEXT, "
+            + LocalizedTable.Cols.FEATURE_GRAPHIC + " TEXT, "
+            + LocalizedTable.Cols.PROMO_GRAPHIC + " TEXT, "
+            + LocalizedTable.Cols.TV_BANNER + " TEXT, "
+            + LocalizedTable.Cols.PHONE_SCREENSHOTS + " TEXT, "
+            + LocalizedTable.Cols.SEVEN_INCH_SCREENSHOTS + " TEXT, "
+            + LocalizedTable.Cols.TEN_INCH_SCREENSHOTS + " TEXT, "
+            + LocalizedTable.Cols.TV_SCREENSHOTS + " TEXT, "
+            + LocalizedTable.Cols.WEAR_SCREENSHOTS + " TEXT, "
+            + "primary key(" + LocalizedTable.Cols.APP_METADATA_ID + ", " + LocalizedTable.Cols.LOCALE + ") "
+            + " );";
+
+    protected static final int DB_VERSION = 81;
 
     private final Context context;
 
@@ -255,6 +281,7 @@ public class DBHelper extends SQLiteOpenHelper {
         db.execSQL(CREATE_TABLE_APP_PREFS);
         db.execSQL(CREATE_TABLE_ANTI_FEATURE);
         db.execSQL(CREATE_TABLE_APK_ANTI_FEATURE_JOIN);
+        db.execSQL(CREATE_TABLE_LOCALIZED);
         ensureIndexes(db);
 
         String[] defaultRepos = context.getResources().getStringArray(R.array.default_repos);
@@ -332,6 +359,45 @@ public class DBHelper extends SQLiteOpenHelper {
         addLiberapayID(db, oldVersion);
         addUserMirrorsFields(db, oldVersion);
         removeNotNullFromVersionName(db, oldVersion);
+        addLocalizedTable(db, oldVersion);
+        convertDatesToEpoch(db, oldVersion);
+    }
+
+    /**
+     * The {@code added} and {@code lastUpdated} dates used to be stored as "yyyy-MM-dd"
+     * strings, which had to be parsed for every row read.  They are now milliseconds
+     * since the epoch.  The old strings were parsed in the default time zone, so they
+     * are converted from local midnight here to keep them the same as they were.
+     * The declared column type stays as it was in existing databases, but that has
+     * numeric affinity in SQLite, so the integers are stored as integers.
+     */
+    private void convertDatesToEpoch(SQLiteDatabase db, int oldVersion) {
+        if (oldVersion >= 81) {
+            return;
+        }
+
+        Log.i(TAG, "Converting app and apk dates to milliseconds since the epoch");
+        convertDateToEpoch(db, AppMetadataTable.NAME, AppMetadataTable.Cols.ADDED);
+        convertDateToEpoch(db, AppMetadataTable.NAME, AppMetadataTable.Cols.LAST_UPDATED);
+        convertDateToEpoch(db, ApkTable.NAME, ApkTable.Cols.ADDED_DATE);
+    }
+
+    private void convertDateToEpoch(SQLiteDatabase db, String table, String column) {
+        db.execSQL("UPDATE " + table + " SET " + column + " = CASE"
+                + " WHEN " + column + " IS NULL OR " + column + " = '' THEN NULL"
+                + " ELSE CAST(strftime('%s', " + column + ", 'utc') AS INTEGER) * 1000 END");
+    }
+
+    /**
+     * The new table only gets filled by parsing the indexes again, so force a refresh.
+     */
+    private void addLocalizedTable(SQLiteDatabase db, int oldVersion) {
+        if (oldVersion >= 80) {
+            return;
+        }
+
+        Log.i(TAG, "Forcing repo refresh to fill " + LocalizedTable.NAME);
+        resetTransient(db);
     }
 
     private void removeNotNullFromVersionName(SQLiteDatabase db, int oldVersion) {
@@ -1131,6 +1197,10 @@ public class DBHelper extends SQLiteOpenHelper {
                 db.execSQL("DROP TABLE " + InstalledAppTable.NAME);
             }
 
+            if (tableExists(db, LocalizedTable.NAME)) {
+                db.execSQL("DROP TABLE " + LocalizedTable.NAME);
+            }
+
             db.execSQL("DROP TABLE " + AppMetadataTable.NAME);
             db.execSQL("DROP TABLE " + ApkTable.NAME);
 
@@ -1142,6 +1212,7 @@ public class DBHelper extends SQLiteOpenHelper {
             db.execSQL(CREATE_TABLE_ANTI_FEATURE);
             db.execSQL(CREATE_TABLE_APK_ANTI_FEATURE_JOIN);
             db.execSQL(CREATE_TABLE_INSTALLED_APP);
+            db.execSQL(CREATE_TABLE_LOCALIZED);
             clearRepoEtags(db);
             ensureIndexes(db);
             db.setTransactionSuccessful();
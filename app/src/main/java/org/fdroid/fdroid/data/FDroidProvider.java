@@ -7,10 +7,13 @@ import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.CancellationSignal;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import org.fdroid.fdroid.BuildConfig;
 
 import java.util.ArrayList;
@@ -29,6 +32,12 @@ public abstract class FDroidProvider extends ContentProvider {
 
     private boolean isApplyingBatch;
 
+    /**
+     * The signal passed to the running query, per thread, since queries can arrive on
+     * several binder threads at once.
+     */
+    private final ThreadLocal<CancellationSignal> cancellationSignal = new ThreadLocal<>();
+
     protected abstract String getTableName();
 
     protected abstract String getProviderName();
@@ -73,6 +82,32 @@ public abstract class FDroidProvider extends ContentProvider {
         return true;
     }
 
+    /**
+     * The default implementation drops {@code cancellationSignal}, this keeps it around
+     * for {@link #getCancellationSignal()} while the query runs.
+     */
+    @TargetApi(16)
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, CancellationSignal cancellationSignal) {
+        this.cancellationSignal.set(cancellationSignal);
+        try {
+            return query(uri, projection, selection, selectionArgs, sortOrder);
+        } finally {
+            this.cancellationSignal.remove();
+        }
+    }
+
+    /**
+     * @return the signal to cancel the query running on this thread with, which is
+     * always null before {@code android-16}
+     * @see LoggingQuery#query(SQLiteDatabase, String, String[], CancellationSignal)
+     */
+    @Nullable
+    protected final CancellationSignal getCancellationSignal() {
+        return cancellationSignal.get();
+    }
+
     protected final synchronized SQLiteDatabase db() {
         return DBHelper.getInstance(getContext()).getWritableDatabase();
     }
@@ -0,0 +1,515 @@
+package org.fdroid.fdroid.data;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the {@code apps} and {@code packages} sections of {@code index-v1.json}
+ * straight from the {@link JsonParser} tokens into {@link App} and {@link Apk}
+ * instances.  Databinding them looks up each field by reflection, for every field
+ * of every app and package, which made it the slowest part of parsing the index.
+ * <p>
+ * This gives the same result as databinding with the {@link ObjectMapper} from
+ * {@link org.fdroid.fdroid.IndexV1Updater#getObjectMapperInstance(long)}.  Only the
+ * shapes that {@code fdroidserver} writes are read here.  Any other value, like a
+ * number where a string should be, is handed over to that {@link ObjectMapper},
+ * just for that one field, so it is converted or rejected exactly as before.  Fields
+ * that are not handled here, but that Jackson would still map, are handed over the
+ * same way, and fields that Jackson would ignore are skipped.
+ * <p>
+ * <b>NOTE:</b> A new instance variable in {@link App} or {@link Apk} that is mapped to
+ * JSON will work without changing this, but will be slower until it is added here.
+ */
+public final class IndexV1Decoder {
+
+    private static final TypeReference<HashMap<String, List<Apk>>> PACKAGES_TYPE =
+            new TypeReference<HashMap<String, List<Apk>>>() {
+            };
+    private static final TypeReference<List<Apk>> APKS_TYPE = new TypeReference<List<Apk>>() {
+    };
+
+    private final ObjectMapper mapper;
+    private final long repoId;
+
+    private final Set<String> appProperties;
+    private final Set<String> apkProperties;
+
+    /**
+     * A value which can't be read here, so it needs to be handed over to Jackson.
+     * This only happens when an index does not look like what {@code fdroidserver}
+     * writes, so it does not need to be cheap.
+     */
+    private static class UnexpectedValueException extends Exception {
+        final JsonNode value;
+
+        UnexpectedValueException(JsonNode value) {
+            this.value = value;
+        }
+    }
+
+    public IndexV1Decoder(ObjectMapper mapper, long repoId) {
+        this.mapper = mapper;
+        this.repoId = repoId;
+        appProperties = getPropertyNames(mapper, App.class);
+        apkProperties = getPropertyNames(mapper, Apk.class);
+    }
+
+    /**
+     * @param parser positioned on the {@link JsonToken#START_ARRAY} of the {@code apps} section
+     */
+    public App[] readApps(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            return mapper.readerFor(App[].class).readValue(parser);
+        }
+        List<App> apps = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                apps.add(readApp(parser));
+            } else {
+                apps.add(mapper.readerFor(App.class).<App>readValue(parser));
+            }
+        }
+        return apps.toArray(new App[apps.size()]);
+    }
+
+    /**
+     * @param parser positioned on the {@link JsonToken#START_OBJECT} of the {@code packages} section
+     */
+    public Map<String, List<Apk>> readPackages(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            return mapper.readerFor(PACKAGES_TYPE).readValue(parser);
+        }
+        HashMap<String, List<Apk>> packages = new HashMap<>();
+        for (String packageName = parser.nextFieldName(); packageName != null; packageName = parser.nextFieldName()) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                packages.put(packageName, mapper.readerFor(APKS_TYPE).<List<Apk>>readValue(parser));
+                continue;
+            }
+            List<Apk> apks = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                    apks.add(readApk(parser));
+                } else {
+                    apks.add(mapper.readerFor(Apk.class).<Apk>readValue(parser));
+                }
+            }
+            packages.put(packageName, apks);
+        }
+        return packages;
+    }
+
+    private App readApp(JsonParser parser) throws IOException {
+        App app = new App();
+        app.repoId = repoId;
+        for (String field = parser.nextFieldName(); field != null; field = parser.nextFieldName()) {
+            JsonToken token = parser.nextToken();
+            try {
+                readAppField(parser, token, app, field);
+            } catch (UnexpectedValueException e) {
+                update(app, field, e.value);
+            }
+        }
+        return app;
+    }
+
+    private void readAppField(JsonParser parser, JsonToken token, App app, String field)
+            throws IOException, UnexpectedValueException {
+        switch (field) {
+            case "packageName":
+                app.packageName = readString(parser, token);
+                break;
+            case "name":
+                app.name = readString(parser, token);
+                break;
+            case "summary":
+                app.summary = readString(parser, token);
+                break;
+            case "icon":
+                app.icon = readString(parser, token);
+                break;
+            case "description":
+                app.setDescription(readString(parser, token));
+                break;
+            case "whatsNew":
+                app.whatsNew = readString(parser, token);
+                break;
+            case "featureGraphic":
+                app.featureGraphic = readString(parser, token);
+                break;
+            case "promoGraphic":
+                app.promoGraphic = readString(parser, token);
+                break;
+            case "tvBanner":
+                app.tvBanner = readString(parser, token);
+                break;
+            case "phoneScreenshots":
+                app.phoneScreenshots = readStringArray(parser, token);
+                break;
+            case "sevenInchScreenshots":
+                app.sevenInchScreenshots = readStringArray(parser, token);
+                break;
+            case "tenInchScreenshots":
+                app.tenInchScreenshots = readStringArray(parser, token);
+                break;
+            case "tvScreenshots":
+                app.tvScreenshots = readStringArray(parser, token);
+                break;
+            case "wearScreenshots":
+                app.wearScreenshots = readStringArray(parser, token);
+                break;
+            case "license":
+                app.license = readString(parser, token);
+                break;
+            case "authorName":
+                app.authorName = readString(parser, token);
+                break;
+            case "authorEmail":
+                app.authorEmail = readString(parser, token);
+                break;
+            case "webSite":
+                app.webSite = readString(parser, token);
+                break;
+            case "issueTracker":
+                app.issueTracker = readString(parser, token);
+                break;
+            case "sourceCode":
+                app.sourceCode = readString(parser, token);
+                break;
+            case "video":
+                app.video = readString(parser, token);
+                break;
+            case "changelog":
+                app.changelog = readString(parser, token);
+                break;
+            case "donate":
+                app.donate = readString(parser, token);
+                break;
+            case "bitcoin":
+                app.bitcoin = readString(parser, token);
+                break;
+            case "litecoin":
+                app.litecoin = readString(parser, token);
+                break;
+            case "flattrID":
+                app.flattrID = readString(parser, token);
+                break;
+            case "liberapayID":
+                app.liberapayID = readString(parser, token);
+                break;
+            case "upstreamVersionName":
+                app.upstreamVersionName = readString(parser, token);
+                break;
+            case "suggestedVersionCode":
+                app.upstreamVersionCode = readInt(parser, token);
+                break;
+            case "added":
+                app.added = readDate(parser, token);
+                break;
+            case "lastUpdated":
+                app.lastUpdated = readDate(parser, token);
+                break;
+            case "categories":
+                app.categories = readStringArray(parser, token);
+                break;
+            case "antiFeatures":
+                app.antiFeatures = readStringArray(parser, token);
+                break;
+            case "requirements":
+                app.requirements = readStringArray(parser, token);
+                break;
+            case "iconUrl":
+                app.iconUrl = readString(parser, token);
+                break;
+            case "localized":
+                app.setLocalized(readLocalized(parser, token));
+                break;
+            default:
+                readOtherField(parser, appProperties, field);
+                break;
+        }
+    }
+
+    private Apk readApk(JsonParser parser) throws IOException {
+        Apk apk = new Apk();
+        apk.repoId = repoId;
+        for (String field = parser.nextFieldName(); field != null; field = parser.nextFieldName()) {
+            JsonToken token = parser.nextToken();
+            try {
+                readApkField(parser, token, apk, field);
+            } catch (UnexpectedValueException e) {
+                update(apk, field, e.value);
+            }
+        }
+        return apk;
+    }
+
+    private void readApkField(JsonParser parser, JsonToken token, Apk apk, String field)
+            throws IOException, UnexpectedValueException {
+        switch (field) {
+            case "packageName":
+                apk.packageName = readString(parser, token);
+                break;
+            case "versionName":
+                apk.versionName = readString(parser, token);
+                break;
+            case "versionCode":
+                apk.versionCode = readInt(parser, token);
+                break;
+            case "size":
+                apk.size = readInt(parser, token);
+                break;
+            case "hash":
+                apk.hash = readString(parser, token);
+                break;
+            case "hashType":
+                apk.hashType = readString(parser, token);
+                break;
+            case "minSdkVersion":
+                apk.minSdkVersion = readInt(parser, token);
+                break;
+            case "targetSdkVersion":
+                apk.targetSdkVersion = readInt(parser, token);
+                break;
+            case "maxSdkVersion":
+                apk.maxSdkVersion = readInt(parser, token);
+                break;
+            case "obbMainFile":
+                apk.obbMainFile = readString(parser, token);
+                break;
+            case "obbMainFileSha256":
+                apk.obbMainFileSha256 = readString(parser, token);
+                break;
+            case "obbPatchFile":
+                apk.obbPatchFile = readString(parser, token);
+                break;
+            case "obbPatchFileSha256":
+                apk.obbPatchFileSha256 = readString(parser, token);
+                break;
+            case "added":
+                apk.added = readDate(parser, token);
+                break;
+            case "requestedPermissions":
+                apk.requestedPermissions = readStringArray(parser, token);
+                break;
+            case "features":
+                apk.features = readStringArray(parser, token);
+                break;
+            case "nativecode":
+                apk.nativecode = readStringArray(parser, token);
+                break;
+            case "sig":
+                apk.sig = readString(parser, token);
+                break;
+            case "apkName":
+                apk.apkName = readString(parser, token);
+                break;
+            case "srcname":
+                apk.srcname = readString(parser, token);
+                break;
+            case "incompatibleReasons":
+                apk.incompatibleReasons = readStringArray(parser, token);
+                break;
+            case "antiFeatures":
+                apk.antiFeatures = readStringArray(parser, token);
+                break;
+            case "uses-permission":
+                apk.setUsesPermission(readPermissions(parser, token));
+                break;
+            case "uses-permission-sdk-23":
+                apk.setUsesPermissionSdk23(readPermissions(parser, token));
+                break;
+            default:
+                readOtherField(parser, apkProperties, field);
+                break;
+        }
+    }
+
+    /**
+     * Skips {@code field} if Jackson would ignore it, otherwise it is handed over
+     * to Jackson as an {@link UnexpectedValueException}.
+     */
+    private static void readOtherField(JsonParser parser, Set<String> properties, String field)
+            throws IOException, UnexpectedValueException {
+        if (properties.contains(field)) {
+            throw unexpected(parser);
+        }
+        parser.skipChildren();
+    }
+
+    private static String readString(JsonParser parser, JsonToken token)
+            throws IOException, UnexpectedValueException {
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        } else if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        throw unexpected(parser);
+    }
+
+    /**
+     * {@code fdroidserver} writes some numbers as strings, e.g. {@code suggestedVersionCode},
+     * so those are read here too, rather than handing every single one over to Jackson.
+     */
+    private static int readInt(JsonParser parser, JsonToken token) throws IOException, UnexpectedValueException {
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getIntValue();
+        } else if (token == JsonToken.VALUE_STRING) {
+            try {
+                return Integer.parseInt(parser.getText().trim());
+            } catch (NumberFormatException e) {
+                // let Jackson decide what to do with it
+            }
+        }
+        throw unexpected(parser);
+    }
+
+    private static Date readDate(JsonParser parser, JsonToken token) throws IOException, UnexpectedValueException {
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return new Date(parser.getLongValue());
+        } else if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        throw unexpected(parser);
+    }
+
+    private String[] readStringArray(JsonParser parser, JsonToken token)
+            throws IOException, UnexpectedValueException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        } else if (token != JsonToken.START_ARRAY) {
+            throw unexpected(parser);
+        }
+        List<Object> list = new ArrayList<>();
+        boolean allStrings = true;
+        for (JsonToken next = parser.nextToken(); next != JsonToken.END_ARRAY; next = parser.nextToken()) {
+            if (next == JsonToken.VALUE_STRING) {
+                list.add(parser.getText());
+            } else {
+                allStrings &= next == JsonToken.VALUE_NULL;
+                list.add(readUntyped(parser, next));
+            }
+        }
+        if (!allStrings) {
+            throw new UnexpectedValueException(mapper.valueToTree(list));
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    /**
+     * The {@code uses-permission} entries, each one a permission name
+     * and the highest SDK it applies to, or null if there is none.
+     */
+    private Object[][] readPermissions(JsonParser parser, JsonToken token)
+            throws IOException, UnexpectedValueException {
+        if (token != JsonToken.START_ARRAY) {
+            throw unexpected(parser);
+        }
+        List<?> list = (List<?>) readUntyped(parser, token);
+        Object[][] permissions = new Object[list.size()][];
+        for (int i = 0; i < permissions.length; i++) {
+            Object value = list.get(i);
+            if (!(value instanceof List)) {
+                throw new UnexpectedValueException(mapper.valueToTree(list));
+            }
+            permissions[i] = ((List<?>) value).toArray();
+        }
+        return permissions;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Map<String, Object>> readLocalized(JsonParser parser, JsonToken token)
+            throws IOException, UnexpectedValueException {
+        if (token != JsonToken.START_OBJECT) {
+            throw unexpected(parser);
+        }
+        Map<String, Object> localized = (Map<String, Object>) readUntyped(parser, token);
+        for (Object value : localized.values()) {
+            if (value != null && !(value instanceof Map)) {
+                throw new UnexpectedValueException(mapper.valueToTree(localized));
+            }
+        }
+        return (Map<String, Map<String, Object>>) (Map<String, ?>) localized;
+    }
+
+    /**
+     * Reads any value into the same types as Jackson does for {@link Object}.
+     */
+    private static Object readUntyped(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (String field = parser.nextFieldName(); field != null; field = parser.nextFieldName()) {
+                    map.put(field, readUntyped(parser, parser.nextToken()));
+                }
+                return map;
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                for (JsonToken next = parser.nextToken(); next != JsonToken.END_ARRAY; next = parser.nextToken()) {
+                    list.add(readUntyped(parser, next));
+                }
+                return list;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_EMBEDDED_OBJECT:
+                return parser.getEmbeddedObject();
+            default:
+                return null;
+        }
+    }
+
+    private static UnexpectedValueException unexpected(JsonParser parser) throws IOException {
+        return new UnexpectedValueException(parser.<JsonNode>readValueAsTree());
+    }
+
+    /**
+     * Let Jackson set {@code field} of {@code instance} from {@code value}, as if it
+     * was the only field in the JSON object.
+     */
+    private void update(Object instance, String field, JsonNode value) throws IOException {
+        ObjectNode node = mapper.createObjectNode();
+        node.set(field, value);
+        ObjectReader reader = mapper.readerForUpdating(instance);
+        reader.readValue(node);
+    }
+
+    /**
+     * @return the names of all the JSON fields that Jackson would set in {@code type}
+     */
+    private static Set<String> getPropertyNames(ObjectMapper mapper, Class<?> type) {
+        DeserializationConfig config = mapper.getDeserializationConfig();
+        BeanDescription description = config.introspect(mapper.constructType(type));
+        Set<String> names = new HashSet<>();
+        for (BeanPropertyDefinition property : description.findProperties()) {
+            if (property.couldDeserialize()) {
+                names.add(property.getName());
+            }
+        }
+        return names;
+    }
+}
@@ -1,7 +1,10 @@
 package org.fdroid.fdroid.data;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
@@ -18,6 +21,7 @@ import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.data.Schema.InstalledAppTable;
 import org.fdroid.fdroid.data.Schema.InstalledAppTable.Cols;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -274,7 +278,9 @@ public class InstalledAppProvider extends FDroidProvider {
 
         int count = db().delete(getTableName(), query.getSelection(), query.getArgs());
 
-        AppProvider.Helper.calcSuggestedApk(getContext(), packageName);
+        if (!isApplyingBatch()) {
+            AppProvider.Helper.calcSuggestedApk(getContext(), packageName);
+        }
 
         return count;
     }
@@ -299,11 +305,30 @@ public class InstalledAppProvider extends FDroidProvider {
 
         db().replaceOrThrow(getTableName(), null, values);
 
-        AppProvider.Helper.calcSuggestedApk(getContext(), packageName);
+        if (!isApplyingBatch()) {
+            AppProvider.Helper.calcSuggestedApk(getContext(), packageName);
+        }
 
         return getAppUri(values.getAsString(Cols.Package.NAME));
     }
 
+    /**
+     * Inserts and deletes many installed apps in a single transaction, e.g. when
+     * {@link InstalledAppProviderService#compareToPackageManager(Context)} finds
+     * hundreds of them on the first run.  The suggested versions are then worked
+     * out once for all apps, instead of once for each installed app in the batch.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        ContentProviderResult[] results = super.applyBatch(operations);
+        if (!operations.isEmpty()) {
+            AppProvider.Helper.calcSuggestedApks(getContext());
+        }
+        return results;
+    }
+
     /**
      * Update is not supported for {@code InstalledAppProvider}. Instead, use
      * {@link #insert(Uri, ContentValues)}, and it will overwrite the relevant
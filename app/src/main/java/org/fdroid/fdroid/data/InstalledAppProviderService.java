@@ -1,12 +1,15 @@
 package org.fdroid.fdroid.data;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Process;
+import android.os.RemoteException;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.JobIntentService;
@@ -21,6 +24,7 @@ import rx.subjects.PublishSubject;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -54,6 +58,7 @@ public class InstalledAppProviderService extends JobIntentService {
 
     private static final String ACTION_INSERT = "org.fdroid.fdroid.data.action.INSERT";
     private static final String ACTION_DELETE = "org.fdroid.fdroid.data.action.DELETE";
+    private static final String ACTION_COMPARE = "org.fdroid.fdroid.data.action.COMPARE";
 
     private static final String EXTRA_PACKAGE_INFO = "org.fdroid.fdroid.data.extra.PACKAGE_INFO";
 
@@ -166,6 +171,11 @@ public class InstalledAppProviderService extends JobIntentService {
      * bootstrap process, because it runs in its own thread, at the lowest priority:
      * {@link Process#THREAD_PRIORITY_LOWEST}.
      * <p>
+     * All the differences are found first, then written to {@link InstalledAppProvider}
+     * as one batch, in a single transaction, followed by a single notification.  On the
+     * first run, there are hundreds of installed apps to add, and handling each one as
+     * its own piece of work, with its own transaction and notification, was very slow.
+     * <p>
      * APKs installed in {@code /system} will often have zeroed out timestamps, like
      * 2008-01-01 (ziptime) or 2009-01-01.  So instead anything older than 2010 every
      * time since we have no way to know whether an APK wasn't changed as part of an
@@ -175,32 +185,80 @@ public class InstalledAppProviderService extends JobIntentService {
      * @see <a href="https://gitlab.com/fdroid/fdroidclient/issues/819>issue #819</a>
      */
     public static void compareToPackageManager(Context context) {
+        Intent intent = new Intent(context, InstalledAppProviderService.class);
+        intent.setAction(ACTION_COMPARE);
+        enqueueWork(context, intent);
+    }
+
+    /**
+     * The {@link JobIntentService} half of {@link #compareToPackageManager(Context)}.
+     */
+    private void compareToPackageManager() {
         Utils.debugLog(TAG, "Comparing package manager to our installed app cache.");
-        Map<String, Long> cachedInfo = InstalledAppProvider.Helper.all(context);
+        Map<String, Long> cachedInfo = InstalledAppProvider.Helper.all(this);
 
-        List<PackageInfo> packageInfoList = context.getPackageManager()
-                .getInstalledPackages(PackageManager.GET_SIGNATURES);
+        List<PackageInfo> packageInfoList = getPackageManager().getInstalledPackages(PackageManager.GET_SIGNATURES);
         Collections.sort(packageInfoList, new Comparator<PackageInfo>() {
             @Override
             public int compare(PackageInfo o1, PackageInfo o2) {
                 return o1.packageName.compareTo(o2.packageName);
             }
         });
+        List<PackageInfo> toInsert = new ArrayList<>();
         for (PackageInfo packageInfo : packageInfoList) {
             if (cachedInfo.containsKey(packageInfo.packageName)) {
                 if (packageInfo.lastUpdateTime < 1262300400000L // 2010-01-01 00:00
                         || packageInfo.lastUpdateTime > cachedInfo.get(packageInfo.packageName)) {
-                    insert(context, packageInfo);
+                    toInsert.add(packageInfo);
                 }
                 cachedInfo.remove(packageInfo.packageName);
             } else {
-                insert(context, packageInfo);
+                toInsert.add(packageInfo);
             }
         }
 
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(toInsert.size() + cachedInfo.size());
+        List<String> inserted = new ArrayList<>(toInsert.size());
+        for (PackageInfo packageInfo : toInsert) {
+            ContentValues values = hashInstalledApk(packageInfo);
+            if (values != null) {
+                operations.add(ContentProviderOperation.newInsert(InstalledAppProvider.getContentUri())
+                        .withValues(values)
+                        .build());
+                inserted.add(packageInfo.packageName);
+            }
+        }
+        for (String packageName : cachedInfo.keySet()) {
+            operations.add(ContentProviderOperation.newDelete(InstalledAppProvider.getAppUri(packageName)).build());
+        }
+
+        if (operations.isEmpty()) {
+            Utils.debugLog(TAG, "Installed app cache is already up to date.");
+            return;
+        }
+
+        Utils.debugLog(TAG, "Saving " + inserted.size() + " installed and " + cachedInfo.size() + " removed apps.");
+        try {
+            getContentResolver().applyBatch(InstalledAppProvider.getAuthority(), operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Could not save changes to installed apps", e);
+            return;
+        }
+
+        AppUpdateStatusManager ausm = AppUpdateStatusManager.getInstance(this);
+        for (String packageName : inserted) {
+            for (AppUpdateStatusManager.AppUpdateStatus status : ausm.getByPackageName(packageName)) {
+                ausm.updateApk(status.getUniqueKey(), AppUpdateStatusManager.Status.Installed, null);
+            }
+        }
         for (String packageName : cachedInfo.keySet()) {
-            delete(context, packageName);
+            for (AppUpdateStatusManager.AppUpdateStatus status : ausm.getByPackageName(packageName)) {
+                ausm.updateApk(status.getUniqueKey(), AppUpdateStatusManager.Status.InstallError, null);
+            }
         }
+
+        getContentResolver().notifyChange(AppProvider.getContentUri(), null);
+        getContentResolver().notifyChange(ApkProvider.getContentUri(), null);
     }
 
     @Nullable
@@ -230,9 +288,14 @@ public class InstalledAppProviderService extends JobIntentService {
     protected void onHandleWork(@NonNull Intent intent) {
         Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
 
+        final String action = intent.getAction();
+        if (ACTION_COMPARE.equals(action)) {
+            compareToPackageManager();
+            return;
+        }
+
         AppUpdateStatusManager ausm = AppUpdateStatusManager.getInstance(this);
         String packageName = intent.getData().getSchemeSpecificPart();
-        final String action = intent.getAction();
         if (ACTION_INSERT.equals(action)) {
             PackageInfo packageInfo = getPackageInfo(intent, packageName);
             if (packageInfo != null) {
@@ -264,6 +327,26 @@ public class InstalledAppProviderService extends JobIntentService {
         packageChangeNotifier.onNext(packageName);
     }
 
+    /**
+     * @return the values to save for {@code packageInfo}, or null if its APK can't be read
+     */
+    @Nullable
+    private ContentValues hashInstalledApk(PackageInfo packageInfo) {
+        File apk = getPathToInstalledApk(packageInfo);
+        if (apk == null || !apk.exists() || !apk.canRead()) {
+            return null;
+        }
+        try {
+            String hashType = "sha256";
+            String hash = Utils.getBinaryHash(apk, hashType);
+            return getContentValues(this, packageInfo, hashType, hash);
+        } catch (IllegalArgumentException e) {
+            Utils.debugLog(TAG, e.getMessage());
+            ACRA.getErrorReporter().handleException(e, false);
+            return null;
+        }
+    }
+
     /**
      * This class will either have received an intent from the {@link InstalledAppProviderService}
      * itself, while iterating over installed apps, or from a {@link Intent#ACTION_PACKAGE_ADDED}
@@ -304,6 +387,10 @@ public class InstalledAppProviderService extends JobIntentService {
     static void insertAppIntoDb(Context context, PackageInfo packageInfo, String hashType, String hash) {
         Log.d(TAG, "insertAppIntoDb " + packageInfo.packageName);
         Uri uri = InstalledAppProvider.getContentUri();
+        context.getContentResolver().insert(uri, getContentValues(context, packageInfo, hashType, hash));
+    }
+
+    static ContentValues getContentValues(Context context, PackageInfo packageInfo, String hashType, String hash) {
         ContentValues contentValues = new ContentValues();
         contentValues.put(InstalledAppTable.Cols.Package.NAME, packageInfo.packageName);
         contentValues.put(InstalledAppTable.Cols.VERSION_CODE, packageInfo.versionCode);
@@ -315,8 +402,7 @@ public class InstalledAppProviderService extends JobIntentService {
 
         contentValues.put(InstalledAppTable.Cols.HASH_TYPE, hashType);
         contentValues.put(InstalledAppTable.Cols.HASH, hash);
-
-        context.getContentResolver().insert(uri, contentValues);
+        return contentValues;
     }
 
     static void deleteAppFromDb(Context context, String packageName) {
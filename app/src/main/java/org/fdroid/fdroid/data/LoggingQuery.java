@@ -1,8 +1,11 @@
 package org.fdroid.fdroid.data;
 
+import android.annotation.TargetApi;
 import android.database.Cursor;
 import android.database.CursorWrapper;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.os.CancellationSignal;
 
 import org.fdroid.fdroid.BuildConfig;
 import org.fdroid.fdroid.Utils;
@@ -43,10 +46,17 @@ final class LoggingQuery {
     private final String query;
     private final String[] queryArgs;
 
-    private LoggingQuery(SQLiteDatabase db, String query, String[] queryArgs) {
+    /**
+     * Always null before {@code android-16}.
+     */
+    private final CancellationSignal cancellationSignal;
+
+    private LoggingQuery(SQLiteDatabase db, String query, String[] queryArgs,
+                         CancellationSignal cancellationSignal) {
         this.db = db;
         this.query = query;
         this.queryArgs = queryArgs;
+        this.cancellationSignal = cancellationSignal;
     }
 
     /**
@@ -56,7 +66,7 @@ final class LoggingQuery {
     private Cursor rawQuery() {
         if (BuildConfig.DEBUG) {
             long startTime = System.currentTimeMillis();
-            Cursor cursor = db.rawQuery(query, queryArgs);
+            Cursor cursor = rawQueryInternal();
             long queryDuration = System.currentTimeMillis() - startTime;
 
             if (queryDuration >= SLOW_QUERY_DURATION) {
@@ -65,6 +75,18 @@ final class LoggingQuery {
 
             return new LogGetCountCursorWrapper(cursor);
         }
+        return rawQueryInternal();
+    }
+
+    /**
+     * With a {@link CancellationSignal}, the returned cursor keeps it, so that
+     * cancelling also stops filling the cursor's window, not only the query itself.
+     */
+    @TargetApi(16)
+    private Cursor rawQueryInternal() {
+        if (cancellationSignal != null && Build.VERSION.SDK_INT >= 16) {
+            return db.rawQuery(query, queryArgs, cancellationSignal);
+        }
         return db.rawQuery(query, queryArgs);
     }
 
@@ -162,10 +184,18 @@ final class LoggingQuery {
     }
 
     public static Cursor query(SQLiteDatabase db, String query, String[] queryBuilderArgs) {
-        return new LoggingQuery(db, query, queryBuilderArgs).rawQuery();
+        return query(db, query, queryBuilderArgs, null);
+    }
+
+    /**
+     * @param cancellationSignal from {@link FDroidProvider#getCancellationSignal()}
+     */
+    public static Cursor query(SQLiteDatabase db, String query, String[] queryBuilderArgs,
+                               CancellationSignal cancellationSignal) {
+        return new LoggingQuery(db, query, queryBuilderArgs, cancellationSignal).rawQuery();
     }
 
     public static void execSQL(SQLiteDatabase db, String sql, String[] queryArgs) {
-        new LoggingQuery(db, sql, queryArgs).execSQLInternal();
+        new LoggingQuery(db, sql, queryArgs, null).execSQLInternal();
     }
 }
@@ -0,0 +1,165 @@
+package org.fdroid.fdroid.data;
+
+import android.content.res.Resources;
+import android.database.DatabaseUtils;
+import android.os.Build;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The user's locale preferences, worked out once so that they can be matched
+ * against the {@code localized} block of every app in an index.  Reading the
+ * system locale list, then splitting and sorting it, used to happen for each
+ * app while parsing, which added up to thousands of times per index update.
+ * <p>
+ * {@link #refresh()} should be called at the start of each run that uses this,
+ * e.g. each index update, so changes to the language settings are picked up.
+ * <p>
+ * The order is defined once, in {@link #rank(String)}, and {@link #getRankSql(String)}
+ * is the same thing written as SQL, so that picking the locale while parsing the
+ * index and later in the database always gives the same answer.
+ *
+ * @see App#setLocalized(Map)
+ * @see AppProvider#getLocaleRank(String)
+ */
+public final class PreferredLocales {
+
+    private static volatile PreferredLocales current;
+
+    /**
+     * Locales which are used as is, when available, in order of preference.
+     */
+    final String[] exact;
+
+    /**
+     * On {@code < android-24}, all the available locales starting with this
+     * are used after {@link #exact}, otherwise this is null.
+     */
+    final String languagePrefix;
+
+    private PreferredLocales() {
+        Locale defaultLocale = Locale.getDefault();
+        String languageTag = defaultLocale.getLanguage();
+        String countryTag = defaultLocale.getCountry();
+
+        Set<String> locales = new LinkedHashSet<>();
+        if (!TextUtils.isEmpty(countryTag)) {
+            locales.add(languageTag + "-" + countryTag);
+        }
+        locales.add(languageTag);
+        if (Build.VERSION.SDK_INT >= 24) {
+            String[] sortedLocaleList = Resources.getSystem().getConfiguration().getLocales()
+                    .toLanguageTags().split(",");
+            Arrays.sort(sortedLocaleList, new Comparator<String>() {
+                @Override
+                public int compare(String s1, String s2) {
+                    return s1.length() - s2.length();
+                }
+            });
+            for (String toUse : sortedLocaleList) {
+                locales.add(toUse);
+                locales.add(toUse.split("-")[0]);
+            }
+            languagePrefix = null;
+        } else {
+            languagePrefix = languageTag;
+        }
+        exact = locales.toArray(new String[locales.size()]);
+    }
+
+    /**
+     * Reads the current locale preferences again, for everything that uses
+     * {@link #get()} from now on.
+     */
+    public static PreferredLocales refresh() {
+        PreferredLocales preferredLocales = new PreferredLocales();
+        current = preferredLocales;
+        return preferredLocales;
+    }
+
+    static PreferredLocales get() {
+        PreferredLocales preferredLocales = current;
+        return preferredLocales == null ? refresh() : preferredLocales;
+    }
+
+    /**
+     * @return the locales in {@code available} to pick fields from, best first,
+     * with locales of the same rank sorted by name
+     */
+    List<String> choose(Map<String, ?> available) {
+        List<String> result = new ArrayList<>(4);
+        for (String locale : available.keySet()) {
+            if (rank(locale) >= 0) {
+                result.add(locale);
+            }
+        }
+        Collections.sort(result, new Comparator<String>() {
+            @Override
+            public int compare(String s1, String s2) {
+                int diff = rank(s1) - rank(s2);
+                return diff != 0 ? diff : s1.compareTo(s2);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Lower is better, and {@code -1} means the locale should not be used at all.
+     * Any change here must also be made in {@link #getRankSql(String)}.
+     */
+    int rank(String locale) {
+        int i = 0;
+        for (String toUse : exact) {
+            if (toUse.equals(locale)) {
+                return i;
+            }
+            i++;
+        }
+        if (languagePrefix != null) {
+            if (locale.startsWith(languagePrefix)) {
+                return i;
+            }
+            i++;
+        }
+        if ("en-US".equals(locale)) {
+            return i;
+        }
+        i++;
+        if (locale.startsWith("en")) {
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * {@link #rank(String)} as an SQL expression on {@code localeColumn}.  This
+     * uses {@code GLOB} rather than {@code LIKE} since it is case sensitive,
+     * just like {@link String#startsWith(String)}.
+     */
+    String getRankSql(String localeColumn) {
+        StringBuilder rank = new StringBuilder("(CASE");
+        int i = 0;
+        for (String locale : exact) {
+            rank.append(" WHEN ").append(localeColumn).append(" = ")
+                    .append(DatabaseUtils.sqlEscapeString(locale)).append(" THEN ").append(i++);
+        }
+        if (languagePrefix != null) {
+            rank.append(" WHEN ").append(localeColumn).append(" GLOB ")
+                    .append(DatabaseUtils.sqlEscapeString(languagePrefix + "*"))
+                    .append(" THEN ").append(i++);
+        }
+        rank.append(" WHEN ").append(localeColumn).append(" = 'en-US' THEN ").append(i++);
+        rank.append(" WHEN ").append(localeColumn).append(" GLOB 'en*' THEN ").append(i);
+        rank.append(" ELSE -1 END)");
+        return rank.toString();
+    }
+}
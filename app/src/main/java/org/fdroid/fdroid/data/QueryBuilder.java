@@ -15,6 +15,7 @@ abstract class QueryBuilder {
     private String[] selectionArgs;
     private final List<OrderClause> orderBys = new ArrayList<>();
     private int limit = 0;
+    private int offset = 0;
 
     protected abstract String getRequiredTables();
 
@@ -93,6 +94,13 @@ abstract class QueryBuilder {
         this.limit = limit;
     }
 
+    /**
+     * Only used when there is also a {@link #addLimit(int) limit}.
+     */
+    public void addOffset(int offset) {
+        this.offset = offset;
+    }
+
     public String[] getArgs() {
         List<String> args = new ArrayList<>();
 
@@ -162,7 +170,10 @@ abstract class QueryBuilder {
     }
 
     private String limitSql() {
-        return limit > 0 ? " LIMIT " + limit : "";
+        if (limit <= 0) {
+            return "";
+        }
+        return offset > 0 ? " LIMIT " + limit + " OFFSET " + offset : " LIMIT " + limit;
     }
 
     public String toString() {
@@ -84,12 +84,37 @@ public class RepoPersister {
         if (apksToSave.size() > 0 || appsToSave.size() > 0) {
             Utils.debugLog(TAG, "Flushing details of up to " + MAX_APP_BUFFER + " apps/packages to the database.");
             Map<String, Long> appIds = flushAppsToDbInBatch();
+            flushLocalizedToDbInBatch(appIds);
             flushApksToDbInBatch(appIds);
             apksToSave.clear();
             appsToSave.clear();
         }
     }
 
+    private void flushLocalizedToDbInBatch(Map<String, Long> appIds) throws RepoUpdater.UpdateException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (App app : appsToSave) {
+            Long appId = appIds.get(app.packageName);
+            if (appId == null) {
+                continue;
+            }
+            Uri uri = TempAppProvider.getLocalizedUri(appId);
+            for (ContentValues values : app.getLocalizedContentValues()) {
+                operations.add(ContentProviderOperation.newInsert(uri).withValues(values).build());
+            }
+        }
+
+        if (operations.size() == 0) {
+            return;
+        }
+
+        try {
+            context.getContentResolver().applyBatch(TempAppProvider.getAuthority(), operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            throw new RepoUpdater.UpdateException("An internal error occurred while updating the database", e);
+        }
+    }
+
     private void flushApksToDbInBatch(Map<String, Long> appIds) throws RepoUpdater.UpdateException {
         List<Apk> apksToSaveList = new ArrayList<>();
         for (Map.Entry<String, List<Apk>> entries : apksToSave.entrySet()) {
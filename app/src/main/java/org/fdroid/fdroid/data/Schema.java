@@ -261,6 +261,77 @@ public interface Schema {
         }
     }
 
+    /**
+     * Every locale from the {@code localized} block of each app in {@code index-v1},
+     * one row per app metadata record and locale.  The localized columns of
+     * {@link AppMetadataTable} only hold the best match for the current locale,
+     * this table is what they get picked from again when the locale changes.
+     * The graphics and screenshots already include the locale in their paths.
+     */
+    interface LocalizedTable {
+
+        String NAME = "fdroid_localized";
+
+        interface Cols {
+            /**
+             * Foreign key to {@link AppMetadataTable}.
+             * @see AppMetadataTable
+             */
+            String APP_METADATA_ID = "appMetadataId";
+            String LOCALE = "locale";
+            String NAME = AppMetadataTable.Cols.NAME;
+            String SUMMARY = AppMetadataTable.Cols.SUMMARY;
+            String DESCRIPTION = AppMetadataTable.Cols.DESCRIPTION;
+            String WHATSNEW = AppMetadataTable.Cols.WHATSNEW;
+            String VIDEO = AppMetadataTable.Cols.VIDEO;
+            String FEATURE_GRAPHIC = AppMetadataTable.Cols.FEATURE_GRAPHIC;
+            String PROMO_GRAPHIC = AppMetadataTable.Cols.PROMO_GRAPHIC;
+            String TV_BANNER = AppMetadataTable.Cols.TV_BANNER;
+            String PHONE_SCREENSHOTS = AppMetadataTable.Cols.PHONE_SCREENSHOTS;
+            String SEVEN_INCH_SCREENSHOTS = AppMetadataTable.Cols.SEVEN_INCH_SCREENSHOTS;
+            String TEN_INCH_SCREENSHOTS = AppMetadataTable.Cols.TEN_INCH_SCREENSHOTS;
+            String TV_SCREENSHOTS = AppMetadataTable.Cols.TV_SCREENSHOTS;
+            String WEAR_SCREENSHOTS = AppMetadataTable.Cols.WEAR_SCREENSHOTS;
+
+            /**
+             * @see AppMetadataTable.Cols#ALL_COLS
+             */
+            String[] ALL_COLS = {
+                    APP_METADATA_ID, LOCALE, NAME, SUMMARY, DESCRIPTION, WHATSNEW, VIDEO,
+                    FEATURE_GRAPHIC, PROMO_GRAPHIC, TV_BANNER, PHONE_SCREENSHOTS,
+                    SEVEN_INCH_SCREENSHOTS, TEN_INCH_SCREENSHOTS, TV_SCREENSHOTS, WEAR_SCREENSHOTS,
+            };
+        }
+
+        /**
+         * The {@link Cols#LOCALE} of the row holding the inline {@link #TEXTS} from
+         * the index, which no locale preference ever picks.
+         */
+        String BASE_LOCALE = "";
+
+        /**
+         * Taken from the {@link #BASE_LOCALE} row when a locale is missing, since
+         * the inline values in the index are the fallback.
+         */
+        String[] TEXTS = {Cols.NAME, Cols.SUMMARY, Cols.DESCRIPTION, Cols.VIDEO};
+
+        /**
+         * Cleared when a locale is missing, since only the {@code localized} block provides these.
+         */
+        String[] LOCALE_ONLY = {
+                Cols.WHATSNEW, Cols.FEATURE_GRAPHIC, Cols.PROMO_GRAPHIC, Cols.TV_BANNER,
+                Cols.PHONE_SCREENSHOTS, Cols.SEVEN_INCH_SCREENSHOTS, Cols.TEN_INCH_SCREENSHOTS,
+                Cols.TV_SCREENSHOTS, Cols.WEAR_SCREENSHOTS,
+        };
+
+        String[] GRAPHICS = {Cols.FEATURE_GRAPHIC, Cols.PROMO_GRAPHIC, Cols.TV_BANNER};
+
+        String[] SCREENSHOTS = {
+                Cols.PHONE_SCREENSHOTS, Cols.SEVEN_INCH_SCREENSHOTS, Cols.TEN_INCH_SCREENSHOTS,
+                Cols.TV_SCREENSHOTS, Cols.WEAR_SCREENSHOTS,
+        };
+    }
+
     /**
      * This table stores details of all the application versions we
      * know about. Each relates directly back to an entry in TABLE_APP.
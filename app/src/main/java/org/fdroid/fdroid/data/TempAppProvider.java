@@ -13,6 +13,7 @@ import org.fdroid.fdroid.data.Schema.ApkTable;
 import org.fdroid.fdroid.data.Schema.AppMetadataTable;
 import org.fdroid.fdroid.data.Schema.AppMetadataTable.Cols;
 import org.fdroid.fdroid.data.Schema.CatJoinTable;
+import org.fdroid.fdroid.data.Schema.LocalizedTable;
 import org.fdroid.fdroid.data.Schema.PackageTable;
 
 import java.util.List;
@@ -33,13 +34,16 @@ public class TempAppProvider extends AppProvider {
     static final String TABLE_TEMP_APP = "temp_" + AppMetadataTable.NAME;
     static final String TABLE_TEMP_APK_ANTI_FEATURE_JOIN = "temp_" + Schema.ApkAntiFeatureJoinTable.NAME;
     static final String TABLE_TEMP_CAT_JOIN = "temp_" + CatJoinTable.NAME;
+    static final String TABLE_TEMP_LOCALIZED = "temp_" + LocalizedTable.NAME;
 
     private static final String PATH_INIT = "init";
     private static final String PATH_COMMIT = "commit";
+    private static final String PATH_LOCALIZED = "localized";
 
     private static final int CODE_INIT = 10000;
     private static final int CODE_COMMIT = CODE_INIT + 1;
     private static final int APPS = CODE_COMMIT + 1;
+    private static final int LOCALIZED = APPS + 1;
 
     private static final UriMatcher MATCHER = new UriMatcher(-1);
 
@@ -48,6 +52,7 @@ public class TempAppProvider extends AppProvider {
         MATCHER.addURI(getAuthority(), PATH_COMMIT + "/#", CODE_COMMIT);
         MATCHER.addURI(getAuthority(), PATH_APPS + "/#/*", APPS);
         MATCHER.addURI(getAuthority(), PATH_SPECIFIC_APP + "/#/*", CODE_SINGLE);
+        MATCHER.addURI(getAuthority(), PATH_LOCALIZED + "/#", LOCALIZED);
     }
 
     @Override
@@ -60,6 +65,11 @@ public class TempAppProvider extends AppProvider {
         return TABLE_TEMP_CAT_JOIN;
     }
 
+    @Override
+    protected String getLocalizedTableName() {
+        return TABLE_TEMP_LOCALIZED;
+    }
+
     public static String getAuthority() {
         return AUTHORITY + "." + PROVIDER_NAME;
     }
@@ -76,6 +86,13 @@ public class TempAppProvider extends AppProvider {
                 .build();
     }
 
+    public static Uri getLocalizedUri(long appMetadataId) {
+        return getContentUri().buildUpon()
+                .appendPath(PATH_LOCALIZED)
+                .appendPath(Long.toString(appMetadataId))
+                .build();
+    }
+
     private AppQuerySelection queryRepoApps(long repoId, String packageNames) {
         return queryPackageNames(packageNames, PackageTable.NAME + "." + PackageTable.Cols.PACKAGE_NAME)
                 .add(queryRepo(repoId));
@@ -141,6 +158,10 @@ public class TempAppProvider extends AppProvider {
                 updateAllAppDetails();
                 commitTable(Long.parseLong(uri.getLastPathSegment()));
                 return null;
+            case LOCALIZED:
+                values.put(LocalizedTable.Cols.APP_METADATA_ID, Long.parseLong(uri.getLastPathSegment()));
+                db().replaceOrThrow(getLocalizedTableName(), null, values);
+                return null;
             default:
                 return super.insert(uri, values);
         }
@@ -190,6 +211,8 @@ public class TempAppProvider extends AppProvider {
         db.execSQL("ATTACH DATABASE ':memory:' AS " + DB);
         db.execSQL(DBHelper.CREATE_TABLE_APP_METADATA.replaceFirst(AppMetadataTable.NAME, tempApp));
         db.execSQL(DBHelper.CREATE_TABLE_CAT_JOIN.replaceFirst(CatJoinTable.NAME, tempCat));
+        // Only the repo being updated gets new localized rows, so there is nothing to copy over.
+        db.execSQL(DBHelper.CREATE_TABLE_LOCALIZED.replaceFirst(LocalizedTable.NAME, DB + "." + getLocalizedTableName()));
 
         String appWhere = mainApp + "." + Cols.REPO_ID + " != ?";
         String[] repoArgs = new String[]{Long.toString(repoIdBeingUpdated)};
@@ -225,9 +248,15 @@ public class TempAppProvider extends AppProvider {
             final String tempApk = DB + "." + TempApkProvider.TABLE_TEMP_APK;
             final String tempCatJoin = DB + "." + TABLE_TEMP_CAT_JOIN;
             final String tempAntiFeatureJoin = DB + "." + TABLE_TEMP_APK_ANTI_FEATURE_JOIN;
+            final String tempLocalized = DB + "." + TABLE_TEMP_LOCALIZED;
 
             final String[] repoArgs = new String[]{Long.toString(repoIdToCommit)};
 
+            // Must happen before the old app rows are gone, they are needed to find the old localized rows.
+            db.execSQL("DELETE FROM " + LocalizedTable.NAME + " WHERE " + LocalizedTable.Cols.APP_METADATA_ID + " IN " +
+                    "(SELECT " + Cols.ROW_ID + " FROM " + AppMetadataTable.NAME + " WHERE " + Cols.REPO_ID + " = ?)", repoArgs);
+            db.execSQL(copyData(LocalizedTable.Cols.ALL_COLS, tempLocalized, LocalizedTable.NAME, null));
+
             db.execSQL("DELETE FROM " + AppMetadataTable.NAME + " WHERE " + Cols.REPO_ID + " = ?", repoArgs);
             db.execSQL(copyData(Cols.ALL_COLS, tempApp, AppMetadataTable.NAME, Cols.REPO_ID + " = ?"), repoArgs);
 
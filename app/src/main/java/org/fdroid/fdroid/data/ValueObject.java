@@ -1,6 +1,9 @@
 package org.fdroid.fdroid.data;
 
 import android.database.Cursor;
+import android.support.annotation.Nullable;
+
+import java.util.Date;
 
 class ValueObject {
 
@@ -12,4 +15,13 @@ class ValueObject {
         }
     }
 
+    /**
+     * Dates are stored as milliseconds since the epoch, so they can be read and
+     * sorted directly, without any parsing.
+     */
+    @Nullable
+    static Date getDate(Cursor cursor, int columnIndex) {
+        return cursor.isNull(columnIndex) ? null : new Date(cursor.getLong(columnIndex));
+    }
+
 }
@@ -25,19 +25,40 @@ import android.content.pm.PackageInfo;
 import android.net.Uri;
 import com.nostra13.universalimageloader.utils.StorageUtils;
 import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.CacheLedger;
 import org.fdroid.fdroid.Hasher;
+import org.fdroid.fdroid.Preferences;
+import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.data.Apk;
 import org.fdroid.fdroid.data.App;
 import org.fdroid.fdroid.data.AppProvider;
 import org.fdroid.fdroid.data.SanitizedFile;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 public class ApkCache {
 
+    private static final String TAG = "ApkCache";
+
     private static final String CACHE_DIR = "apks";
 
+    /**
+     * The hash type that {@link org.fdroid.fdroid.net.DownloaderService} hashes
+     * downloads with as they arrive, the one the repos use for all files.
+     */
+    public static final String DOWNLOAD_HASH_TYPE = "sha256";
+
+    private static final String HASH_FILE_SUFFIX = ".hash";
+
     /**
      * Same as {@link #copyApkFromCacheToFiles(Context, File, Apk)}, except it does not need to
      * verify the hash after copying. This is because we are copying from an installed apk, which
@@ -86,32 +107,59 @@ public class ApkCache {
             sanitizedApkFile.delete();
         }
 
-        FileUtils.copyFile(apkFile, sanitizedApkFile);
-
-        // verify copied file's hash with expected hash from Apk class
-        if (verifyHash && !Hasher.isFileMatchingHash(sanitizedApkFile, hash, hashType)) {
-            FileUtils.deleteQuietly(apkFile);
-            throw new IOException(apkFile + " failed to verify!");
+        if (verifyHash) {
+            // verify the copied bytes' hash with expected hash from Apk class as they are copied,
+            // it is what was hashed that ends up in the protected area, not what is in the cache
+            String copiedHash = copyFileAndHash(apkFile, sanitizedApkFile, hashType);
+            if (copiedHash == null || hash == null || !copiedHash.equals(hash.toLowerCase(Locale.ENGLISH))) {
+                FileUtils.deleteQuietly(sanitizedApkFile);
+                FileUtils.deleteQuietly(apkFile);
+                FileUtils.deleteQuietly(getHashFile(apkFile));
+                throw new IOException(apkFile + " failed to verify!");
+            }
+        } else {
+            FileUtils.copyFile(apkFile, sanitizedApkFile);
         }
 
         // 20 minutes the start of the install process, delete the file
-        final File apkToDelete = sanitizedApkFile;
-        new Thread() {
-            @Override
-            public void run() {
-                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_LOWEST);
-                try {
-                    Thread.sleep(1200000);
-                } catch (InterruptedException ignored) {
-                } finally {
-                    FileUtils.deleteQuietly(apkToDelete);
-                }
-            }
-        }.start();
+        CacheLedger.get(context).add(sanitizedApkFile, CacheLedger.Kind.InstallCopy,
+                TimeUnit.MINUTES.toMillis(20));
 
         return sanitizedApkFile;
     }
 
+    /**
+     * Copies {@code source} to {@code dest}, hashing the bytes on the way through,
+     * rather than copying first and then reading the copy again to hash it.
+     *
+     * @return the hash as lowercase hex, or null if {@code hashType} is not supported
+     */
+    private static String copyFileAndHash(File source, File dest, String hashType) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(hashType);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        InputStream input = null;
+        OutputStream output = null;
+        try {
+            input = new FileInputStream(source);
+            output = new FileOutputStream(dest);
+            byte[] buffer = new byte[65536];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+                output.write(buffer, 0, count);
+            }
+            output.flush();
+        } finally {
+            Utils.closeQuietly(output);
+            Utils.closeQuietly(input);
+        }
+        return Hasher.hex(digest.digest());
+    }
+
     /**
      * Get the full path for where an APK URL will be downloaded into.
      */
@@ -130,7 +178,81 @@ public class ApkCache {
      */
     public static boolean apkIsCached(File apkFile, Apk apkToCheck) {
         return apkFile.length() == apkToCheck.size &&
-                Hasher.isFileMatchingHash(apkFile, apkToCheck.hash, apkToCheck.hashType);
+                isFileMatchingHash(apkFile, apkToCheck.hash, apkToCheck.hashType);
+    }
+
+    /**
+     * Same as {@link Hasher#isFileMatchingHash(File, String, String)}, but if the file
+     * was hashed while it was downloaded, and has not changed since, the hash recorded
+     * then is used instead of reading the whole file again.  This is only for deciding
+     * whether something needs to be downloaded, the copy made for installing is always
+     * checked against the real contents, since the cache might be on external storage.
+     *
+     * @see #addDownloadedFile(Context, File, String)
+     */
+    public static boolean isFileMatchingHash(File file, String hash, String hashType) {
+        if (hash == null || !file.exists()) {
+            return false;
+        }
+        String savedHash = getSavedDownloadHash(file, hashType);
+        if (savedHash != null) {
+            return savedHash.equals(hash.toLowerCase(Locale.ENGLISH));
+        }
+        return Hasher.isFileMatchingHash(file, hash, hashType);
+    }
+
+    /**
+     * Keep a file that was just downloaded into the cache for as long as the user
+     * set in {@link Preferences#getKeepCacheTime()}, along with its hash if it was
+     * hashed while downloading.
+     *
+     * @param hash the {@link #DOWNLOAD_HASH_TYPE} hash of {@code file}, or null if unknown
+     */
+    public static void addDownloadedFile(Context context, File file, String hash) {
+        long keepTime = Preferences.get().getKeepCacheTime();
+        CacheLedger ledger = CacheLedger.get(context);
+        ledger.add(file, CacheLedger.Kind.Download, keepTime);
+        if (hash != null) {
+            saveDownloadHash(file, DOWNLOAD_HASH_TYPE, hash);
+            ledger.add(getHashFile(file), CacheLedger.Kind.Download, keepTime);
+        }
+    }
+
+    /**
+     * Record the hash of a file that was just downloaded into the cache, along with
+     * its size and modification time, so that it is only used while the file is
+     * still the same.
+     */
+    private static void saveDownloadHash(File file, String hashType, String hash) {
+        String line = hashType + " " + hash + " " + file.length() + " " + file.lastModified();
+        try {
+            FileUtils.writeStringToFile(getHashFile(file), line, "UTF-8");
+        } catch (IOException e) {
+            Utils.debugLog(TAG, "Could not save hash of " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static String getSavedDownloadHash(File file, String hashType) {
+        File hashFile = getHashFile(file);
+        if (!hashFile.isFile()) {
+            return null;
+        }
+        try {
+            String[] fields = FileUtils.readFileToString(hashFile, "UTF-8").trim().split(" ");
+            if (fields.length == 4
+                    && fields[0].equalsIgnoreCase(hashType)
+                    && Long.parseLong(fields[2]) == file.length()
+                    && Long.parseLong(fields[3]) == file.lastModified()) {
+                return fields[1];
+            }
+        } catch (IOException | NumberFormatException e) {
+            Utils.debugLog(TAG, "Could not read saved hash of " + file + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static File getHashFile(File file) {
+        return new File(file.getParentFile(), file.getName() + HASH_FILE_SUFFIX);
     }
 
     /**
@@ -18,7 +18,6 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.fdroid.fdroid.AppUpdateStatusManager;
 import org.fdroid.fdroid.FDroidApp;
-import org.fdroid.fdroid.Hasher;
 import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.compat.PackageManagerCompat;
 import org.fdroid.fdroid.data.Apk;
@@ -91,6 +90,7 @@ public class InstallManagerService extends Service {
 
     private static final String EXTRA_APP = "org.fdroid.fdroid.installer.extra.APP";
     private static final String EXTRA_APK = "org.fdroid.fdroid.installer.extra.APK";
+    private static final String EXTRA_DOWNLOAD_PRIORITY = "org.fdroid.fdroid.installer.extra.DOWNLOAD_PRIORITY";
 
     private static SharedPreferences pendingInstalls;
 
@@ -203,15 +203,16 @@ public class InstallManagerService extends Service {
 
         appUpdateStatusManager.addApk(apk, AppUpdateStatusManager.Status.Downloading, null);
 
-        registerPackageDownloaderReceivers(urlString);
-        getObb(urlString, apk.getMainObbUrl(), apk.getMainObbFile(), apk.obbMainFileSha256);
-        getObb(urlString, apk.getPatchObbUrl(), apk.getPatchObbFile(), apk.obbPatchFileSha256);
+        int priority = intent.getIntExtra(EXTRA_DOWNLOAD_PRIORITY, DownloaderService.PRIORITY_USER_INITIATED);
+        registerPackageDownloaderReceivers(urlString, priority);
+        getObb(urlString, apk.getMainObbUrl(), apk.getMainObbFile(), apk.obbMainFileSha256, priority);
+        getObb(urlString, apk.getPatchObbUrl(), apk.getPatchObbFile(), apk.obbPatchFileSha256, priority);
 
         File apkFilePath = ApkCache.getApkDownloadPath(this, intent.getData());
         long apkFileSize = apkFilePath.length();
         if (!apkFilePath.exists() || apkFileSize < apk.size) {
             Utils.debugLog(TAG, "download " + urlString + " " + apkFilePath);
-            DownloaderService.queue(this, urlString, apk.repoId, urlString);
+            DownloaderService.queue(this, urlString, apk.repoId, urlString, priority);
         } else if (ApkCache.apkIsCached(apkFilePath, apk)) {
             Utils.debugLog(TAG, "skip download, we have it, straight to install " + urlString + " " + apkFilePath);
             sendBroadcast(intent.getData(), Downloader.ACTION_STARTED, apkFilePath);
@@ -219,7 +220,7 @@ public class InstallManagerService extends Service {
         } else {
             Utils.debugLog(TAG, "delete and download again " + urlString + " " + apkFilePath);
             apkFilePath.delete();
-            DownloaderService.queue(this, urlString, apk.repoId, urlString);
+            DownloaderService.queue(this, urlString, apk.repoId, urlString, priority);
         }
 
         return START_REDELIVER_INTENT; // if killed before completion, retry Intent
@@ -240,7 +241,7 @@ public class InstallManagerService extends Service {
      * @see <a href="https://developer.android.com/google/play/expansion-files.html">APK Expansion Files</a>
      */
     private void getObb(final String urlString, String obbUrlString,
-                        final File obbDestFile, final String hash) {
+                        final File obbDestFile, final String hash, final int priority) {
         if (obbDestFile == null || obbDestFile.exists() || TextUtils.isEmpty(obbUrlString)) {
             return;
         }
@@ -267,7 +268,7 @@ public class InstallManagerService extends Service {
                             + " to " + localApkUri);
 
                     try {
-                        if (Hasher.isFileMatchingHash(localFile, hash, "sha256")) {
+                        if (ApkCache.isFileMatchingHash(localFile, hash, "sha256")) {
                             Utils.debugLog(TAG, "Installing OBB " + localFile + " to " + obbDestFile);
                             FileUtils.forceMkdirParent(obbDestFile);
                             FileUtils.copyFile(localFile, obbDestFile);
@@ -290,13 +291,13 @@ public class InstallManagerService extends Service {
                 } else if (Downloader.ACTION_INTERRUPTED.equals(action)) {
                     localBroadcastManager.unregisterReceiver(this);
                 } else if (Downloader.ACTION_CONNECTION_FAILED.equals(action)) {
-                    DownloaderService.queue(context, urlString, 0, urlString);
+                    DownloaderService.queue(context, urlString, 0, urlString, priority);
                 } else {
                     throw new RuntimeException("intent action not handled!");
                 }
             }
         };
-        DownloaderService.queue(this, obbUrlString, 0, obbUrlString);
+        DownloaderService.queue(this, obbUrlString, 0, obbUrlString, priority);
         localBroadcastManager.registerReceiver(downloadReceiver,
                 DownloaderService.getIntentFilter(obbUrlString));
     }
@@ -305,7 +306,7 @@ public class InstallManagerService extends Service {
      * Register a {@link BroadcastReceiver} for tracking download progress for a
      * give {@code urlString}.  There can be multiple of these registered at a time.
      */
-    private void registerPackageDownloaderReceivers(String urlString) {
+    private void registerPackageDownloaderReceivers(String urlString, final int priority) {
 
         BroadcastReceiver downloadReceiver = new BroadcastReceiver() {
             @Override
@@ -354,7 +355,8 @@ public class InstallManagerService extends Service {
                         break;
                     case Downloader.ACTION_CONNECTION_FAILED:
                         try {
-                            DownloaderService.queue(context, FDroidApp.getMirror(mirrorUrlString, repoId), repoId, urlString);
+                            DownloaderService.queue(context, FDroidApp.getMirror(mirrorUrlString, repoId), repoId,
+                                    urlString, priority);
                             DownloaderService.setTimeout(FDroidApp.getTimeout());
                         } catch (IOException e) {
                             appUpdateStatusManager.setDownloadError(urlString, intent.getStringExtra(Downloader.EXTRA_ERROR_MESSAGE));
@@ -440,8 +442,22 @@ public class InstallManagerService extends Service {
      * and the file hash used to verify that things are the same.
      *
      * @param context this app's {@link Context}
+     * @see #queue(Context, App, Apk, int)
      */
     public static void queue(Context context, App app, @NonNull Apk apk) {
+        queue(context, app, apk, DownloaderService.PRIORITY_USER_INITIATED);
+    }
+
+    /**
+     * Install an APK like {@link #queue(Context, App, Apk)}, but with a choice of
+     * how urgently it needs to be downloaded.  Installs that run without the user
+     * asking for them should use {@link DownloaderService#PRIORITY_BACKGROUND}, so
+     * that they make way for whatever the user asks to install in the meantime.
+     *
+     * @param priority {@link DownloaderService#PRIORITY_USER_INITIATED} or
+     *                 {@link DownloaderService#PRIORITY_BACKGROUND}
+     */
+    public static void queue(Context context, App app, @NonNull Apk apk, int priority) {
         String urlString = apk.getUrl();
         AppUpdateStatusManager.getInstance(context).addApk(apk, AppUpdateStatusManager.Status.PendingInstall, null);
         putPendingInstall(context, urlString, apk.packageName);
@@ -451,6 +467,7 @@ public class InstallManagerService extends Service {
         intent.setData(Uri.parse(urlString));
         intent.putExtra(EXTRA_APP, app);
         intent.putExtra(EXTRA_APK, apk);
+        intent.putExtra(EXTRA_DOWNLOAD_PRIORITY, priority);
         context.startService(intent);
     }
 
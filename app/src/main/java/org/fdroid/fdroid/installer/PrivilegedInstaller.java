@@ -33,7 +33,6 @@ import android.support.annotation.NonNull;
 import android.util.Log;
 import org.fdroid.fdroid.BuildConfig;
 import org.fdroid.fdroid.Preferences;
-import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.data.Apk;
 import org.fdroid.fdroid.privileged.IPrivilegedCallback;
 import org.fdroid.fdroid.privileged.IPrivilegedService;
@@ -66,7 +65,7 @@ public class PrivilegedInstaller extends Installer {
 
     private static final String TAG = "PrivilegedInstaller";
 
-    private static final String PRIVILEGED_EXTENSION_SERVICE_INTENT
+    static final String PRIVILEGED_EXTENSION_SERVICE_INTENT
             = "org.fdroid.fdroid.privileged.IPrivilegedService";
     public static final String PRIVILEGED_EXTENSION_PACKAGE_NAME = BuildConfig.PRIVILEGED_EXTENSION_PACKAGE_NAME;
 
@@ -309,13 +308,13 @@ public class PrivilegedInstaller extends Installer {
 
     @Override
     protected void installPackageInternal(final Uri localApkUri, final Uri downloadUri) {
-        ServiceConnection mServiceConnection = new ServiceConnection() {
-            public void onServiceConnected(ComponentName name, IBinder service) {
-                IPrivilegedService privService = IPrivilegedService.Stub.asInterface(service);
-
+        PrivilegedSession.get(context).submit(new PrivilegedSession.Operation() {
+            @Override
+            void start(IPrivilegedService service) throws RemoteException {
                 IPrivilegedCallback callback = new IPrivilegedCallback.Stub() {
                     @Override
                     public void handleResult(String packageName, int returnCode) throws RemoteException {
+                        finish();
                         if (returnCode == INSTALL_SUCCEEDED) {
                             sendBroadcastInstall(downloadUri, ACTION_INSTALL_COMPLETE);
                         } else {
@@ -325,43 +324,25 @@ public class PrivilegedInstaller extends Installer {
                         }
                     }
                 };
-
-                try {
-                    boolean hasPermissions = privService.hasPrivilegedPermissions();
-                    if (!hasPermissions) {
-                        sendBroadcastInstall(downloadUri, ACTION_INSTALL_INTERRUPTED,
-                                context.getString(R.string.system_install_denied_permissions));
-                        return;
-                    }
-
-                    privService.installPackage(localApkUri, ACTION_INSTALL_REPLACE_EXISTING,
-                            null, callback);
-                } catch (RemoteException e) {
-                    Log.e(TAG, "RemoteException", e);
-                    sendBroadcastInstall(downloadUri, ACTION_INSTALL_INTERRUPTED,
-                            "connecting to privileged service failed");
-                }
+                service.installPackage(localApkUri, ACTION_INSTALL_REPLACE_EXISTING, null, callback);
             }
 
-            public void onServiceDisconnected(ComponentName name) {
+            @Override
+            void fail(String message) {
+                sendBroadcastInstall(downloadUri, ACTION_INSTALL_INTERRUPTED, message);
             }
-        };
-
-        Intent serviceIntent = new Intent(PRIVILEGED_EXTENSION_SERVICE_INTENT);
-        serviceIntent.setPackage(PRIVILEGED_EXTENSION_PACKAGE_NAME);
-        context.getApplicationContext().bindService(serviceIntent, mServiceConnection,
-                Context.BIND_AUTO_CREATE);
+        });
     }
 
     @Override
     protected void uninstallPackage() {
-        ServiceConnection mServiceConnection = new ServiceConnection() {
-            public void onServiceConnected(ComponentName name, IBinder service) {
-                IPrivilegedService privService = IPrivilegedService.Stub.asInterface(service);
-
+        PrivilegedSession.get(context).submit(new PrivilegedSession.Operation() {
+            @Override
+            void start(IPrivilegedService service) throws RemoteException {
                 IPrivilegedCallback callback = new IPrivilegedCallback.Stub() {
                     @Override
                     public void handleResult(String packageName, int returnCode) throws RemoteException {
+                        finish();
                         if (returnCode == DELETE_SUCCEEDED) {
                             sendBroadcastUninstall(ACTION_UNINSTALL_COMPLETE);
                         } else {
@@ -371,31 +352,14 @@ public class PrivilegedInstaller extends Installer {
                         }
                     }
                 };
-
-                try {
-                    boolean hasPermissions = privService.hasPrivilegedPermissions();
-                    if (!hasPermissions) {
-                        sendBroadcastUninstall(ACTION_UNINSTALL_INTERRUPTED,
-                                context.getString(R.string.system_install_denied_permissions));
-                        return;
-                    }
-
-                    privService.deletePackage(apk.packageName, 0, callback);
-                } catch (RemoteException e) {
-                    Log.e(TAG, "RemoteException", e);
-                    sendBroadcastUninstall(ACTION_UNINSTALL_INTERRUPTED,
-                            "connecting to privileged service failed");
-                }
+                service.deletePackage(apk.packageName, 0, callback);
             }
 
-            public void onServiceDisconnected(ComponentName name) {
+            @Override
+            void fail(String message) {
+                sendBroadcastUninstall(ACTION_UNINSTALL_INTERRUPTED, message);
             }
-        };
-
-        Intent serviceIntent = new Intent(PRIVILEGED_EXTENSION_SERVICE_INTENT);
-        serviceIntent.setPackage(PRIVILEGED_EXTENSION_PACKAGE_NAME);
-        context.getApplicationContext().bindService(serviceIntent, mServiceConnection,
-                Context.BIND_AUTO_CREATE);
+        });
     }
 
     @Override
@@ -0,0 +1,253 @@
+package org.fdroid.fdroid.installer;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.util.Log;
+import org.fdroid.fdroid.R;
+import org.fdroid.fdroid.privileged.IPrivilegedService;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One connection to the privileged extension, shared by all the installs and
+ * uninstalls that {@link PrivilegedInstaller} runs.  Binding to the extension
+ * takes a while, it might even need to start its process first.  Doing that
+ * for every single APK made "update all" much slower than it needed to be,
+ * since it would bind, install one APK, then bind again for the next one.
+ * <p>
+ * {@link Operation}s are queued until the extension is connected, then all
+ * started in the order they came in.  The connection is kept as long as any
+ * of them are waiting for their result, plus {@link #IDLE_UNBIND_DELAY_MS}
+ * in case more come, e.g. as the next download of an "update all" finishes.
+ * Each operation gets its own result from the extension, so success and
+ * failure are still reported per package.  If the extension does not connect
+ * within {@link #CONNECT_TIMEOUT_MS}, or dies, what it had not finished fails.
+ * <p>
+ * Everything except {@link Operation#finish()} runs on the UI thread.
+ */
+final class PrivilegedSession {
+
+    private static final String TAG = "PrivilegedSession";
+
+    private static final long IDLE_UNBIND_DELAY_MS = 30000;
+
+    private static final long CONNECT_TIMEOUT_MS = 30000;
+
+    private static final String CONNECTION_FAILED = "connecting to privileged service failed";
+
+    private static PrivilegedSession instance;
+
+    /**
+     * Something to do with the extension.  When the extension sends back the
+     * result, {@link #finish()} must be called so the connection can be released.
+     */
+    abstract static class Operation {
+
+        private PrivilegedSession session;
+
+        /**
+         * Called once connected and the extension has its permissions.
+         */
+        abstract void start(IPrivilegedService service) throws RemoteException;
+
+        /**
+         * Called instead of {@link #start(IPrivilegedService)} if the extension
+         * can't be used, or if it went away before sending the result.
+         */
+        abstract void fail(String message);
+
+        /**
+         * Can be called from any thread, e.g. the binder thread the result arrives on.
+         */
+        final void finish() {
+            session.finish(this);
+        }
+    }
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final List<Operation> pending = new ArrayList<>();
+    private final Set<Operation> active = new HashSet<>();
+
+    private IPrivilegedService service;
+    private boolean hasPermissions;
+    private boolean bound;
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            handler.removeCallbacks(connectTimeout);
+            IPrivilegedService connected = IPrivilegedService.Stub.asInterface(binder);
+            try {
+                hasPermissions = connected.hasPrivilegedPermissions();
+                service = connected;
+            } catch (RemoteException e) {
+                Log.e(TAG, "RemoteException", e);
+                failAll(CONNECTION_FAILED);
+                unbind();
+                return;
+            }
+            startPending();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // The extension died, so no results are coming for what it was doing.  Rather than
+            // wait for the system to maybe restart it, let go of the connection so that the
+            // next operation binds again, and fails right away if that is not possible.
+            unbind();
+            List<Operation> lost;
+            synchronized (active) {
+                lost = new ArrayList<>(active);
+                active.clear();
+            }
+            for (Operation operation : lost) {
+                operation.fail(CONNECTION_FAILED);
+            }
+        }
+    };
+
+    private final Runnable connectTimeout = new Runnable() {
+        @Override
+        public void run() {
+            if (service == null) {
+                Log.e(TAG, "Timed out connecting to privileged extension");
+                failAll(CONNECTION_FAILED);
+                unbind();
+            }
+        }
+    };
+
+    private final Runnable unbindIfIdle = new Runnable() {
+        @Override
+        public void run() {
+            if (isIdle()) {
+                unbind();
+            }
+        }
+    };
+
+    private PrivilegedSession(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    static synchronized PrivilegedSession get(Context context) {
+        if (instance == null) {
+            instance = new PrivilegedSession(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Queue {@code operation} to be started once connected to the extension.
+     * This can be called from any thread.
+     */
+    void submit(final Operation operation) {
+        operation.session = this;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                handler.removeCallbacks(unbindIfIdle);
+                pending.add(operation);
+                if (service != null) {
+                    startPending();
+                } else if (!bound) {
+                    bind();
+                }
+            }
+        });
+    }
+
+    private void bind() {
+        Intent serviceIntent = new Intent(PrivilegedInstaller.PRIVILEGED_EXTENSION_SERVICE_INTENT);
+        serviceIntent.setPackage(PrivilegedInstaller.PRIVILEGED_EXTENSION_PACKAGE_NAME);
+        try {
+            bound = context.bindService(serviceIntent, serviceConnection, Context.BIND_AUTO_CREATE);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Could not bind to privileged extension", e);
+            bound = false;
+        }
+        if (bound) {
+            handler.postDelayed(connectTimeout, CONNECT_TIMEOUT_MS);
+        } else {
+            failAll(CONNECTION_FAILED);
+        }
+    }
+
+    private void unbind() {
+        handler.removeCallbacks(unbindIfIdle);
+        handler.removeCallbacks(connectTimeout);
+        if (bound) {
+            context.unbindService(serviceConnection);
+            bound = false;
+        }
+        service = null;
+    }
+
+    private void startPending() {
+        List<Operation> toStart = new ArrayList<>(pending);
+        pending.clear();
+        for (Operation operation : toStart) {
+            if (!hasPermissions) {
+                operation.fail(context.getString(R.string.system_install_denied_permissions));
+                continue;
+            }
+            synchronized (active) {
+                active.add(operation);
+            }
+            try {
+                operation.start(service);
+            } catch (RemoteException e) {
+                Log.e(TAG, "RemoteException", e);
+                synchronized (active) {
+                    active.remove(operation);
+                }
+                operation.fail(CONNECTION_FAILED);
+            }
+        }
+        scheduleUnbindIfIdle();
+    }
+
+    private void finish(Operation operation) {
+        synchronized (active) {
+            active.remove(operation);
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                scheduleUnbindIfIdle();
+            }
+        });
+    }
+
+    private void failAll(String message) {
+        List<Operation> failed = new ArrayList<>(pending);
+        pending.clear();
+        for (Operation operation : failed) {
+            operation.fail(message);
+        }
+    }
+
+    private boolean isIdle() {
+        synchronized (active) {
+            return pending.isEmpty() && active.isEmpty();
+        }
+    }
+
+    private void scheduleUnbindIfIdle() {
+        if (isIdle()) {
+            handler.removeCallbacks(unbindIfIdle);
+            handler.postDelayed(unbindIfIdle, IDLE_UNBIND_DELAY_MS);
+        }
+    }
+}
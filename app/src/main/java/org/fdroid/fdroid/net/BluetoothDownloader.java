@@ -2,8 +2,11 @@ package org.fdroid.fdroid.net;
 
 import android.net.Uri;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 import android.util.Log;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.input.BoundedInputStream;
+import org.fdroid.fdroid.ProgressListener;
 import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.net.bluetooth.BluetoothClient;
 import org.fdroid.fdroid.net.bluetooth.BluetoothConnection;
@@ -11,9 +14,15 @@ import org.fdroid.fdroid.net.bluetooth.FileDetails;
 import org.fdroid.fdroid.net.bluetooth.httpish.Request;
 import org.fdroid.fdroid.net.bluetooth.httpish.Response;
 
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -26,9 +35,20 @@ public class BluetoothDownloader extends Downloader {
 
     public static final String SCHEME = "bluetooth";
 
+    private static final int MAX_BATCH_ATTEMPTS = 3;
+
+    /**
+     * Gets told about each file of {@link #downloadBatch(LinkedHashMap, BatchListener)}
+     * as soon as it is done, so it can be used before the whole batch has arrived.
+     */
+    public interface BatchListener extends ProgressListener {
+        void onFileComplete(Uri uri, boolean notFound);
+    }
+
     private final BluetoothConnection connection;
     private FileDetails fileDetails;
     private final String sourcePath;
+    private boolean newFileAvailableOnServer = true;
 
     public static boolean isBluetoothUri(Uri uri) {
         return SCHEME.equals(uri.getScheme())
@@ -42,11 +62,111 @@ public class BluetoothDownloader extends Downloader {
         this.sourcePath = uri.getPath();
     }
 
+    /**
+     * Download many files from the same Bluetooth swap repo with a single
+     * {@link Request.Methods#MGET} request over one connection, rather than
+     * paying for a connection, a {@code HEAD} and a {@code GET} per file.
+     * If the connection drops part way through, the files that are left are
+     * requested again, and the partially written one is resumed using a
+     * {@code Range} header.  Anything already in the destination files is
+     * replaced.
+     *
+     * @param files each file to download, all from the same swap repo, mapped to where
+     *              it should be written, e.g. {@code bluetooth://84-CF-BF-8B-3E-34/fdroid/repo/app.apk}
+     * @throws IOException if the swap repo could not be reached again after the
+     *                     connection dropped, so that some files were not reported
+     *                     to {@code listener}
+     */
+    public static void downloadBatch(LinkedHashMap<Uri, File> files, BatchListener listener) throws IOException {
+        List<Uri> remaining = new ArrayList<>(files.keySet());
+        if (remaining.isEmpty()) {
+            return;
+        }
+        String macAddress = remaining.get(0).getHost().replace("-", ":");
+        for (File file : files.values()) {
+            // only a partial file written by this batch must ever be resumed
+            FileUtils.deleteQuietly(file);
+        }
+
+        IOException lastException = null;
+        for (int attempt = 0; attempt < MAX_BATCH_ATTEMPTS && !remaining.isEmpty(); attempt++) {
+            BluetoothConnection connection = null;
+            try {
+                connection = new BluetoothClient(macAddress).openConnection();
+                List<String> paths = new ArrayList<>(remaining.size());
+                for (Uri uri : remaining) {
+                    paths.add(uri.getPath());
+                }
+                Request request = Request.createMGET(paths, connection);
+                long alreadyDownloaded = files.get(remaining.get(0)).length();
+                if (alreadyDownloaded > 0) {
+                    request.addHeader("Range", "bytes=" + alreadyDownloaded + "-");
+                }
+
+                Response response = request.send();
+                while (true) {
+                    Uri uri = remaining.get(0);
+                    int statusCode = response.getStatusCode();
+                    boolean notFound = false;
+                    if (statusCode == 200 || statusCode == 206) {
+                        writeBatchResponse(response, uri, files.get(uri), statusCode == 206, listener);
+                    } else if (statusCode != 416) { // 416 means it was already complete
+                        Utils.debugLog(TAG, "Swap repo responded with " + statusCode + " for " + uri);
+                        notFound = true;
+                    }
+                    remaining.remove(0);
+                    listener.onFileComplete(uri, notFound);
+                    if (remaining.isEmpty()) {
+                        break;
+                    }
+                    response = request.readNextResponse();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Bluetooth batch download interrupted, " + remaining.size() + " files left", e);
+                lastException = e;
+            } finally {
+                if (connection != null) {
+                    connection.closeQuietly();
+                }
+            }
+        }
+
+        if (!remaining.isEmpty()) {
+            throw lastException;
+        }
+    }
+
+    private static void writeBatchResponse(Response response, Uri uri, File destFile, boolean append,
+                                           ProgressListener listener) throws IOException {
+        long expectedLength = response.toFileDetails().getFileSize();
+        long startLength = append ? destFile.length() : 0;
+        long totalLength = startLength + expectedLength;
+        BoundedInputStream input = new BoundedInputStream(response.toContentStream(), expectedLength);
+        input.setPropagateClose(false);
+        OutputStream output = new FileOutputStream(destFile, append);
+        try {
+            byte[] buffer = new byte[8192];
+            long bytesRead = startLength;
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+                bytesRead += count;
+                listener.onProgress(uri.toString(), bytesRead, totalLength);
+            }
+        } finally {
+            Utils.closeQuietly(output);
+        }
+        if (destFile.length() != totalLength) {
+            throw new EOFException("Bluetooth connection closed part way through " + destFile);
+        }
+    }
+
     @Override
     protected InputStream getDownloadersInputStream() throws IOException {
         Request request = Request.createGET(sourcePath, connection);
         Response response = request.send();
         fileDetails = response.toFileDetails();
+        notFound = response.getStatusCode() == 404;
 
         // TODO: Manage the dependency which includes this class better?
         // Right now, I only needed the one class from apache commons.
@@ -80,8 +200,7 @@ public class BluetoothDownloader extends Downloader {
 
     @Override
     public boolean hasChanged() {
-        FileDetails details = getFileDetails();
-        return details == null || details.getCacheTag() == null || details.getCacheTag().equals(getCacheTag());
+        return newFileAvailableOnServer;
     }
 
     @Override
@@ -90,9 +209,24 @@ public class BluetoothDownloader extends Downloader {
         return details != null ? details.getFileSize() : -1;
     }
 
+    /**
+     * Like {@link HttpDownloader#download()}, this first asks for the details of the
+     * file, and skips downloading it if the {@code ETag} is still the same.  Swap
+     * peers which don't send an {@code ETag} for {@code HEAD} requests always get
+     * downloaded from.
+     */
     @Override
     public void download() throws IOException, InterruptedException {
+        FileDetails details = getFileDetails();
+        if (details != null && !TextUtils.isEmpty(details.getCacheTag()) && details.getCacheTag().equals(cacheTag)) {
+            Utils.debugLog(TAG, sourcePath + " is cached, not downloading");
+            newFileAvailableOnServer = false;
+            connection.closeQuietly();
+            return;
+        }
+        newFileAvailableOnServer = true;
         downloadFromStream(1024, false);
+        cacheTag = fileDetails.getCacheTag();
         connection.closeQuietly();
     }
 
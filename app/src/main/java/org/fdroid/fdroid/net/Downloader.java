@@ -3,15 +3,19 @@ package org.fdroid.fdroid.net;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 
+import org.fdroid.fdroid.Hasher;
 import org.fdroid.fdroid.ProgressListener;
 import org.fdroid.fdroid.Utils;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ConnectException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -34,6 +38,7 @@ public abstract class Downloader {
     public static final String EXTRA_MIRROR_URL = "org.fdroid.fdroid.net.Downloader.extra.ERROR_MIRROR_URL";
 
     private volatile boolean cancelled = false;
+    private volatile boolean paused = false;
     private volatile long bytesRead;
     private volatile long totalBytes;
 
@@ -45,6 +50,27 @@ public abstract class Downloader {
 
     private volatile int timeout = 10000;
 
+    private String hashType;
+    private MessageDigest digest;
+    private String hash;
+
+    private StreamProcessor streamProcessor;
+
+    /**
+     * Something to read a download with while it is still arriving, e.g. to parse
+     * it rather than waiting for all of it to be written to disk first.
+     *
+     * @see #setStreamProcessor(StreamProcessor)
+     */
+    public interface StreamProcessor {
+        /**
+         * @param stream the downloaded bytes as they arrive, which also get written to
+         *               {@link #outputFile} as they are read.  This does not need to be
+         *               read to the end, whatever is left gets downloaded afterwards.
+         */
+        void process(InputStream stream) throws IOException;
+    }
+
     /**
      * For sending download progress, should only be called in {@link #progressTask}
      */
@@ -75,6 +101,37 @@ public abstract class Downloader {
         return timeout;
     }
 
+    /**
+     * Hash the file while it is being downloaded, so that it does not need to be read
+     * again afterwards just to check it.  When a download is resumed, only the part
+     * that was already on disk is read again.
+     *
+     * @param hashType e.g. {@code sha256}, as in {@link org.fdroid.fdroid.data.Apk#hashType}
+     * @see #getHash()
+     */
+    public void setHashType(String hashType) {
+        this.hashType = hashType;
+    }
+
+    /**
+     * Read the download with {@code processor} while it is downloading.  The whole
+     * file is still written to {@link #outputFile}, but by the time {@link #download()}
+     * returns, it has already been processed too.  This is not called at all if there
+     * was nothing to download, e.g. because the file did not change, or if the download
+     * was resumed, since the stream would then start partway through the file.
+     */
+    public void setStreamProcessor(StreamProcessor processor) {
+        this.streamProcessor = processor;
+    }
+
+    /**
+     * @return the hash of {@link #outputFile} as lowercase hex, if {@link #setHashType(String)}
+     * was called and the file was downloaded completely, otherwise null
+     */
+    public String getHash() {
+        return hash;
+    }
+
     /**
      * If you ask for the cacheTag before calling download(), you will get the
      * same one you passed in (if any). If you call it after download(), you
@@ -108,6 +165,7 @@ public abstract class Downloader {
     void downloadFromStream(int bufferSize, boolean resumable) throws IOException, InterruptedException {
         Utils.debugLog(TAG, "Downloading from stream");
         InputStream input = null;
+        startDigest(resumable);
         OutputStream outputStream = new FileOutputStream(outputFile, resumable);
         try {
             input = getInputStream();
@@ -116,7 +174,7 @@ public abstract class Downloader {
             // we were interrupted before proceeding to the download.
             throwExceptionIfInterrupted();
 
-            copyInputToOutputStream(input, bufferSize, outputStream);
+            copyInputToOutputStream(input, bufferSize, outputStream, resumable ? null : streamProcessor);
         } finally {
             Utils.closeQuietly(outputStream);
             Utils.closeQuietly(input);
@@ -125,6 +183,41 @@ public abstract class Downloader {
         // Even if we have completely downloaded the file, we should probably respect
         // the wishes of the user who wanted to cancel us.
         throwExceptionIfInterrupted();
+
+        if (digest != null) {
+            hash = Hasher.hex(digest.digest());
+            digest = null;
+        }
+    }
+
+    /**
+     * When resuming, the digest needs to have seen the bytes already on disk before
+     * the new ones get added to it.
+     */
+    private void startDigest(boolean resumable) throws IOException {
+        hash = null;
+        digest = null;
+        if (hashType == null) {
+            return;
+        }
+        try {
+            digest = MessageDigest.getInstance(hashType);
+        } catch (NoSuchAlgorithmException e) {
+            Utils.debugLog(TAG, "Cannot hash " + urlString + " while downloading: " + e.getMessage());
+            return;
+        }
+        if (resumable) {
+            InputStream existing = new FileInputStream(outputFile);
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = existing.read(buffer)) != -1) {
+                    digest.update(buffer, 0, count);
+                }
+            } finally {
+                Utils.closeQuietly(existing);
+            }
+        }
     }
 
     /**
@@ -149,12 +242,34 @@ public abstract class Downloader {
         cancelled = true;
     }
 
+    /**
+     * Stop a running download so that something more important can use the
+     * connection, triggering an {@link InterruptedException} just like
+     * {@link #cancelDownload()}.  Unlike a cancel, what has been downloaded so
+     * far is left in {@link #outputFile}, so that running the download again
+     * can pick up where it stopped, if the server supports resuming.
+     *
+     * @see #isPaused()
+     */
+    public void pauseDownload() {
+        paused = true;
+        cancelled = true;
+    }
+
+    /**
+     * @return whether this was stopped by {@link #pauseDownload()} rather than cancelled
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
     /**
      * This copies the downloaded data from the InputStream to the OutputStream,
      * keeping track of the number of bytes that have flowed through for the
      * progress counter.
      */
-    private void copyInputToOutputStream(InputStream input, int bufferSize, OutputStream output)
+    private void copyInputToOutputStream(InputStream input, int bufferSize, OutputStream output,
+                                         StreamProcessor processor)
             throws IOException, InterruptedException {
         Timer timer = new Timer();
         try {
@@ -168,6 +283,16 @@ public abstract class Downloader {
             // it is implemented, so we may as well check this before we proceed.
             throwExceptionIfInterrupted();
 
+            if (processor != null) {
+                try {
+                    processor.process(new ProcessedInputStream(input, output));
+                } catch (IOException e) {
+                    throwExceptionIfInterrupted();
+                    throw e;
+                }
+                throwExceptionIfInterrupted();
+            }
+
             while (true) {
 
                 int count;
@@ -184,8 +309,7 @@ public abstract class Downloader {
                     Utils.debugLog(TAG, "Finished downloading from stream");
                     break;
                 }
-                bytesRead += count;
-                output.write(buffer, 0, count);
+                writeDownloaded(output, buffer, 0, count);
             }
         } finally {
             downloaderProgressListener = null;
@@ -196,6 +320,67 @@ public abstract class Downloader {
         }
     }
 
+    private void writeDownloaded(OutputStream output, byte[] buffer, int offset, int count) throws IOException {
+        bytesRead += count;
+        output.write(buffer, offset, count);
+        if (digest != null) {
+            digest.update(buffer, offset, count);
+        }
+    }
+
+    /**
+     * What a {@link StreamProcessor} reads from: everything read gets written out and
+     * counted just like in {@link #copyInputToOutputStream(InputStream, int, OutputStream, StreamProcessor)},
+     * which then carries on from wherever the processor stopped reading.  So closing this
+     * must not close the download, and skipping must still read the skipped bytes.
+     */
+    private class ProcessedInputStream extends InputStream {
+
+        private final InputStream input;
+        private final OutputStream output;
+
+        ProcessedInputStream(InputStream input, OutputStream output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int count = read(one, 0, 1);
+            return count == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            if (cancelled) {
+                throw new IOException("Download of " + urlString + " was cancelled");
+            }
+            int count = input.read(buffer, offset, length);
+            if (count > 0) {
+                writeDownloaded(output, buffer, offset, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(byteCount, 8192)];
+            int count = read(buffer, 0, buffer.length);
+            return count == -1 ? 0 : count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return input.available();
+        }
+
+        @Override
+        public void close() {
+            // the rest still needs to be downloaded
+        }
+    }
+
     /**
      * Send progress updates on a timer to avoid flooding receivers with pointless events.
      */
@@ -50,6 +50,12 @@ import java.net.NoRouteToHostException;
 import java.net.ProtocolException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * DownloaderService is a service that handles asynchronous download requests
@@ -73,6 +79,21 @@ import java.net.UnknownHostException;
  * long as necessary (and will not block the application's main loop), but
  * only one request will be processed at a time.
  * <p>
+ * Each request has a priority: {@link #PRIORITY_USER_INITIATED} for things the
+ * user is waiting on, like tapping "Install", and {@link #PRIORITY_BACKGROUND}
+ * for things nobody is watching, like downloading updates automatically.  User
+ * initiated requests go ahead of all queued background requests, in the order
+ * they came in.  If a background download is running when one comes in, that is
+ * paused with {@link Downloader#pauseDownload()} and put back in the queue, so
+ * the user does not have to wait for a large update to finish first.  Since the
+ * partial file is kept, the background download then resumes from where it was
+ * paused if the server supports it.
+ * <p>
+ * Every round trip over Bluetooth is slow, so when a download from a Bluetooth
+ * swap peer comes up, all of the others queued for that same peer are fetched
+ * along with it over one connection, see
+ * {@link BluetoothDownloader#downloadBatch(LinkedHashMap, BluetoothDownloader.BatchListener)}.
+ * <p>
  * The full URL for the file to download is also used as the unique ID to
  * represent the download itself throughout F-Droid.  This follows the model
  * of {@link Intent#setData(Uri)}, where the core data of an {@code Intent} is
@@ -91,12 +112,43 @@ public class DownloaderService extends Service {
     private static final String ACTION_QUEUE = "org.fdroid.fdroid.net.DownloaderService.action.QUEUE";
     private static final String ACTION_CANCEL = "org.fdroid.fdroid.net.DownloaderService.action.CANCEL";
 
+    private static final String EXTRA_PRIORITY = "org.fdroid.fdroid.net.DownloaderService.extra.PRIORITY";
+
+    public static final int PRIORITY_USER_INITIATED = 0;
+    public static final int PRIORITY_BACKGROUND = 1;
+
+    /**
+     * Messages in a {@link android.os.MessageQueue} are ordered by the time they are due,
+     * and messages due at the same time stay in the order they were sent.  Sending all
+     * user initiated requests as due at this time, long before the uptime at which any
+     * background request was sent, puts them in front of the background ones while
+     * keeping them in order among themselves.
+     */
+    private static final long USER_INITIATED_UPTIME_MILLIS = 1;
+
     private volatile Looper serviceLooper;
     private static volatile ServiceHandler serviceHandler;
     private static volatile Downloader downloader;
+    private static volatile int downloaderPriority;
+    private static volatile Set<String> activeBatch = Collections.emptySet();
     private LocalBroadcastManager localBroadcastManager;
     private static volatile int timeout;
 
+    /**
+     * Each queued Bluetooth download, by URL, in the order they were queued.
+     */
+    private final Map<String, QueuedDownload> queuedBluetooth = new LinkedHashMap<>();
+
+    private static final class QueuedDownload {
+        final Intent intent;
+        final int startId;
+
+        QueuedDownload(Intent intent, int startId) {
+            this.intent = intent;
+            this.startId = startId;
+        }
+    }
+
     private final class ServiceHandler extends Handler {
         ServiceHandler(Looper looper) {
             super(looper);
@@ -105,8 +157,13 @@ public class DownloaderService extends Service {
         @Override
         public void handleMessage(Message msg) {
             Utils.debugLog(TAG, "Handling download message with ID of " + msg.what);
-            handleIntent((Intent) msg.obj);
-            stopSelf(msg.arg1);
+            Intent intent = (Intent) msg.obj;
+            if (BluetoothDownloader.isBluetoothUri(intent.getData())) {
+                stopSelf(handleBluetoothIntent(intent, msg.arg1));
+            } else {
+                handleIntent(intent);
+                stopSelf(msg.arg1);
+            }
         }
     }
 
@@ -140,6 +197,9 @@ public class DownloaderService extends Service {
         if (ACTION_CANCEL.equals(intent.getAction())) {
             Utils.debugLog(TAG, "Cancelling download of " + uriString);
             Integer whatToRemove = uriString.hashCode();
+            synchronized (queuedBluetooth) {
+                queuedBluetooth.remove(uriString);
+            }
             if (serviceHandler.hasMessages(whatToRemove)) {
                 Utils.debugLog(TAG, "Removing download with ID of " + whatToRemove
                         + " from service handler, then sending interrupted event.");
@@ -152,11 +212,31 @@ public class DownloaderService extends Service {
                         + " (expected to find message with ID of " + whatToRemove + " in queue).");
             }
         } else if (ACTION_QUEUE.equals(intent.getAction())) {
+            if (BluetoothDownloader.isBluetoothUri(intent.getData())) {
+                synchronized (queuedBluetooth) {
+                    queuedBluetooth.remove(uriString);
+                    queuedBluetooth.put(uriString, new QueuedDownload(intent, startId));
+                }
+            }
             Message msg = serviceHandler.obtainMessage();
             msg.arg1 = startId;
             msg.obj = intent;
             msg.what = uriString.hashCode();
-            serviceHandler.sendMessage(msg);
+            if (intent.getIntExtra(EXTRA_PRIORITY, PRIORITY_USER_INITIATED) == PRIORITY_USER_INITIATED) {
+                // if it was already queued in the background, this takes its place
+                serviceHandler.removeMessages(msg.what);
+                serviceHandler.sendMessageAtTime(msg, USER_INITIATED_UPTIME_MILLIS);
+                Downloader activeDownloader = downloader;
+                if (isActive(uriString)) {
+                    // the user is now waiting on it, so nothing else should pause it
+                    downloaderPriority = PRIORITY_USER_INITIATED;
+                } else if (activeDownloader != null && downloaderPriority == PRIORITY_BACKGROUND) {
+                    Utils.debugLog(TAG, "Pausing background download of " + activeDownloader.urlString);
+                    activeDownloader.pauseDownload();
+                }
+            } else {
+                serviceHandler.sendMessage(msg);
+            }
             Utils.debugLog(TAG, "Queued download of " + uriString);
         } else {
             Utils.debugLog(TAG, "Received Intent with unknown action: " + intent);
@@ -204,6 +284,7 @@ public class DownloaderService extends Service {
         sendBroadcast(uri, Downloader.ACTION_STARTED, localFile, repoId, originalUrlString);
 
         try {
+            downloaderPriority = intent.getIntExtra(EXTRA_PRIORITY, PRIORITY_USER_INITIATED);
             downloader = DownloaderFactory.create(this, uri, localFile);
             downloader.setListener(new ProgressListener() {
                 @Override
@@ -216,15 +297,24 @@ public class DownloaderService extends Service {
                 }
             });
             downloader.setTimeout(timeout);
+            downloader.setHashType(ApkCache.DOWNLOAD_HASH_TYPE);
             downloader.download();
             if (downloader.isNotFound()) {
                 sendBroadcast(uri, Downloader.ACTION_INTERRUPTED, localFile, getString(R.string.download_404),
                         repoId, originalUrlString);
             } else {
+                ApkCache.addDownloadedFile(this, localFile, downloader.getHash());
                 sendBroadcast(uri, Downloader.ACTION_COMPLETE, localFile, repoId, originalUrlString);
             }
         } catch (InterruptedException e) {
-            sendBroadcast(uri, Downloader.ACTION_INTERRUPTED, localFile, repoId, originalUrlString);
+            if (downloader.isPaused()) {
+                // Sent back through startService() to get a new startId, otherwise
+                // finishing the download that paused this one would stop the service.
+                Utils.debugLog(TAG, "Paused download of " + uri + ", putting it back in the queue");
+                startService(intent);
+            } else {
+                sendBroadcast(uri, Downloader.ACTION_INTERRUPTED, localFile, repoId, originalUrlString);
+            }
         } catch (ConnectException | HttpRetryException | NoRouteToHostException | SocketTimeoutException
                 | SSLHandshakeException | SSLKeyException | SSLPeerUnverifiedException | SSLProtocolException
                 | ProtocolException | UnknownHostException e) {
@@ -243,6 +333,100 @@ public class DownloaderService extends Service {
         downloader = null;
     }
 
+    /**
+     * Download {@code intent} together with every other download queued for the
+     * same Bluetooth swap peer, taking those out of the queue.  Each file is
+     * reported as soon as it has arrived, so installing it does not have to wait
+     * for the whole batch.
+     *
+     * @return the newest {@code startId} that was handled, for {@link #stopSelf(int)}
+     */
+    private int handleBluetoothIntent(Intent intent, int startId) {
+        final Map<Uri, Intent> intents = new LinkedHashMap<>();
+        intents.put(intent.getData(), intent);
+        int lastStartId = startId;
+        synchronized (queuedBluetooth) {
+            queuedBluetooth.remove(intent.getDataString());
+            Iterator<Map.Entry<String, QueuedDownload>> iterator = queuedBluetooth.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, QueuedDownload> entry = iterator.next();
+                Uri uri = Uri.parse(entry.getKey());
+                if (TextUtils.equals(uri.getHost(), intent.getData().getHost())) {
+                    iterator.remove();
+                    serviceHandler.removeMessages(entry.getKey().hashCode());
+                    intents.put(uri, entry.getValue().intent);
+                    lastStartId = Math.max(lastStartId, entry.getValue().startId);
+                }
+            }
+        }
+
+        if (intents.size() == 1) {
+            handleIntent(intent);
+            return lastStartId;
+        }
+
+        Utils.debugLog(TAG, "Downloading " + intents.size() + " files from " + intent.getData().getHost()
+                + " in one Bluetooth batch");
+        final LinkedHashMap<Uri, File> files = new LinkedHashMap<>();
+        for (Map.Entry<Uri, Intent> entry : intents.entrySet()) {
+            SanitizedFile localFile = ApkCache.getApkDownloadPath(this, entry.getKey());
+            files.put(entry.getKey(), localFile);
+            sendBroadcast(entry.getKey(), Downloader.ACTION_STARTED, localFile, entry.getValue());
+        }
+
+        Set<String> batch = new HashSet<>();
+        for (Uri uri : files.keySet()) {
+            batch.add(uri.toString());
+        }
+        activeBatch = batch;
+        final Set<Uri> reported = new HashSet<>();
+        try {
+            BluetoothDownloader.downloadBatch(files, new BluetoothDownloader.BatchListener() {
+                @Override
+                public void onProgress(String urlString, long bytesRead, long totalBytes) {
+                    Intent progress = new Intent(Downloader.ACTION_PROGRESS);
+                    progress.setData(Uri.parse(urlString));
+                    progress.putExtra(Downloader.EXTRA_BYTES_READ, bytesRead);
+                    progress.putExtra(Downloader.EXTRA_TOTAL_BYTES, totalBytes);
+                    localBroadcastManager.sendBroadcast(progress);
+                }
+
+                @Override
+                public void onFileComplete(Uri uri, boolean notFound) {
+                    reported.add(uri);
+                    File localFile = files.get(uri);
+                    Intent queued = intents.get(uri);
+                    if (notFound) {
+                        sendBroadcast(uri, Downloader.ACTION_INTERRUPTED, localFile,
+                                getString(R.string.download_404), queued);
+                    } else {
+                        ApkCache.addDownloadedFile(DownloaderService.this, localFile, null);
+                        sendBroadcast(uri, Downloader.ACTION_COMPLETE, localFile, queued);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "Bluetooth batch download failed", e);
+            for (Uri uri : files.keySet()) {
+                if (!reported.contains(uri)) {
+                    sendBroadcast(uri, Downloader.ACTION_CONNECTION_FAILED, files.get(uri), intents.get(uri));
+                }
+            }
+        } finally {
+            activeBatch = Collections.emptySet();
+        }
+        return lastStartId;
+    }
+
+    private void sendBroadcast(Uri uri, String action, File file, Intent queued) {
+        sendBroadcast(uri, action, file, null, queued);
+    }
+
+    private void sendBroadcast(Uri uri, String action, File file, String errorMessage, Intent queued) {
+        sendBroadcast(uri, action, file, errorMessage, queued.getLongExtra(Downloader.EXTRA_REPO_ID, 0),
+                queued.getStringExtra(Downloader.EXTRA_CANONICAL_URL));
+    }
+
     private void sendBroadcast(Uri uri, String action) {
         sendBroadcast(uri, action, null, null);
     }
@@ -272,6 +456,15 @@ public class DownloaderService extends Service {
         localBroadcastManager.sendBroadcast(intent);
     }
 
+    /**
+     * Add a URL to the download queue as a {@link #PRIORITY_USER_INITIATED} request.
+     *
+     * @see #queue(Context, String, long, String, int)
+     */
+    public static void queue(Context context, String mirrorUrlString, long repoId, String urlString) {
+        queue(context, mirrorUrlString, repoId, urlString, PRIORITY_USER_INITIATED);
+    }
+
     /**
      * Add a URL to the download queue.
      * <p>
@@ -281,9 +474,11 @@ public class DownloaderService extends Service {
      * @param mirrorUrlString The URL to add to the download queue
      * @param repoId          the database ID number representing one repo
      * @param urlString       the URL used as the unique ID throughout F-Droid
+     * @param priority        {@link #PRIORITY_USER_INITIATED} or {@link #PRIORITY_BACKGROUND}
      * @see #cancel(Context, String)
      */
-    public static void queue(Context context, String mirrorUrlString, long repoId, String urlString) {
+    public static void queue(Context context, String mirrorUrlString, long repoId, String urlString,
+                             int priority) {
         if (TextUtils.isEmpty(mirrorUrlString)) {
             return;
         }
@@ -293,6 +488,7 @@ public class DownloaderService extends Service {
         intent.setData(Uri.parse(mirrorUrlString));
         intent.putExtra(Downloader.EXTRA_REPO_ID, repoId);
         intent.putExtra(Downloader.EXTRA_CANONICAL_URL, urlString);
+        intent.putExtra(EXTRA_PRIORITY, priority);
         context.startService(intent);
     }
 
@@ -328,7 +524,8 @@ public class DownloaderService extends Service {
         if (serviceHandler == null) {
             return false; // this service is not even running
         }
-        return serviceHandler.hasMessages(urlString.hashCode()) || isActive(urlString);
+        return serviceHandler.hasMessages(urlString.hashCode()) || isActive(urlString)
+                || activeBatch.contains(urlString);
     }
 
     /**
@@ -0,0 +1,127 @@
+package org.fdroid.fdroid.net;
+
+import android.content.Context;
+import android.net.Uri;
+import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.IndexV1Updater;
+import org.fdroid.fdroid.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Downloads the signed index of a swap peer before the user has picked it, so that
+ * connecting to it afterwards only needs the {@code HEAD} request which checks that
+ * it has not changed since.  This only writes to a cache file: nothing is added to
+ * the database, and nothing in the file is trusted until the peer has been picked
+ * and {@link IndexV1Updater} has verified the jar like any other index.
+ */
+public final class IndexPrefetcher {
+    private static final String TAG = "IndexPrefetcher";
+
+    private static final String CACHE_DIR = "swap-prefetch";
+
+    /**
+     * The {@code etag} of each complete prefetched index, by repo address.
+     */
+    private static final Map<String, String> ETAGS = new HashMap<>();
+
+    /**
+     * Bumped by each {@link #clear(Context)}, guarded by {@link #ETAGS}.  A prefetch
+     * which was started before the last clear must not add its index afterwards.
+     */
+    private static int generation;
+
+    /**
+     * A prefetched index, which now belongs to whoever took it from {@link #take(Context, String)}.
+     */
+    public static final class Prefetched {
+        public final File file;
+        public final String etag;
+
+        Prefetched(File file, String etag) {
+            this.file = file;
+            this.etag = etag;
+        }
+    }
+
+    private IndexPrefetcher() {
+    }
+
+    /**
+     * Download the index from {@code address} into the cache.  This blocks, so should
+     * not be called on the UI thread.  Failures are only logged, since connecting to
+     * the peer later will just download the index itself.
+     */
+    public static void prefetch(Context context, String address) {
+        File file = getFile(context, address);
+        int startGeneration;
+        synchronized (ETAGS) {
+            if (ETAGS.containsKey(address)) {
+                return;
+            }
+            startGeneration = generation;
+        }
+        Uri uri = Uri.parse(address).buildUpon().appendPath(IndexV1Updater.SIGNED_FILE_NAME).build();
+        try {
+            FileUtils.deleteQuietly(file);
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                return;
+            }
+            Downloader downloader = DownloaderFactory.create(context, uri, file);
+            downloader.download();
+            if (downloader.isNotFound() || !file.isFile()) {
+                FileUtils.deleteQuietly(file);
+                return;
+            }
+            synchronized (ETAGS) {
+                if (startGeneration != generation) {
+                    Utils.debugLog(TAG, "Prefetching was cleared while downloading " + uri);
+                    FileUtils.deleteQuietly(file);
+                    return;
+                }
+                ETAGS.put(address, downloader.getCacheTag());
+            }
+            Utils.debugLog(TAG, "Prefetched " + uri);
+        } catch (IOException | InterruptedException e) {
+            Utils.debugLog(TAG, "Could not prefetch " + uri + ": " + e.getMessage());
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    /**
+     * @return the index prefetched from {@code address}, if there is a complete one,
+     * which the caller then needs to delete when done with it
+     */
+    public static Prefetched take(Context context, String address) {
+        String etag;
+        synchronized (ETAGS) {
+            if (!ETAGS.containsKey(address)) {
+                return null;
+            }
+            etag = ETAGS.remove(address);
+        }
+        File file = getFile(context, address);
+        return file.isFile() ? new Prefetched(file, etag) : null;
+    }
+
+    /**
+     * Forget and delete everything that was prefetched, e.g. once swapping is over.
+     * Any prefetch still running throws its index away instead of adding it.
+     */
+    public static void clear(Context context) {
+        synchronized (ETAGS) {
+            ETAGS.clear();
+            generation++;
+        }
+        FileUtils.deleteQuietly(new File(context.getCacheDir(), CACHE_DIR));
+    }
+
+    private static File getFile(Context context, String address) {
+        String name = Utils.hashBytes(address.getBytes(), "sha256") + ".jar";
+        return new File(new File(context.getCacheDir(), CACHE_DIR), name);
+    }
+}
@@ -4,11 +4,15 @@ import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.net.bluetooth.BluetoothConnection;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -19,10 +23,29 @@ public final class Request {
     public interface Methods {
         String HEAD = "HEAD";
         String GET = "GET";
+
+        /**
+         * Request many files in one exchange.  The request line is the method followed
+         * by the number of paths.  The paths come after the headers, each as a line with
+         * its length in UTF-8 bytes followed by exactly that many bytes, so they can
+         * contain anything, including spaces.  The server answers with one response per
+         * path, in the same order, sent back-to-back.  Each of these responses includes
+         * a {@code Content-Length}, zero if there is no content, so that the client knows
+         * where the next one starts.  A {@code Range} header only applies to the first
+         * path, which is how an interrupted batch is resumed.
+         */
+        String MGET = "MGET";
     }
 
+    /**
+     * Paths are only ever relative to the swap repo, so anything longer than this
+     * means the stream is out of step or the peer is misbehaving.
+     */
+    private static final int MAX_PATH_LENGTH = 4096;
+
     private String method;
     private String path;
+    private List<String> paths;
     private Map<String, String> headers;
 
     private final BluetoothConnection connection;
@@ -33,6 +56,7 @@ public final class Request {
         this.method = method;
         this.path = path;
         this.connection = connection;
+        this.headers = new HashMap<>();
 
         output = new OutputStreamWriter(connection.getOutputStream());
         input = connection.getInputStream();
@@ -46,24 +70,69 @@ public final class Request {
         return new Request(Methods.GET, path, connection);
     }
 
+    /**
+     * Request all of {@code paths} in a single exchange, see {@link Methods#MGET}.
+     * The first response is returned by {@link #send()}, each following one by
+     * {@link #readNextResponse()}.  The content of each response must be fully
+     * read before asking for the next one.
+     */
+    public static Request createMGET(List<String> paths, BluetoothConnection connection) {
+        Request request = new Request(Methods.MGET, null, connection);
+        request.paths = new ArrayList<>(paths);
+        return request;
+    }
+
     public String getHeaderValue(String header) {
-        return headers.containsKey(header) ? headers.get(header) : null;
+        return headers.get(header.toLowerCase(Locale.ENGLISH));
+    }
+
+    public void addHeader(String header, String value) {
+        headers.put(header.toLowerCase(Locale.ENGLISH), value);
     }
 
     public Response send() throws IOException {
 
-        Utils.debugLog(TAG, "Sending request to server (" + path + ")");
+        boolean isBatch = Methods.MGET.equals(method);
+        Utils.debugLog(TAG, "Sending request to server (" + (isBatch ? paths.size() + " paths" : path) + ")");
 
         output.write(method);
         output.write(' ');
-        output.write(path);
+        output.write(isBatch ? Integer.toString(paths.size()) : path);
+        output.write('\n');
+
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            output.write(entry.getKey());
+            output.write(": ");
+            output.write(entry.getValue());
+            output.write('\n');
+        }
+
+        output.write('\n');
 
-        output.write("\n\n");
+        if (isBatch) {
+            for (String batchPath : paths) {
+                byte[] bytes = batchPath.getBytes("UTF-8");
+                output.write(Integer.toString(bytes.length));
+                output.write('\n');
+                output.flush();
+                connection.getOutputStream().write(bytes);
+            }
+        }
 
         output.flush();
 
         Utils.debugLog(TAG, "Finished sending request, now attempting to read response status code...");
 
+        return readNextResponse();
+    }
+
+    /**
+     * Read the next response sent by the server.  For {@link Methods#MGET} requests,
+     * this is called once for every path after the first one, after the content of
+     * the previous response has been consumed.
+     */
+    public Response readNextResponse() throws IOException {
+
         int responseCode = readResponseCode();
 
         Utils.debugLog(TAG, "Read response code " + responseCode + " from server, now reading headers...");
@@ -77,7 +146,7 @@ public final class Request {
                     + " request, not including anything other than headers and status...");
             return new Response(responseCode, headers);
         }
-        Utils.debugLog(TAG, "Request was a " + Methods.GET
+        Utils.debugLog(TAG, "Request was a " + method
                 + " request, so including content stream in response...");
         return new Response(responseCode, headers, connection.getInputStream());
     }
@@ -97,9 +166,10 @@ public final class Request {
             return false;
         }
 
-        String[] parts = requestLine.split("\\s+");
+        String[] parts = requestLine.trim().split("\\s+");
 
-        // First part is the method (GET/HEAD), second is the path (/fdroid/repo/index.jar)
+        // First part is the method (GET/HEAD/MGET), second is the path (/fdroid/repo/index.jar),
+        // or for MGET, how many paths follow the headers.
         if (parts.length < 2) {
             return false;
         }
@@ -107,9 +177,45 @@ public final class Request {
         method = parts[0].toUpperCase(Locale.ENGLISH);
         path = parts[1];
         headers = readHeaders();
+        if (Methods.MGET.equals(method)) {
+            paths = readPaths(parseLength(path, Integer.MAX_VALUE));
+            path = null;
+        }
         return true;
     }
 
+    /**
+     * Read the length-prefixed paths of a {@link Methods#MGET} request.
+     */
+    private List<String> readPaths(int count) throws IOException {
+        List<String> result = new ArrayList<>(Math.min(count, 256));
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[parseLength(readLine(), MAX_PATH_LENGTH)];
+            int read = 0;
+            while (read < bytes.length) {
+                int chunk = input.read(bytes, read, bytes.length - read);
+                if (chunk == -1) {
+                    throw new EOFException("Bluetooth connection closed part way through a batch request");
+                }
+                read += chunk;
+            }
+            result.add(new String(bytes, "UTF-8"));
+        }
+        return result;
+    }
+
+    private static int parseLength(String value, int max) throws IOException {
+        try {
+            int length = Integer.parseInt(value == null ? "" : value.trim());
+            if (length >= 0 && length <= max) {
+                return length;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new IOException("Invalid length in batch request: " + value);
+    }
+
     /**
      * This is a blocking method, which will wait until a full Request is received.
      */
@@ -136,41 +242,35 @@ public final class Request {
         return Integer.parseInt(status);
     }
 
+    /**
+     * Blocks until a whole line is available, rather than polling the stream, so
+     * that back-to-back responses are not each delayed waiting for data to arrive.
+     *
+     * @return the line without its newline, or null if it was empty
+     * @throws EOFException if the connection was closed before anything was read
+     */
     private String readLine() throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        String line = null;
-
-        while (line == null) {
-
-            while (input.available() > 0) {
-
-                int b = input.read();
-
-                if (((char) b) == '\n') {
-                    if (baos.size() > 0) {
-                        line = new String(baos.toByteArray());
-                    }
-
-                    return line;
-                }
-
-                baos.write(b);
+        int b;
+        while ((b = input.read()) != -1) {
+            if (((char) b) == '\n') {
+                break;
             }
+            baos.write(b);
+        }
 
-            try {
-                Thread.sleep(100);
-            } catch (Exception e) {
-                // ignore
-            }
+        if (b == -1 && baos.size() == 0) {
+            throw new EOFException("Bluetooth connection closed");
         }
 
-        return line;
+        return baos.size() > 0 ? new String(baos.toByteArray()) : null;
     }
 
     /**
      * Subsequent lines (after the status line) represent the headers, which are case
      * insensitive and may be multi-line. We don't deal with multi-line headers in
-     * our HTTP-ish implementation.
+     * our HTTP-ish implementation.  The headers end with an empty line, so reading
+     * until then leaves the stream at the start of the content.
      */
     private Map<String, String> readHeaders() throws IOException {
         Map<String, String> headers = new HashMap<>();
@@ -178,19 +278,14 @@ public final class Request {
         while (responseLine != null) {
 
             // TODO: Error handling
-            String[] parts = responseLine.split(":");
+            String[] parts = responseLine.split(":", 2);
             if (parts.length > 1) {
-                String header = parts[0].trim();
+                String header = parts[0].trim().toLowerCase(Locale.ENGLISH);
                 String value = parts[1].trim();
                 headers.put(header, value);
             }
 
-            if (input.available() > 0) {
-                responseLine = readLine();
-            } else {
-                break;
-            }
-
+            responseLine = readLine();
         }
         return headers;
     }
@@ -199,6 +294,16 @@ public final class Request {
         return path;
     }
 
+    /**
+     * @return all requested paths, which is more than one only for {@link Methods#MGET}
+     */
+    public List<String> getPaths() {
+        if (Methods.MGET.equals(method)) {
+            return Collections.unmodifiableList(paths);
+        }
+        return Collections.singletonList(path);
+    }
+
     public String getMethod() {
         return method;
     }
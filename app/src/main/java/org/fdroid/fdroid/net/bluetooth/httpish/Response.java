@@ -109,7 +109,9 @@ public class Response {
         Utils.debugLog(TAG, "Sending Bluetooth HTTP-ish response...");
 
         Writer output = new OutputStreamWriter(connection.getOutputStream());
-        output.write("HTTP(ish)/0.1 200 OK\n");
+        output.write("HTTP(ish)/0.1 ");
+        output.write(Integer.toString(statusCode));
+        output.write(statusCode < 400 ? " OK\n" : " ERROR\n");
 
         for (Map.Entry<String, String> entry : headers.entrySet()) {
             output.write(entry.getKey());
@@ -162,7 +164,7 @@ public class Response {
 
             Map<String, String> headers = new HashMap<>(3);
 
-            if (fileSize > 0) {
+            if (fileSize >= 0) {
                 headers.put("Content-Length", Integer.toString(fileSize));
             }
 
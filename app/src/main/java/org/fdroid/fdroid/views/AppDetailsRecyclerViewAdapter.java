@@ -45,10 +45,8 @@ import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.data.Apk;
-import org.fdroid.fdroid.data.ApkProvider;
 import org.fdroid.fdroid.data.App;
-import org.fdroid.fdroid.data.Repo;
-import org.fdroid.fdroid.data.RepoProvider;
+import org.fdroid.fdroid.data.AppDetailsSnapshot;
 import org.fdroid.fdroid.installer.Installer;
 import org.fdroid.fdroid.privileged.views.AppDiff;
 import org.fdroid.fdroid.privileged.views.AppSecurityPermissions;
@@ -97,6 +95,8 @@ public class AppDetailsRecyclerViewAdapter
 
     private final Context context;
     @NonNull
+    private AppDetailsSnapshot snapshot;
+    @NonNull
     private App app;
     private final AppDetailsRecyclerViewAdapterCallbacks callbacks;
     private RecyclerView recyclerView;
@@ -110,23 +110,21 @@ public class AppDetailsRecyclerViewAdapter
     private Apk downloadedApk;
     private final HashMap<String, Boolean> versionsExpandTracker = new HashMap<>();
 
-    public AppDetailsRecyclerViewAdapter(Context context, @NonNull App app, AppDetailsRecyclerViewAdapterCallbacks callbacks) {
+    public AppDetailsRecyclerViewAdapter(Context context, @NonNull AppDetailsSnapshot snapshot, AppDetailsRecyclerViewAdapterCallbacks callbacks) {
         this.context = context;
         this.callbacks = callbacks;
-        this.app = app;
-        updateItems(app);
+        updateItems(snapshot);
     }
 
-    public void updateItems(@NonNull App app) {
-        this.app = app;
+    public void updateItems(@NonNull AppDetailsSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.app = snapshot.app;
 
         // Get versions
         versions = new ArrayList<>();
         compatibleVersionsDifferentSig = new ArrayList<>();
-        final List<Apk> apks = ApkProvider.Helper.findByPackageName(context, this.app.packageName);
-        ensureInstalledApkExists(apks);
         boolean showIncompatibleVersions = Preferences.get().showIncompatibleVersions();
-        for (final Apk apk : apks) {
+        for (final Apk apk : snapshot.apks) {
             boolean allowByCompatibility = apk.compatible || showIncompatibleVersions;
             boolean allowBySig = this.app.installedSig == null || showIncompatibleVersions || TextUtils.equals(this.app.installedSig, apk.sig);
             if (allowByCompatibility) {
@@ -146,7 +144,7 @@ public class AppDetailsRecyclerViewAdapter
             items.clear();
         }
         addItem(VIEWTYPE_HEADER);
-        if (app.getAllScreenshots(context).length > 0) {
+        if (snapshot.screenshots.length > 0) {
             addItem(VIEWTYPE_SCREENSHOTS);
         }
         addItem(VIEWTYPE_DONATE);
@@ -164,18 +162,6 @@ public class AppDetailsRecyclerViewAdapter
         notifyDataSetChanged();
     }
 
-    private void ensureInstalledApkExists(final List<Apk> apks) {
-        Apk installedApk = app.getInstalledApk(this.context);
-        // These conditions should be enough to determine if the installedApk
-        // is a generated dummy or a proper APK containing data from a repository.
-        if (installedApk != null && installedApk.added == null && installedApk.sig == null) {
-            installedApk.compatible = true;
-            installedApk.sig = app.installedSig;
-            installedApk.maxSdkVersion = -1;
-            apks.add(installedApk);
-        }
-    }
-
     void setShowVersions(boolean showVersions) {
         setShowVersions(showVersions, false);
     }
@@ -558,7 +544,7 @@ public class AppDetailsRecyclerViewAdapter
 
             updateAntiFeaturesWarning();
             buttonSecondaryView.setText(R.string.menu_uninstall);
-            buttonSecondaryView.setVisibility(app.isUninstallable(context) ? View.VISIBLE : View.INVISIBLE);
+            buttonSecondaryView.setVisibility(snapshot.uninstallable ? View.VISIBLE : View.INVISIBLE);
             buttonSecondaryView.setOnClickListener(onUnInstallClickListener);
             buttonPrimaryView.setText(R.string.menu_install);
             buttonPrimaryView.setVisibility(versions.size() > 0 ? View.VISIBLE : View.GONE);
@@ -567,7 +553,7 @@ public class AppDetailsRecyclerViewAdapter
                 buttonPrimaryView.setEnabled(false);
                 buttonLayout.setVisibility(View.GONE);
                 progressLayout.setVisibility(View.VISIBLE);
-            } else if (!app.isInstalled(context) && suggestedApk != null) {
+            } else if (!snapshot.installed && suggestedApk != null) {
                 // Check count > 0 due to incompatible apps resulting in an empty list.
                 callbacks.disableAndroidBeam();
                 // Set Install button and hide second button
@@ -576,13 +562,13 @@ public class AppDetailsRecyclerViewAdapter
                 buttonPrimaryView.setEnabled(true);
                 buttonLayout.setVisibility(View.VISIBLE);
                 progressLayout.setVisibility(View.GONE);
-            } else if (app.isInstalled(context)) {
+            } else if (snapshot.installed) {
                 callbacks.enableAndroidBeam();
                 if (app.canAndWantToUpdate(context) && suggestedApk != null) {
                     buttonPrimaryView.setText(R.string.menu_upgrade);
                     buttonPrimaryView.setOnClickListener(onUpgradeClickListener);
                 } else {
-                    Apk mediaApk = app.getMediaApkifInstalled(context);
+                    Apk mediaApk = snapshot.mediaApk;
                     if (context.getPackageManager().getLaunchIntentForPackage(app.packageName) != null) {
                         buttonPrimaryView.setText(R.string.menu_launch);
                         buttonPrimaryView.setOnClickListener(onLaunchClickListener);
@@ -712,7 +698,7 @@ public class AppDetailsRecyclerViewAdapter
         public void bindModel() {
             LinearLayoutManager lm = new LinearLayoutManager(context, LinearLayoutManager.HORIZONTAL, false);
             recyclerView.setLayoutManager(lm);
-            ScreenShotsRecyclerViewAdapter adapter = new ScreenShotsRecyclerViewAdapter(itemView.getContext(), app, this);
+            ScreenShotsRecyclerViewAdapter adapter = new ScreenShotsRecyclerViewAdapter(snapshot.screenshots, this);
             recyclerView.setAdapter(adapter);
             recyclerView.setHasFixedSize(true);
             recyclerView.setNestedScrollingEnabled(false);
@@ -1053,7 +1039,7 @@ public class AppDetailsRecyclerViewAdapter
         public void bindModel(final Apk apk) {
             this.apk = apk;
 
-            boolean isAppInstalled = app.isInstalled(context);
+            boolean isAppInstalled = snapshot.installed;
             boolean isApkInstalled = apk.versionCode == app.installedVersionCode &&
                     TextUtils.equals(apk.sig, app.installedSig);
             boolean isApkSuggested = apk.versionCode == app.suggestedVersionCode &&
@@ -1090,10 +1076,10 @@ public class AppDetailsRecyclerViewAdapter
             }
 
             // Repository name, APK size and required Android version
-            Repo repo = RepoProvider.Helper.findById(context, apk.repoId);
-            if (repo != null) {
+            String repoName = snapshot.getRepoName(apk.repoId);
+            if (repoName != null) {
                 repository.setVisibility(View.VISIBLE);
-                repository.setText(repo.getName());
+                repository.setText(repoName);
             } else {
                 repository.setVisibility(View.INVISIBLE);
             }
@@ -47,13 +47,14 @@ import android.view.WindowManager;
 import info.guardianproject.netcipher.NetCipher;
 import info.guardianproject.netcipher.proxy.OrbotHelper;
 import org.fdroid.fdroid.CleanCacheService;
+import org.fdroid.fdroid.CompatibilityRecalculationService;
 import org.fdroid.fdroid.FDroidApp;
 import org.fdroid.fdroid.Languages;
+import org.fdroid.fdroid.LocaleChangeService;
 import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.UpdateService;
 import org.fdroid.fdroid.Utils;
-import org.fdroid.fdroid.data.RepoProvider;
 import org.fdroid.fdroid.installer.InstallHistoryService;
 import org.fdroid.fdroid.installer.PrivilegedInstaller;
 
@@ -271,6 +272,9 @@ public class PreferencesFragment extends PreferenceFragment
 
             case Preferences.PREF_FORCE_TOUCH_APPS:
                 checkSummary(key, R.string.force_touch_apps_on);
+                if (changing) {
+                    CompatibilityRecalculationService.recalculate(getActivity());
+                }
                 break;
 
             case Preferences.PREF_LOCAL_REPO_NAME:
@@ -287,8 +291,8 @@ public class PreferencesFragment extends PreferenceFragment
                     Activity activity = getActivity();
                     Languages.setLanguage(activity);
 
-                    RepoProvider.Helper.clearEtags(getActivity());
-                    UpdateService.updateNow(getActivity());
+                    // all locales from the index are in the database, so just pick them again
+                    LocaleChangeService.updateLocalizedFields(activity);
 
                     Languages.forceChangeLanguage(activity);
                 }
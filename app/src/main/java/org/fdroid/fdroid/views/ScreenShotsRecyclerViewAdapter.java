@@ -1,6 +1,5 @@
 package org.fdroid.fdroid.views;
 
-import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -11,7 +10,6 @@ import com.nostra13.universalimageloader.core.DisplayImageOptions;
 import com.nostra13.universalimageloader.core.ImageLoader;
 import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.Utils;
-import org.fdroid.fdroid.data.App;
 
 /**
  * Loads and displays the small screenshots that are inline in {@link org.fdroid.fdroid.AppDetails2}
@@ -21,11 +19,10 @@ class ScreenShotsRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.V
     private final DisplayImageOptions displayImageOptions;
     private final Listener listener;
 
-    ScreenShotsRecyclerViewAdapter(Context context, App app, Listener listener) {
+    ScreenShotsRecyclerViewAdapter(String[] screenshots, Listener listener) {
         super();
         this.listener = listener;
-
-        screenshots = app.getAllScreenshots(context);
+        this.screenshots = screenshots;
         displayImageOptions = Utils.getDefaultDisplayImageOptionsBuilder()
                 .showImageOnFail(R.drawable.screenshot_placeholder)
                 .showImageOnLoading(R.drawable.screenshot_placeholder)
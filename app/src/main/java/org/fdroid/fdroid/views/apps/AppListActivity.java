@@ -1,14 +1,11 @@
 package org.fdroid.fdroid.views.apps;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.KeyEvent;
@@ -27,7 +24,7 @@ import org.fdroid.fdroid.data.Schema;
 /**
  * Provides scrollable listing of apps for search and category views.
  */
-public class AppListActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor>,
+public class AppListActivity extends AppCompatActivity implements AppListPager.Listener,
         CategoryTextWatcher.SearchTermsChangedListener {
 
     public static final String EXTRA_CATEGORY
@@ -37,6 +34,7 @@ public class AppListActivity extends AppCompatActivity implements LoaderManager.
 
     private RecyclerView appView;
     private AppListAdapter appAdapter;
+    private AppListPager pager;
     private String category;
     private String searchTerms;
     private String sortClauseSelected = SortClause.LAST_UPDATED;
@@ -99,7 +97,7 @@ public class AppListActivity extends AppCompatActivity implements LoaderManager.
                         sortImage.setImageResource(R.drawable.ic_last_updated_white);
                     }
                 }
-                getSupportLoaderManager().restartLoader(0, null, AppListActivity.this);
+                loadApps();
                 appView.scrollToPosition(0);
             }
         });
@@ -122,7 +120,8 @@ public class AppListActivity extends AppCompatActivity implements LoaderManager.
             }
         });
 
-        appAdapter = new AppListAdapter(this);
+        pager = new AppListPager(getContentResolver(), this);
+        appAdapter = new AppListAdapter(this, pager);
 
         appView = (RecyclerView) findViewById(R.id.app_list);
         appView.setHasFixedSize(true);
@@ -162,7 +161,13 @@ public class AppListActivity extends AppCompatActivity implements LoaderManager.
             appView.requestFocus();
         }
 
-        getSupportLoaderManager().initLoader(0, null, this);
+        loadApps();
+    }
+
+    @Override
+    protected void onDestroy() {
+        pager.close();
+        super.onDestroy();
     }
 
     private CharSequence getSearchText(@Nullable String category, @Nullable String searchTerms) {
@@ -178,23 +183,20 @@ public class AppListActivity extends AppCompatActivity implements LoaderManager.
         return string.toString();
     }
 
-    @NonNull
-    @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        return new CursorLoader(
-                this,
-                AppProvider.getSearchUri(searchTerms, category),
-                Schema.AppMetadataTable.Cols.ALL,
-                null,
-                null,
-                sortClauseSelected
-        );
+    private void loadApps() {
+        pager.setQuery(AppProvider.getSearchUri(searchTerms, category),
+                AppProvider.APP_LIST_PROJECTION, sortClauseSelected);
     }
 
     @Override
-    public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor cursor) {
-        appAdapter.setAppCursor(cursor);
-        if (cursor.getCount() > 0) {
+    public void onAppsLoaded(boolean replaced, int previousCount) {
+        if (replaced) {
+            appAdapter.notifyDataSetChanged();
+        } else {
+            appAdapter.notifyItemRangeInserted(previousCount, pager.getCount() - previousCount);
+        }
+
+        if (pager.getCount() > 0) {
             emptyState.setVisibility(View.GONE);
             appView.setVisibility(View.VISIBLE);
         } else {
@@ -203,15 +205,15 @@ public class AppListActivity extends AppCompatActivity implements LoaderManager.
         }
     }
 
-    @Override
-    public void onLoaderReset(@NonNull Loader<Cursor> loader) {
-        appAdapter.setAppCursor(null);
-    }
-
     @Override
     public void onSearchTermsChanged(@Nullable String category, @NonNull String searchTerms) {
+        // The text is also set from the intent, which should not query the same thing twice
+        String currentSearchTerms = this.searchTerms == null ? "" : this.searchTerms;
+        if (TextUtils.equals(this.category, category) && TextUtils.equals(currentSearchTerms, searchTerms)) {
+            return;
+        }
         this.category = category;
         this.searchTerms = searchTerms;
-        getSupportLoaderManager().restartLoader(0, null, this);
+        loadApps();
     }
 }
@@ -1,31 +1,25 @@
 package org.fdroid.fdroid.views.apps;
 
 import android.app.Activity;
-import android.database.Cursor;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
 import android.view.ViewGroup;
 import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.data.App;
-import org.fdroid.fdroid.data.Schema;
 
 class AppListAdapter extends RecyclerView.Adapter<StandardAppListItemController> {
 
-    private Cursor cursor;
+    private final AppListPager pager;
     private final Activity activity;
     private final AppListItemDivider divider;
 
-    AppListAdapter(Activity activity) {
+    AppListAdapter(Activity activity, AppListPager pager) {
         this.activity = activity;
+        this.pager = pager;
         divider = new AppListItemDivider(activity);
         setHasStableIds(true);
     }
 
-    public void setAppCursor(Cursor cursor) {
-        this.cursor = cursor;
-        notifyDataSetChanged();
-    }
-
     @NonNull
     @Override
     public StandardAppListItemController onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -35,20 +29,18 @@ class AppListAdapter extends RecyclerView.Adapter<StandardAppListItemController>
 
     @Override
     public void onBindViewHolder(@NonNull StandardAppListItemController holder, int position) {
-        cursor.moveToPosition(position);
-        final App app = new App(cursor);
+        final App app = pager.get(position);
         holder.bindModel(app);
     }
 
     @Override
     public long getItemId(int position) {
-        cursor.moveToPosition(position);
-        return cursor.getLong(cursor.getColumnIndex(Schema.AppMetadataTable.Cols.ROW_ID));
+        return pager.getId(position);
     }
 
     @Override
     public int getItemCount() {
-        return cursor == null ? 0 : cursor.getCount();
+        return pager.getCount();
     }
 
     @Override
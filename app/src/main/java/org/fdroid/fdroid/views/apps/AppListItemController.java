@@ -6,7 +6,6 @@ import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.graphics.Outline;
 import android.net.Uri;
 import android.os.Build;
@@ -18,7 +17,6 @@ import android.support.v4.content.ContextCompat;
 import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.util.Pair;
 import android.support.v7.widget.RecyclerView;
-import android.text.TextUtils;
 import android.view.View;
 import android.view.ViewOutlineProvider;
 import android.widget.Button;
@@ -187,15 +185,9 @@ public abstract class AppListItemController extends RecyclerView.ViewHolder {
             updateAppStatus(app, null);
         }
 
-        final LocalBroadcastManager broadcastManager =
-                LocalBroadcastManager.getInstance(activity.getApplicationContext());
-        broadcastManager.unregisterReceiver(onStatusChanged);
-
-        IntentFilter intentFilter = new IntentFilter();
-        intentFilter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_ADDED);
-        intentFilter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_REMOVED);
-        intentFilter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_CHANGED);
-        broadcastManager.registerReceiver(onStatusChanged, intentFilter);
+        AppUpdateStatusManager manager = AppUpdateStatusManager.getInstance(activity);
+        manager.removeListener(onStatusChanged);
+        manager.addListener(onStatusChanged);
     }
 
     /**
@@ -436,18 +428,17 @@ public abstract class AppListItemController extends RecyclerView.ViewHolder {
         }
     };
 
-    private final BroadcastReceiver onStatusChanged = new BroadcastReceiver() {
+    private final AppUpdateStatusManager.Listener onStatusChanged = new AppUpdateStatusManager.Listener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            AppUpdateStatus newStatus = intent.getParcelableExtra(AppUpdateStatusManager.EXTRA_STATUS);
-
-            if (currentApp == null
-                    || !TextUtils.equals(newStatus.app.packageName, currentApp.packageName)
-                    || (installButton == null && progressBar == null)) {
+        public void onAppStatusesChanged(@NonNull AppUpdateStatusManager.Changes changes) {
+            if (currentApp == null || (installButton == null && progressBar == null)) {
                 return;
             }
 
-            updateAppStatus(currentApp, newStatus);
+            AppUpdateStatus newStatus = changes.findByPackageName(currentApp.packageName);
+            if (newStatus != null) {
+                updateAppStatus(currentApp, newStatus);
+            }
         }
     };
 
@@ -0,0 +1,251 @@
+package org.fdroid.fdroid.views.apps;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContentResolverCompat;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.AppProvider;
+import org.fdroid.fdroid.data.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads the results of an {@link AppProvider} query one page at a time, as the list is
+ * scrolled, instead of all at once.  A search matching every app in the index then costs
+ * the same to show as one matching only a handful: only one {@link #PAGE_SIZE} page is read
+ * before the first results are shown, and further pages are only read once the list has
+ * been scrolled close to them.  Every page read so far stays in memory until the query
+ * changes, so scrolling through a huge result still ends up holding all of it.
+ * <p>
+ * Pages are read one after the other on a single background thread.  Starting a new query
+ * with {@link #setQuery(Uri, String[], String)} cancels the one in progress, which
+ * {@link AppProvider} passes on to SQLite on {@code android-16} and newer, and the rows
+ * of the previous query stay available until the first page of the new one arrives, so the
+ * list does not flash empty while typing.  When the apps change, e.g. after an index update
+ * or when an app gets installed, all the rows read so far are read again in one go.
+ * <p>
+ * All methods must be called from the UI thread, and {@link Listener} is called on it.
+ */
+final class AppListPager {
+
+    static final int PAGE_SIZE = 50;
+
+    /**
+     * Start reading the next page once the list gets this close to the last row read so far.
+     */
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+
+    interface Listener {
+        /**
+         * @param replaced      True if all rows were replaced, e.g. because of a new query,
+         *                      otherwise {@code previousCount} rows stayed the same and the
+         *                      rest were added after them.
+         * @param previousCount How many rows there were before this page was added.
+         */
+        void onAppsLoaded(boolean replaced, int previousCount);
+    }
+
+    private final ContentResolver resolver;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final List<Cursor> pages = new ArrayList<>();
+
+    private final ContentObserver appsChangedObserver = new ContentObserver(handler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            reload();
+        }
+    };
+
+    @Nullable
+    private Uri uri;
+    private String[] projection;
+    private String sortOrder;
+
+    /**
+     * Incremented for each new query, so that pages from older queries can be dropped.
+     */
+    private int generation;
+    private int count;
+    private boolean loading;
+    private boolean complete;
+    private int rowIdColumn = -1;
+
+    @Nullable
+    private App.CursorDecoder decoder;
+
+    @Nullable
+    private CancellationSignal cancellationSignal;
+
+    AppListPager(ContentResolver resolver, Listener listener) {
+        this.resolver = resolver;
+        this.listener = listener;
+        resolver.registerContentObserver(AppProvider.getContentUri(), true, appsChangedObserver);
+    }
+
+    /**
+     * Replaces the current query, e.g. when the search terms or the sort order change.
+     */
+    void setQuery(Uri uri, String[] projection, String sortOrder) {
+        this.uri = uri;
+        this.projection = projection;
+        this.sortOrder = sortOrder;
+        loadPage(0, PAGE_SIZE, true);
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * The {@link App} at {@code position}, with only the columns in the projection
+     * passed to {@link #setQuery(Uri, String[], String)}.  Getting close to the end
+     * of what has been read so far starts reading the next page.
+     */
+    App get(int position) {
+        if (!loading && !complete && position >= count - PREFETCH_DISTANCE) {
+            loadPage(count, PAGE_SIZE, false);
+        }
+        return decoder.decode(moveToPosition(position));
+    }
+
+    long getId(int position) {
+        return moveToPosition(position).getLong(rowIdColumn);
+    }
+
+    /**
+     * Stops any reading in progress and frees all the pages.  This can't be used again after this.
+     */
+    void close() {
+        generation++;
+        cancel();
+        resolver.unregisterContentObserver(appsChangedObserver);
+        closePages();
+        count = 0;
+        executor.shutdown();
+    }
+
+    private Cursor moveToPosition(int position) {
+        int positionInPage = position;
+        for (Cursor page : pages) {
+            if (positionInPage < page.getCount()) {
+                page.moveToPosition(positionInPage);
+                return page;
+            }
+            positionInPage -= page.getCount();
+        }
+        throw new IndexOutOfBoundsException("Position " + position + " but only have " + count + " apps");
+    }
+
+    /**
+     * Reads all of the rows which have been shown so far again, in a single page.
+     */
+    private void reload() {
+        if (uri != null) {
+            loadPage(0, Math.max(count, PAGE_SIZE), true);
+        }
+    }
+
+    private void loadPage(int offset, final int limit, final boolean replace) {
+        if (executor.isShutdown()) {
+            // e.g. a delayed search after the screen was closed
+            return;
+        }
+
+        if (replace) {
+            generation++;
+            cancel();
+        }
+
+        final int pageGeneration = generation;
+        final CancellationSignal signal = new CancellationSignal();
+        final Uri pageUri = AppProvider.getPageUri(uri, offset, limit);
+        final String[] pageProjection = projection;
+        final String pageSortOrder = sortOrder;
+        cancellationSignal = signal;
+        loading = true;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Cursor cursor;
+                try {
+                    cursor = ContentResolverCompat.query(resolver, pageUri, pageProjection, null, null,
+                            pageSortOrder, signal);
+                    if (cursor != null) {
+                        // Fills the CursorWindow here rather than on the UI thread
+                        cursor.getCount();
+                    }
+                } catch (OperationCanceledException e) {
+                    return;
+                }
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(pageGeneration, cursor, limit, replace);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int pageGeneration, @Nullable Cursor cursor, int limit, boolean replace) {
+        if (pageGeneration != generation) {
+            if (cursor != null) {
+                cursor.close();
+            }
+            return;
+        }
+
+        loading = false;
+        cancellationSignal = null;
+        int previousCount = replace ? 0 : count;
+        if (replace) {
+            closePages();
+            count = 0;
+        }
+
+        if (cursor == null) {
+            complete = true;
+        } else {
+            if (decoder == null) {
+                decoder = new App.CursorDecoder(cursor);
+                rowIdColumn = cursor.getColumnIndex(Schema.AppMetadataTable.Cols.ROW_ID);
+            }
+            pages.add(cursor);
+            count += cursor.getCount();
+            complete = cursor.getCount() < limit;
+        }
+
+        listener.onAppsLoaded(replace, previousCount);
+    }
+
+    private void cancel() {
+        if (cancellationSignal != null) {
+            cancellationSignal.cancel();
+            cancellationSignal = null;
+        }
+        loading = false;
+    }
+
+    private void closePages() {
+        for (Cursor page : pages) {
+            page.close();
+        }
+        pages.clear();
+        decoder = null;
+        rowIdColumn = -1;
+    }
+}
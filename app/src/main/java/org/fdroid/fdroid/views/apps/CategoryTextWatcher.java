@@ -20,6 +20,9 @@ import org.fdroid.fdroid.R;
  * including an icon representing "category" and the name of the category.
  * * Removing the trailing ":" from a category chip will cause it to remove the entire category
  * from the input.
+ * <p>
+ * The {@link SearchTermsChangedListener} is only told about the new search terms once the user
+ * has stopped typing for {@link #SEARCH_DELAY_MILLIS}, rather than querying for every keystroke.
  */
 public class CategoryTextWatcher implements TextWatcher {
 
@@ -27,6 +30,8 @@ public class CategoryTextWatcher implements TextWatcher {
         void onSearchTermsChanged(@Nullable String category, @NonNull String searchTerms);
     }
 
+    private static final long SEARCH_DELAY_MILLIS = 300;
+
     private final Context context;
     private final EditText widget;
     private final SearchTermsChangedListener listener;
@@ -34,6 +39,19 @@ public class CategoryTextWatcher implements TextWatcher {
     private int removeTo = -1;
     private boolean requiresSpanRecalculation = false;
 
+    @Nullable
+    private String category;
+
+    @NonNull
+    private String searchTerms = "";
+
+    private final Runnable notifySearchTermsChanged = new Runnable() {
+        @Override
+        public void run() {
+            listener.onSearchTermsChanged(category, searchTerms);
+        }
+    };
+
     public CategoryTextWatcher(final Context context, final EditText widget,
                                final SearchTermsChangedListener listener) {
         this.context = context;
@@ -100,10 +118,11 @@ public class CategoryTextWatcher implements TextWatcher {
         }
 
         int colonIndex = searchText.toString().indexOf(':');
-        String category = colonIndex == -1 ? null : searchText.subSequence(0, colonIndex).toString();
-        String searchTerms = searchText.subSequence(colonIndex == -1 ? 0 : colonIndex + 1,
+        category = colonIndex == -1 ? null : searchText.subSequence(0, colonIndex).toString();
+        searchTerms = searchText.subSequence(colonIndex == -1 ? 0 : colonIndex + 1,
                 searchText.length()).toString();
-        listener.onSearchTermsChanged(category, searchTerms);
+        widget.removeCallbacks(notifySearchTermsChanged);
+        widget.postDelayed(notifySearchTermsChanged, SEARCH_DELAY_MILLIS);
     }
 
     /**
@@ -24,7 +24,7 @@ import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
 import org.fdroid.fdroid.AppDetails2;
 import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.Utils;
-import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.AppListItem;
 import org.fdroid.fdroid.views.apps.FeatureImage;
 
 /**
@@ -66,7 +66,7 @@ public class AppCardController extends RecyclerView.ViewHolder
     private final FeatureImage featuredImage;
 
     @Nullable
-    private App currentApp;
+    private AppListItem currentApp;
 
     private final Activity activity;
 
@@ -100,7 +100,7 @@ public class AppCardController extends RecyclerView.ViewHolder
         return found;
     }
 
-    public void bindApp(@NonNull App app) {
+    public void bindApp(@NonNull AppListItem app) {
         currentApp = app;
 
         summary.setText(Utils.formatAppNameAndSummary(app.name, app.summary));
@@ -134,7 +134,7 @@ public class AppCardController extends RecyclerView.ViewHolder
         }
     }
 
-    private boolean isConsideredNew(@NonNull App app) {
+    private boolean isConsideredNew(@NonNull AppListItem app) {
         //noinspection SimplifiableIfStatement
         if (app.added == null || app.lastUpdated == null || !app.added.equals(app.lastUpdated)) {
             return false;
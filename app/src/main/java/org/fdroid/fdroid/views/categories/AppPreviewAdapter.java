@@ -6,11 +6,12 @@ import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
 import android.view.ViewGroup;
 import org.fdroid.fdroid.R;
-import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.AppListItem;
 
 class AppPreviewAdapter extends RecyclerView.Adapter<AppCardController> {
 
     private Cursor cursor;
+    private AppListItem.CursorDecoder decoder;
     private final Activity activity;
 
     AppPreviewAdapter(Activity activity) {
@@ -27,7 +28,7 @@ class AppPreviewAdapter extends RecyclerView.Adapter<AppCardController> {
     @Override
     public void onBindViewHolder(@NonNull AppCardController holder, int position) {
         cursor.moveToPosition(position);
-        holder.bindApp(new App(cursor));
+        holder.bindApp(decoder.decode(cursor));
     }
 
     @Override
@@ -37,6 +38,7 @@ class AppPreviewAdapter extends RecyclerView.Adapter<AppCardController> {
 
     public void setAppCursor(Cursor cursor) {
         this.cursor = cursor;
+        this.decoder = cursor == null ? null : new AppListItem.CursorDecoder(cursor);
         notifyDataSetChanged();
     }
 }
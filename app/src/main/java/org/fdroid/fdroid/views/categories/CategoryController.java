@@ -149,12 +149,7 @@ public class CategoryController extends RecyclerView.ViewHolder implements Loade
             return new CursorLoader(
                     activity,
                     AppProvider.getTopFromCategoryUri(currentCategory, categoryItemCount),
-                    new String[]{
-                            Schema.AppMetadataTable.Cols.NAME,
-                            Schema.AppMetadataTable.Cols.Package.PACKAGE_NAME,
-                            Schema.AppMetadataTable.Cols.SUMMARY,
-                            Schema.AppMetadataTable.Cols.ICON_URL,
-                    },
+                    AppProvider.LIST_ITEM_PROJECTION,
                     null,
                     null,
                     Schema.AppMetadataTable.Cols.NAME
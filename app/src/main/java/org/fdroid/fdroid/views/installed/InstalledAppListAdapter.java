@@ -18,6 +18,9 @@ class InstalledAppListAdapter extends RecyclerView.Adapter<InstalledAppListItemC
     @Nullable
     private Cursor cursor;
 
+    @Nullable
+    private App.CursorDecoder decoder;
+
     InstalledAppListAdapter(Activity activity) {
         this.activity = activity;
         setHasStableIds(true);
@@ -47,7 +50,7 @@ class InstalledAppListAdapter extends RecyclerView.Adapter<InstalledAppListItemC
         }
 
         cursor.moveToPosition(position);
-        holder.bindModel(new App(cursor));
+        holder.bindModel(decode(cursor));
     }
 
     @Override
@@ -57,6 +60,7 @@ class InstalledAppListAdapter extends RecyclerView.Adapter<InstalledAppListItemC
 
     public void setApps(@Nullable Cursor cursor) {
         this.cursor = cursor;
+        decoder = null;
         notifyDataSetChanged();
     }
 
@@ -66,6 +70,13 @@ class InstalledAppListAdapter extends RecyclerView.Adapter<InstalledAppListItemC
             return null;
         }
         cursor.moveToPosition(position);
-        return new App(cursor);
+        return decode(cursor);
+    }
+
+    private App decode(@NonNull Cursor cursor) {
+        if (decoder == null) {
+            decoder = new App.CursorDecoder(cursor);
+        }
+        return decoder.decode(cursor);
     }
 }
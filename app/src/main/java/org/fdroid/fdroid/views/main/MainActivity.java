@@ -23,15 +23,13 @@
 package org.fdroid.fdroid.views.main;
 
 import android.app.SearchManager;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -131,10 +129,7 @@ public class MainActivity extends AppCompatActivity implements BottomNavigationB
                 .addItem(new BottomNavigationItem(R.drawable.ic_settings, R.string.menu_settings))
                 .initialise();
 
-        IntentFilter updateableAppsFilter = new IntentFilter(AppUpdateStatusManager.BROADCAST_APPSTATUS_LIST_CHANGED);
-        updateableAppsFilter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_CHANGED);
-        updateableAppsFilter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_REMOVED);
-        LocalBroadcastManager.getInstance(this).registerReceiver(onUpdateableAppsChanged, updateableAppsFilter);
+        AppUpdateStatusManager.getInstance(this).addListener(onUpdateableAppsChanged);
 
         if (savedInstanceState != null) {
             selectedMenuId = savedInstanceState.getInt(STATE_SELECTED_MENU_ID, (int) adapter.getItemId(0));
@@ -149,6 +144,12 @@ public class MainActivity extends AppCompatActivity implements BottomNavigationB
         handleSearchOrAppViewIntent(intent);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        AppUpdateStatusManager.getInstance(this).removeListener(onUpdateableAppsChanged);
+    }
+
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         outState.putInt(STATE_SELECTED_MENU_ID, selectedMenuId);
@@ -393,46 +394,33 @@ public class MainActivity extends AppCompatActivity implements BottomNavigationB
      * * {@link AppUpdateStatusManager.Status#ReadyToInstall} (Causes the count to go UP by one)
      * * {@link AppUpdateStatusManager.Status#Installed} (Causes the count to go DOWN by one)
      */
-    private final BroadcastReceiver onUpdateableAppsChanged = new BroadcastReceiver() {
+    private final AppUpdateStatusManager.Listener onUpdateableAppsChanged = new AppUpdateStatusManager.Listener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            boolean updateBadge = false;
-
-            AppUpdateStatusManager manager = AppUpdateStatusManager.getInstance(context);
-
-            String reason = intent.getStringExtra(AppUpdateStatusManager.EXTRA_REASON_FOR_CHANGE);
-            switch (intent.getAction()) {
-                // Apps which are added/removed from the list due to becoming ready to install or a repo being
-                // disabled both cause us to increase/decrease our badge count respectively.
-                case AppUpdateStatusManager.BROADCAST_APPSTATUS_LIST_CHANGED:
-                    if (AppUpdateStatusManager.REASON_READY_TO_INSTALL.equals(reason) ||
-                            AppUpdateStatusManager.REASON_REPO_DISABLED.equals(reason)) {
-                        updateBadge = true;
-                    }
-                    break;
-
-                // Apps which were previously "Ready to install" but have been removed. We need to lower our badge
-                // count in response to this.
-                case AppUpdateStatusManager.BROADCAST_APPSTATUS_REMOVED:
-                    AppUpdateStatus status = intent.getParcelableExtra(AppUpdateStatusManager.EXTRA_STATUS);
-                    if (status != null && status.status == AppUpdateStatusManager.Status.ReadyToInstall) {
-                        updateBadge = true;
-                    }
-                    break;
+        public void onAppStatusesChanged(@NonNull AppUpdateStatusManager.Changes changes) {
+            // Apps which are added/removed from the list due to becoming ready to install or a repo being
+            // disabled both cause us to increase/decrease our badge count respectively.
+            boolean updateBadge = changes.hasReason(AppUpdateStatusManager.REASON_READY_TO_INSTALL)
+                    || changes.hasReason(AppUpdateStatusManager.REASON_REPO_DISABLED);
+
+            // Apps which were previously "Ready to install" but have been removed. We need to lower our badge
+            // count in response to this.
+            for (AppUpdateStatus status : changes.removed) {
+                if (status.status == AppUpdateStatusManager.Status.ReadyToInstall) {
+                    updateBadge = true;
+                }
             }
 
             // Check if we have moved into the ReadyToInstall or Installed state.
-            AppUpdateStatus status = manager.get(intent.getStringExtra(AppUpdateStatusManager.EXTRA_APK_URL));
-            boolean isStatusChange = intent.getBooleanExtra(AppUpdateStatusManager.EXTRA_IS_STATUS_UPDATE, false);
-            if (isStatusChange
-                    && status != null
-                    && (status.status == AppUpdateStatusManager.Status.ReadyToInstall || status.status == AppUpdateStatusManager.Status.Installed)) { // NOCHECKSTYLE LineLength
-                updateBadge = true;
+            for (AppUpdateStatus status : changes.changed) {
+                if (status.status == AppUpdateStatusManager.Status.ReadyToInstall
+                        || status.status == AppUpdateStatusManager.Status.Installed) {
+                    updateBadge = true;
+                }
             }
 
             if (updateBadge) {
                 int count = 0;
-                for (AppUpdateStatus s : manager.getAll()) {
+                for (AppUpdateStatus s : AppUpdateStatusManager.getInstance(MainActivity.this).getAll()) {
                     if (s.status == AppUpdateStatusManager.Status.ReadyToInstall) {
                         count++;
                     }
@@ -23,7 +23,6 @@ import org.fdroid.fdroid.UpdateService;
 import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.data.AppProvider;
 import org.fdroid.fdroid.data.RepoProvider;
-import org.fdroid.fdroid.data.Schema;
 import org.fdroid.fdroid.views.apps.AppListActivity;
 import org.fdroid.fdroid.views.hiding.HidingManager;
 import org.fdroid.fdroid.views.whatsnew.WhatsNewAdapter;
@@ -103,7 +102,7 @@ class WhatsNewViewBinder implements LoaderManager.LoaderCallbacks<Cursor> {
         return new CursorLoader(
                 activity,
                 AppProvider.getRecentlyUpdatedUri(),
-                Schema.AppMetadataTable.Cols.ALL,
+                AppProvider.LIST_ITEM_PROJECTION,
                 null,
                 null,
                 null
@@ -1,9 +1,5 @@
 package org.fdroid.fdroid.views.updates;
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -11,7 +7,6 @@ import android.support.annotation.NonNull;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
-import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.RecyclerView;
 import android.view.ViewGroup;
@@ -236,9 +231,10 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
     private void onCanUpdateLoadFinished(Cursor cursor) {
         updateableApps.clear();
 
+        App.CursorDecoder decoder = new App.CursorDecoder(cursor);
         cursor.moveToFirst();
         while (!cursor.isAfterLast()) {
-            updateableApps.add(new UpdateableApp(activity, new App(cursor)));
+            updateableApps.add(new UpdateableApp(activity, decoder.decode(cursor)));
             cursor.moveToNext();
         }
     }
@@ -246,9 +242,10 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
     private void onKnownVulnLoadFinished(Cursor cursor) {
         knownVulnApps.clear();
 
+        App.CursorDecoder decoder = new App.CursorDecoder(cursor);
         cursor.moveToFirst();
         while (!cursor.isAfterLast()) {
-            knownVulnApps.add(new KnownVulnApp(activity, new App(cursor)));
+            knownVulnApps.add(new KnownVulnApp(activity, decoder.decode(cursor)));
             cursor.moveToNext();
         }
     }
@@ -260,37 +257,31 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
     /**
      * If this adapter is "active" then it is part of the current UI that the user is looking to.
      * Under those circumstances, we want to make sure it is up to date, and also listen to the
-     * correct set of broadcasts.
-     * Doesn't listen for {@link AppUpdateStatusManager#BROADCAST_APPSTATUS_CHANGED} because the
-     * individual items in the recycler view will listen for the appropriate changes in state and
-     * update themselves accordingly (if they are displayed).
+     * app statuses.
+     * Ignores statuses which only changed or made progress, because the individual items in the
+     * recycler view will listen for the appropriate changes in state and update themselves
+     * accordingly (if they are displayed).
      */
     public void setIsActive() {
         appsToShowStatus.clear();
         populateAppStatuses();
         notifyDataSetChanged();
 
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_ADDED);
-        filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_REMOVED);
-        filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_LIST_CHANGED);
-
-        LocalBroadcastManager.getInstance(activity).registerReceiver(receiverAppStatusChanges, filter);
+        AppUpdateStatusManager manager = AppUpdateStatusManager.getInstance(activity);
+        manager.removeListener(appStatusListener);
+        manager.addListener(appStatusListener);
     }
 
     public void stopListeningForStatusUpdates() {
-        LocalBroadcastManager.getInstance(activity).unregisterReceiver(receiverAppStatusChanges);
+        AppUpdateStatusManager.getInstance(activity).removeListener(appStatusListener);
     }
 
-    private void onManyAppStatusesChanged(String reasonForChange) {
-        switch (reasonForChange) {
-            case AppUpdateStatusManager.REASON_UPDATES_AVAILABLE:
-                onUpdateableAppsChanged();
-                break;
-
-            case AppUpdateStatusManager.REASON_READY_TO_INSTALL:
-                onFoundAppsReadyToInstall();
-                break;
+    private void onManyAppStatusesChanged(AppUpdateStatusManager.Changes changes) {
+        if (changes.hasReason(AppUpdateStatusManager.REASON_UPDATES_AVAILABLE)) {
+            onUpdateableAppsChanged();
+        }
+        if (changes.hasReason(AppUpdateStatusManager.REASON_READY_TO_INSTALL)) {
+            onFoundAppsReadyToInstall();
         }
     }
 
@@ -316,36 +307,20 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
         notifyDataSetChanged();
     }
 
-    private void onAppStatusAdded() {
-        appsToShowStatus.clear();
-        populateAppStatuses();
-        notifyDataSetChanged();
-    }
-
-    private void onAppStatusRemoved() {
+    private void onAppStatusesAddedOrRemoved() {
         appsToShowStatus.clear();
         populateAppStatuses();
         notifyDataSetChanged();
     }
 
-    private final BroadcastReceiver receiverAppStatusChanges = new BroadcastReceiver() {
+    private final AppUpdateStatusManager.Listener appStatusListener = new AppUpdateStatusManager.Listener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            if (intent == null) {
-                return;
+        public void onAppStatusesChanged(@NonNull AppUpdateStatusManager.Changes changes) {
+            if (changes.isListChanged()) {
+                onManyAppStatusesChanged(changes);
             }
-            switch (intent.getAction()) {
-                case AppUpdateStatusManager.BROADCAST_APPSTATUS_LIST_CHANGED:
-                    onManyAppStatusesChanged(intent.getStringExtra(AppUpdateStatusManager.EXTRA_REASON_FOR_CHANGE));
-                    break;
-
-                case AppUpdateStatusManager.BROADCAST_APPSTATUS_ADDED:
-                    onAppStatusAdded();
-                    break;
-
-                case AppUpdateStatusManager.BROADCAST_APPSTATUS_REMOVED:
-                    onAppStatusRemoved();
-                    break;
+            if (!changes.added.isEmpty() || !changes.removed.isEmpty()) {
+                onAppStatusesAddedOrRemoved();
             }
         }
     };
@@ -355,6 +330,6 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
      * then we should rebuild the list of app statuses and update the adapter.
      */
     public void refreshStatuses() {
-        onAppStatusRemoved();
+        onAppStatusesAddedOrRemoved();
     }
 }
@@ -13,12 +13,13 @@ import android.view.View;
 import android.view.ViewGroup;
 import org.fdroid.fdroid.BuildConfig;
 import org.fdroid.fdroid.R;
-import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.AppListItem;
 import org.fdroid.fdroid.views.categories.AppCardController;
 
 public class WhatsNewAdapter extends RecyclerView.Adapter<AppCardController> {
 
     private Cursor cursor;
+    private AppListItem.CursorDecoder decoder;
     private final Activity activity;
     private final RecyclerView.ItemDecoration appListDecorator;
 
@@ -92,7 +93,7 @@ public class WhatsNewAdapter extends RecyclerView.Adapter<AppCardController> {
     @Override
     public void onBindViewHolder(@NonNull AppCardController holder, int position) {
         cursor.moveToPosition(position);
-        final App app = new App(cursor);
+        final AppListItem app = decoder.decode(cursor);
         holder.bindApp(app);
     }
 
@@ -103,6 +104,7 @@ public class WhatsNewAdapter extends RecyclerView.Adapter<AppCardController> {
 
     public void setAppsCursor(Cursor cursor) {
         this.cursor = cursor;
+        this.decoder = cursor == null ? null : new AppListItem.CursorDecoder(cursor);
         notifyDataSetChanged();
     }
 
@@ -0,0 +1,98 @@
+package org.fdroid.fdroid;
+
+import android.app.Application;
+import org.fdroid.fdroid.AppUpdateStatusManager.AppUpdateStatus;
+import org.fdroid.fdroid.AppUpdateStatusManager.Status;
+import org.fdroid.fdroid.data.Apk;
+import org.fdroid.fdroid.data.ApkProvider;
+import org.fdroid.fdroid.data.FDroidProviderTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@Config(constants = BuildConfig.class, application = Application.class)
+@RunWith(RobolectricTestRunner.class)
+public class AppUpdateStatusManagerTest extends FDroidProviderTest {
+
+    private final List<AppUpdateStatusManager.Changes> dispatched = new ArrayList<>();
+
+    private final AppUpdateStatusManager.Listener listener = new AppUpdateStatusManager.Listener() {
+        @Override
+        public void onAppStatusesChanged(AppUpdateStatusManager.Changes changes) {
+            for (List<AppUpdateStatus> statuses
+                    : Arrays.asList(changes.added, changes.changed, changes.progressed, changes.removed)) {
+                for (AppUpdateStatus status : statuses) {
+                    // what the listeners all read from every status they get
+                    assertNotNull(status);
+                    assertNotNull(status.getUniqueKey());
+                    assertNotNull(status.apk);
+                }
+            }
+            dispatched.add(changes);
+        }
+    };
+
+    private AppUpdateStatusManager manager;
+
+    @Before
+    public void setUp() {
+        Preferences.setupForTests(context);
+        manager = AppUpdateStatusManager.getInstance(context);
+        manager.addListener(listener);
+    }
+
+    @After
+    public void tearDown() {
+        manager.removeListener(listener);
+    }
+
+    @Test
+    public void removeThenErrorInOneDispatch() {
+        Apk apk = insertApk("org.example.removed");
+        manager.addApk(apk, Status.Downloading, null);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        dispatched.clear();
+
+        manager.removeApk(apk.getUrl());
+        manager.setApkError(apk, "Failed to install");
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertEquals(1, dispatched.size());
+        AppUpdateStatusManager.Changes changes = dispatched.get(0);
+        assertTrue(changes.removed.isEmpty());
+        assertEquals(1, changes.added.size());
+        assertEquals(Status.InstallError, changes.added.get(0).status);
+        assertEquals("Failed to install", changes.added.get(0).errorText);
+    }
+
+    @Test
+    public void errorForUntrackedApkIsAnAdd() {
+        Apk apk = insertApk("org.example.untracked");
+        manager.setApkError(apk, "Failed to install");
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertEquals(1, dispatched.size());
+        assertEquals(1, dispatched.get(0).added.size());
+        assertTrue(dispatched.get(0).progressed.isEmpty());
+        manager.removeApk(apk.getUrl());
+    }
+
+    private Apk insertApk(String packageName) {
+        Assert.insertApk(context, packageName, 1);
+        Apk apk = ApkProvider.Helper.findApkFromAnyRepo(context, packageName, 1);
+        assertNotNull(apk);
+        return apk;
+    }
+}
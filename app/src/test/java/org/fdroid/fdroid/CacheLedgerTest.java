@@ -0,0 +1,109 @@
+package org.fdroid.fdroid;
+
+import android.content.Context;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class CacheLedgerTest {
+
+    private static final Context CONTEXT = RuntimeEnvironment.application;
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = new File(CONTEXT.getCacheDir(), "CacheLedgerTest");
+        FileUtils.deleteQuietly(dir);
+        dir.mkdirs();
+    }
+
+    private File createFile(String name, int size) throws IOException {
+        File file = new File(dir, name);
+        FileUtils.writeByteArrayToFile(file, new byte[size]);
+        return file;
+    }
+
+    @Test
+    public void deleteExpired() throws IOException {
+        CacheLedger ledger = new CacheLedger(CONTEXT);
+        File expired = createFile("expired.apk", 10);
+        File kept = createFile("kept.apk", 10);
+        ledger.add(expired, CacheLedger.Kind.Download, -1);
+        ledger.add(kept, CacheLedger.Kind.Download, TimeUnit.DAYS.toMillis(1));
+
+        assertEquals(1, ledger.deleteExpired());
+        assertFalse(expired.exists());
+        assertTrue(kept.exists());
+        assertEquals(0, ledger.deleteExpired());
+    }
+
+    @Test
+    public void entriesSurviveRestart() throws IOException {
+        File file = createFile("restart.apk", 10);
+        new CacheLedger(CONTEXT).add(file, CacheLedger.Kind.Download, -1);
+
+        assertEquals(1, new CacheLedger(CONTEXT).deleteExpired());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void addingAgainReplacesExpiry() throws IOException {
+        CacheLedger ledger = new CacheLedger(CONTEXT);
+        File file = createFile("again.apk", 10);
+        ledger.add(file, CacheLedger.Kind.Download, -1);
+        ledger.add(file, CacheLedger.Kind.Download, TimeUnit.DAYS.toMillis(1));
+
+        assertEquals(0, ledger.deleteExpired());
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void keepForever() throws IOException {
+        CacheLedger ledger = new CacheLedger(CONTEXT);
+        File forever = createFile("forever.apk", 10);
+        File expired = createFile("expired.apk", 10);
+        ledger.add(forever, CacheLedger.Kind.Download, Long.MAX_VALUE);
+        ledger.add(expired, CacheLedger.Kind.Download, -1);
+
+        assertEquals(1, ledger.deleteExpired());
+        assertTrue(forever.exists());
+        assertFalse(expired.exists());
+        assertEquals(0, new CacheLedger(CONTEXT).deleteExpired());
+        assertTrue(forever.exists());
+    }
+
+    @Test
+    public void evictOldestDownloadsFirst() throws IOException {
+        CacheLedger ledger = new CacheLedger(CONTEXT);
+        File oldest = createFile("oldest.apk", 100);
+        File middle = createFile("middle.apk", 100);
+        File newest = createFile("newest.apk", 100);
+        File installCopy = createFile("install-copy.apk", 1000);
+        ledger.add(oldest, CacheLedger.Kind.Download, TimeUnit.HOURS.toMillis(1));
+        ledger.add(middle, CacheLedger.Kind.Download, TimeUnit.HOURS.toMillis(2));
+        ledger.add(newest, CacheLedger.Kind.Download, TimeUnit.HOURS.toMillis(3));
+        ledger.add(installCopy, CacheLedger.Kind.InstallCopy, TimeUnit.MINUTES.toMillis(20));
+
+        ledger.evictDownloadsToSize(150);
+        assertFalse(oldest.exists());
+        assertFalse(middle.exists());
+        assertTrue(newest.exists());
+        assertTrue(installCopy.exists());
+
+        ledger.evictDownloadsToSize(Long.MAX_VALUE);
+        assertTrue(newest.exists());
+    }
+}
@@ -18,6 +18,8 @@ import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowContentResolver;
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 
 import static org.fdroid.fdroid.Assert.assertContainsOnly;
@@ -282,6 +284,56 @@ public class AppProviderTest extends FDroidProviderTest {
         new App(cursor);
     }
 
+    @Test
+    public void testListItemProjection() {
+        Date added = new Date(1500000000000L);
+        Date lastUpdated = new Date(1510000000000L);
+        ContentValues values = new ContentValues();
+        values.put(Cols.SUMMARY, "Summary of app");
+        values.put(Cols.ADDED, added.getTime());
+        values.put(Cols.LAST_UPDATED, lastUpdated.getTime());
+        values.put(Cols.FEATURE_GRAPHIC, "en-US/featureGraphic.png");
+        insertApp(contentResolver, context, "org.fdroid.listitem", "List Item", values);
+
+        Cursor cursor = contentResolver.query(AppProvider.getContentUri(),
+                AppProvider.LIST_ITEM_PROJECTION, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        AppListItem item = new AppListItem.CursorDecoder(cursor).decode(cursor);
+        cursor.close();
+
+        assertEquals(1, item.repoId);
+        assertEquals("org.fdroid.listitem", item.packageName);
+        assertEquals("List Item", item.name);
+        assertEquals("Summary of app", item.summary);
+        assertEquals("en-US/featureGraphic.png", item.featureGraphic);
+        assertEquals(added, item.added);
+        assertEquals(lastUpdated, item.lastUpdated);
+    }
+
+    @Test
+    public void testPages() {
+        for (int i = 0; i < 7; i++) {
+            // Same name for all of them, so only the paging tie-breaker keeps the order stable
+            insertApp("com.example.page" + i, "Paged app");
+        }
+
+        List<String> pagedPackageNames = new ArrayList<>();
+        for (int offset = 0; offset < 9; offset += 3) {
+            Uri uri = AppProvider.getPageUri(AppProvider.getContentUri(), offset, 3);
+            Cursor cursor = contentResolver.query(uri, PROJ, null, null, Cols.NAME);
+            assertNotNull(cursor);
+            assertEquals(offset < 6 ? 3 : 1, cursor.getCount());
+            for (App app : AppProvider.Helper.cursorToList(cursor)) {
+                pagedPackageNames.add(app.packageName);
+            }
+        }
+
+        assertEquals(7, pagedPackageNames.size());
+        assertEquals(7, new HashSet<>(pagedPackageNames).size());
+    }
+
     private Cursor queryAllApps() {
         String[] projection = new String[]{
                 Cols._ID,
@@ -276,7 +276,7 @@ public class CategoryProviderTest extends FDroidProviderTest {
     private void insertAppWithCategory(String id, String name, String categories, Date lastUpdated, long repoId) {
         ContentValues values = new ContentValues(2);
         values.put(Cols.ForWriting.Categories.CATEGORIES, categories);
-        values.put(Cols.LAST_UPDATED, lastUpdated.getTime() / 1000);
+        values.put(Cols.LAST_UPDATED, lastUpdated.getTime());
         AppProviderTest.insertApp(contentResolver, context, id, name, values, repoId);
     }
 
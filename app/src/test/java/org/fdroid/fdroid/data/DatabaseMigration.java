@@ -4,12 +4,14 @@ import android.app.Application;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.ContextWrapper;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import org.fdroid.fdroid.BuildConfig;
 import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.TestUtils;
 import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.data.Schema.AppMetadataTable;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -19,6 +21,9 @@ import org.robolectric.Shadows;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowContentResolver;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 @Config(constants = BuildConfig.class, application = Application.class)
 @RunWith(RobolectricTestRunner.class)
 public class DatabaseMigration {
@@ -41,6 +46,42 @@ public class DatabaseMigration {
         opener.close();
     }
 
+    /**
+     * The dates used to be parsed from "yyyy-MM-dd" in the default time zone, so the
+     * millis stored by the upgrade have to be the same as that parser gave.
+     */
+    @Test
+    public void datesConvertedToEpoch() {
+        Preferences.setupForTests(context);
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        DBHelper helper = new DBHelper(context);
+        helper.onCreate(db);
+
+        ContentValues values = new ContentValues();
+        values.put(AppMetadataTable.Cols.PACKAGE_ID, 1);
+        values.put(AppMetadataTable.Cols.REPO_ID, 1);
+        values.put(AppMetadataTable.Cols.NAME, "Test");
+        values.put(AppMetadataTable.Cols.SUMMARY, "Test");
+        values.put(AppMetadataTable.Cols.DESCRIPTION, "Test");
+        values.put(AppMetadataTable.Cols.LICENSE, "GPLv3");
+        values.put(AppMetadataTable.Cols.IS_COMPATIBLE, 1);
+        values.put(AppMetadataTable.Cols.ADDED, "2017-07-07");
+        values.put(AppMetadataTable.Cols.LAST_UPDATED, "");
+        db.insert(AppMetadataTable.NAME, null, values);
+
+        helper.onUpgrade(db, 80, DBHelper.DB_VERSION);
+
+        Cursor cursor = db.query(AppMetadataTable.NAME,
+                new String[]{AppMetadataTable.Cols.ADDED, AppMetadataTable.Cols.LAST_UPDATED},
+                null, null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(Cursor.FIELD_TYPE_INTEGER, cursor.getType(0));
+        assertEquals(Utils.parseDate("2017-07-07", null).getTime(), cursor.getLong(0));
+        assertTrue(cursor.isNull(1));
+        cursor.close();
+        db.close();
+    }
+
     /**
      * The database created by this in {@link MigrationRunningOpenHelper#onCreate(SQLiteDatabase)}
      * should be identical to the one which was created by F-Droid circa git tag "db-version/42".
@@ -0,0 +1,229 @@
+package org.fdroid.fdroid.data;
+
+import android.app.Application;
+import android.util.Log;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.fdroid.fdroid.BuildConfig;
+import org.fdroid.fdroid.IndexV1Updater;
+import org.fdroid.fdroid.TestUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link IndexV1Decoder} reads exactly what Jackson's databinding
+ * reads, and compares how long each of them takes.
+ */
+@Config(constants = BuildConfig.class, application = Application.class)
+@RunWith(RobolectricTestRunner.class)
+public class IndexV1DecoderTest {
+    private static final String TAG = "IndexV1DecoderTest";
+
+    private static final long FAKE_REPO_ID = 0xdeadbeef;
+    private static final String FDROID_JAR = "index-v1.fdroid.2017-07-07.jar";
+
+    private static final TypeReference<HashMap<String, List<Apk>>> PACKAGES_TYPE =
+            new TypeReference<HashMap<String, List<Apk>>>() {
+            };
+
+    private static class Parsed {
+        App[] apps;
+        Map<String, List<Apk>> packages;
+    }
+
+    @Test
+    public void testFdroidIndex() throws IOException {
+        assertSameAsDatabind(readIndexFromJar(FDROID_JAR));
+    }
+
+    @Test
+    public void testGuardianProjectIndex() throws IOException {
+        assertSameAsDatabind(readResource("guardianproject_index-v1.json"));
+    }
+
+    /**
+     * This one has numbers as strings, and fields that do not exist.
+     */
+    @Test
+    public void testAllFieldsIndex() throws IOException {
+        assertSameAsDatabind(readResource("all_fields_index-v1.json"));
+    }
+
+    @Test
+    public void testUnexpectedValues() throws IOException {
+        String json = "{\"apps\": [{"
+                + "\"packageName\": \"org.example\","
+                + "\"name\": 42,"
+                + "\"categories\": [\"System\", 7],"
+                + "\"added\": \"2017-07-07\","
+                + "\"secret\": {\"nested\": [1, 2]},"
+                + "\"suggestedVersionCode\": \"\""
+                + "}], \"packages\": {\"org.example\": [{"
+                + "\"versionCode\": 12.0,"
+                + "\"nativecode\": null,"
+                + "\"uses-permission\": [[\"android.permission.INTERNET\", null],"
+                + " [\"android.permission.CAMERA\", 22]]"
+                + "}]}}";
+        Parsed parsed = assertSameAsDatabind(json.getBytes("UTF-8"));
+        assertEquals("42", parsed.apps[0].name);
+        assertEquals(12, parsed.packages.get("org.example").get(0).versionCode);
+    }
+
+    /**
+     * The before and after of the decoder: how long the {@code apps} and {@code packages}
+     * of {@link #FDROID_JAR} take with databinding, with the decoder, and just to
+     * tokenize, which is as fast as any decoder built on {@link JsonParser} can get.
+     * The JVM running the tests is not ART, so this only shows the difference between
+     * them, not how long it takes on a device.
+     */
+    @Test
+    public void testSpeed() throws IOException {
+        ShadowLog.stream = System.out;
+        byte[] index = readIndexFromJar(FDROID_JAR);
+        for (int i = 0; i < 5; i++) { // warm up
+            parse(index, false);
+            parse(index, true);
+            tokenize(index);
+        }
+
+        int runs = 10;
+        long databind = 0;
+        long decoder = 0;
+        long tokenizing = 0;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            parse(index, false);
+            databind += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            parse(index, true);
+            decoder += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            tokenize(index);
+            tokenizing += System.nanoTime() - start;
+        }
+        Log.i(TAG, "Parsing " + FDROID_JAR + " with databind: " + databind / runs / 1000000 + "ms, with "
+                + IndexV1Decoder.class.getSimpleName() + ": " + decoder / runs / 1000000 + "ms, only tokenizing: "
+                + tokenizing / runs / 1000000 + "ms");
+        assertTrue(databind > 0 && decoder > 0 && tokenizing > 0);
+    }
+
+    private static void tokenize(byte[] index) throws IOException {
+        JsonParser parser = IndexV1Updater.getObjectMapperInstance(FAKE_REPO_ID).getFactory()
+                .createParser(new ByteArrayInputStream(index));
+        while (parser.nextToken() != null) {
+            parser.getText();
+        }
+        parser.close();
+    }
+
+    private Parsed assertSameAsDatabind(byte[] index) throws IOException {
+        ObjectMapper mapper = IndexV1Updater.getObjectMapperInstance(FAKE_REPO_ID);
+        Parsed expected = parse(index, false);
+        Parsed actual = parse(index, true);
+
+        assertNotNull(actual.apps);
+        assertEquals(expected.apps.length, actual.apps.length);
+        for (int i = 0; i < expected.apps.length; i++) {
+            assertEquals(mapper.writeValueAsString(expected.apps[i]), mapper.writeValueAsString(actual.apps[i]));
+            assertEquals(expected.apps[i].getLocalizedContentValues(), actual.apps[i].getLocalizedContentValues());
+            assertEquals(FAKE_REPO_ID, actual.apps[i].repoId);
+        }
+
+        assertNotNull(actual.packages);
+        assertEquals(expected.packages.keySet(), actual.packages.keySet());
+        for (Map.Entry<String, List<Apk>> entry : expected.packages.entrySet()) {
+            List<Apk> expectedApks = entry.getValue();
+            List<Apk> actualApks = actual.packages.get(entry.getKey());
+            assertEquals(expectedApks.size(), actualApks.size());
+            for (int i = 0; i < expectedApks.size(); i++) {
+                assertEquals(mapper.writeValueAsString(expectedApks.get(i)),
+                        mapper.writeValueAsString(actualApks.get(i)));
+            }
+        }
+        return actual;
+    }
+
+    private Parsed parse(byte[] index, boolean useDecoder) throws IOException {
+        ObjectMapper mapper = IndexV1Updater.getObjectMapperInstance(FAKE_REPO_ID);
+        IndexV1Decoder decoder = new IndexV1Decoder(mapper, FAKE_REPO_ID);
+        JsonParser parser = mapper.getFactory().createParser(new ByteArrayInputStream(index));
+        Parsed parsed = new Parsed();
+
+        parser.nextToken(); // go into the main object block
+        while (true) {
+            String fieldName = parser.nextFieldName();
+            if (fieldName == null) {
+                break;
+            }
+            JsonToken token = parser.nextToken();
+            switch (fieldName) {
+                case "apps":
+                    if (useDecoder) {
+                        parsed.apps = decoder.readApps(parser);
+                    } else {
+                        parsed.apps = mapper.readValue(parser, App[].class);
+                    }
+                    break;
+                case "packages":
+                    if (useDecoder) {
+                        parsed.packages = decoder.readPackages(parser);
+                    } else {
+                        parsed.packages = mapper.readValue(parser, PACKAGES_TYPE);
+                    }
+                    break;
+                default:
+                    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                    }
+                    break;
+            }
+        }
+        parser.close();
+        return parsed;
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        File file = TestUtils.copyResourceToTempFile(name);
+        InputStream input = new FileInputStream(file);
+        try {
+            return IOUtils.toByteArray(input);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private static byte[] readIndexFromJar(String name) throws IOException {
+        JarFile jarFile = new JarFile(TestUtils.copyResourceToTempFile(name), true);
+        JarEntry indexEntry = (JarEntry) jarFile.getEntry(IndexV1Updater.DATA_FILE_NAME);
+        InputStream input = jarFile.getInputStream(indexEntry);
+        try {
+            return IOUtils.toByteArray(input);
+        } finally {
+            IOUtils.closeQuietly(input);
+            jarFile.close();
+        }
+    }
+}
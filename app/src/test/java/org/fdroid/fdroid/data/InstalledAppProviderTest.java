@@ -1,9 +1,12 @@
 package org.fdroid.fdroid.data;
 
 import android.app.Application;
+import android.content.ContentProviderOperation;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
 import org.fdroid.fdroid.BuildConfig;
 import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.TestUtils;
@@ -15,6 +18,7 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
 import java.util.Map;
 
 import static org.fdroid.fdroid.Assert.assertIsInstalledVersionInDb;
@@ -165,6 +169,27 @@ public class InstalledAppProviderTest extends FDroidProviderTest {
 
     }
 
+    @Test
+    public void testApplyBatch() throws RemoteException, OperationApplicationException {
+        insertInstalledApp("com.example.app1", 10, "1.0");
+        insertInstalledApp("com.example.app2", 10, "1.0");
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(InstalledAppProvider.getContentUri())
+                .withValues(createContentValues("com.example.app2", 11, "1.1"))
+                .build());
+        operations.add(ContentProviderOperation.newInsert(InstalledAppProvider.getContentUri())
+                .withValues(createContentValues("com.example.app3", 1, "0.1"))
+                .build());
+        operations.add(ContentProviderOperation.newDelete(InstalledAppProvider.getAppUri("com.example.app1"))
+                .build());
+        contentResolver.applyBatch(InstalledAppProvider.getAuthority(), operations);
+
+        assertResultCount(contentResolver, 2, InstalledAppProvider.getContentUri());
+        assertIsInstalledVersionInDb(contentResolver, "com.example.app2", 11, "1.1");
+        assertIsInstalledVersionInDb(contentResolver, "com.example.app3", 1, "0.1");
+    }
+
     private ContentValues createContentValues(int versionCode, String versionNumber) {
         return createContentValues(null, versionCode, versionNumber);
     }
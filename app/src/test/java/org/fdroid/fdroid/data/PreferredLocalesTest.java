@@ -0,0 +1,145 @@
+package org.fdroid.fdroid.data;
+
+import android.app.Application;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import org.fdroid.fdroid.BuildConfig;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Config(constants = BuildConfig.class, application = Application.class)
+@RunWith(RobolectricTestRunner.class)
+public class PreferredLocalesTest {
+
+    private final Locale defaultLocale = Locale.getDefault();
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(defaultLocale);
+        PreferredLocales.refresh();
+    }
+
+    @Test
+    public void testChoose() {
+        Map<String, Object> available = new LinkedHashMap<>();
+        available.put("fr", null);
+        available.put("en-GB", null);
+        available.put("de", null);
+        available.put("en-US", null);
+        available.put("de-DE", null);
+
+        Locale.setDefault(Locale.GERMANY);
+        List<String> locales = PreferredLocales.refresh().choose(available);
+        assertEquals("de-DE", locales.get(0));
+        assertEquals("de", locales.get(1));
+        assertTrue(locales.contains("en-US"));
+        assertTrue(locales.indexOf("en-US") < locales.indexOf("en-GB"));
+        assertFalse(locales.contains("fr"));
+
+        Locale.setDefault(Locale.FRANCE);
+        locales = PreferredLocales.refresh().choose(available);
+        assertEquals("fr", locales.get(0));
+        assertFalse(locales.contains("de"));
+
+        available.remove("en-US");
+        Locale.setDefault(new Locale("es", "ES"));
+        locales = PreferredLocales.refresh().choose(available);
+        assertTrue(locales.contains("en-GB"));
+        assertFalse(locales.contains("de"));
+    }
+
+    /**
+     * With both a language-only and several region-specific matches, the best
+     * locale must be the same whether it is picked while parsing or in SQL, no
+     * matter what order the index lists them in.
+     */
+    @Test
+    @Config(sdk = 23)
+    public void testChooseMatchesRankSqlWithLanguagePrefix() {
+        Map<String, Object> available = new LinkedHashMap<>();
+        available.put("de-DE", null);
+        available.put("en-GB", null);
+        available.put("de-CH", null);
+        available.put("de", null);
+        available.put("en-US", null);
+        available.put("fr", null);
+
+        Locale.setDefault(new Locale("de", "AT"));
+        List<String> locales = PreferredLocales.refresh().choose(available);
+        assertEquals("de", locales.get(0));
+        assertEquals("de-CH", locales.get(1));
+        assertEquals("de-DE", locales.get(2));
+        assertEquals("en-US", locales.get(3));
+        assertEquals("en-GB", locales.get(4));
+        assertFalse(locales.contains("fr"));
+        assertEquals(locales, chooseWithSql(available.keySet()));
+
+        available.remove("de");
+        Locale.setDefault(Locale.GERMANY);
+        locales = PreferredLocales.refresh().choose(available);
+        assertEquals("de-DE", locales.get(0));
+        assertEquals("de-CH", locales.get(1));
+        assertEquals(locales, chooseWithSql(available.keySet()));
+    }
+
+    @Test
+    public void testChooseMatchesRankSql() {
+        Map<String, Object> available = new LinkedHashMap<>();
+        available.put("de-DE", null);
+        available.put("en-GB", null);
+        available.put("de", null);
+        available.put("en-US", null);
+
+        Locale.setDefault(Locale.GERMANY);
+        List<String> locales = PreferredLocales.refresh().choose(available);
+        assertEquals("de-DE", locales.get(0));
+        assertEquals("de", locales.get(1));
+        assertEquals(locales, chooseWithSql(available.keySet()));
+    }
+
+    private static List<String> chooseWithSql(Iterable<String> available) {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            db.execSQL("CREATE TABLE localized (locale TEXT)");
+            for (String locale : available) {
+                ContentValues values = new ContentValues(1);
+                values.put("locale", locale);
+                db.insert("localized", null, values);
+            }
+            String rank = PreferredLocales.get().getRankSql("locale");
+            Cursor cursor = db.rawQuery("SELECT locale FROM localized WHERE " + rank + " >= 0"
+                    + " ORDER BY " + rank + ", locale", null);
+            List<String> result = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                result.add(cursor.getString(0));
+            }
+            cursor.close();
+            return result;
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void testGetIsOnlyReadOnRefresh() {
+        Locale.setDefault(Locale.GERMANY);
+        PreferredLocales preferredLocales = PreferredLocales.refresh();
+        Locale.setDefault(Locale.FRANCE);
+        assertEquals(preferredLocales, PreferredLocales.get());
+        assertEquals("de-DE", PreferredLocales.get().exact[0]);
+    }
+}
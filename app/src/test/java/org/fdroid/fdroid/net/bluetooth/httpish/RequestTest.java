@@ -0,0 +1,134 @@
+package org.fdroid.fdroid.net.bluetooth.httpish;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.fdroid.fdroid.BuildConfig;
+import org.fdroid.fdroid.net.bluetooth.BluetoothConnection;
+import org.fdroid.fdroid.net.bluetooth.FileDetails;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the Bluetooth HTTP-ish protocol over in-memory streams instead of a socket.
+ */
+@Config(constants = BuildConfig.class)
+@RunWith(RobolectricTestRunner.class)
+public class RequestTest {
+
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    private BluetoothConnection connectionReceiving(String received) throws IOException {
+        BluetoothConnection connection = mock(BluetoothConnection.class);
+        when(connection.getInputStream()).thenReturn(new ByteArrayInputStream(received.getBytes("UTF-8")));
+        when(connection.getOutputStream()).thenReturn(sent);
+        return connection;
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        BluetoothConnection connection = connectionReceiving("HTTP(ish)/0.1 200 OK\n"
+                + "Content-Length: 5\n"
+                + "ETag: abc:def\n"
+                + "\n"
+                + "hello, and whatever comes next");
+        Request request = Request.createGET("/fdroid/repo/index-v1.jar", connection);
+        request.addHeader("If-None-Match", "abc");
+        Response response = request.send();
+
+        assertEquals("GET /fdroid/repo/index-v1.jar\nif-none-match: abc\n\n", sent.toString("UTF-8"));
+        assertEquals(200, response.getStatusCode());
+        FileDetails details = response.toFileDetails();
+        assertEquals(5, details.getFileSize());
+        assertEquals("abc:def", details.getCacheTag());
+        // the headers must have been read up to the blank line, and no further
+        BoundedInputStream content = new BoundedInputStream(response.toContentStream(), details.getFileSize());
+        assertEquals("hello", IOUtils.toString(content, "UTF-8"));
+    }
+
+    @Test
+    public void testErrorStatusIsSent() throws IOException {
+        new Response.Builder().setStatusCode(404).build().send(connectionReceiving(""));
+        String status = sent.toString("UTF-8").split("\n")[0];
+        assertEquals("HTTP(ish)/0.1 404 ERROR", status);
+
+        Response response = Request.createHEAD("/missing.apk", connectionReceiving(sent.toString("UTF-8"))).send();
+        assertEquals(404, response.getStatusCode());
+    }
+
+    @Test
+    public void testListenForRequest() throws IOException {
+        Request request = Request.listenForRequest(connectionReceiving("get /fdroid/repo/app.apk\n"
+                + "Range: bytes=10-\n"
+                + "\n"));
+        assertEquals(Request.Methods.GET, request.getMethod());
+        assertEquals("/fdroid/repo/app.apk", request.getPath());
+        assertEquals("bytes=10-", request.getHeaderValue("range"));
+        assertEquals("bytes=10-", request.getHeaderValue("Range"));
+        assertNull(request.getHeaderValue("etag"));
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        List<String> paths = Arrays.asList("/fdroid/repo/with space.apk", "/fdroid/repo/\u00fcn\u00efcode.apk",
+                "/fdroid/repo/missing.apk");
+        BluetoothConnection connection = connectionReceiving("HTTP(ish)/0.1 200 OK\n"
+                + "Content-Length: 3\n"
+                + "\n"
+                + "abc"
+                + "HTTP(ish)/0.1 200 OK\n"
+                + "Content-Length: 2\n"
+                + "\n"
+                + "de"
+                + "HTTP(ish)/0.1 404 ERROR\n"
+                + "Content-Length: 0\n"
+                + "\n");
+        Request request = Request.createMGET(paths, connection);
+        request.addHeader("Range", "bytes=10-");
+
+        Response response = request.send();
+        assertEquals(200, response.getStatusCode());
+        assertEquals("abc", IOUtils.toString(new BoundedInputStream(response.toContentStream(), 3), "UTF-8"));
+        response = request.readNextResponse();
+        assertEquals(200, response.getStatusCode());
+        assertEquals("de", IOUtils.toString(new BoundedInputStream(response.toContentStream(), 2), "UTF-8"));
+        response = request.readNextResponse();
+        assertEquals(404, response.getStatusCode());
+        assertEquals(0, response.toFileDetails().getFileSize());
+
+        // what the client sent is read back by the server as the same paths
+        Request received = Request.listenForRequest(connectionReceiving(sent.toString("UTF-8")));
+        assertEquals(Request.Methods.MGET, received.getMethod());
+        assertEquals(paths, received.getPaths());
+        assertEquals("bytes=10-", received.getHeaderValue("range"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testBatchWithBadLength() throws IOException {
+        Request.listenForRequest(connectionReceiving("MGET 1\n\n-5\n"));
+    }
+
+    @Test
+    public void testEmptyResponseHasContentLength() throws IOException {
+        new Response.Builder().setStatusCode(404).setFileSize(0).build().send(connectionReceiving(""));
+        assertEquals("HTTP(ish)/0.1 404 ERROR\nContent-Length: 0\n\n", sent.toString("UTF-8"));
+    }
+
+    @Test(expected = EOFException.class)
+    public void testConnectionClosed() throws IOException {
+        Request.listenForRequest(connectionReceiving(""));
+    }
+}
@@ -38,6 +38,7 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
@@ -131,6 +132,76 @@ public class IndexV1UpdaterTest extends FDroidProviderTest {
         assertEquals(1, AppProvider.Helper.findInstalledAppsWithKnownVulns(context).size());
     }
 
+    @Test
+    public void testLocaleChangeWithoutRefresh() throws IOException, RepoUpdater.UpdateException {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.GERMANY);
+            Repo repo = MultiRepoUpdaterTest.createRepo("Testy", TESTY_JAR, context, TESTY_CERT);
+            IndexV1Updater updater = new IndexV1Updater(context, repo);
+            JarFile jarFile = new JarFile(TestUtils.copyResourceToTempFile(TESTY_JAR), true);
+            JarEntry indexEntry = (JarEntry) jarFile.getEntry(IndexV1Updater.DATA_FILE_NAME);
+            InputStream indexInputStream = jarFile.getInputStream(indexEntry);
+            updater.processIndexV1(indexInputStream, indexEntry, "fakeEtag");
+            IOUtils.closeQuietly(indexInputStream);
+
+            App app = AppProvider.Helper.findHighestPriorityMetadata(context.getContentResolver(),
+                    "de.danoeh.antennapod");
+            assertEquals("Einfach zu benutzender und anpassbarer Open-Source Podcast-Manager", app.summary);
+
+            Locale.setDefault(new Locale("es", "ES"));
+            AppProvider.Helper.updateLocalizedFields(context);
+            app = AppProvider.Helper.findHighestPriorityMetadata(context.getContentResolver(),
+                    "de.danoeh.antennapod");
+            assertEquals("Reproductor y gestor de podcast de código abierto, flexible y fácil de usar",
+                    app.summary);
+
+            // only en-US and es are available, so es-ES falls back to es
+            app = AppProvider.Helper.findHighestPriorityMetadata(context.getContentResolver(), "jp.forkhub");
+            assertEquals("GitHub cliente basado en la aplicación oficial abandonada.", app.summary);
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    /**
+     * A locale which an app does not have must fall back to the inline values
+     * from the index, not to whatever locale was picked before.
+     */
+    @Test
+    public void testLocaleChangeTwice() throws IOException, RepoUpdater.UpdateException {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.GERMANY);
+            Repo repo = MultiRepoUpdaterTest.createRepo("Testy", TESTY_JAR, context, TESTY_CERT);
+            IndexV1Updater updater = new IndexV1Updater(context, repo);
+            JarFile jarFile = new JarFile(TestUtils.copyResourceToTempFile(TESTY_JAR), true);
+            JarEntry indexEntry = (JarEntry) jarFile.getEntry(IndexV1Updater.DATA_FILE_NAME);
+            InputStream indexInputStream = jarFile.getInputStream(indexEntry);
+            updater.processIndexV1(indexInputStream, indexEntry, "fakeEtag");
+            IOUtils.closeQuietly(indexInputStream);
+
+            // only es has a summary, so German uses the inline one
+            App app = AppProvider.Helper.findHighestPriorityMetadata(context.getContentResolver(), "flipboard.app");
+            assertEquals("Flipboard", app.summary);
+
+            Locale.setDefault(new Locale("es", "ES"));
+            AppProvider.Helper.updateLocalizedFields(context);
+            app = AppProvider.Helper.findHighestPriorityMetadata(context.getContentResolver(), "flipboard.app");
+            assertEquals("Flipboard organiza las historias del mundo en torno a todos tus intereses.", app.summary);
+
+            Locale.setDefault(Locale.GERMANY);
+            AppProvider.Helper.updateLocalizedFields(context);
+            app = AppProvider.Helper.findHighestPriorityMetadata(context.getContentResolver(), "flipboard.app");
+            assertEquals("Flipboard", app.summary);
+            app = AppProvider.Helper.findHighestPriorityMetadata(context.getContentResolver(),
+                    "de.danoeh.antennapod");
+            assertEquals("Einfach zu benutzender und anpassbarer Open-Source Podcast-Manager", app.summary);
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
     @Test(expected = RepoUpdater.SigningException.class)
     public void testIndexV1WithWrongCert() throws IOException, RepoUpdater.UpdateException {
         String badCert = "308202ed308201d5a003020102020426ffa009300d06092a864886f70d01010b05003027310b300906035504061302444531183016060355040a130f4e4f47415050532050726f6a656374301e170d3132313030363132303533325a170d3337303933303132303533325a3027310b300906035504061302444531183016060355040a130f4e4f47415050532050726f6a65637430820122300d06092a864886f70d01010105000382010f003082010a02820101009a8d2a5336b0eaaad89ce447828c7753b157459b79e3215dc962ca48f58c2cd7650df67d2dd7bda0880c682791f32b35c504e43e77b43c3e4e541f86e35a8293a54fb46e6b16af54d3a4eda458f1a7c8bc1b7479861ca7043337180e40079d9cdccb7e051ada9b6c88c9ec635541e2ebf0842521c3024c826f6fd6db6fd117c74e859d5af4db04448965ab5469b71ce719939a06ef30580f50febf96c474a7d265bb63f86a822ff7b643de6b76e966a18553c2858416cf3309dd24278374bdd82b4404ef6f7f122cec93859351fc6e5ea947e3ceb9d67374fe970e593e5cd05c905e1d24f5a5484f4aadef766e498adf64f7cf04bddd602ae8137b6eea40722d0203010001a321301f301d0603551d0e04160414110b7aa9ebc840b20399f69a431f4dba6ac42a64300d06092a864886f70d01010b0500038201010007c32ad893349cf86952fb5a49cfdc9b13f5e3c800aece77b2e7e0e9c83e34052f140f357ec7e6f4b432dc1ed542218a14835acd2df2deea7efd3fd5e8f1c34e1fb39ec6a427c6e6f4178b609b369040ac1f8844b789f3694dc640de06e44b247afed11637173f36f5886170fafd74954049858c6096308fc93c1bc4dd5685fa7a1f982a422f2a3b36baa8c9500474cf2af91c39cbec1bc898d10194d368aa5e91f1137ec115087c31962d8f76cd120d28c249cf76f4c70f5baa08c70a7234ce4123be080cee789477401965cfe537b924ef36747e8caca62dfefdd1a6288dcb1c4fd2aaa6131a7ad254e9742022cfd597d2ca5c660ce9e41ff537e5a4041e37"; // NOCHECKSTYLE LineLength
@@ -313,9 +384,12 @@ public class IndexV1UpdaterTest extends FDroidProviderTest {
                 "installedVersionCode",
                 "installedVersionName",
                 "isApk",
+                "localizedEntries",
+                "localizedTexts",
                 "preferredSigner",
                 "prefs",
                 "TAG",
+                "unlocalizedTexts",
         };
         runJsonIgnoreTest(new App(), allowedInApp, ignoredInApp);
     }
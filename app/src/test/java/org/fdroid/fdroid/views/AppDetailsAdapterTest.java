@@ -13,11 +13,13 @@ import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.data.Apk;
 import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.AppDetailsSnapshot;
 import org.fdroid.fdroid.data.AppProviderTest;
 import org.fdroid.fdroid.data.DBHelper;
 import org.fdroid.fdroid.data.FDroidProviderTest;
 import org.fdroid.fdroid.data.Repo;
 import org.fdroid.fdroid.data.RepoProviderTest;
+import org.fdroid.fdroid.data.Schema;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -26,11 +28,14 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 @Config(constants = BuildConfig.class, application = Application.class)
 @RunWith(RobolectricTestRunner.class)
 public class AppDetailsAdapterTest extends FDroidProviderTest {
 
+    private Repo repo;
     private App app;
 
     @Before
@@ -38,7 +43,7 @@ public class AppDetailsAdapterTest extends FDroidProviderTest {
         ImageLoader.getInstance().init(ImageLoaderConfiguration.createDefault(context));
         Preferences.setupForTests(context);
 
-        Repo repo = RepoProviderTest.insertRepo(context, "http://www.example.com/fdroid/repo", "", "", "Test Repo");
+        repo = RepoProviderTest.insertRepo(context, "http://www.example.com/fdroid/repo", "", "", "Test Repo");
         app = AppProviderTest.insertApp(contentResolver, context, "com.example.app", "Test App",
                 new ContentValues(), repo.getId());
     }
@@ -51,7 +56,7 @@ public class AppDetailsAdapterTest extends FDroidProviderTest {
 
     @Test
     public void appWithNoVersionsOrScreenshots() {
-        AppDetailsRecyclerViewAdapter adapter = new AppDetailsRecyclerViewAdapter(context, app, dummyCallbacks);
+        AppDetailsRecyclerViewAdapter adapter = new AppDetailsRecyclerViewAdapter(context, loadSnapshot(), dummyCallbacks);
         populateViewHolders(adapter);
 
         assertEquals(3, adapter.getItemCount());
@@ -59,9 +64,15 @@ public class AppDetailsAdapterTest extends FDroidProviderTest {
 
     @Test
     public void appWithScreenshots() {
-        app.phoneScreenshots = new String[]{"screenshot1.png", "screenshot2.png"};
+        ContentValues values = new ContentValues();
+        values.put(Schema.AppMetadataTable.Cols.PHONE_SCREENSHOTS, "screenshot1.png,screenshot2.png");
+        app = AppProviderTest.insertApp(contentResolver, context, "com.example.screenshots", "Screenshots App",
+                values, repo.getId());
 
-        AppDetailsRecyclerViewAdapter adapter = new AppDetailsRecyclerViewAdapter(context, app, dummyCallbacks);
+        AppDetailsSnapshot snapshot = loadSnapshot();
+        assertEquals(2, snapshot.screenshots.length);
+
+        AppDetailsRecyclerViewAdapter adapter = new AppDetailsRecyclerViewAdapter(context, snapshot, dummyCallbacks);
         populateViewHolders(adapter);
 
         assertEquals(4, adapter.getItemCount());
@@ -74,7 +85,13 @@ public class AppDetailsAdapterTest extends FDroidProviderTest {
         Assert.insertApk(context, app, 2);
         Assert.insertApk(context, app, 3);
 
-        AppDetailsRecyclerViewAdapter adapter = new AppDetailsRecyclerViewAdapter(context, app, dummyCallbacks);
+        AppDetailsSnapshot snapshot = loadSnapshot();
+        assertEquals(3, snapshot.apks.size());
+        for (Apk apk : snapshot.apks) {
+            assertEquals(repo.getName(), snapshot.getRepoName(apk.repoId));
+        }
+
+        AppDetailsRecyclerViewAdapter adapter = new AppDetailsRecyclerViewAdapter(context, snapshot, dummyCallbacks);
         populateViewHolders(adapter);
 
         // Starts collapsed, now showing versions at all.
@@ -87,6 +104,17 @@ public class AppDetailsAdapterTest extends FDroidProviderTest {
         assertEquals(3, adapter.getItemCount());
     }
 
+    @Test
+    public void missingApp() {
+        assertNull(AppDetailsSnapshot.load(context, "com.example.missing"));
+    }
+
+    private AppDetailsSnapshot loadSnapshot() {
+        AppDetailsSnapshot snapshot = AppDetailsSnapshot.load(context, app.packageName);
+        assertNotNull(snapshot);
+        return snapshot;
+    }
+
     /**
      * Ensures that every single item in the adapter gets its view holder created and bound.
      * Doesn't care about what type of holder it should be, the adapter is able to figure all that